@@ -0,0 +1,153 @@
+/*
+ * jSite - FetchPlan.java - Copyright © 2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+
+package de.todesbaum.jsite.application;
+
+import de.todesbaum.util.freenet.fcp2.ManifestPutter;
+
+/**
+ * The result of estimating how many fetches a reader needs to load all files
+ * of a project. Every key that has to be requested separately counts as one
+ * fetch, regardless of its size: the manifests of the current and of older
+ * editions, the containers the node packed files into, and every file that is
+ * inserted as a key of its own.
+ *
+ * @see FetchPlanner
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class FetchPlan {
+
+	/** The manifest putter the estimate is based on. */
+	private final ManifestPutter manifestPutter;
+
+	/** The maximum size of a container the estimate is based on. */
+	private final long containerSize;
+
+	/** The number of files a reader can fetch. */
+	private final int fileCount;
+
+	/** The number of manifests that have to be fetched. */
+	private final int manifestCount;
+
+	/** The number of additional containers that have to be fetched. */
+	private final int containerCount;
+
+	/** The number of files that are fetched as keys of their own. */
+	private final int keyCount;
+
+	/**
+	 * Creates a new fetch plan.
+	 *
+	 * @param manifestPutter
+	 *            The manifest putter the estimate is based on
+	 * @param containerSize
+	 *            The maximum size of a container the estimate is based on
+	 * @param fileCount
+	 *            The number of files a reader can fetch
+	 * @param manifestCount
+	 *            The number of manifests that have to be fetched
+	 * @param containerCount
+	 *            The number of additional containers that have to be fetched
+	 * @param keyCount
+	 *            The number of files that are fetched as keys of their own
+	 */
+	FetchPlan(ManifestPutter manifestPutter, long containerSize, int fileCount, int manifestCount, int containerCount, int keyCount) {
+		this.manifestPutter = manifestPutter;
+		this.containerSize = containerSize;
+		this.fileCount = fileCount;
+		this.manifestCount = manifestCount;
+		this.containerCount = containerCount;
+		this.keyCount = keyCount;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the manifest putter the estimate is based on.
+	 *
+	 * @return The manifest putter
+	 */
+	public ManifestPutter getManifestPutter() {
+		return manifestPutter;
+	}
+
+	/**
+	 * Returns the maximum size of a container the estimate is based on.
+	 *
+	 * @return The maximum size of a container (in bytes)
+	 */
+	public long getContainerSize() {
+		return containerSize;
+	}
+
+	/**
+	 * Returns the number of files a reader can fetch, i.e. all files of the
+	 * project that are not skipped.
+	 *
+	 * @return The number of files
+	 */
+	public int getFileCount() {
+		return fileCount;
+	}
+
+	/**
+	 * Returns the number of manifests that have to be fetched. This is the
+	 * manifest of the current edition plus the manifests of all older
+	 * editions unchanged files are redirected to.
+	 *
+	 * @return The number of manifests
+	 */
+	public int getManifestCount() {
+		return manifestCount;
+	}
+
+	/**
+	 * Returns the number of containers that have to be fetched in addition to
+	 * the manifests, which contain the first container of their edition.
+	 *
+	 * @return The number of additional containers
+	 */
+	public int getContainerCount() {
+		return containerCount;
+	}
+
+	/**
+	 * Returns the number of files that are fetched as keys of their own
+	 * because they are too large for a container, because they were inserted
+	 * separately, or because they redirect to another key.
+	 *
+	 * @return The number of files fetched as keys of their own
+	 */
+	public int getKeyCount() {
+		return keyCount;
+	}
+
+	/**
+	 * Returns the expected number of fetches that are needed to load all files
+	 * of the project.
+	 *
+	 * @return The expected number of fetches
+	 */
+	public int getFetchCount() {
+		return manifestCount + containerCount + keyCount;
+	}
+
+}
@@ -0,0 +1,150 @@
+/*
+ * jSite - FetchPlanner.java - Copyright © 2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+
+package de.todesbaum.jsite.application;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.todesbaum.jsite.application.InsertPlan.Action;
+import de.todesbaum.jsite.application.InsertPlan.PlannedFile;
+import de.todesbaum.util.freenet.fcp2.ManifestPutter;
+
+/**
+ * Estimates how many fetches a reader needs to load all files of a project,
+ * based on an {@link InsertPlan} and the manifest putter of the project.
+ * <p>
+ * The <code>simple</code> manifest putter inserts every file as a key of its
+ * own. The <code>default</code> manifest putter packs files into containers;
+ * the planner models this by packing all files that are not larger than
+ * {@link #MAX_CONTAINER_ITEM_SIZE} into as few containers of the
+ * {@link Project#getContainerSize() container size} of the project as
+ * possible, largest files first. The first container of an edition is its
+ * manifest. Unchanged files are packed into the edition they were last
+ * inserted in, assuming that edition used the same manifest putter.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class FetchPlanner {
+
+	/** The default maximum size of a container, as used by the node. */
+	public static final long DEFAULT_CONTAINER_SIZE = (2038 - 64) * 1024;
+
+	/** The maximum size of a file that is packed into a container. */
+	static final long MAX_CONTAINER_ITEM_SIZE = 1024 * 1024;
+
+	/** The estimated size of a single entry in a manifest. */
+	private static final int MANIFEST_ENTRY_SIZE = 128;
+
+	/**
+	 * Estimates the fetches needed to load the files of the given project
+	 * after it has been inserted according to the given plan.
+	 *
+	 * @param project
+	 *            The project
+	 * @param insertPlan
+	 *            The insert plan of the project
+	 * @return The fetch plan
+	 */
+	public FetchPlan plan(Project project, InsertPlan insertPlan) {
+		ManifestPutter manifestPutter = (project.getManifestPutter() != null) ? project.getManifestPutter() : ManifestPutter.DEFAULT;
+		long containerSize = (project.getContainerSize() > 0) ? project.getContainerSize() : DEFAULT_CONTAINER_SIZE;
+		int fileCount = 0;
+		int keyCount = 0;
+		List<Long> currentEdition = new ArrayList<Long>();
+		Map<Integer, List<Long>> olderEditions = new HashMap<Integer, List<Long>>();
+		for (PlannedFile plannedFile : insertPlan.getPlannedFiles()) {
+			Action action = plannedFile.getAction();
+			if (action == Action.SKIP) {
+				continue;
+			}
+			fileCount++;
+			FileOption fileOption = project.getFileOption(plannedFile.getFilename());
+			if ((action == Action.SEPARATE) || (action == Action.REDIRECT_CUSTOM_KEY) || ((action == Action.REDIRECT_UNCHANGED) && (fileOption.getLastInsertKey() != null))) {
+				keyCount++;
+			} else if (action == Action.REDIRECT_UNCHANGED) {
+				List<Long> edition = olderEditions.get(fileOption.getLastInsertEdition());
+				if (edition == null) {
+					edition = new ArrayList<Long>();
+					olderEditions.put(fileOption.getLastInsertEdition(), edition);
+				}
+				edition.add(plannedFile.getSize());
+			} else if (action == Action.PAYLOAD) {
+				currentEdition.add(plannedFile.getSize());
+			}
+			/* symbolic links point into the current manifest. */
+		}
+		int containerCount = 0;
+		List<List<Long>> editions = new ArrayList<List<Long>>(olderEditions.values());
+		editions.add(currentEdition);
+		for (List<Long> fileSizes : editions) {
+			if (manifestPutter == ManifestPutter.SIMPLE) {
+				keyCount += fileSizes.size();
+				continue;
+			}
+			long itemSize = Math.min(MAX_CONTAINER_ITEM_SIZE, containerSize);
+			List<Long> packedSizes = new ArrayList<Long>();
+			for (long fileSize : fileSizes) {
+				if (fileSize > itemSize) {
+					keyCount++;
+				} else {
+					packedSizes.add(fileSize + MANIFEST_ENTRY_SIZE);
+				}
+			}
+			containerCount += Math.max(0, countContainers(packedSizes, containerSize) - 1);
+		}
+		return new FetchPlan(manifestPutter, containerSize, fileCount, editions.size(), containerCount, keyCount);
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Packs items of the given sizes into containers of the given size, using
+	 * the first container that still has enough room for the next largest
+	 * item.
+	 *
+	 * @param itemSizes
+	 *            The sizes of the items to pack
+	 * @param containerSize
+	 *            The maximum size of a container
+	 * @return The number of containers needed
+	 */
+	static int countContainers(List<Long> itemSizes, long containerSize) {
+		List<Long> sortedSizes = new ArrayList<Long>(itemSizes);
+		Collections.sort(sortedSizes, Collections.reverseOrder());
+		List<Long> remainingSpace = new ArrayList<Long>();
+		for (long itemSize : sortedSizes) {
+			int container = 0;
+			while ((container < remainingSpace.size()) && (remainingSpace.get(container) < itemSize)) {
+				container++;
+			}
+			if (container == remainingSpace.size()) {
+				remainingSpace.add(containerSize);
+			}
+			remainingSpace.set(container, remainingSpace.get(container) - itemSize);
+		}
+		return remainingSpace.size();
+	}
+
+}
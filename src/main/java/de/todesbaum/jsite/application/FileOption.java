@@ -30,13 +30,13 @@ import java.util.Optional;
 public class FileOption {
 
 	/** The default for the insert state. */
-	private static final boolean DEFAULT_INSERT = true;
+	static final boolean DEFAULT_INSERT = true;
 
 	/** The default for the insert redirect state. */
-	private static final boolean DEFAULT_INSERT_REDIRECT = true;
+	static final boolean DEFAULT_INSERT_REDIRECT = true;
 
 	/** The default for the custom key. */
-	private static final String DEFAULT_CUSTOM_KEY = "CHK@";
+	static final String DEFAULT_CUSTOM_KEY = "CHK@";
 
 	/** The insert state. */
 	private boolean insert;
@@ -56,6 +56,9 @@ public class FileOption {
 	/** The filename of the last insert. */
 	private String lastInsertFilename;
 
+	/** The key the file was inserted under separately at the last insert. */
+	private String lastInsertKey;
+
 	/** The current hash of the file. */
 	private String currentHash;
 
@@ -85,18 +88,25 @@ public class FileOption {
 		mimeType = defaultMimeType;
 	}
 
+	/**
+	 * Creates new file options that are a copy of the given file options.
+	 *
+	 * @param other
+	 *            The file options to copy
+	 */
 	public FileOption(FileOption other) {
-		this.insert = other.insert;
-		this.forceInsert = other.forceInsert;
-		this.insertRedirect = other.insertRedirect;
-		this.lastInsertHash = other.lastInsertHash;
-		this.lastInsertEdition = other.lastInsertEdition;
-		this.lastInsertFilename = other.lastInsertFilename;
-		this.currentHash = other.currentHash;
-		this.customKey = other.customKey;
-		this.changedName = other.changedName;
-		this.defaultMimeType = other.defaultMimeType;
-		this.mimeType = other.mimeType;
+		this.insert = other.isInsert();
+		this.forceInsert = other.isForceInsert();
+		this.insertRedirect = other.isInsertRedirect();
+		this.lastInsertHash = other.getLastInsertHash();
+		this.lastInsertEdition = other.getLastInsertEdition();
+		this.lastInsertFilename = other.getLastInsertFilename();
+		this.lastInsertKey = other.getLastInsertKey();
+		this.currentHash = other.getCurrentHash();
+		this.customKey = other.getCustomKey();
+		this.changedName = other.getChangedName();
+		this.defaultMimeType = other.getDefaultMimeType();
+		this.mimeType = other.getMimeType();
 	}
 
 	/**
@@ -267,6 +277,32 @@ public class FileOption {
 		return this;
 	}
 
+	/**
+	 * Returns the key under which the file was inserted on its own at the last
+	 * insert. If this key is set, redirects for an unchanged file point
+	 * directly to this key instead of to the file in an older edition of the
+	 * project.
+	 *
+	 * @return The key of the last insert, or {@code null} if the file was not
+	 *         inserted on its own
+	 */
+	public String getLastInsertKey() {
+		return lastInsertKey;
+	}
+
+	/**
+	 * Sets the key under which the file was inserted on its own.
+	 *
+	 * @param lastInsertKey
+	 *            The key of the last insert, or {@code null} if the file was
+	 *            not inserted on its own
+	 * @return These file options
+	 */
+	public FileOption setLastInsertKey(String lastInsertKey) {
+		this.lastInsertKey = lastInsertKey;
+		return this;
+	}
+
 	/**
 	 * Returns the current hash of the file. This value is ony a temporary value
 	 * that is copied to {@link #getLastInsertHash()} when a project has
@@ -338,6 +374,15 @@ public class FileOption {
 		return mimeType;
 	}
 
+	/**
+	 * Returns the default MIME type of the file.
+	 *
+	 * @return The default MIME type of the file
+	 */
+	String getDefaultMimeType() {
+		return defaultMimeType;
+	}
+
 	/**
 	 * Returns whether the options for this file have been modified, i.e. are
 	 * not at their default values.
@@ -19,6 +19,7 @@
 package de.todesbaum.jsite.application;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import de.todesbaum.util.freenet.fcp2.Client;
 import de.todesbaum.util.freenet.fcp2.Command;
@@ -40,6 +41,12 @@ public class Freenet7Interface {
 	/** Counter. */
 	private static int counter = 0;
 
+	/** Counter for the identifiers of key pair requests. */
+	private static final AtomicInteger keyPairCounter = new AtomicInteger();
+
+	/** The time to wait for the node to generate a key pair (in milliseconds). */
+	static final long KEY_PAIR_TIMEOUT = 60 * 1000;
+
 	private final NodeSupplier nodeSupplier;
 	private final ConnectionSupplier connectionSupplier;
 	private final ClientSupplier clientSupplier;
@@ -47,7 +54,10 @@ public class Freenet7Interface {
 	/** The node to connect to. */
 	private Node node;
 
-	/** The connection to the node. */
+	/**
+	 * The connection to the node. It is shared by all requests that do not
+	 * need a connection of their own.
+	 */
 	private Connection connection;
 
 	public Freenet7Interface() {
@@ -66,7 +76,10 @@ public class Freenet7Interface {
 	 * @param node
 	 *            The node to get the hostname and port from
 	 */
-	public void setNode(de.todesbaum.jsite.application.Node node) {
+	public synchronized void setNode(de.todesbaum.jsite.application.Node node) {
+		if (connection != null) {
+			connection.disconnect();
+		}
 		if (node != null) {
 			this.node = nodeSupplier.supply(node.getHostname(), node.getPort());
 			connection = connectionSupplier.supply(node, "jSite-" + number + "-connection-" + counter++);
@@ -105,13 +118,34 @@ public class Freenet7Interface {
 	 * @throws IOException
 	 *             if an I/O error occurs communicating with the node
 	 */
-	public boolean isNodePresent() throws IOException {
+	public synchronized boolean isNodePresent() throws IOException {
 		if (!connection.isConnected()) {
 			return connection.connect();
 		}
 		return true;
 	}
 
+	/**
+	 * Returns the connection to the current node that is shared by all
+	 * long-running requests, e.g. subscriptions. The connection is
+	 * established if it is not connected. Users of the shared connection
+	 * must not disconnect it; they {@link Client#close() close} their clients
+	 * instead. If the node is changed, the shared connection is disconnected.
+	 *
+	 * @return The shared connection
+	 * @throws IOException
+	 *             if no node is set or the node can not be reached
+	 */
+	public synchronized Connection getSharedConnection() throws IOException {
+		if (connection == null) {
+			throw new IOException("No node set.");
+		}
+		if (!isNodePresent()) {
+			throw new IOException("Node is offline.");
+		}
+		return connection;
+	}
+
 	/**
 	 * Generates an SSK key pair.
 	 *
@@ -119,16 +153,27 @@ public class Freenet7Interface {
 	 *         (insert) URI and the second one being the generated public
 	 *         (request) URI
 	 * @throws IOException
-	 *             if an I/O error occurs communicating with the node
+	 *             if an I/O error occurs communicating with the node, or if
+	 *             the node does not answer within {@link #KEY_PAIR_TIMEOUT}
 	 */
 	public String[] generateKeyPair() throws IOException {
 		if (!isNodePresent()) {
 			throw new IOException("Node is offline.");
 		}
-		GenerateSSK generateSSK = new GenerateSSK();
+		GenerateSSK generateSSK = new GenerateSSK("jSite-" + number + "-generate-ssk-" + keyPairCounter.getAndIncrement());
 		Client client = clientSupplier.supply(connection, generateSSK);
-		Message keypairMessage = client.readMessage();
-		return new String[] { keypairMessage.get("InsertURI"), keypairMessage.get("RequestURI") };
+		try {
+			Message keypairMessage = client.readMessage(KEY_PAIR_TIMEOUT);
+			if (keypairMessage == null) {
+				if (client.isDisconnected()) {
+					throw new IOException("Connection terminated.");
+				}
+				throw new IOException("Node did not generate a key pair in time.");
+			}
+			return new String[] { keypairMessage.get("InsertURI"), keypairMessage.get("RequestURI") };
+		} finally {
+			client.close();
+		}
 	}
 
 	/**
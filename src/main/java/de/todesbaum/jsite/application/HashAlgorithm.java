@@ -0,0 +1,192 @@
+/*
+ * jSite - HashAlgorithm.java - Copyright © 2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+
+package de.todesbaum.jsite.application;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+
+import de.todesbaum.util.io.Hex;
+import de.todesbaum.util.io.XXHash64;
+
+/**
+ * The hash algorithms that can be used to detect changed files. Hashes are
+ * stored as strings: SHA-256 hashes, which all versions of jSite have used,
+ * are stored as plain hexadecimal strings; hashes of other algorithms carry a
+ * prefix with the name of the algorithm.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public enum HashAlgorithm {
+
+	/** SHA-256, a cryptographic hash. */
+	SHA_256("sha-256", "", 32) {
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public MessageDigest createDigest() throws NoSuchAlgorithmException {
+			return MessageDigest.getInstance("SHA-256");
+		}
+
+	},
+
+	/** XXH64, a fast non-cryptographic hash. */
+	XXH64("xxh64", "xxh64:", XXHash64.DIGEST_LENGTH) {
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public MessageDigest createDigest() {
+			return new XXHash64();
+		}
+
+	};
+
+	/** The name of the algorithm. */
+	private final String name;
+
+	/** The prefix of stored hashes. */
+	private final String prefix;
+
+	/** The length of a digest. */
+	private final int digestLength;
+
+	/**
+	 * Creates a new hash algorithm.
+	 *
+	 * @param name
+	 *            The name of the algorithm
+	 * @param prefix
+	 *            The prefix of stored hashes
+	 * @param digestLength
+	 *            The length of a digest
+	 */
+	private HashAlgorithm(String name, String prefix, int digestLength) {
+		this.name = name;
+		this.prefix = prefix;
+		this.digestLength = digestLength;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the name of this algorithm.
+	 *
+	 * @return The name of this algorithm
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the prefix of hashes of this algorithm.
+	 *
+	 * @return The prefix of hashes of this algorithm
+	 */
+	public String getPrefix() {
+		return prefix;
+	}
+
+	/**
+	 * Returns the length of a digest of this algorithm.
+	 *
+	 * @return The length of a digest (in bytes)
+	 */
+	public int getDigestLength() {
+		return digestLength;
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Creates a new digest for this algorithm.
+	 *
+	 * @return A new digest
+	 * @throws NoSuchAlgorithmException
+	 *             if the algorithm is not available
+	 */
+	public abstract MessageDigest createDigest() throws NoSuchAlgorithmException;
+
+	/**
+	 * Converts the given digest into a stored hash.
+	 *
+	 * @param digest
+	 *            The digest
+	 * @return The hash
+	 */
+	public String toHash(byte[] digest) {
+		return prefix + Hex.toHex(digest);
+	}
+
+	//
+	// STATIC METHODS
+	//
+
+	/**
+	 * Returns the algorithm with the given name, matched case-insensitive.
+	 *
+	 * @param name
+	 *            The name of the algorithm
+	 * @return The algorithm with the given name, or {@code null} if no
+	 *         algorithm matches the given name
+	 */
+	public static HashAlgorithm getByName(String name) {
+		for (HashAlgorithm hashAlgorithm : values()) {
+			if (hashAlgorithm.name.equals((name != null) ? name.toLowerCase(Locale.ENGLISH) : null)) {
+				return hashAlgorithm;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the algorithm of the given stored hash. Hashes without a prefix
+	 * are SHA-256 hashes.
+	 *
+	 * @param hash
+	 *            The stored hash
+	 * @return The algorithm of the hash, or {@code null} if no hash is given
+	 */
+	public static HashAlgorithm getByHash(String hash) {
+		if ((hash == null) || (hash.length() == 0)) {
+			return null;
+		}
+		return hash.startsWith(XXH64.prefix) ? XXH64 : SHA_256;
+	}
+
+	/**
+	 * Returns the algorithm that creates digests of the given length.
+	 *
+	 * @param digest
+	 *            The digest
+	 * @return The algorithm that created the digest
+	 */
+	public static HashAlgorithm getByDigest(byte[] digest) {
+		return (digest.length == XXH64.digestLength) ? XXH64 : SHA_256;
+	}
+
+}
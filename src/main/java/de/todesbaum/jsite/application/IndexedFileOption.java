@@ -0,0 +1,320 @@
+/*
+ * jSite - IndexedFileOption.java - Copyright © 2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.jsite.application;
+
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * {@link FileOption} implementation that reads and writes the options of a
+ * file directly from and to the {@link SiteIndex} of a {@link Project}.
+ * Options that differ from the defaults are stored in a separate
+ * {@link FileOption} that only exists while the options are customized.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+class IndexedFileOption extends FileOption {
+
+	/** The project the file belongs to. */
+	private final Project project;
+
+	/** The site index of the project. */
+	private final SiteIndex siteIndex;
+
+	/** The name of the file. */
+	private final String filename;
+
+	/** The index of the file in the site index. */
+	private int index;
+
+	/** The generation of the site index the index belongs to. */
+	private int generation;
+
+	/** The default MIME type, determined on first use. */
+	private String defaultMimeType;
+
+	/**
+	 * Creates new file options for the given entry of the given site index.
+	 *
+	 * @param project
+	 *            The project the file belongs to
+	 * @param siteIndex
+	 *            The site index of the project
+	 * @param filename
+	 *            The name of the file
+	 * @param index
+	 *            The index of the file in the site index
+	 */
+	IndexedFileOption(Project project, SiteIndex siteIndex, String filename, int index) {
+		super((String) null);
+		this.project = project;
+		this.siteIndex = siteIndex;
+		this.filename = filename;
+		this.index = index;
+		this.generation = siteIndex.getGeneration();
+	}
+
+	//
+	// FILEOPTION METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getCustomKey() {
+		FileOption customOptions = siteIndex.getCustomOptions(index());
+		return (customOptions == null) ? DEFAULT_CUSTOM_KEY : customOptions.getCustomKey();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setCustomKey(String customKey) {
+		modifyCustomOptions(customOptions -> customOptions.setCustomKey(customKey));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isInsert() {
+		FileOption customOptions = siteIndex.getCustomOptions(index());
+		return (customOptions == null) ? DEFAULT_INSERT : customOptions.isInsert();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setInsert(boolean insert) {
+		modifyCustomOptions(customOptions -> customOptions.setInsert(insert));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isForceInsert() {
+		return siteIndex.isForceInsert(index());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public FileOption setForceInsert(boolean forceInsert) {
+		siteIndex.setForceInsert(index(), forceInsert);
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isInsertRedirect() {
+		FileOption customOptions = siteIndex.getCustomOptions(index());
+		return (customOptions == null) ? DEFAULT_INSERT_REDIRECT : customOptions.isInsertRedirect();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setInsertRedirect(boolean insertRedirect) {
+		modifyCustomOptions(customOptions -> customOptions.setInsertRedirect(insertRedirect));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getLastInsertHash() {
+		return siteIndex.getLastInsertHash(index());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public FileOption setLastInsertHash(String lastInsertHash) {
+		siteIndex.setLastInsertHash(index(), lastInsertHash);
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getLastInsertEdition() {
+		return siteIndex.getLastInsertEdition(index());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public FileOption setLastInsertEdition(int lastInsertEdition) {
+		siteIndex.setLastInsertEdition(index(), lastInsertEdition);
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getLastInsertFilename() {
+		return siteIndex.getLastInsertFilename(index());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public FileOption setLastInsertFilename(String lastInsertFilename) {
+		siteIndex.setLastInsertFilename(index(), lastInsertFilename);
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getLastInsertKey() {
+		return siteIndex.getLastInsertKey(index());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public FileOption setLastInsertKey(String lastInsertKey) {
+		siteIndex.setLastInsertKey(index(), lastInsertKey);
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getCurrentHash() {
+		return siteIndex.getCurrentHash(index());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public FileOption setCurrentHash(String currentHash) {
+		siteIndex.setCurrentHash(index(), currentHash);
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Optional<String> getChangedName() {
+		FileOption customOptions = siteIndex.getCustomOptions(index());
+		return (customOptions == null) ? Optional.<String> empty() : customOptions.getChangedName();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setChangedName(String changedName) {
+		modifyCustomOptions(customOptions -> customOptions.setChangedName(changedName));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setMimeType(String mimeType) {
+		modifyCustomOptions(customOptions -> customOptions.setMimeType(mimeType));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getMimeType() {
+		FileOption customOptions = siteIndex.getCustomOptions(index());
+		return (customOptions == null) ? getDefaultMimeType() : customOptions.getMimeType();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	String getDefaultMimeType() {
+		if (defaultMimeType == null) {
+			defaultMimeType = project.getDefaultMimeType(filename);
+		}
+		return defaultMimeType;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isCustom() {
+		return siteIndex.getCustomOptions(index()) != null;
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Returns the index of the file in the site index. If the site index has
+	 * been cleared since this file option was created, the file is added to
+	 * the site index again.
+	 *
+	 * @return The index of the file
+	 */
+	private int index() {
+		if (generation != siteIndex.getGeneration()) {
+			index = project.addFileOption(filename);
+			generation = siteIndex.getGeneration();
+		}
+		return index;
+	}
+
+	/**
+	 * Modifies the custom options of the file. If the file does not have
+	 * custom options yet, they are created from the defaults; if they are no
+	 * longer custom after the modification, they are removed.
+	 *
+	 * @param modifier
+	 *            The modification to perform
+	 */
+	private void modifyCustomOptions(Consumer<FileOption> modifier) {
+		int currentIndex = index();
+		FileOption customOptions = siteIndex.getCustomOptions(currentIndex);
+		if (customOptions == null) {
+			customOptions = new FileOption(getDefaultMimeType());
+		}
+		modifier.accept(customOptions);
+		siteIndex.setCustomOptions(currentIndex, customOptions.isCustom() ? customOptions : null);
+	}
+
+}
@@ -0,0 +1,420 @@
+/*
+ * jSite - InsertHistory.java - Copyright © 2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+
+package de.todesbaum.jsite.application;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import de.todesbaum.jsite.application.InsertRecord.Outcome;
+
+/**
+ * The history of the inserts of a project. The history keeps the records of
+ * the last {@value #MAX_RECORDS} inserts, oldest first, and answers questions
+ * about them: how fast inserts to a node were recently, how long the next
+ * insert will probably take, and how throughput, uploaded data and changed
+ * files developed over time.
+ * <p>
+ * Records that are added to the history are remembered as unsaved until they
+ * are {@link #markSaved(Collection) marked as saved}.
+ *
+ * @see InsertRecord
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class InsertHistory {
+
+	/** The maximum number of records in the history. */
+	public static final int MAX_RECORDS = 1000;
+
+	/** The number of recent successful inserts estimates are based on. */
+	static final int RECENT_INSERTS = 5;
+
+	/** The records, oldest first. */
+	private final List<InsertRecord> records = new ArrayList<InsertRecord>();
+
+	/** The records that have not yet been saved. */
+	private final List<InsertRecord> unsavedRecords = new ArrayList<InsertRecord>();
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns all records of the history.
+	 *
+	 * @return The records, oldest first
+	 */
+	public synchronized List<InsertRecord> getRecords() {
+		return new ArrayList<InsertRecord>(records);
+	}
+
+	/**
+	 * Returns the records of all inserts to the given node.
+	 *
+	 * @param node
+	 *            The node, or {@code null} for all nodes
+	 * @return The records, oldest first
+	 */
+	public synchronized List<InsertRecord> getRecords(String node) {
+		List<InsertRecord> nodeRecords = new ArrayList<InsertRecord>();
+		for (InsertRecord record : records) {
+			if ((node == null) || node.equals(record.getNode())) {
+				nodeRecords.add(record);
+			}
+		}
+		return nodeRecords;
+	}
+
+	/**
+	 * Returns the nodes the project was inserted to.
+	 *
+	 * @return The nodes, sorted
+	 */
+	public synchronized Set<String> getNodes() {
+		Set<String> nodes = new TreeSet<String>();
+		for (InsertRecord record : records) {
+			nodes.add(record.getNode());
+		}
+		return nodes;
+	}
+
+	/**
+	 * Returns the records that have not been saved yet.
+	 *
+	 * @return The unsaved records, oldest first
+	 */
+	public synchronized List<InsertRecord> getUnsavedRecords() {
+		return new ArrayList<InsertRecord>(unsavedRecords);
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Adds the record of a new insert to the history. If the history already
+	 * contains {@value #MAX_RECORDS} records, the oldest record is removed.
+	 *
+	 * @param record
+	 *            The record to add
+	 */
+	public synchronized void add(InsertRecord record) {
+		records.add(record);
+		unsavedRecords.add(record);
+		while (records.size() > MAX_RECORDS) {
+			unsavedRecords.remove(records.remove(0));
+		}
+	}
+
+	/**
+	 * Replaces the records of the history with the given saved records.
+	 *
+	 * @param savedRecords
+	 *            The saved records, oldest first
+	 */
+	public synchronized void setSavedRecords(List<InsertRecord> savedRecords) {
+		records.clear();
+		unsavedRecords.clear();
+		records.addAll(savedRecords.subList(Math.max(0, savedRecords.size() - MAX_RECORDS), savedRecords.size()));
+	}
+
+	/**
+	 * Marks the given records as saved.
+	 *
+	 * @param savedRecords
+	 *            The records that were saved
+	 */
+	public synchronized void markSaved(Collection<InsertRecord> savedRecords) {
+		unsavedRecords.removeAll(savedRecords);
+	}
+
+	/**
+	 * Returns the throughput of the recent successful inserts to the given
+	 * node. The throughput is the number of inserted blocks divided by the
+	 * time spent transferring them.
+	 *
+	 * @param node
+	 *            The node, or {@code null} for all nodes
+	 * @return The throughput (in blocks per minute), or {@code 0} if there
+	 *         are no successful inserts to the node
+	 */
+	public synchronized double getThroughput(String node) {
+		long blockCount = 0;
+		long transferDuration = 0;
+		for (InsertRecord record : getRecentInserts(node)) {
+			blockCount += record.getBlockCount();
+			transferDuration += record.getTransferDuration();
+		}
+		return (transferDuration > 0) ? (blockCount * 60000.0 / transferDuration) : 0;
+	}
+
+	/**
+	 * Returns the average time the recent successful inserts to the given
+	 * node spent in phases that do not transfer blocks, e.g. connecting to
+	 * the node and verifying keys.
+	 *
+	 * @param node
+	 *            The node, or {@code null} for all nodes
+	 * @return The average overhead of an insert (in milliseconds)
+	 */
+	public synchronized long getOverhead(String node) {
+		List<InsertRecord> recentInserts = getRecentInserts(node);
+		if (recentInserts.isEmpty()) {
+			return 0;
+		}
+		long overhead = 0;
+		for (InsertRecord record : recentInserts) {
+			overhead += record.getDuration() - record.getTransferDuration();
+		}
+		return overhead / recentInserts.size();
+	}
+
+	/**
+	 * Estimates the duration of an insert of the given number of blocks to
+	 * the given node. The estimate is based on the recent successful inserts
+	 * to the node or, if the project was never inserted to the node, on the
+	 * recent successful inserts to all nodes.
+	 *
+	 * @param blockCount
+	 *            The number of blocks to insert
+	 * @param node
+	 *            The node, or {@code null} for all nodes
+	 * @return The estimated duration (in milliseconds), or {@code -1} if
+	 *         there are no inserts to base the estimate on
+	 */
+	public synchronized long getEstimatedDuration(long blockCount, String node) {
+		String estimateNode = ((node != null) && !getRecentInserts(node).isEmpty()) ? node : null;
+		double throughput = getThroughput(estimateNode);
+		if (throughput <= 0) {
+			return -1;
+		}
+		return getOverhead(estimateNode) + (long) (blockCount / throughput * 60 * 1000);
+	}
+
+	/**
+	 * Summarizes the inserts to the given node in periods of the given
+	 * length, e.g. to compare the throughput of the last month with the
+	 * months before.
+	 *
+	 * @param node
+	 *            The node, or {@code null} for all nodes
+	 * @param periodLength
+	 *            The length of a period (in milliseconds)
+	 * @param periodCount
+	 *            The number of periods
+	 * @param now
+	 *            The end of the last period
+	 * @return The periods, oldest first
+	 */
+	public synchronized List<Period> getTrend(String node, long periodLength, int periodCount, long now) {
+		List<Period> periods = new ArrayList<Period>();
+		List<InsertRecord> nodeRecords = getRecords(node);
+		for (int periodIndex = periodCount - 1; periodIndex >= 0; periodIndex--) {
+			long endTime = now - periodIndex * periodLength;
+			List<InsertRecord> periodRecords = new ArrayList<InsertRecord>();
+			for (InsertRecord record : nodeRecords) {
+				if ((record.getStartTime() >= endTime - periodLength) && (record.getStartTime() < endTime)) {
+					periodRecords.add(record);
+				}
+			}
+			periods.add(new Period(endTime - periodLength, endTime, periodRecords));
+		}
+		return periods;
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Returns the recent successful inserts to the given node that
+	 * transferred blocks.
+	 *
+	 * @param node
+	 *            The node, or {@code null} for all nodes
+	 * @return The recent successful inserts, newest first
+	 */
+	private List<InsertRecord> getRecentInserts(String node) {
+		List<InsertRecord> recentInserts = new ArrayList<InsertRecord>();
+		for (int index = records.size() - 1; (index >= 0) && (recentInserts.size() < RECENT_INSERTS); index--) {
+			InsertRecord record = records.get(index);
+			if ((record.getOutcome() == Outcome.SUCCESS) && (record.getThroughput() > 0) && ((node == null) || node.equals(record.getNode()))) {
+				recentInserts.add(record);
+			}
+		}
+		return recentInserts;
+	}
+
+	/**
+	 * Summary of the inserts that were started during a period.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	public static class Period {
+
+		/** The start of the period. */
+		private final long startTime;
+
+		/** The end of the period. */
+		private final long endTime;
+
+		/** The records of the inserts started during the period. */
+		private final List<InsertRecord> records;
+
+		/**
+		 * Creates a new period.
+		 *
+		 * @param startTime
+		 *            The start of the period
+		 * @param endTime
+		 *            The end of the period
+		 * @param records
+		 *            The records of the inserts started during the period
+		 */
+		Period(long startTime, long endTime, List<InsertRecord> records) {
+			this.startTime = startTime;
+			this.endTime = endTime;
+			this.records = Collections.unmodifiableList(records);
+		}
+
+		/**
+		 * Returns the start of the period.
+		 *
+		 * @return The start of the period
+		 */
+		public long getStartTime() {
+			return startTime;
+		}
+
+		/**
+		 * Returns the end of the period.
+		 *
+		 * @return The end of the period
+		 */
+		public long getEndTime() {
+			return endTime;
+		}
+
+		/**
+		 * Returns the records of the inserts started during the period.
+		 *
+		 * @return The records, oldest first
+		 */
+		public List<InsertRecord> getRecords() {
+			return records;
+		}
+
+		/**
+		 * Returns the number of inserts started during the period.
+		 *
+		 * @return The number of inserts
+		 */
+		public int getInsertCount() {
+			return records.size();
+		}
+
+		/**
+		 * Returns the number of successful inserts started during the period.
+		 *
+		 * @return The number of successful inserts
+		 */
+		public int getSuccessfulInsertCount() {
+			int successfulInsertCount = 0;
+			for (InsertRecord record : records) {
+				successfulInsertCount += (record.getOutcome() == Outcome.SUCCESS) ? 1 : 0;
+			}
+			return successfulInsertCount;
+		}
+
+		/**
+		 * Returns the throughput of the successful inserts of the period.
+		 *
+		 * @return The throughput (in blocks per minute), or {@code 0} if there
+		 *         were no successful inserts
+		 */
+		public double getThroughput() {
+			long blockCount = 0;
+			long transferDuration = 0;
+			for (InsertRecord record : records) {
+				if (record.getOutcome() == Outcome.SUCCESS) {
+					blockCount += record.getBlockCount();
+					transferDuration += record.getTransferDuration();
+				}
+			}
+			return (transferDuration > 0) ? (blockCount * 60000.0 / transferDuration) : 0;
+		}
+
+		/**
+		 * Returns the average number of bytes uploaded per insert.
+		 *
+		 * @return The average number of uploaded bytes
+		 */
+		public long getAverageUploadedBytes() {
+			if (records.isEmpty()) {
+				return 0;
+			}
+			long uploadedBytes = 0;
+			for (InsertRecord record : records) {
+				uploadedBytes += record.getUploadedBytes();
+			}
+			return uploadedBytes / records.size();
+		}
+
+		/**
+		 * Returns the average number of changed files per insert.
+		 *
+		 * @return The average number of changed files
+		 */
+		public double getAverageChangedFileCount() {
+			if (records.isEmpty()) {
+				return 0;
+			}
+			long changedFileCount = 0;
+			for (InsertRecord record : records) {
+				changedFileCount += record.getChangedFileCount();
+			}
+			return (double) changedFileCount / records.size();
+		}
+
+		/**
+		 * Returns the average duration of the successful inserts of the
+		 * period.
+		 *
+		 * @return The average duration (in milliseconds), or {@code 0} if
+		 *         there were no successful inserts
+		 */
+		public long getAverageDuration() {
+			long duration = 0;
+			int successfulInsertCount = 0;
+			for (InsertRecord record : records) {
+				if (record.getOutcome() == Outcome.SUCCESS) {
+					duration += record.getDuration();
+					successfulInsertCount++;
+				}
+			}
+			return (successfulInsertCount > 0) ? (duration / successfulInsertCount) : 0;
+		}
+
+	}
+
+}
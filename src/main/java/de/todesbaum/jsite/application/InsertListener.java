@@ -96,6 +96,21 @@ public interface InsertListener extends EventListener {
 	 */
 	public void projectInsertProgress(Project project, int succeeded, int failed, int fatal, int total, boolean finalized);
 
+	/**
+	 * Notifies a listener that the connection to the node was lost during an
+	 * insert and that the insert will be retried after the given delay.
+	 *
+	 * @param project
+	 *            The project being inserted
+	 * @param retry
+	 *            The number of the retry, starting at 1
+	 * @param maxRetries
+	 *            The maximum number of retries
+	 * @param delay
+	 *            The delay before the retry (in milliseconds)
+	 */
+	public void projectInsertRetrying(Project project, int retry, int maxRetries, long delay);
+
 	/**
 	 * Notifies a listener that a project insert has finished.
 	 *
@@ -0,0 +1,305 @@
+/*
+ * jSite - InsertPlan.java - Copyright © 2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.jsite.application;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The result of planning an insert without actually performing it. It
+ * contains what will happen to every file of the project, and estimates of
+ * how much data has to be uploaded, how many blocks have to be inserted, and
+ * how long the insert will take.
+ *
+ * @see InsertPlanner
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class InsertPlan {
+
+	/**
+	 * What happens to a file during an insert.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	public enum Action {
+
+		/** The file is uploaded as part of the project’s manifest. */
+		PAYLOAD,
+
+		/** The file is uploaded and inserted as a single CHK of its own. */
+		SEPARATE,
+
+		/** The file is unchanged; a redirect to the last insert is used. */
+		REDIRECT_UNCHANGED,
+
+		/** The file is not inserted but redirects to a custom key. */
+		REDIRECT_CUSTOM_KEY,
+
+		/** The file is a symbolic link and redirects to another file. */
+		REDIRECT_LINK,
+
+		/** The file is not inserted at all. */
+		SKIP;
+
+		/**
+		 * Returns whether the data of a file with this action is uploaded.
+		 *
+		 * @return {@code true} if the data of the file is uploaded,
+		 *         {@code false} otherwise
+		 */
+		public boolean isUpload() {
+			return (this == PAYLOAD) || (this == SEPARATE);
+		}
+
+	}
+
+	/**
+	 * A single file of the plan.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	public static class PlannedFile {
+
+		/** The name of the file. */
+		private final String filename;
+
+		/** The action for the file. */
+		private final Action action;
+
+		/** The size of the file. */
+		private final long size;
+
+		/** The estimated number of blocks of the file. */
+		private final int blockCount;
+
+		/**
+		 * Creates a new planned file.
+		 *
+		 * @param filename
+		 *            The name of the file
+		 * @param action
+		 *            The action for the file
+		 * @param size
+		 *            The size of the file
+		 * @param blockCount
+		 *            The estimated number of blocks of the file
+		 */
+		public PlannedFile(String filename, Action action, long size, int blockCount) {
+			this.filename = filename;
+			this.action = action;
+			this.size = size;
+			this.blockCount = blockCount;
+		}
+
+		/**
+		 * Returns the name of the file.
+		 *
+		 * @return The name of the file
+		 */
+		public String getFilename() {
+			return filename;
+		}
+
+		/**
+		 * Returns the action for the file.
+		 *
+		 * @return The action for the file
+		 */
+		public Action getAction() {
+			return action;
+		}
+
+		/**
+		 * Returns the size of the file.
+		 *
+		 * @return The size of the file
+		 */
+		public long getSize() {
+			return size;
+		}
+
+		/**
+		 * Returns the estimated number of blocks that are inserted for the
+		 * file, including redundancy.
+		 *
+		 * @return The estimated number of blocks, or {@code 0} if the data of
+		 *         the file is not uploaded
+		 */
+		public int getBlockCount() {
+			return blockCount;
+		}
+
+	}
+
+	/** The planned files. */
+	private final List<PlannedFile> plannedFiles = new ArrayList<PlannedFile>();
+
+	/** The number of files, by action. */
+	private final Map<Action, Integer> fileCounts = new EnumMap<Action, Integer>(Action.class);
+
+	/** The size of the files, by action. */
+	private final Map<Action, Long> fileSizes = new EnumMap<Action, Long>(Action.class);
+
+	/** The estimated number of blocks of the manifest. */
+	private final int manifestBlockCount;
+
+	/** The insert history to base the duration estimate on. */
+	private final InsertHistory insertHistory;
+
+	/** The node the project will be inserted to. */
+	private final String node;
+
+	/** The insert throughput to fall back to if the history is empty. */
+	private final double insertThroughput;
+
+	/** The total number of blocks. */
+	private long blockCount;
+
+	/**
+	 * Creates a new insert plan.
+	 *
+	 * @param plannedFiles
+	 *            The planned files
+	 * @param manifestBlockCount
+	 *            The estimated number of blocks of the manifest
+	 * @param insertHistory
+	 *            The insert history to base the duration estimate on
+	 * @param node
+	 *            The node the project will be inserted to, or {@code null} if
+	 *            it is not known
+	 * @param insertThroughput
+	 *            The insert throughput to fall back to if the history is
+	 *            empty, in blocks per minute, or {@code 0} if it is not known
+	 */
+	InsertPlan(List<PlannedFile> plannedFiles, int manifestBlockCount, InsertHistory insertHistory, String node, double insertThroughput) {
+		this.manifestBlockCount = manifestBlockCount;
+		this.insertHistory = insertHistory;
+		this.node = node;
+		this.insertThroughput = insertThroughput;
+		blockCount = manifestBlockCount;
+		for (Action action : Action.values()) {
+			fileCounts.put(action, 0);
+			fileSizes.put(action, 0L);
+		}
+		for (PlannedFile plannedFile : plannedFiles) {
+			this.plannedFiles.add(plannedFile);
+			fileCounts.put(plannedFile.getAction(), fileCounts.get(plannedFile.getAction()) + 1);
+			fileSizes.put(plannedFile.getAction(), fileSizes.get(plannedFile.getAction()) + Math.max(0, plannedFile.getSize()));
+			blockCount += plannedFile.getBlockCount();
+		}
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns all planned files.
+	 *
+	 * @return The planned files
+	 */
+	public List<PlannedFile> getPlannedFiles() {
+		return Collections.unmodifiableList(plannedFiles);
+	}
+
+	/**
+	 * Returns the number of files with the given action.
+	 *
+	 * @param action
+	 *            The action
+	 * @return The number of files with the given action
+	 */
+	public int getFileCount(Action action) {
+		return fileCounts.get(action);
+	}
+
+	/**
+	 * Returns the total size of the files with the given action.
+	 *
+	 * @param action
+	 *            The action
+	 * @return The total size of the files with the given action
+	 */
+	public long getSize(Action action) {
+		return fileSizes.get(action);
+	}
+
+	/**
+	 * Returns the number of bytes that will be uploaded to the node.
+	 *
+	 * @return The number of bytes that will be uploaded
+	 */
+	public long getUploadSize() {
+		return getSize(Action.PAYLOAD) + getSize(Action.SEPARATE);
+	}
+
+	/**
+	 * Returns the estimated number of blocks that will be inserted, including
+	 * the redundancy added by forward error correction and the manifest.
+	 *
+	 * @return The estimated number of blocks
+	 */
+	public long getBlockCount() {
+		return blockCount;
+	}
+
+	/**
+	 * Returns the estimated number of blocks of the manifest.
+	 *
+	 * @return The estimated number of blocks of the manifest
+	 */
+	public int getManifestBlockCount() {
+		return manifestBlockCount;
+	}
+
+	/**
+	 * Returns the estimated duration of the insert. The estimate is based on
+	 * the recent successful inserts of the project that are recorded in its
+	 * {@link InsertHistory}, preferably on inserts to the same node. If the
+	 * history is empty, the average throughput of earlier inserts is used.
+	 *
+	 * @return The estimated duration of the insert (in milliseconds), or
+	 *         {@code -1} if there is no throughput to base the estimate on
+	 */
+	public long getEstimatedDuration() {
+		long estimatedDuration = insertHistory.getEstimatedDuration(blockCount, node);
+		if (estimatedDuration >= 0) {
+			return estimatedDuration;
+		}
+		if (insertThroughput <= 0) {
+			return -1;
+		}
+		return (long) (blockCount / insertThroughput * 60 * 1000);
+	}
+
+	/**
+	 * Returns whether running the insert is worth it, i.e. whether any file
+	 * has changed since the last insert. If nothing has changed, the insert
+	 * would only create a new edition with the same content.
+	 *
+	 * @return {@code true} if files have changed, {@code false} otherwise
+	 */
+	public boolean isInsertNeeded() {
+		return (getFileCount(Action.PAYLOAD) + getFileCount(Action.SEPARATE)) > 0;
+	}
+
+}
@@ -0,0 +1,290 @@
+/*
+ * jSite - InsertPlanner.java - Copyright © 2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.jsite.application;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import de.todesbaum.jsite.application.InsertPlan.Action;
+import de.todesbaum.jsite.application.InsertPlan.PlannedFile;
+import de.todesbaum.jsite.gui.ScannedFile;
+
+/**
+ * Decides what happens to the files of a project during an insert. The
+ * {@link ProjectInserter} uses the planner for every file it inserts; the
+ * planner can also create an {@link InsertPlan} for all files of a project
+ * without contacting the node.
+ * <p>
+ * The number of blocks is estimated from the size of the files: a file of
+ * up to one block is inserted as a single block, larger files are split into
+ * blocks and get the same number of check blocks for forward error
+ * correction, plus one block for the splitfile metadata. Compression and
+ * containers are not taken into account so the estimate is an upper bound.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class InsertPlanner {
+
+	/** The size of a CHK block. */
+	static final int BLOCK_SIZE = 32 * 1024;
+
+	/** The estimated size of a single entry in the manifest. */
+	private static final int MANIFEST_ENTRY_SIZE = 128;
+
+	/**
+	 * The default minimum size of a file whose CHK is recorded; {@code -1}
+	 * because recording CHKs inserts every such file on its own.
+	 */
+	public static final long DEFAULT_CHK_CAPTURE_THRESHOLD = -1;
+
+	/** Whether to insert large files separately. */
+	private boolean insertFilesSeparately;
+
+	/** The minimum size of a separately inserted file. */
+	private long separateInsertThreshold = 1024 * 1024;
+
+	/** The minimum size of a file whose CHK is recorded. */
+	private long chkCaptureThreshold = DEFAULT_CHK_CAPTURE_THRESHOLD;
+
+	/** The node the project will be inserted to. */
+	private String node;
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns whether large files are inserted separately.
+	 *
+	 * @return {@code true} if large files are inserted separately,
+	 *         {@code false} otherwise
+	 */
+	public boolean isInsertFilesSeparately() {
+		return insertFilesSeparately;
+	}
+
+	/**
+	 * Sets whether large files are inserted separately.
+	 *
+	 * @param insertFilesSeparately
+	 *            {@code true} if large files are inserted separately,
+	 *            {@code false} otherwise
+	 * @return This planner
+	 */
+	public InsertPlanner setInsertFilesSeparately(boolean insertFilesSeparately) {
+		this.insertFilesSeparately = insertFilesSeparately;
+		return this;
+	}
+
+	/**
+	 * Sets the minimum size of a separately inserted file.
+	 *
+	 * @param separateInsertThreshold
+	 *            The minimum size of a separately inserted file (in bytes)
+	 * @return This planner
+	 */
+	public InsertPlanner setSeparateInsertThreshold(long separateInsertThreshold) {
+		this.separateInsertThreshold = separateInsertThreshold;
+		return this;
+	}
+
+	/**
+	 * Sets the minimum size of a file whose CHK is recorded. Such a file is
+	 * inserted as a single CHK before the project manifest, which redirects
+	 * to it, so that later editions can redirect unchanged files directly to
+	 * the recorded CHK instead of to the file in an older edition of the
+	 * project.
+	 *
+	 * @param chkCaptureThreshold
+	 *            The minimum size of a file whose CHK is recorded (in bytes),
+	 *            or {@code -1} to not record any CHKs
+	 * @return This planner
+	 */
+	public InsertPlanner setChkCaptureThreshold(long chkCaptureThreshold) {
+		this.chkCaptureThreshold = chkCaptureThreshold;
+		return this;
+	}
+
+	/**
+	 * Sets the node the project will be inserted to. Duration estimates are
+	 * based on earlier inserts to this node, if there are any.
+	 *
+	 * @param node
+	 *            The node, or {@code null} if it is not known
+	 * @return This planner
+	 */
+	public InsertPlanner setNode(de.todesbaum.util.freenet.fcp2.Node node) {
+		this.node = getNodeName(node);
+		return this;
+	}
+
+	/**
+	 * Returns whether a file of the given size is inserted separately, if it
+	 * is inserted at all.
+	 *
+	 * @param size
+	 *            The size of the file
+	 * @return {@code true} if the file is inserted separately, {@code false}
+	 *         otherwise
+	 */
+	public boolean isInsertedSeparately(long size) {
+		return (insertFilesSeparately && (size >= separateInsertThreshold)) || isCaptured(size);
+	}
+
+	/**
+	 * Returns whether the CHK of a file with the given size is recorded. Such
+	 * a file is {@link #isInsertedSeparately(long) inserted separately}.
+	 *
+	 * @param size
+	 *            The size of the file
+	 * @return {@code true} if the CHK of the file is recorded, {@code false}
+	 *         otherwise
+	 */
+	public boolean isCaptured(long size) {
+		return (chkCaptureThreshold >= 0) && (size >= chkCaptureThreshold);
+	}
+
+	/**
+	 * Returns whether the data of the file with the given name should be
+	 * written to the payload stage while it is hashed. Files that are known
+	 * to be inserted as part of the manifest before their hash is known are
+	 * staged: files that have never been inserted and files whose insert is
+	 * forced. Files that were inserted before are only staged if they have
+	 * probably been modified since; most of them are usually unchanged, and
+	 * a staged file that turns out to be unchanged is removed from the stage
+	 * again after it has been hashed.
+	 *
+	 * @param project
+	 *            The project of the file
+	 * @param filename
+	 *            The name of the file
+	 * @param size
+	 *            The size of the file
+	 * @param probablyModified
+	 *            {@code true} if the file has probably been modified since
+	 *            it was last inserted, {@code false} otherwise
+	 * @return {@code true} if the file should be staged, {@code false}
+	 *         otherwise
+	 */
+	public boolean isStageable(Project project, String filename, long size, boolean probablyModified) {
+		FileOption fileOption = project.getFileOption(filename);
+		if (!fileOption.isInsert() || isInsertedSeparately(size)) {
+			return false;
+		}
+		String lastInsertHash = fileOption.getLastInsertHash();
+		return project.isAlwaysForceInsert() || fileOption.isForceInsert() || (lastInsertHash == null) || lastInsertHash.isEmpty() || probablyModified;
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Returns what happens to the given file when the given project is
+	 * inserted.
+	 *
+	 * @param project
+	 *            The project
+	 * @param file
+	 *            The scanned file
+	 * @return The action for the file
+	 */
+	public Action getAction(Project project, ScannedFile file) {
+		FileOption fileOption = project.getFileOption(file.getFilename());
+		if (!fileOption.isInsert()) {
+			return fileOption.isInsertRedirect() ? Action.REDIRECT_CUSTOM_KEY : Action.SKIP;
+		}
+		if (file.isLink()) {
+			return Action.REDIRECT_LINK;
+		}
+		if (!isModified(project, file, fileOption)) {
+			return Action.REDIRECT_UNCHANGED;
+		}
+		return isInsertedSeparately(file.getSize()) ? Action.SEPARATE : Action.PAYLOAD;
+	}
+
+	/**
+	 * Plans the insert of the given files of the given project.
+	 *
+	 * @param project
+	 *            The project
+	 * @param files
+	 *            The scanned files of the project
+	 * @return The insert plan
+	 */
+	public InsertPlan plan(Project project, Collection<ScannedFile> files) {
+		List<PlannedFile> plannedFiles = new ArrayList<PlannedFile>();
+		int manifestEntries = 0;
+		for (ScannedFile file : files) {
+			Action action = getAction(project, file);
+			plannedFiles.add(new PlannedFile(file.getFilename(), action, file.getSize(), action.isUpload() ? getBlockCount(file.getSize()) : 0));
+			manifestEntries += (action != Action.SKIP) ? 1 : 0;
+		}
+		int manifestBlockCount = (int) Math.max(1, ((long) manifestEntries * MANIFEST_ENTRY_SIZE + BLOCK_SIZE - 1) / BLOCK_SIZE);
+		return new InsertPlan(plannedFiles, manifestBlockCount, project.getInsertHistory(), node, project.getInsertThroughput());
+	}
+
+	/**
+	 * Returns whether the given file has to be inserted because it was
+	 * modified since the last insert or because its insert is forced.
+	 *
+	 * @param project
+	 *            The project of the file
+	 * @param file
+	 *            The scanned file
+	 * @param fileOption
+	 *            The file options of the file
+	 * @return {@code true} if the file has to be inserted, {@code false} if a
+	 *         redirect to the last insert is sufficient
+	 */
+	static boolean isModified(Project project, ScannedFile file, FileOption fileOption) {
+		return project.isAlwaysForceInsert() || fileOption.isForceInsert() || !file.hasHash(fileOption.getLastInsertHash());
+	}
+
+	/**
+	 * Returns the name under which inserts to the given node are recorded in
+	 * the {@link InsertHistory}.
+	 *
+	 * @param node
+	 *            The node
+	 * @return The hostname and port of the node, or {@code null} if the node
+	 *         is {@code null}
+	 */
+	public static String getNodeName(de.todesbaum.util.freenet.fcp2.Node node) {
+		return (node != null) ? (node.getHostname() + ":" + node.getPort()) : null;
+	}
+
+	/**
+	 * Estimates the number of blocks that are inserted for a file of the
+	 * given size, including check blocks and splitfile metadata.
+	 *
+	 * @param size
+	 *            The size of the file
+	 * @return The estimated number of blocks
+	 */
+	static int getBlockCount(long size) {
+		if (size <= BLOCK_SIZE) {
+			return 1;
+		}
+		int dataBlocks = (int) ((size + BLOCK_SIZE - 1) / BLOCK_SIZE);
+		return 2 * dataBlocks + 1;
+	}
+
+}
@@ -0,0 +1,394 @@
+/*
+ * jSite - InsertQueue.java - Copyright © 2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.jsite.application;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import net.pterodactylus.util.io.StreamCopier.ProgressListener;
+import de.todesbaum.util.freenet.fcp2.Node;
+import de.todesbaum.util.freenet.fcp2.PriorityClass;
+
+/**
+ * Queue for project inserts. Every insert has an FCP {@link PriorityClass};
+ * inserts with a higher priority class are started first, inserts with the
+ * same priority class in the order they were queued. To keep inserts with a
+ * low priority from waiting forever, the priority of a queued insert is
+ * raised by one class for every {@link #AGING_INTERVAL} it has been waiting.
+ * <p>
+ * Only a limited number of inserts run on the same node at the same time.
+ * Inserts with a priority class of {@link PriorityClass#INTERACTIVE} or above
+ * may use one additional slot, so that an urgent insert of a small site can
+ * overtake long-running bulk inserts instead of waiting behind them. Because
+ * the priority class is also used for the requests sent to the node, the
+ * node itself prefers the blocks of the urgent insert.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class InsertQueue {
+
+	/** The default maximum number of inserts per node. */
+	public static final int DEFAULT_MAX_INSERTS_PER_NODE = 2;
+
+	/** The time after which a waiting insert is raised by one priority class. */
+	static final long AGING_INTERVAL = TimeUnit.MINUTES.toMillis(10);
+
+	/**
+	 * The state of a queued insert.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	public enum State {
+
+		/** The insert is waiting to be started. */
+		QUEUED,
+
+		/** The insert is running. */
+		RUNNING,
+
+		/** The insert has finished. */
+		FINISHED,
+
+		/** The insert was cancelled before it was started. */
+		CANCELLED
+
+	}
+
+	/** The maximum number of inserts per node. */
+	private final int maxInsertsPerNode;
+
+	/** The clock to measure waiting times with. */
+	private final LongSupplier clock;
+
+	/** The queued inserts. */
+	private final List<QueuedInsert> queuedInserts = new ArrayList<QueuedInsert>();
+
+	/** The number of running inserts, by node address. */
+	private final Map<String, Integer> runningInserts = new HashMap<String, Integer>();
+
+	/** Sequence number for queued inserts. */
+	private long sequence;
+
+	/**
+	 * Creates a new insert queue.
+	 *
+	 * @param maxInsertsPerNode
+	 *            The maximum number of inserts that run on the same node at
+	 *            the same time
+	 */
+	public InsertQueue(int maxInsertsPerNode) {
+		this(maxInsertsPerNode, System::currentTimeMillis);
+	}
+
+	/**
+	 * Creates a new insert queue.
+	 *
+	 * @param maxInsertsPerNode
+	 *            The maximum number of inserts that run on the same node at
+	 *            the same time
+	 * @param clock
+	 *            The clock to measure waiting times with
+	 */
+	InsertQueue(int maxInsertsPerNode, LongSupplier clock) {
+		this.maxInsertsPerNode = Math.max(1, maxInsertsPerNode);
+		this.clock = clock;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the inserts that are waiting to be started, in the order they
+	 * would be started now.
+	 *
+	 * @return The queued inserts
+	 */
+	public synchronized List<QueuedInsert> getQueuedInserts() {
+		List<QueuedInsert> sortedInserts = new ArrayList<QueuedInsert>(queuedInserts);
+		Collections.sort(sortedInserts, getComparator(clock.getAsLong()));
+		return sortedInserts;
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Queues an insert. The given project inserter must already be set up
+	 * completely; the queue only sets the priority class before starting it.
+	 *
+	 * @param projectInserter
+	 *            The project inserter to start
+	 * @param node
+	 *            The node the project is inserted to
+	 * @param priority
+	 *            The priority class of the insert
+	 * @param progressListener
+	 *            The listener for the upload progress
+	 * @return The queued insert
+	 */
+	public QueuedInsert enqueue(ProjectInserter projectInserter, Node node, PriorityClass priority, ProgressListener progressListener) {
+		final QueuedInsert queuedInsert;
+		synchronized (this) {
+			queuedInsert = new QueuedInsert(projectInserter, getNodeAddress(node), priority, progressListener, clock.getAsLong(), sequence++);
+			queuedInserts.add(queuedInsert);
+		}
+		projectInserter.addInsertListener(new InsertListener() {
+
+			@Override
+			public void projectInsertStarted(Project project) {
+				/* ignore. */
+			}
+
+			@Override
+			public void projectUploadFinished(Project project) {
+				/* ignore. */
+			}
+
+			@Override
+			public void projectURIGenerated(Project project, String uri) {
+				/* ignore. */
+			}
+
+			@Override
+			public void projectInsertProgress(Project project, int succeeded, int failed, int fatal, int total, boolean finalized) {
+				/* ignore. */
+			}
+
+			@Override
+			public void projectInsertRetrying(Project project, int retry, int maxRetries, long delay) {
+				/* ignore. */
+			}
+
+			@Override
+			@SuppressWarnings("synthetic-access")
+			public void projectInsertFinished(Project project, boolean success, Throwable cause) {
+				finished(queuedInsert);
+			}
+		});
+		startInserts();
+		return queuedInsert;
+	}
+
+	/**
+	 * Cancels the given insert. A queued insert is removed from the queue, a
+	 * running insert is stopped.
+	 *
+	 * @param queuedInsert
+	 *            The insert to cancel
+	 * @return {@code true} if the insert was removed from the queue before it
+	 *         was started, {@code false} if it was already running or has
+	 *         already finished
+	 */
+	public boolean cancel(QueuedInsert queuedInsert) {
+		synchronized (this) {
+			if (queuedInsert.state == State.QUEUED) {
+				queuedInserts.remove(queuedInsert);
+				queuedInsert.state = State.CANCELLED;
+				return true;
+			}
+			if (queuedInsert.state != State.RUNNING) {
+				return false;
+			}
+		}
+		queuedInsert.projectInserter.stop();
+		return false;
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Marks the given insert as finished and starts the next inserts.
+	 *
+	 * @param queuedInsert
+	 *            The insert that has finished
+	 */
+	private synchronized void finished(QueuedInsert queuedInsert) {
+		if (queuedInsert.state != State.RUNNING) {
+			return;
+		}
+		queuedInsert.state = State.FINISHED;
+		runningInserts.put(queuedInsert.nodeAddress, runningInserts.get(queuedInsert.nodeAddress) - 1);
+		startInserts();
+	}
+
+	/**
+	 * Starts all queued inserts that may run now. The inserts are started
+	 * while holding the lock so that they can not be cancelled between being
+	 * marked as running and being started.
+	 */
+	private synchronized void startInserts() {
+		Collections.sort(queuedInserts, getComparator(clock.getAsLong()));
+		Iterator<QueuedInsert> queuedInsertIterator = queuedInserts.iterator();
+		while (queuedInsertIterator.hasNext()) {
+			QueuedInsert queuedInsert = queuedInsertIterator.next();
+			int running = runningInserts.containsKey(queuedInsert.nodeAddress) ? runningInserts.get(queuedInsert.nodeAddress) : 0;
+			int limit = queuedInsert.isUrgent() ? (maxInsertsPerNode + 1) : maxInsertsPerNode;
+			if (running < limit) {
+				queuedInsertIterator.remove();
+				queuedInsert.state = State.RUNNING;
+				runningInserts.put(queuedInsert.nodeAddress, running + 1);
+				queuedInsert.projectInserter.setPriority(queuedInsert.priority);
+				queuedInsert.projectInserter.start(queuedInsert.progressListener);
+			}
+		}
+	}
+
+	/**
+	 * Returns a comparator that sorts queued inserts by their effective
+	 * priority at the given time, and by the order they were queued.
+	 *
+	 * @param now
+	 *            The current time
+	 * @return The comparator
+	 */
+	private static Comparator<QueuedInsert> getComparator(final long now) {
+		return new Comparator<QueuedInsert>() {
+
+			@Override
+			public int compare(QueuedInsert firstInsert, QueuedInsert secondInsert) {
+				int priorityDifference = firstInsert.getEffectivePriority(now) - secondInsert.getEffectivePriority(now);
+				if (priorityDifference != 0) {
+					return priorityDifference;
+				}
+				return Long.compare(firstInsert.sequence, secondInsert.sequence);
+			}
+		};
+	}
+
+	/**
+	 * Returns the address of the given node. Nodes with different names but
+	 * the same address share their limit.
+	 *
+	 * @param node
+	 *            The node
+	 * @return The address of the node
+	 */
+	private static String getNodeAddress(Node node) {
+		return node.getHostname() + ":" + node.getPort();
+	}
+
+	/**
+	 * An insert in the queue.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	public static class QueuedInsert {
+
+		/** The project inserter. */
+		private final ProjectInserter projectInserter;
+
+		/** The address of the node. */
+		private final String nodeAddress;
+
+		/** The priority class of the insert. */
+		private final PriorityClass priority;
+
+		/** The listener for the upload progress. */
+		private final ProgressListener progressListener;
+
+		/** The time the insert was queued. */
+		private final long queueTime;
+
+		/** The sequence number of the insert. */
+		private final long sequence;
+
+		/** The state of the insert. */
+		private volatile State state = State.QUEUED;
+
+		/**
+		 * Creates a new queued insert.
+		 *
+		 * @param projectInserter
+		 *            The project inserter
+		 * @param nodeAddress
+		 *            The address of the node
+		 * @param priority
+		 *            The priority class of the insert
+		 * @param progressListener
+		 *            The listener for the upload progress
+		 * @param queueTime
+		 *            The time the insert was queued
+		 * @param sequence
+		 *            The sequence number of the insert
+		 */
+		QueuedInsert(ProjectInserter projectInserter, String nodeAddress, PriorityClass priority, ProgressListener progressListener, long queueTime, long sequence) {
+			this.projectInserter = projectInserter;
+			this.nodeAddress = nodeAddress;
+			this.priority = priority;
+			this.progressListener = progressListener;
+			this.queueTime = queueTime;
+			this.sequence = sequence;
+		}
+
+		/**
+		 * Returns the priority class of the insert.
+		 *
+		 * @return The priority class of the insert
+		 */
+		public PriorityClass getPriority() {
+			return priority;
+		}
+
+		/**
+		 * Returns the state of the insert.
+		 *
+		 * @return The state of the insert
+		 */
+		public State getState() {
+			return state;
+		}
+
+		/**
+		 * Returns whether this insert may use the additional slot for urgent
+		 * inserts.
+		 *
+		 * @return {@code true} if this insert is urgent, {@code false}
+		 *         otherwise
+		 */
+		boolean isUrgent() {
+			return priority.getValue() <= PriorityClass.INTERACTIVE.getValue();
+		}
+
+		/**
+		 * Returns the priority class value of this insert at the given time,
+		 * raised by one class for every {@link InsertQueue#AGING_INTERVAL}
+		 * the insert has been waiting. Lower values are started first.
+		 *
+		 * @param now
+		 *            The current time
+		 * @return The effective priority class value
+		 */
+		int getEffectivePriority(long now) {
+			return (int) Math.max(0, priority.getValue() - Math.max(0, now - queueTime) / AGING_INTERVAL);
+		}
+
+	}
+
+}
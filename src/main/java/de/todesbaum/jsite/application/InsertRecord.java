@@ -0,0 +1,401 @@
+/*
+ * jSite - InsertRecord.java - Copyright © 2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+
+package de.todesbaum.jsite.application;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The record of a single insert of a project: when and to which node it was
+ * inserted, how long every phase of the insert took, how much data was
+ * uploaded, what happened to the files of the project, and how the insert
+ * ended.
+ *
+ * @see InsertHistory
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class InsertRecord {
+
+	/**
+	 * The phases of an insert, in the order they happen.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	public enum Phase {
+
+		/** Connecting to the node. */
+		CONNECT,
+
+		/** Inserting large files separately. */
+		SEPARATE_INSERTS,
+
+		/** Collecting the files of the manifest. */
+		PREPARATION,
+
+		/** Sending the manifest and its files to the node. */
+		UPLOAD,
+
+		/** Waiting for the node to insert the manifest into the network. */
+		NETWORK_INSERT;
+
+		/**
+		 * Returns whether the duration of this phase depends on the number of
+		 * inserted blocks.
+		 *
+		 * @return {@code true} if blocks are transferred during this phase,
+		 *         {@code false} otherwise
+		 */
+		public boolean isTransfer() {
+			return (this == SEPARATE_INSERTS) || (this == UPLOAD) || (this == NETWORK_INSERT);
+		}
+
+	}
+
+	/**
+	 * The outcome of an insert.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	public enum Outcome {
+
+		/** The insert was successful. */
+		SUCCESS,
+
+		/** The insert failed. */
+		FAILURE,
+
+		/** The insert was cancelled by the user. */
+		CANCELLED
+
+	}
+
+	/** The time the insert was started. */
+	private final long startTime;
+
+	/** The node the project was inserted to. */
+	private String node = "";
+
+	/** The edition that was inserted. */
+	private int edition;
+
+	/** The outcome of the insert. */
+	private Outcome outcome = Outcome.FAILURE;
+
+	/** The durations of the phases of the insert. */
+	private final Map<Phase, Long> phaseDurations = new EnumMap<Phase, Long>(Phase.class);
+
+	/** The number of uploaded bytes. */
+	private long uploadedBytes;
+
+	/** The number of inserted blocks. */
+	private long blockCount;
+
+	/** The number of changed files. */
+	private int changedFileCount;
+
+	/** The number of redirected files. */
+	private int redirectedFileCount;
+
+	/** The number of skipped files. */
+	private int skippedFileCount;
+
+	/** The number of retries. */
+	private int retries;
+
+	/**
+	 * Creates a new insert record.
+	 *
+	 * @param startTime
+	 *            The time the insert was started
+	 */
+	public InsertRecord(long startTime) {
+		this.startTime = startTime;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the time the insert was started.
+	 *
+	 * @return The time the insert was started
+	 */
+	public long getStartTime() {
+		return startTime;
+	}
+
+	/**
+	 * Returns the node the project was inserted to.
+	 *
+	 * @return The hostname and port of the node
+	 */
+	public String getNode() {
+		return node;
+	}
+
+	/**
+	 * Sets the node the project was inserted to.
+	 *
+	 * @param node
+	 *            The hostname and port of the node
+	 * @return This insert record
+	 */
+	public InsertRecord setNode(String node) {
+		this.node = (node != null) ? node : "";
+		return this;
+	}
+
+	/**
+	 * Returns the edition that was inserted.
+	 *
+	 * @return The inserted edition
+	 */
+	public int getEdition() {
+		return edition;
+	}
+
+	/**
+	 * Sets the edition that was inserted.
+	 *
+	 * @param edition
+	 *            The inserted edition
+	 * @return This insert record
+	 */
+	public InsertRecord setEdition(int edition) {
+		this.edition = edition;
+		return this;
+	}
+
+	/**
+	 * Returns the outcome of the insert.
+	 *
+	 * @return The outcome of the insert
+	 */
+	public Outcome getOutcome() {
+		return outcome;
+	}
+
+	/**
+	 * Sets the outcome of the insert.
+	 *
+	 * @param outcome
+	 *            The outcome of the insert
+	 * @return This insert record
+	 */
+	public InsertRecord setOutcome(Outcome outcome) {
+		this.outcome = outcome;
+		return this;
+	}
+
+	/**
+	 * Returns the duration of the given phase.
+	 *
+	 * @param phase
+	 *            The phase
+	 * @return The duration of the phase (in milliseconds)
+	 */
+	public long getPhaseDuration(Phase phase) {
+		Long phaseDuration = phaseDurations.get(phase);
+		return (phaseDuration != null) ? phaseDuration : 0;
+	}
+
+	/**
+	 * Adds the given duration to the duration of the given phase.
+	 *
+	 * @param phase
+	 *            The phase
+	 * @param duration
+	 *            The duration to add (in milliseconds)
+	 * @return This insert record
+	 */
+	public InsertRecord addPhaseDuration(Phase phase, long duration) {
+		phaseDurations.put(phase, getPhaseDuration(phase) + Math.max(0, duration));
+		return this;
+	}
+
+	/**
+	 * Returns the duration of the complete insert.
+	 *
+	 * @return The duration of the insert (in milliseconds)
+	 */
+	public long getDuration() {
+		long duration = 0;
+		for (long phaseDuration : phaseDurations.values()) {
+			duration += phaseDuration;
+		}
+		return duration;
+	}
+
+	/**
+	 * Returns the duration of all phases that transfer blocks.
+	 *
+	 * @return The duration of the transfer phases (in milliseconds)
+	 * @see Phase#isTransfer()
+	 */
+	public long getTransferDuration() {
+		long transferDuration = 0;
+		for (Phase phase : Phase.values()) {
+			transferDuration += phase.isTransfer() ? getPhaseDuration(phase) : 0;
+		}
+		return transferDuration;
+	}
+
+	/**
+	 * Returns the number of uploaded bytes.
+	 *
+	 * @return The number of uploaded bytes
+	 */
+	public long getUploadedBytes() {
+		return uploadedBytes;
+	}
+
+	/**
+	 * Sets the number of uploaded bytes.
+	 *
+	 * @param uploadedBytes
+	 *            The number of uploaded bytes
+	 * @return This insert record
+	 */
+	public InsertRecord setUploadedBytes(long uploadedBytes) {
+		this.uploadedBytes = uploadedBytes;
+		return this;
+	}
+
+	/**
+	 * Returns the number of inserted blocks.
+	 *
+	 * @return The number of inserted blocks
+	 */
+	public long getBlockCount() {
+		return blockCount;
+	}
+
+	/**
+	 * Sets the number of inserted blocks.
+	 *
+	 * @param blockCount
+	 *            The number of inserted blocks
+	 * @return This insert record
+	 */
+	public InsertRecord setBlockCount(long blockCount) {
+		this.blockCount = blockCount;
+		return this;
+	}
+
+	/**
+	 * Returns the number of files that were inserted because they changed.
+	 *
+	 * @return The number of changed files
+	 */
+	public int getChangedFileCount() {
+		return changedFileCount;
+	}
+
+	/**
+	 * Sets the number of files that were inserted because they changed.
+	 *
+	 * @param changedFileCount
+	 *            The number of changed files
+	 * @return This insert record
+	 */
+	public InsertRecord setChangedFileCount(int changedFileCount) {
+		this.changedFileCount = changedFileCount;
+		return this;
+	}
+
+	/**
+	 * Returns the number of files that were redirected to an existing key.
+	 *
+	 * @return The number of redirected files
+	 */
+	public int getRedirectedFileCount() {
+		return redirectedFileCount;
+	}
+
+	/**
+	 * Sets the number of files that were redirected to an existing key.
+	 *
+	 * @param redirectedFileCount
+	 *            The number of redirected files
+	 * @return This insert record
+	 */
+	public InsertRecord setRedirectedFileCount(int redirectedFileCount) {
+		this.redirectedFileCount = redirectedFileCount;
+		return this;
+	}
+
+	/**
+	 * Returns the number of files that were not inserted at all.
+	 *
+	 * @return The number of skipped files
+	 */
+	public int getSkippedFileCount() {
+		return skippedFileCount;
+	}
+
+	/**
+	 * Sets the number of files that were not inserted at all.
+	 *
+	 * @param skippedFileCount
+	 *            The number of skipped files
+	 * @return This insert record
+	 */
+	public InsertRecord setSkippedFileCount(int skippedFileCount) {
+		this.skippedFileCount = skippedFileCount;
+		return this;
+	}
+
+	/**
+	 * Returns the number of retries of the insert.
+	 *
+	 * @return The number of retries
+	 */
+	public int getRetries() {
+		return retries;
+	}
+
+	/**
+	 * Sets the number of retries of the insert.
+	 *
+	 * @param retries
+	 *            The number of retries
+	 * @return This insert record
+	 */
+	public InsertRecord setRetries(int retries) {
+		this.retries = retries;
+		return this;
+	}
+
+	/**
+	 * Returns the throughput of the insert.
+	 *
+	 * @return The throughput of the insert (in blocks per minute), or
+	 *         {@code 0} if no blocks were transferred
+	 */
+	public double getThroughput() {
+		long transferDuration = getTransferDuration();
+		if ((blockCount == 0) || (transferDuration == 0)) {
+			return 0;
+		}
+		return blockCount * 60000.0 / transferDuration;
+	}
+
+}
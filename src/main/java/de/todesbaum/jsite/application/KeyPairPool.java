@@ -0,0 +1,174 @@
+/*
+ * jSite - KeyPairPool.java - Copyright © 2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.jsite.application;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Small pool of SSK key pairs that are generated in the background so that
+ * a new project or a new key does not have to wait for the node. The pool is
+ * {@link #refill() refilled} whenever a key pair is taken from it; if the
+ * node can not be reached, refilling stops until the next time it is
+ * requested. Key pairs do not depend on the node that generated them, so the
+ * pool is kept when the node changes.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class KeyPairPool {
+
+	/** The logger. */
+	private static final Logger logger = Logger.getLogger(KeyPairPool.class.getName());
+
+	/** The default number of key pairs to keep. */
+	public static final int DEFAULT_SIZE = 4;
+
+	/** The freenet interface. */
+	private final Freenet7Interface freenetInterface;
+
+	/** The number of key pairs to keep. */
+	private final int size;
+
+	/** The generated key pairs. */
+	private final Deque<String[]> keyPairs = new ArrayDeque<String[]>();
+
+	/** Whether key pairs are currently being generated. */
+	private boolean refilling;
+
+	/**
+	 * Creates a new key pair pool with the default size.
+	 *
+	 * @param freenetInterface
+	 *            The freenet interface to generate key pairs with
+	 */
+	public KeyPairPool(Freenet7Interface freenetInterface) {
+		this(freenetInterface, DEFAULT_SIZE);
+	}
+
+	/**
+	 * Creates a new key pair pool.
+	 *
+	 * @param freenetInterface
+	 *            The freenet interface to generate key pairs with
+	 * @param size
+	 *            The number of key pairs to keep
+	 */
+	public KeyPairPool(Freenet7Interface freenetInterface, int size) {
+		this.freenetInterface = freenetInterface;
+		this.size = size;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the number of key pairs that are currently available without
+	 * asking the node.
+	 *
+	 * @return The number of available key pairs
+	 */
+	public int getAvailableKeyPairs() {
+		synchronized (keyPairs) {
+			return keyPairs.size();
+		}
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Returns a key pair. If the pool is empty, a key pair is generated right
+	 * away. In both cases the pool is refilled in the background afterwards.
+	 *
+	 * @return An array of strings, the first one being the private (insert)
+	 *         URI and the second one being the public (request) URI
+	 * @throws IOException
+	 *             if the pool is empty and the node can not generate a key
+	 *             pair
+	 */
+	public String[] getKeyPair() throws IOException {
+		String[] keyPair;
+		synchronized (keyPairs) {
+			keyPair = keyPairs.poll();
+		}
+		if (keyPair == null) {
+			keyPair = freenetInterface.generateKeyPair();
+		}
+		refill();
+		return keyPair;
+	}
+
+	/**
+	 * Starts generating key pairs in the background until the pool is full.
+	 * Nothing happens if the pool is already full or being refilled, or if no
+	 * node is set.
+	 */
+	public void refill() {
+		synchronized (keyPairs) {
+			if (refilling || (keyPairs.size() >= size) || !freenetInterface.hasNode()) {
+				return;
+			}
+			refilling = true;
+		}
+		TaskExecutors.IO.execute(new Runnable() {
+
+			@Override
+			@SuppressWarnings("synthetic-access")
+			public void run() {
+				generateKeyPairs();
+			}
+		});
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Generates key pairs until the pool is full or the node can not be
+	 * reached.
+	 */
+	private void generateKeyPairs() {
+		try {
+			while (true) {
+				synchronized (keyPairs) {
+					if (keyPairs.size() >= size) {
+						return;
+					}
+				}
+				String[] keyPair = freenetInterface.generateKeyPair();
+				synchronized (keyPairs) {
+					keyPairs.add(keyPair);
+				}
+			}
+		} catch (IOException ioe1) {
+			logger.log(Level.FINE, "Could not generate key pair.", ioe1);
+		} finally {
+			synchronized (keyPairs) {
+				refilling = false;
+			}
+		}
+	}
+
+}
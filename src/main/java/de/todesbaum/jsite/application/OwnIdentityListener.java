@@ -0,0 +1,42 @@
+/*
+ * jSite - OwnIdentityListener.java - Copyright © 2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.jsite.application;
+
+import java.util.EventListener;
+import java.util.List;
+
+import de.todesbaum.util.freenet.fcp2.wot.OwnIdentity;
+
+/**
+ * Listener interface for objects that want to be notified when the own
+ * identities of the web of trust have been loaded.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public interface OwnIdentityListener extends EventListener {
+
+	/**
+	 * Notifies a listener that the own identities have been loaded.
+	 *
+	 * @param ownIdentities
+	 *            The own identities
+	 */
+	public void ownIdentitiesLoaded(List<OwnIdentity> ownIdentities);
+
+}
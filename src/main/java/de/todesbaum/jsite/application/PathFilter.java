@@ -0,0 +1,222 @@
+/*
+ * jSite - PathFilter.java - Copyright © 2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.jsite.application;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Decides which files of a project are scanned, based on include and exclude
+ * rules. Rules are glob patterns that are matched against the path of a file
+ * relative to the project directory, using “/” as separator:
+ * <ul>
+ * <li>“*” matches any number of characters except “/”, “?” matches a single
+ * character except “/”,</li>
+ * <li>“**” matches any number of directories, e.g. “**&#47;node_modules/**”,</li>
+ * <li>a pattern without “/” matches the name of a file or directory in any
+ * directory, e.g. “*.psd”,</li>
+ * <li>a pattern ending in “/” only matches directories, e.g. “.git/”.</li>
+ * </ul>
+ * A directory that matches an exclude rule is skipped completely. A file is
+ * scanned if it does not match any exclude rule and either there are no
+ * include rules or it matches at least one of them.
+ * <p>
+ * All rules are compiled once, when the path filter is created.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class PathFilter {
+
+	/** A path filter that accepts all files. */
+	public static final PathFilter ACCEPT_ALL = new PathFilter(new ArrayList<String>(), new ArrayList<String>());
+
+	/** The compiled include rules. */
+	private final List<Rule> includeRules;
+
+	/** The compiled exclude rules. */
+	private final List<Rule> excludeRules;
+
+	/**
+	 * Creates a new path filter.
+	 *
+	 * @param includeRules
+	 *            The include rules
+	 * @param excludeRules
+	 *            The exclude rules
+	 */
+	public PathFilter(Collection<String> includeRules, Collection<String> excludeRules) {
+		this.includeRules = compile(includeRules);
+		this.excludeRules = compile(excludeRules);
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Returns whether the directory with the given path should be scanned.
+	 *
+	 * @param path
+	 *            The path of the directory, relative to the project directory
+	 * @return {@code true} if the directory should be scanned, {@code false}
+	 *         if it should be skipped with everything it contains
+	 */
+	public boolean acceptsDirectory(String path) {
+		for (Rule excludeRule : excludeRules) {
+			if (excludeRule.matches(path, true)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns whether the file with the given path should be scanned.
+	 *
+	 * @param path
+	 *            The path of the file, relative to the project directory
+	 * @return {@code true} if the file should be scanned, {@code false}
+	 *         otherwise
+	 */
+	public boolean acceptsFile(String path) {
+		for (Rule excludeRule : excludeRules) {
+			if (excludeRule.matches(path, false)) {
+				return false;
+			}
+		}
+		if (includeRules.isEmpty()) {
+			return true;
+		}
+		for (Rule includeRule : includeRules) {
+			if (includeRule.matches(path, false)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Compiles the given rules, ignoring empty rules.
+	 *
+	 * @param rules
+	 *            The rules to compile
+	 * @return The compiled rules
+	 */
+	private static List<Rule> compile(Collection<String> rules) {
+		List<Rule> compiledRules = new ArrayList<Rule>();
+		for (String rule : rules) {
+			String trimmedRule = rule.trim();
+			if (trimmedRule.length() > 0) {
+				compiledRules.add(new Rule(trimmedRule));
+			}
+		}
+		return compiledRules;
+	}
+
+	/**
+	 * Converts a glob pattern into a regular expression.
+	 *
+	 * @param glob
+	 *            The glob pattern
+	 * @return The regular expression
+	 */
+	static String toRegex(String glob) {
+		StringBuilder regex = new StringBuilder();
+		int position = 0;
+		while (position < glob.length()) {
+			char character = glob.charAt(position);
+			if (glob.startsWith("**/", position)) {
+				regex.append("(?:.*/)?");
+				position += 3;
+			} else if (glob.startsWith("/**", position) && (position + 3 == glob.length())) {
+				regex.append("(?:/.*)?");
+				position += 3;
+			} else if (glob.startsWith("**", position)) {
+				regex.append(".*");
+				position += 2;
+			} else if (character == '*') {
+				regex.append("[^/]*");
+				position++;
+			} else if (character == '?') {
+				regex.append("[^/]");
+				position++;
+			} else {
+				regex.append(Pattern.quote(String.valueOf(character)));
+				position++;
+			}
+		}
+		return regex.toString();
+	}
+
+	/**
+	 * A single compiled rule.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	private static class Rule {
+
+		/** The pattern of the rule. */
+		private final Pattern pattern;
+
+		/** Whether the rule only matches directories. */
+		private final boolean directoryOnly;
+
+		/**
+		 * Compiles the given rule.
+		 *
+		 * @param rule
+		 *            The rule to compile
+		 */
+		public Rule(String rule) {
+			String glob = rule;
+			directoryOnly = glob.endsWith("/");
+			if (directoryOnly) {
+				glob = glob.substring(0, glob.length() - 1);
+			}
+			boolean anchored = glob.indexOf('/') > -1;
+			if (glob.startsWith("/")) {
+				glob = glob.substring(1);
+			}
+			pattern = Pattern.compile((anchored ? "" : "(?:.*/)?") + toRegex(glob));
+		}
+
+		/**
+		 * Returns whether this rule matches the given path.
+		 *
+		 * @param path
+		 *            The path to match
+		 * @param directory
+		 *            {@code true} if the path is a directory, {@code false}
+		 *            if it is a file
+		 * @return {@code true} if the rule matches the path, {@code false}
+		 *         otherwise
+		 */
+		public boolean matches(String path, boolean directory) {
+			return (directory || !directoryOnly) && pattern.matcher(path).matches();
+		}
+
+	}
+
+}
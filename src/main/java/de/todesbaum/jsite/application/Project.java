@@ -19,14 +19,23 @@
 package de.todesbaum.jsite.application;
 
 import java.io.File;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
 
 import net.pterodactylus.util.io.MimeTypes;
+import de.todesbaum.util.freenet.fcp2.ManifestPutter;
+import de.todesbaum.util.freenet.fcp2.PriorityClass;
 
 /**
  * Container for project information.
@@ -35,6 +44,9 @@ import net.pterodactylus.util.io.MimeTypes;
  */
 public class Project implements Comparable<Project> {
 
+	/** The ID of the project. */
+	private String id = UUID.randomUUID().toString();
+
 	/** The name of the project. */
 	protected String name;
 
@@ -59,6 +71,9 @@ public class Project implements Comparable<Project> {
 	/** The time of the last insertion. */
 	protected long lastInsertionTime;
 
+	/** The throughput of the last inserts, in blocks per minute. */
+	private double insertThroughput;
+
 	/** The edition to insert to. */
 	protected int edition;
 
@@ -68,8 +83,41 @@ public class Project implements Comparable<Project> {
 	/** Whether to ignore hidden directory. */
 	private boolean ignoreHiddenFiles;
 
+	/** How symbolic links are handled. */
+	private SymlinkPolicy symlinkPolicy = SymlinkPolicy.FOLLOW;
+
+	/** The algorithm used to detect changed files. */
+	private HashAlgorithm hashAlgorithm = HashAlgorithm.SHA_256;
+
+	/** The insert priority, or {@code null} to use the default priority. */
+	private PriorityClass priority;
+
+	/** The manifest putter, or {@code null} to use the node’s default. */
+	private ManifestPutter manifestPutter;
+
+	/** The expected maximum size of a container, or {@code 0} for the default. */
+	private long containerSize;
+
+	/** The include rules for files. */
+	private List<String> includeRules = new ArrayList<String>();
+
+	/** The exclude rules for files and directories. */
+	private List<String> excludeRules = new ArrayList<String>();
+
+	/** The compiled include and exclude rules. */
+	private PathFilter pathFilter;
+
 	/** Options for files. */
-	protected Map<String, FileOption> fileOptions = new HashMap<String, FileOption>();
+	private final SiteIndex siteIndex = new SiteIndex();
+
+	/** The history of the inserts of this project. */
+	private final InsertHistory insertHistory = new InsertHistory();
+
+	/** Loads the options for files on first access, if they are not loaded. */
+	private Consumer<Project> fileOptionsLoader;
+
+	/** Loads the insert history on first access, if it is not loaded. */
+	private Consumer<Project> insertHistoryLoader;
 
 	/**
 	 * Empty constructor.
@@ -79,7 +127,8 @@ public class Project implements Comparable<Project> {
 	}
 
 	/**
-	 * Creates a new project from an existing one.
+	 * Creates a new project from an existing one. The new project gets a new
+	 * ID.
 	 *
 	 * @param project
 	 *            The project to clone
@@ -94,13 +143,41 @@ public class Project implements Comparable<Project> {
 		localPath = project.localPath;
 		indexFile = project.indexFile;
 		lastInsertionTime = project.lastInsertionTime;
+		insertThroughput = project.insertThroughput;
 		alwaysForceInserts = project.alwaysForceInserts;
 		ignoreHiddenFiles = project.ignoreHiddenFiles;
-		for (Entry<String, FileOption> fileOption : fileOptions.entrySet()) {
-			fileOptions.put(fileOption.getKey(), new FileOption(fileOption.getValue()));
+		symlinkPolicy = project.symlinkPolicy;
+		hashAlgorithm = project.hashAlgorithm;
+		priority = project.priority;
+		manifestPutter = project.manifestPutter;
+		containerSize = project.containerSize;
+		includeRules = new ArrayList<String>(project.includeRules);
+		excludeRules = new ArrayList<String>(project.excludeRules);
+		for (Entry<String, FileOption> fileOption : project.getFileOptions().entrySet()) {
+			setFileOption(fileOption.getKey(), fileOption.getValue());
 		}
 	}
 
+	/**
+	 * Returns the ID of the project. The ID is generated when a project is
+	 * created and never changes.
+	 *
+	 * @return The ID of the project
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * Sets the ID of the project.
+	 *
+	 * @param id
+	 *            The ID of the project
+	 */
+	public void setId(String id) {
+		this.id = id;
+	}
+
 	/**
 	 * Returns the name of the project.
 	 *
@@ -200,6 +277,59 @@ public class Project implements Comparable<Project> {
 		lastInsertionTime = lastInserted;
 	}
 
+	/**
+	 * Returns the throughput of the last inserts of this project.
+	 *
+	 * @return The insert throughput in blocks per minute, or {@code 0} if the
+	 *         project has not been inserted yet
+	 */
+	public double getInsertThroughput() {
+		return insertThroughput;
+	}
+
+	/**
+	 * Sets the throughput of the last inserts of this project.
+	 *
+	 * @param insertThroughput
+	 *            The insert throughput in blocks per minute
+	 */
+	public void setInsertThroughput(double insertThroughput) {
+		this.insertThroughput = insertThroughput;
+	}
+
+	/**
+	 * Returns the history of the inserts of this project, loading it first if
+	 * necessary. A copy of a project starts with an empty history.
+	 *
+	 * @return The insert history of this project
+	 */
+	public InsertHistory getInsertHistory() {
+		loadInsertHistory();
+		return insertHistory;
+	}
+
+	/**
+	 * Returns whether the insert history of this project is currently loaded.
+	 *
+	 * @return {@code true} if the insert history is loaded, {@code false} if
+	 *         it will be loaded on first access
+	 */
+	public synchronized boolean isInsertHistoryLoaded() {
+		return insertHistoryLoader == null;
+	}
+
+	/**
+	 * Sets the loader that will load the insert history of this project when
+	 * it is accessed the first time. The loader is expected to set the saved
+	 * records of the {@link #getInsertHistory() insert history}.
+	 *
+	 * @param insertHistoryLoader
+	 *            The loader for the insert history
+	 */
+	public synchronized void setInsertHistoryLoader(Consumer<Project> insertHistoryLoader) {
+		this.insertHistoryLoader = insertHistoryLoader;
+	}
+
 	/**
 	 * Returns the remote path of the project. The remote path is the path that
 	 * directly follows the request URI of the project.
@@ -303,6 +433,187 @@ public class Project implements Comparable<Project> {
 		this.ignoreHiddenFiles = ignoreHiddenFiles;
 	}
 
+	/**
+	 * Returns how symbolic links are handled when this project is scanned.
+	 *
+	 * @return The symbolic link policy
+	 */
+	public SymlinkPolicy getSymlinkPolicy() {
+		return symlinkPolicy;
+	}
+
+	/**
+	 * Sets how symbolic links are handled when this project is scanned.
+	 *
+	 * @param symlinkPolicy
+	 *            The symbolic link policy
+	 */
+	public void setSymlinkPolicy(SymlinkPolicy symlinkPolicy) {
+		this.symlinkPolicy = (symlinkPolicy != null) ? symlinkPolicy : SymlinkPolicy.FOLLOW;
+	}
+
+	/**
+	 * Returns the algorithm that is used to detect changed files when this
+	 * project is scanned.
+	 *
+	 * @return The hash algorithm
+	 */
+	public HashAlgorithm getHashAlgorithm() {
+		return hashAlgorithm;
+	}
+
+	/**
+	 * Sets the algorithm that is used to detect changed files when this
+	 * project is scanned. Files whose last insert hash was calculated with
+	 * another algorithm are hashed with both algorithms until the project is
+	 * inserted again so that unchanged files are not inserted again.
+	 *
+	 * @param hashAlgorithm
+	 *            The hash algorithm
+	 */
+	public void setHashAlgorithm(HashAlgorithm hashAlgorithm) {
+		this.hashAlgorithm = (hashAlgorithm != null) ? hashAlgorithm : HashAlgorithm.SHA_256;
+	}
+
+	/**
+	 * Returns the priority class this project is inserted with.
+	 *
+	 * @return The insert priority of this project, or {@code null} if the
+	 *         default priority should be used
+	 */
+	public PriorityClass getPriority() {
+		return priority;
+	}
+
+	/**
+	 * Sets the priority class this project is inserted with.
+	 *
+	 * @param priority
+	 *            The insert priority of this project, or {@code null} to use
+	 *            the default priority
+	 */
+	public void setPriority(PriorityClass priority) {
+		this.priority = priority;
+	}
+
+	/**
+	 * Returns the priority class this project is inserted with, falling back
+	 * to the given default priority.
+	 *
+	 * @param defaultPriority
+	 *            The default priority
+	 * @return The insert priority of this project
+	 */
+	public PriorityClass getPriority(PriorityClass defaultPriority) {
+		return (priority != null) ? priority : defaultPriority;
+	}
+
+	/**
+	 * Returns the manifest putter that packs the files of this project into
+	 * containers.
+	 *
+	 * @return The manifest putter of this project, or {@code null} if the
+	 *         node’s default manifest putter is used
+	 */
+	public ManifestPutter getManifestPutter() {
+		return manifestPutter;
+	}
+
+	/**
+	 * Sets the manifest putter that packs the files of this project into
+	 * containers.
+	 *
+	 * @param manifestPutter
+	 *            The manifest putter of this project, or {@code null} to use
+	 *            the node’s default manifest putter
+	 */
+	public void setManifestPutter(ManifestPutter manifestPutter) {
+		this.manifestPutter = manifestPutter;
+	}
+
+	/**
+	 * Returns the expected maximum size of a container. The node decides on
+	 * the size of its containers itself; this value is only used to estimate
+	 * how many fetches are needed to load the project.
+	 *
+	 * @see FetchPlanner
+	 * @return The expected maximum size of a container (in bytes), or
+	 *         {@code 0} to use the default
+	 */
+	public long getContainerSize() {
+		return containerSize;
+	}
+
+	/**
+	 * Sets the expected maximum size of a container.
+	 *
+	 * @param containerSize
+	 *            The expected maximum size of a container (in bytes), or
+	 *            {@code 0} to use the default
+	 */
+	public void setContainerSize(long containerSize) {
+		this.containerSize = Math.max(0, containerSize);
+	}
+
+	/**
+	 * Returns the include rules of this project. If there are include rules,
+	 * only files matching at least one of them are inserted.
+	 *
+	 * @see PathFilter
+	 * @return The include rules of this project
+	 */
+	public List<String> getIncludeRules() {
+		return Collections.unmodifiableList(includeRules);
+	}
+
+	/**
+	 * Sets the include rules of this project.
+	 *
+	 * @see PathFilter
+	 * @param includeRules
+	 *            The include rules of this project
+	 */
+	public synchronized void setIncludeRules(List<String> includeRules) {
+		this.includeRules = new ArrayList<String>(includeRules);
+		pathFilter = null;
+	}
+
+	/**
+	 * Returns the exclude rules of this project. Files and directories
+	 * matching any of them are not inserted.
+	 *
+	 * @see PathFilter
+	 * @return The exclude rules of this project
+	 */
+	public List<String> getExcludeRules() {
+		return Collections.unmodifiableList(excludeRules);
+	}
+
+	/**
+	 * Sets the exclude rules of this project.
+	 *
+	 * @see PathFilter
+	 * @param excludeRules
+	 *            The exclude rules of this project
+	 */
+	public synchronized void setExcludeRules(List<String> excludeRules) {
+		this.excludeRules = new ArrayList<String>(excludeRules);
+		pathFilter = null;
+	}
+
+	/**
+	 * Returns the path filter compiled from the include and exclude rules of
+	 * this project.
+	 *
+	 * @return The path filter of this project
+	 */
+	public synchronized PathFilter getPathFilter() {
+		if (pathFilter == null) {
+			pathFilter = new PathFilter(includeRules, excludeRules);
+		}
+		return pathFilter;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 * <p>
@@ -366,21 +677,40 @@ public class Project implements Comparable<Project> {
 	 * @return The options for the file
 	 */
 	public FileOption getFileOption(String filename) {
-		FileOption fileOption = fileOptions.get(filename);
+		return new IndexedFileOption(this, siteIndex, filename, addFileOption(filename));
+	}
+
+	/**
+	 * Makes sure that the file with the given name has an entry in the site
+	 * index, loading the file options first if necessary.
+	 *
+	 * @param filename
+	 *            The name of the file, relative to the project root
+	 * @return The index of the file in the site index
+	 */
+	int addFileOption(String filename) {
+		loadFileOptions();
+		return siteIndex.add(filename);
+	}
+
+	/**
+	 * Returns the default MIME type for the file with the given name.
+	 *
+	 * @param filename
+	 *            The name of the file
+	 * @return The default MIME type of the file
+	 */
+	String getDefaultMimeType(String filename) {
 		String defaultMimeType = "application/octet-stream";
-		if (fileOption == null) {
-			List<String> suffixes = getSuffixes(filename);
-			for (String suffix : suffixes) {
-				String mimeType = MimeTypes.getMimeType(suffix);
-				if (!mimeType.equals(defaultMimeType)) {
-					defaultMimeType = mimeType;
-					break;
-				}
+		List<String> suffixes = getSuffixes(filename);
+		for (String suffix : suffixes) {
+			String mimeType = MimeTypes.getMimeType(suffix);
+			if (!mimeType.equals(defaultMimeType)) {
+				defaultMimeType = mimeType;
+				break;
 			}
-			fileOption = new FileOption(defaultMimeType);
 		}
-		fileOptions.put(filename, fileOption);
-		return fileOption;
+		return defaultMimeType;
 	}
 
 	private List<String> getSuffixes(String filename) {
@@ -405,20 +735,35 @@ public class Project implements Comparable<Project> {
 	 *            remove the options for the file
 	 */
 	public void setFileOption(String filename, FileOption fileOption) {
-		if (fileOption != null) {
-			fileOptions.put(filename, fileOption);
-		} else {
-			fileOptions.remove(filename);
+		loadFileOptions();
+		if (fileOption == null) {
+			siteIndex.remove(filename);
+			return;
 		}
-	}
-
-	/**
-	 * Returns all file options.
+		FileOption indexedFileOption = getFileOption(filename);
+		indexedFileOption.setInsert(fileOption.isInsert());
+		indexedFileOption.setForceInsert(fileOption.isForceInsert());
+		indexedFileOption.setInsertRedirect(fileOption.isInsertRedirect());
+		indexedFileOption.setLastInsertHash(fileOption.getLastInsertHash());
+		indexedFileOption.setLastInsertEdition(fileOption.getLastInsertEdition());
+		indexedFileOption.setLastInsertFilename(fileOption.getLastInsertFilename());
+		indexedFileOption.setLastInsertKey(fileOption.getLastInsertKey());
+		indexedFileOption.setCurrentHash(fileOption.getCurrentHash());
+		indexedFileOption.setCustomKey(fileOption.getCustomKey());
+		indexedFileOption.setChangedName(fileOption.getChangedName().orElse(null));
+		indexedFileOption.setMimeType(fileOption.getMimeType());
+	}
+
+	/**
+	 * Returns all file options. The returned map is a read-only view of the
+	 * file options of this project; the file options it contains can be
+	 * modified.
 	 *
 	 * @return All file options
 	 */
 	public Map<String, FileOption> getFileOptions() {
-		return Collections.unmodifiableMap(fileOptions);
+		loadFileOptions();
+		return new FileOptionsMap();
 	}
 
 	/**
@@ -428,8 +773,64 @@ public class Project implements Comparable<Project> {
 	 *            The file options
 	 */
 	public void setFileOptions(Map<String, FileOption> fileOptions) {
-		this.fileOptions.clear();
-		this.fileOptions.putAll(fileOptions);
+		Map<String, FileOption> copiedFileOptions = new HashMap<String, FileOption>();
+		for (Entry<String, FileOption> fileOption : fileOptions.entrySet()) {
+			copiedFileOptions.put(fileOption.getKey(), new FileOption(fileOption.getValue()));
+		}
+		synchronized (this) {
+			fileOptionsLoader = null;
+		}
+		siteIndex.clear();
+		for (Entry<String, FileOption> fileOption : copiedFileOptions.entrySet()) {
+			setFileOption(fileOption.getKey(), fileOption.getValue());
+		}
+	}
+
+	/**
+	 * Returns whether the file options of this project are currently loaded.
+	 *
+	 * @return {@code true} if the file options are loaded, {@code false} if
+	 *         they will be loaded on first access
+	 */
+	public synchronized boolean isFileOptionsLoaded() {
+		return fileOptionsLoader == null;
+	}
+
+	/**
+	 * Discards the file options of this project and sets the loader that will
+	 * load them again when they are accessed the next time. The loader is
+	 * expected to call {@link #setFileOptions(Map)}.
+	 *
+	 * @param fileOptionsLoader
+	 *            The loader for the file options
+	 */
+	public synchronized void setFileOptionsLoader(Consumer<Project> fileOptionsLoader) {
+		this.fileOptionsLoader = fileOptionsLoader;
+		siteIndex.clear();
+	}
+
+	/**
+	 * Loads the file options using the file options loader, if they have not
+	 * been loaded yet.
+	 */
+	private synchronized void loadFileOptions() {
+		if (fileOptionsLoader != null) {
+			Consumer<Project> loader = fileOptionsLoader;
+			fileOptionsLoader = null;
+			loader.accept(this);
+		}
+	}
+
+	/**
+	 * Loads the insert history using the insert history loader, if it has not
+	 * been loaded yet.
+	 */
+	private synchronized void loadInsertHistory() {
+		if (insertHistoryLoader != null) {
+			Consumer<Project> loader = insertHistoryLoader;
+			insertHistoryLoader = null;
+			loader.accept(this);
+		}
 	}
 
 	/**
@@ -479,15 +880,102 @@ public class Project implements Comparable<Project> {
 	 * insert.
 	 */
 	public void onSuccessfulInsert() {
-		for (Entry<String, FileOption> fileOptionEntry : fileOptions.entrySet()) {
+		for (Entry<String, FileOption> fileOptionEntry : getFileOptions().entrySet()) {
 			FileOption fileOption = fileOptionEntry.getValue();
 			if ((fileOption.getCurrentHash() != null) && (fileOption.getCurrentHash().length() > 0) && (!fileOption.getCurrentHash().equals(fileOption.getLastInsertHash()) || fileOption.isForceInsert())) {
 				fileOption.setLastInsertEdition(edition);
 				fileOption.setLastInsertHash(fileOption.getCurrentHash());
 				fileOption.setLastInsertFilename(fileOption.getChangedName().orElse(fileOptionEntry.getKey()));
+				fileOption.setLastInsertKey(null);
 			}
 			fileOption.setForceInsert(false);
 		}
 	}
 
+	/**
+	 * Read-only {@link Map} view of the file options in the site index.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	private class FileOptionsMap extends AbstractMap<String, FileOption> {
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int size() {
+			return siteIndex.size();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public boolean containsKey(Object key) {
+			return (key instanceof String) && (siteIndex.indexOf((String) key) != -1);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public FileOption get(Object key) {
+			if (!(key instanceof String)) {
+				return null;
+			}
+			int index = siteIndex.indexOf((String) key);
+			return (index == -1) ? null : new IndexedFileOption(Project.this, siteIndex, (String) key, index);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public Set<Entry<String, FileOption>> entrySet() {
+			return new AbstractSet<Entry<String, FileOption>>() {
+
+				@Override
+				public int size() {
+					return siteIndex.size();
+				}
+
+				@Override
+				@SuppressWarnings("synthetic-access")
+				public Iterator<Entry<String, FileOption>> iterator() {
+					return new Iterator<Entry<String, FileOption>>() {
+
+						private int nextIndex = findPresent(0);
+
+						@Override
+						public boolean hasNext() {
+							return nextIndex < siteIndex.getEntryCount();
+						}
+
+						@Override
+						public Entry<String, FileOption> next() {
+							if (!hasNext()) {
+								throw new NoSuchElementException();
+							}
+							int index = nextIndex;
+							nextIndex = findPresent(index + 1);
+							String filename = siteIndex.getFilename(index);
+							return new SimpleImmutableEntry<String, FileOption>(filename, new IndexedFileOption(Project.this, siteIndex, filename, index));
+						}
+
+						private int findPresent(int startIndex) {
+							int index = startIndex;
+							while ((index < siteIndex.getEntryCount()) && !siteIndex.isPresent(index)) {
+								index++;
+							}
+							return index;
+						}
+
+					};
+				}
+
+			};
+		}
+
+	}
+
 }
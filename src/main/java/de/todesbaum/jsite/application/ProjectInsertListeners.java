@@ -113,6 +113,25 @@ class ProjectInsertListeners {
 		}
 	}
 
+	/**
+	 * Notifies all listeners that the connection to the node was lost and
+	 * the insert will be retried.
+	 *
+	 * @param project
+	 * @param retry
+	 * 		The number of the retry, starting at 1
+	 * @param maxRetries
+	 * 		The maximum number of retries
+	 * @param delay
+	 * 		The delay before the retry (in milliseconds)
+	 * @see InsertListener#projectInsertRetrying(Project, int, int, long)
+	 */
+	void fireProjectInsertRetrying(Project project, int retry, int maxRetries, long delay) {
+		for (InsertListener insertListener : insertListeners) {
+			insertListener.projectInsertRetrying(project, retry, maxRetries, delay);
+		}
+	}
+
 	/**
 	 * Notifies all listeners the project insert has finished.
 	 *
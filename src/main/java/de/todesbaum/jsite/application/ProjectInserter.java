@@ -23,27 +23,51 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import net.pterodactylus.util.io.StreamCopier.ProgressListener;
 
+import de.todesbaum.jsite.application.InsertPlan.Action;
+import de.todesbaum.jsite.application.InsertRecord.Outcome;
+import de.todesbaum.jsite.application.InsertRecord.Phase;
 import de.todesbaum.jsite.gui.FileScanner;
+import de.todesbaum.jsite.gui.HashCache;
 import de.todesbaum.jsite.gui.ScannedFile;
 import de.todesbaum.jsite.gui.FileScannerListener;
 import de.todesbaum.util.freenet.fcp2.Client;
 import de.todesbaum.util.freenet.fcp2.ClientPutComplexDir;
+import de.todesbaum.util.freenet.fcp2.ClientPutDirect;
 import de.todesbaum.util.freenet.fcp2.Connection;
 import de.todesbaum.util.freenet.fcp2.DirectFileEntry;
 import de.todesbaum.util.freenet.fcp2.FileEntry;
+import de.todesbaum.util.freenet.fcp2.GetRequestStatus;
 import de.todesbaum.util.freenet.fcp2.Message;
+import de.todesbaum.util.freenet.fcp2.PayloadStage;
+import de.todesbaum.util.freenet.fcp2.Persistence;
 import de.todesbaum.util.freenet.fcp2.PriorityClass;
 import de.todesbaum.util.freenet.fcp2.RedirectFileEntry;
+import de.todesbaum.util.freenet.fcp2.RemovePersistentRequest;
+import de.todesbaum.util.freenet.fcp2.StagedFileEntry;
 import de.todesbaum.util.freenet.fcp2.Verbosity;
+import de.todesbaum.util.io.TempSpace;
+import de.todesbaum.util.thread.CancellationToken;
+import de.todesbaum.util.thread.ManagedExecutor;
 
 /**
  * Manages project inserts.
@@ -61,6 +85,24 @@ public class ProjectInserter implements FileScannerListener, Runnable {
 	/** Counter for FCP connection identifier. */
 	private static final AtomicInteger counter = new AtomicInteger();
 
+	/** How often the insert of a separately inserted file is attempted. */
+	private static final int MAX_FILE_INSERT_ATTEMPTS = 3;
+
+	/** The number of retries the node makes for a separately inserted file. */
+	private static final int FILE_INSERT_RETRIES = 3;
+
+	/** The entropy (in bits per byte) above which files are not compressed. */
+	private static final double INCOMPRESSIBLE_ENTROPY = 7.9;
+
+	/** The MIME type of files whose type is unknown. */
+	private static final String UNKNOWN_MIME_TYPE = "application/octet-stream";
+
+	/**
+	 * How long to wait for a request removal that is queued behind a running
+	 * upload (in milliseconds).
+	 */
+	private static final long REMOVE_REQUEST_TIMEOUT = 5 * 60 * 1000;
+
 	private final ProjectInsertListeners projectInsertListeners = new ProjectInsertListeners();
 
 	/** The freenet interface. */
@@ -72,17 +114,26 @@ public class ProjectInserter implements FileScannerListener, Runnable {
 	/** The file scanner. */
 	private FileScanner fileScanner;
 
+	/** The stage for the data of modified files. */
+	private PayloadStage payloadStage;
+
 	/** Object used for synchronization. */
 	private final Object lockObject = new Object();
 
-	/** The temp directory. */
-	private String tempDirectory;
+	/** The temp space for staged and copied payload. */
+	private TempSpace tempSpace = TempSpace.forDirectories(null);
+
+	/** The cache of earlier scans, if any. */
+	private HashCache hashCache;
 
 	/** The current connection. */
 	private Connection connection;
 
-	/** Whether the insert is cancelled. */
-	private volatile boolean cancelled = false;
+	/** The token that cancels the current insert. */
+	private volatile CancellationToken cancellationToken = new CancellationToken();
+
+	/** The manifest request of the current insert. */
+	private ClientPutComplexDir manifestRequest;
 
 	/** Progress listener for payload transfers. */
 	private ProgressListener progressListener;
@@ -93,6 +144,36 @@ public class ProjectInserter implements FileScannerListener, Runnable {
 	/** The insert priority. */
 	private PriorityClass priority;
 
+	/** Decides what happens to the files of the project. */
+	private final InsertPlanner insertPlanner = new InsertPlanner();
+
+	/** The maximum number of parallel file inserts. */
+	private int separateInsertConcurrency = 4;
+
+	/** The keys of the files that were inserted separately, by filename. */
+	private final Map<String, String> separateInsertKeys = new HashMap<String, String>();
+
+	/** The files that symbolic links of the project point to, by filename. */
+	private final Map<String, ScannedFile> linkTargets = new HashMap<String, ScannedFile>();
+
+	/** The progress of the separate file inserts, by identifier. */
+	private final Map<String, int[]> separateInsertProgress = new HashMap<String, int[]>();
+
+	/** Decides how often the insert is retried after the connection was lost. */
+	private RetryPolicy retryPolicy = new RetryPolicy(RetryPolicy.DEFAULT_MAX_RETRIES);
+
+	/** The number of retries of the current insert. */
+	private int retries;
+
+	/** The record of the current insert. */
+	private InsertRecord insertRecord;
+
+	/** The current phase of the insert. */
+	private Phase currentPhase;
+
+	/** The time the current phase was started. */
+	private long phaseStartTime;
+
 	/**
 	 * Adds a listener to the list of registered listeners.
 	 *
@@ -124,14 +205,27 @@ public class ProjectInserter implements FileScannerListener, Runnable {
 	}
 
 	/**
-	 * Sets the temp directory to use.
+	 * Sets the temp directories to use.
 	 *
+	 * @see TempSpace#forDirectories(String)
 	 * @param tempDirectory
-	 *            The temp directory to use, or {@code null} to use the system
-	 *            default
+	 *            The temp directories to use, separated by the path separator,
+	 *            or {@code null} to use the system default
 	 */
 	public void setTempDirectory(String tempDirectory) {
-		this.tempDirectory = tempDirectory;
+		this.tempSpace = TempSpace.forDirectories(tempDirectory);
+	}
+
+	/**
+	 * Sets the cache of earlier scans that is used when the files of the
+	 * project are scanned.
+	 *
+	 * @see FileScanner#setHashCache(HashCache)
+	 * @param hashCache
+	 *            The cache of earlier scans, or {@code null} to read all files
+	 */
+	public void setHashCache(HashCache hashCache) {
+		this.hashCache = hashCache;
 	}
 
 	/**
@@ -155,6 +249,64 @@ public class ProjectInserter implements FileScannerListener, Runnable {
 		this.priority = priority;
 	}
 
+	/**
+	 * Sets whether large files should be inserted separately. Separately
+	 * inserted files are inserted as single CHKs in parallel before the
+	 * project manifest is inserted; the manifest then only contains redirects
+	 * to the keys of these files.
+	 *
+	 * @param insertFilesSeparately
+	 *            {@code true} to insert large files separately, {@code false}
+	 *            to insert all files in a single request
+	 */
+	public void setInsertFilesSeparately(boolean insertFilesSeparately) {
+		insertPlanner.setInsertFilesSeparately(insertFilesSeparately);
+	}
+
+	/**
+	 * Sets the minimum size of a separately inserted file.
+	 *
+	 * @param separateInsertThreshold
+	 *            The minimum size of a separately inserted file (in bytes)
+	 */
+	public void setSeparateInsertThreshold(long separateInsertThreshold) {
+		insertPlanner.setSeparateInsertThreshold(separateInsertThreshold);
+	}
+
+	/**
+	 * Sets the maximum number of files that are inserted separately at the
+	 * same time.
+	 *
+	 * @param separateInsertConcurrency
+	 *            The maximum number of parallel file inserts
+	 */
+	public void setSeparateInsertConcurrency(int separateInsertConcurrency) {
+		this.separateInsertConcurrency = separateInsertConcurrency;
+	}
+
+	/**
+	 * Sets how often the insert is retried after the connection to the node
+	 * was lost. The retries are shared by all parts of an insert.
+	 *
+	 * @param maxRetries
+	 *            The maximum number of retries
+	 */
+	public void setMaxRetries(int maxRetries) {
+		retryPolicy = new RetryPolicy(maxRetries);
+	}
+
+	/**
+	 * Sets the minimum size of a file whose CHK is recorded.
+	 *
+	 * @param chkCaptureThreshold
+	 *            The minimum size of a file whose CHK is recorded (in bytes),
+	 *            or {@code -1} to not record any CHKs
+	 * @see InsertPlanner#setChkCaptureThreshold(long)
+	 */
+	public void setChkCaptureThreshold(long chkCaptureThreshold) {
+		insertPlanner.setChkCaptureThreshold(chkCaptureThreshold);
+	}
+
 	/**
 	 * Starts the insert.
 	 *
@@ -162,21 +314,29 @@ public class ProjectInserter implements FileScannerListener, Runnable {
 	 *            Listener to notify on progress events
 	 */
 	public void start(ProgressListener progressListener) {
-		cancelled = false;
+		cancellationToken = new CancellationToken();
 		this.progressListener = progressListener;
 		fileScanner = new FileScanner(project, this);
+		payloadStage = new PayloadStage(tempSpace);
+		fileScanner.setPayloadStage(payloadStage, (filename, size, probablyModified) -> insertPlanner.isStageable(project, filename, size, probablyModified), file -> InsertPlanner.isModified(project, file, project.getFileOption(file.getFilename())));
+		fileScanner.setCancellationToken(cancellationToken);
+		fileScanner.setHashCache(hashCache);
 		fileScanner.startInBackground();
 	}
 
 	/**
-	 * Stops the current insert.
+	 * Stops the current insert. Scanning files and copying them to temporary
+	 * files stops after the current block of data, and the connection to the
+	 * node is closed so that a running upload stops right away. Temporary
+	 * files are deleted as soon as the insert has stopped.
 	 */
 	public void stop() {
-		cancelled = true;
+		cancellationToken.cancel();
 		synchronized (lockObject) {
 			if (connection != null) {
 				connection.disconnect();
 			}
+			lockObject.notifyAll();
 		}
 	}
 
@@ -191,31 +351,433 @@ public class ProjectInserter implements FileScannerListener, Runnable {
 	private Optional<FileEntry> createFileEntry(ScannedFile file) {
 		String filename = file.getFilename();
 		FileOption fileOption = project.getFileOption(filename);
-		if (fileOption.isInsert()) {
+		String mimeType = getMimeType(file, fileOption);
+		String changedName = fileOption.getChangedName().orElse(filename);
+		Action action = insertPlanner.getAction(project, file);
+		if (action.isUpload() || (action == Action.REDIRECT_UNCHANGED)) {
 			fileOption.setCurrentHash(file.getHash());
-			/* check if file was modified. */
-			if (!project.isAlwaysForceInsert() && !fileOption.isForceInsert() && file.getHash().equals(fileOption.getLastInsertHash())) {
-				/* only insert a redirect. */
+		}
+		if ((action == Action.REDIRECT_UNCHANGED) && !file.getHash().equals(fileOption.getLastInsertHash())) {
+			/* the last insert hash uses another algorithm, migrate it. */
+			fileOption.setLastInsertHash(file.getHash());
+		}
+		switch (action) {
+			case REDIRECT_LINK:
+				ScannedFile linkTarget = linkTargets.get(file.getLinkTarget());
+				Optional<String> targetKey = (linkTarget != null) ? getTargetKey(linkTarget) : Optional.<String> empty();
+				if (!targetKey.isPresent()) {
+					logger.log(Level.WARNING, String.format("Skipping link %s, its target %s is not inserted.", filename, file.getLinkTarget()));
+					return Optional.empty();
+				}
+				logger.log(Level.FINE, String.format("Inserting redirect to %s for link %s.", targetKey.get(), filename));
+				return Optional.of(new RedirectFileEntry(changedName, mimeType, targetKey.get()));
+			case REDIRECT_UNCHANGED:
+				if (fileOption.getLastInsertKey() != null) {
+					logger.log(Level.FINE, String.format("Inserting redirect to %s for %s.", fileOption.getLastInsertKey(), filename));
+					return Optional.of(new RedirectFileEntry(changedName, mimeType, fileOption.getLastInsertKey()));
+				}
 				logger.log(Level.FINE, String.format("Inserting redirect to edition %d for %s.", fileOption.getLastInsertEdition(), filename));
-				return Optional.of(new RedirectFileEntry(fileOption.getChangedName().orElse(filename), fileOption.getMimeType(), "SSK@" + project.getRequestURI() + "/" + project.getPath() + "-" + fileOption.getLastInsertEdition() + "/" + fileOption.getLastInsertFilename()));
-			}
-			try {
-				return Optional.of(createFileEntry(filename, fileOption.getChangedName(), fileOption.getMimeType()));
-			} catch (IOException ioe1) {
-				/* ignore, null is returned. */
-			}
-		} else {
-			if (fileOption.isInsertRedirect()) {
-				return Optional.of(new RedirectFileEntry(fileOption.getChangedName().orElse(filename), fileOption.getMimeType(), fileOption.getCustomKey()));
+				return Optional.of(new RedirectFileEntry(changedName, mimeType, "SSK@" + project.getRequestURI() + "/" + project.getPath() + "-" + fileOption.getLastInsertEdition() + "/" + fileOption.getLastInsertFilename()));
+			case REDIRECT_CUSTOM_KEY:
+				return Optional.of(new RedirectFileEntry(changedName, mimeType, fileOption.getCustomKey()));
+			case SEPARATE:
+			case PAYLOAD:
+				return createPayloadFileEntry(file, changedName, mimeType);
+			default:
+				return Optional.empty();
+		}
+	}
+
+	/**
+	 * Creates the file entry for a file whose data is uploaded. If the file
+	 * has already been inserted as a single CHK, the entry redirects to it;
+	 * otherwise the data of the file is added to the manifest, from the
+	 * payload stage if the file was staged.
+	 *
+	 * @param file
+	 *            The file to insert
+	 * @param changedName
+	 *            The name of the file in the manifest
+	 * @param mimeType
+	 *            The MIME type of the file
+	 * @return The file entry, or an empty optional if the file can not be
+	 *         read
+	 */
+	private Optional<FileEntry> createPayloadFileEntry(ScannedFile file, String changedName, String mimeType) {
+		String filename = file.getFilename();
+		String separateInsertKey = separateInsertKeys.get(filename);
+		if (separateInsertKey != null) {
+			logger.log(Level.FINE, String.format("Inserting redirect to %s for %s.", separateInsertKey, filename));
+			return Optional.of(new RedirectFileEntry(changedName, mimeType, separateInsertKey));
+		}
+		try {
+			if (file.isStaged()) {
+				return Optional.of(new StagedFileEntry(changedName, mimeType, payloadStage, file.getStageOffset(), file.getSize()));
 			}
+			return Optional.of(createFileEntry(filename, Optional.of(changedName), mimeType, file.getSize()));
+		} catch (IOException ioe1) {
+			/* ignore, an empty optional is returned. */
 		}
 		return Optional.empty();
 	}
 
-	private FileEntry createFileEntry(String filename, Optional<String> changedName, String mimeType) throws FileNotFoundException {
+	/**
+	 * Returns the key that a symbolic link to the given file redirects to.
+	 * The edition of the project that is inserted is only known once the
+	 * insert is finished, so a link can not redirect to its target in the
+	 * same edition; it redirects to the key of the target itself. Targets
+	 * that are inserted with this edition are inserted as single CHKs
+	 * beforehand, see {@link #insertFilesSeparately(List)}.
+	 *
+	 * @param file
+	 *            The target of the link
+	 * @return The key of the target, or an empty optional if the target is
+	 *         not inserted
+	 */
+	private Optional<String> getTargetKey(ScannedFile file) {
+		FileOption fileOption = project.getFileOption(file.getFilename());
+		switch (insertPlanner.getAction(project, file)) {
+			case REDIRECT_UNCHANGED:
+				if (fileOption.getLastInsertKey() != null) {
+					return Optional.of(fileOption.getLastInsertKey());
+				}
+				return Optional.of("SSK@" + project.getRequestURI() + "/" + project.getPath() + "-" + fileOption.getLastInsertEdition() + "/" + fileOption.getLastInsertFilename());
+			case REDIRECT_CUSTOM_KEY:
+				return Optional.of(fileOption.getCustomKey());
+			case SEPARATE:
+			case PAYLOAD:
+				return Optional.ofNullable(separateInsertKeys.get(file.getFilename()));
+			default:
+				return Optional.empty();
+		}
+	}
+
+	private FileEntry createFileEntry(String filename, Optional<String> changedName, String mimeType, long size) throws FileNotFoundException {
 		File physicalFile = new File(project.getLocalPath(), filename);
 		InputStream fileEntryInputStream = new FileInputStream(physicalFile);
-		return new DirectFileEntry(changedName.orElse(filename), mimeType, fileEntryInputStream, physicalFile.length());
+		return new DirectFileEntry(changedName.orElse(filename), mimeType, fileEntryInputStream, size);
+	}
+
+	/**
+	 * Collects the files that symbolic links of the project point to.
+	 *
+	 * @param files
+	 *            All scanned files of the project
+	 */
+	private void collectLinkTargets(List<ScannedFile> files) {
+		linkTargets.clear();
+		Map<String, ScannedFile> filesByName = new HashMap<String, ScannedFile>();
+		for (ScannedFile file : files) {
+			filesByName.put(file.getFilename(), file);
+		}
+		for (ScannedFile file : files) {
+			ScannedFile linkTarget = file.isLink() ? filesByName.get(file.getLinkTarget()) : null;
+			if ((linkTarget != null) && !linkTarget.isLink()) {
+				linkTargets.put(linkTarget.getFilename(), linkTarget);
+			}
+		}
+	}
+
+	/**
+	 * Returns the size of the payload that has to be copied to a temporary
+	 * file because it has not been staged while the files were scanned.
+	 *
+	 * @param files
+	 *            All scanned files of the project
+	 * @return The size of the payload that is not staged (in bytes)
+	 */
+	private long getUnstagedPayloadSize(List<ScannedFile> files) {
+		long unstagedPayloadSize = 0;
+		for (ScannedFile file : files) {
+			Action action = insertPlanner.getAction(project, file);
+			boolean payload = ((action == Action.PAYLOAD) || (action == Action.SEPARATE)) && !separateInsertKeys.containsKey(file.getFilename());
+			if (payload && !file.isStaged()) {
+				unstagedPayloadSize += file.getSize();
+			}
+		}
+		return unstagedPayloadSize;
+	}
+
+	/**
+	 * Returns the MIME type of the given file. If the MIME type could not be
+	 * determined from the name of the file and has not been set manually, the
+	 * MIME type that was detected from the content of the file is used.
+	 *
+	 * @param file
+	 *            The scanned file
+	 * @param fileOption
+	 *            The file options of the file
+	 * @return The MIME type of the file
+	 */
+	private static String getMimeType(ScannedFile file, FileOption fileOption) {
+		String mimeType = fileOption.getMimeType();
+		if (UNKNOWN_MIME_TYPE.equals(mimeType) && (file.getDetectedMimeType() != null)) {
+			return file.getDetectedMimeType();
+		}
+		return mimeType;
+	}
+
+	/**
+	 * Returns whether the content of the given file is so random that
+	 * compressing it is a waste of time.
+	 *
+	 * @param file
+	 *            The scanned file
+	 * @return {@code true} if the file should not be compressed, {@code false}
+	 *         otherwise
+	 */
+	private static boolean isIncompressible(ScannedFile file) {
+		return file.getEntropy() >= INCOMPRESSIBLE_ENTROPY;
+	}
+
+	/**
+	 * Inserts all modified files that the {@link InsertPlanner} inserts
+	 * separately, i.e. files that are larger than the
+	 * {@link #setSeparateInsertThreshold(long) threshold} or whose CHK is
+	 * {@link #setChkCaptureThreshold(long) recorded}, and files that a symbolic
+	 * link points to as single CHKs, using at most {@link #setSeparateInsertConcurrency(int)} parallel requests. The
+	 * key of a file is taken from the message that finishes its insert, and
+	 * the manifest redirects to it. Every file that is inserted successfully is recorded in its
+	 * {@link FileOption} right away so that it does not have to be inserted
+	 * again if a later part of the insert fails.
+	 *
+	 * @param files
+	 *            All scanned files of the project
+	 * @throws IOException
+	 *             if a file can not be inserted
+	 */
+	private void insertFilesSeparately(List<ScannedFile> files) throws IOException {
+		List<ScannedFile> separateFiles = new ArrayList<ScannedFile>();
+		for (ScannedFile file : files) {
+			Action action = insertPlanner.getAction(project, file);
+			boolean separate = (action == Action.SEPARATE) || ((action == Action.PAYLOAD) && linkTargets.containsKey(file.getFilename()));
+			if (separate && !separateInsertKeys.containsKey(file.getFilename())) {
+				separateFiles.add(file);
+			}
+		}
+		if (separateFiles.isEmpty()) {
+			return;
+		}
+		logger.log(Level.INFO, String.format("Inserting %d files separately.", separateFiles.size()));
+		ExecutorService executorService = ManagedExecutor.createBlocking("Separate Insert", separateInsertConcurrency);
+		try {
+			Map<ScannedFile, Future<String>> fileInserts = new LinkedHashMap<ScannedFile, Future<String>>();
+			for (final ScannedFile file : separateFiles) {
+				final String mimeType = getMimeType(file, project.getFileOption(file.getFilename()));
+				fileInserts.put(file, executorService.submit(new Callable<String>() {
+
+					@Override
+					@SuppressWarnings("synthetic-access")
+					public String call() throws IOException {
+						return insertFile(file, mimeType);
+					}
+				}));
+			}
+			IOException failure = null;
+			for (Entry<ScannedFile, Future<String>> fileInsert : fileInserts.entrySet()) {
+				String filename = fileInsert.getKey().getFilename();
+				try {
+					String key = fileInsert.getValue().get();
+					FileOption fileOption = project.getFileOption(filename);
+					fileOption.setLastInsertHash(fileInsert.getKey().getHash()).setLastInsertKey(key).setLastInsertFilename(fileOption.getChangedName().orElse(filename)).setForceInsert(false);
+					separateInsertKeys.put(filename, key);
+				} catch (ExecutionException ee1) {
+					logger.log(Level.WARNING, String.format("Could not insert %s.", filename), ee1.getCause());
+					if (failure == null) {
+						failure = (ee1.getCause() instanceof IOException) ? (IOException) ee1.getCause() : new IOException(ee1.getCause());
+					}
+				} catch (InterruptedException ie1) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while inserting " + filename, ie1);
+				}
+			}
+			if (failure != null) {
+				throw failure;
+			}
+		} finally {
+			executorService.shutdownNow();
+		}
+	}
+
+	/**
+	 * Inserts a single file as a CHK. If the insert fails with a non-fatal
+	 * error the insert of the file is restarted, up to
+	 * {@link #MAX_FILE_INSERT_ATTEMPTS} times.
+	 *
+	 * @param file
+	 *            The file to insert
+	 * @param mimeType
+	 *            The MIME type of the file
+	 * @return The CHK of the inserted file
+	 * @throws IOException
+	 *             if the file can not be inserted
+	 */
+	private String insertFile(ScannedFile file, String mimeType) throws IOException {
+		File physicalFile = new File(project.getLocalPath(), file.getFilename());
+		String failureReason = null;
+		for (int attempt = 0; (attempt < MAX_FILE_INSERT_ATTEMPTS) && !cancellationToken.isCancelled(); attempt++) {
+			String identifier = "file-" + counter.getAndIncrement();
+			Client client = new Client(connection);
+			try {
+				ClientPutDirect putFile = new ClientPutDirect(identifier, "CHK@", physicalFile, file.getSize());
+				putFile.setContentType(mimeType);
+				putFile.setDontCompress(isIncompressible(file));
+				putFile.setVerbosity(Verbosity.ALL);
+				putFile.setMaxRetries(FILE_INSERT_RETRIES);
+				putFile.setEarlyEncode(useEarlyEncode);
+				putFile.setPriorityClass(priority);
+				client.execute(putFile, progressListener);
+				while (true) {
+					Message message = client.readMessage();
+					if ((message == null) || client.isDisconnected()) {
+						throw new IOException("Connection terminated");
+					}
+					String messageName = message.getName();
+					if ("SimpleProgress".equals(messageName)) {
+						updateSeparateInsertProgress(identifier, message);
+					} else if ("PutSuccessful".equals(messageName)) {
+						return message.get("URI");
+					} else if ("PutFailed".equals(messageName)) {
+						failureReason = message.get("CodeDescription");
+						if (Boolean.parseBoolean(message.get("Fatal"))) {
+							throw new IOException(String.format("Could not insert %s: %s", file.getFilename(), failureReason));
+						}
+						logger.log(Level.INFO, String.format("Insert of %s failed (%s), attempt %d of %d.", file.getFilename(), failureReason, attempt + 1, MAX_FILE_INSERT_ATTEMPTS));
+						break;
+					} else if (messageName.endsWith("Error")) {
+						throw new IOException(String.format("Could not insert %s: %s", file.getFilename(), message.get("CodeDescription")));
+					}
+				}
+			} finally {
+				client.close();
+			}
+		}
+		if (cancellationToken.isCancelled()) {
+			throw new IOException("Insert cancelled");
+		}
+		throw new IOException(String.format("Could not insert %s: %s", file.getFilename(), failureReason));
+	}
+
+	/**
+	 * Stores the progress of a separate file insert and notifies all
+	 * listeners about the combined progress of all separate file inserts.
+	 *
+	 * @param identifier
+	 *            The identifier of the file insert
+	 * @param message
+	 *            The “SimpleProgress” message
+	 */
+	private void updateSeparateInsertProgress(String identifier, Message message) {
+		int[] totals = new int[4];
+		boolean finalized = true;
+		synchronized (separateInsertProgress) {
+			separateInsertProgress.put(identifier, new int[] { Integer.parseInt(message.get("Succeeded")), Integer.parseInt(message.get("Failed")), Integer.parseInt(message.get("FatallyFailed")), Integer.parseInt(message.get("Total")), Boolean.parseBoolean(message.get("FinalizedTotal")) ? 1 : 0 });
+			for (int[] progress : separateInsertProgress.values()) {
+				for (int index = 0; index < totals.length; index++) {
+					totals[index] += progress[index];
+				}
+				finalized &= progress[4] == 1;
+			}
+		}
+		projectInsertListeners.fireProjectInsertProgress(project, totals[0], totals[1], totals[2], totals[3], finalized);
+	}
+
+	/**
+	 * Updates the insert throughput of the project after a successful insert.
+	 * The new throughput is averaged with the throughput of earlier inserts.
+	 *
+	 * @param manifestBlocks
+	 *            The number of blocks of the manifest insert
+	 * @param duration
+	 *            The duration of the insert (in milliseconds)
+	 */
+	private void updateInsertThroughput(int manifestBlocks, long duration) {
+		long blocks = getInsertedBlocks(manifestBlocks);
+		if ((blocks == 0) || (duration <= 0)) {
+			return;
+		}
+		double throughput = blocks * 60000.0 / duration;
+		double lastThroughput = project.getInsertThroughput();
+		project.setInsertThroughput((lastThroughput > 0) ? ((lastThroughput + throughput) / 2) : throughput);
+	}
+
+	/**
+	 * Returns the number of blocks of the manifest insert and of all separate
+	 * file inserts.
+	 *
+	 * @param manifestBlocks
+	 *            The number of blocks of the manifest insert
+	 * @return The number of inserted blocks
+	 */
+	private long getInsertedBlocks(int manifestBlocks) {
+		long blocks = manifestBlocks;
+		synchronized (separateInsertProgress) {
+			for (int[] progress : separateInsertProgress.values()) {
+				blocks += progress[3];
+			}
+		}
+		return blocks;
+	}
+
+	/**
+	 * Starts the given phase of the insert, adding the duration of the
+	 * current phase to the insert record.
+	 *
+	 * @param phase
+	 *            The phase to start, or {@code null} to only finish the
+	 *            current phase
+	 */
+	private void startPhase(Phase phase) {
+		long now = System.currentTimeMillis();
+		if (currentPhase != null) {
+			insertRecord.addPhaseDuration(currentPhase, now - phaseStartTime);
+		}
+		currentPhase = phase;
+		phaseStartTime = now;
+	}
+
+	/**
+	 * Finishes the insert: the insert is recorded in the history of the
+	 * project and the listeners are notified.
+	 *
+	 * @param success
+	 *            {@code true} if the insert was successful, {@code false}
+	 *            otherwise
+	 * @param cause
+	 *            The cause of a failure, or {@code null}
+	 */
+	private void finishInsert(boolean success, Throwable cause) {
+		startPhase(null);
+		insertRecord.setOutcome(success ? Outcome.SUCCESS : (cancellationToken.isCancelled() ? Outcome.CANCELLED : Outcome.FAILURE));
+		insertRecord.setRetries(retries);
+		project.getInsertHistory().add(insertRecord);
+		projectInsertListeners.fireProjectInsertFinished(project, success, cause);
+	}
+
+	/**
+	 * Counts what happens to the given files and stores the counts in the
+	 * insert record.
+	 *
+	 * @param files
+	 *            The files of the project
+	 */
+	private void recordFileActions(List<ScannedFile> files) {
+		long uploadedBytes = 0;
+		int changedFiles = 0;
+		int redirectedFiles = 0;
+		int skippedFiles = 0;
+		for (ScannedFile file : files) {
+			Action action = insertPlanner.getAction(project, file);
+			if (action.isUpload()) {
+				uploadedBytes += file.getSize();
+				changedFiles++;
+			} else if (action == Action.SKIP) {
+				skippedFiles++;
+			} else {
+				redirectedFiles++;
+			}
+		}
+		insertRecord.setUploadedBytes(uploadedBytes).setChangedFileCount(changedFiles).setRedirectedFileCount(redirectedFiles).setSkippedFileCount(skippedFiles);
 	}
 
 	/**
@@ -223,33 +785,86 @@ public class ProjectInserter implements FileScannerListener, Runnable {
 	 */
 	@Override
 	public void run() {
+		try {
+			insertProject();
+		} finally {
+			payloadStage.delete();
+			if (manifestRequest != null) {
+				manifestRequest.deletePayload();
+				manifestRequest = null;
+			}
+		}
+	}
+
+	/**
+	 * Inserts the scanned files of the project.
+	 * <p>
+	 * If the connection to the node is lost, the connection is established
+	 * again according to the {@link RetryPolicy}. Separate file inserts that
+	 * did not finish yet are restarted. The manifest is inserted as a
+	 * persistent request: if the node has already acknowledged it, the
+	 * inserter reattaches to it, otherwise it is sent again.
+	 */
+	private void insertProject() {
+		long startTime = System.currentTimeMillis();
+		retries = 0;
+		insertRecord = new InsertRecord(startTime).setNode(InsertPlanner.getNodeName(freenetInterface.getNode())).setEdition(project.getEdition());
+		currentPhase = null;
+		startPhase(Phase.CONNECT);
 		projectInsertListeners.fireProjectInsertStarted(project);
 		List<ScannedFile> files = fileScanner.getFiles();
+		recordFileActions(files);
 
 		/* create connection to node */
 		synchronized (lockObject) {
 			connection = freenetInterface.getConnection("project-insert-" + random + counter.getAndIncrement());
 		}
-		connection.setTempDirectory(tempDirectory);
-		boolean connected = false;
-		Throwable cause = null;
+		connection.setTempSpace(tempSpace);
 		try {
-			connected = connection.connect();
-		} catch (IOException e1) {
-			cause = e1;
+			try {
+				connect();
+			} catch (IOException ioe1) {
+				reconnect(ioe1);
+			}
+		} catch (IOException ioe1) {
+			finishInsert(false, cancellationToken.isCancelled() ? new AbortedException() : ioe1);
+			return;
 		}
 
-		if (!connected || cancelled) {
-			projectInsertListeners.fireProjectInsertFinished(project, false, cancelled ? new AbortedException() : cause);
+		if (cancellationToken.isCancelled()) {
+			finishInsert(false, new AbortedException());
 			return;
 		}
 
-		Client client = new Client(connection);
+		/* insert large files separately. */
+		separateInsertKeys.clear();
+		separateInsertProgress.clear();
+		collectLinkTargets(files);
+		startPhase(Phase.SEPARATE_INSERTS);
+		while (true) {
+			try {
+				insertFilesSeparately(files);
+				break;
+			} catch (IOException ioe1) {
+				try {
+					if (cancellationToken.isCancelled() || connection.isConnected()) {
+						throw ioe1;
+					}
+					reconnect(ioe1);
+				} catch (IOException ioe2) {
+					finishInsert(false, cancellationToken.isCancelled() ? new AbortedException() : ioe2);
+					return;
+				}
+			}
+		}
 
 		/* collect files */
+		startPhase(Phase.PREPARATION);
 		int edition = project.getEdition();
 		String dirURI = "USK@" + project.getInsertURI() + "/" + project.getPath() + "/" + edition + "/";
-		ClientPutComplexDir putDir = new ClientPutComplexDir("dir-" + counter.getAndIncrement(), dirURI, tempDirectory);
+		ClientPutComplexDir putDir = new ClientPutComplexDir("dir-" + counter.getAndIncrement(), dirURI, tempSpace);
+		putDir.setCancellationToken(cancellationToken);
+		manifestRequest = putDir;
 		if ((project.getIndexFile() != null) && (project.getIndexFile().length() > 0)) {
 			FileOption indexFileOption = project.getFileOption(project.getIndexFile());
 			Optional<String> changedName = indexFileOption.getChangedName();
@@ -263,66 +878,219 @@ public class ProjectInserter implements FileScannerListener, Runnable {
 		putDir.setMaxRetries(-1);
 		putDir.setEarlyEncode(useEarlyEncode);
 		putDir.setPriorityClass(priority);
+		putDir.setPersistence(Persistence.REBOOT);
+		putDir.setManifestPutter(project.getManifestPutter());
+		try {
+			tempSpace.checkSpace(getUnstagedPayloadSize(files));
+		} catch (IOException ioe1) {
+			finishInsert(false, ioe1);
+			return;
+		}
+		int directFileEntries = 0;
+		int incompressibleFileEntries = 0;
 		for (ScannedFile file : files) {
 			Optional<FileEntry> fileEntry = createFileEntry(file);
 			if (fileEntry.isPresent()) {
+				if (fileEntry.get() instanceof DirectFileEntry) {
+					directFileEntries++;
+					incompressibleFileEntries += isIncompressible(file) ? 1 : 0;
+				}
 				try {
 					putDir.addFileEntry(fileEntry.get());
 				} catch (IOException ioe1) {
-					projectInsertListeners.fireProjectInsertFinished(project, false, ioe1);
+					finishInsert(false, cancellationToken.isCancelled() ? new AbortedException() : ioe1);
 					return;
 				}
 			}
 		}
 
-		/* start request */
-		try {
-			client.execute(putDir, progressListener);
-			projectInsertListeners.fireProjectUploadFinished(project);
-		} catch (IOException ioe1) {
-			projectInsertListeners.fireProjectInsertFinished(project, false, ioe1);
-			return;
-		}
+		putDir.setDontCompress((directFileEntries > 0) && (incompressibleFileEntries == directFileEntries));
 
-		/* parse progress and success messages */
+		/* start request and parse progress and success messages */
 		String finalURI = null;
 		boolean success = false;
 		boolean finished = false;
-		boolean disconnected = false;
-		while (!finished && !cancelled) {
+		boolean sent = false;
+		boolean acknowledged = false;
+		boolean reattach = false;
+		IOException failure = null;
+		IOException sendFailure = null;
+		int manifestBlocks = 0;
+		Client client = null;
+		startPhase(Phase.NETWORK_INSERT);
+		while (!finished && !cancellationToken.isCancelled()) {
+			if (client == null) {
+				client = new Client(connection);
+				try {
+					if (reattach) {
+						logger.log(Level.INFO, String.format("Reattaching to request %s.", putDir.getIdentifier()));
+						client.execute(new GetRequestStatus(putDir.getIdentifier()));
+					} else {
+						sent = true;
+						startPhase(Phase.UPLOAD);
+						client.execute(putDir, progressListener);
+						startPhase(Phase.NETWORK_INSERT);
+						projectInsertListeners.fireProjectUploadFinished(project);
+					}
+				} catch (IOException | IllegalStateException e1) {
+					startPhase(Phase.NETWORK_INSERT);
+					logger.log(Level.INFO, "Could not send request.", e1);
+					sendFailure = (e1 instanceof IOException) ? (IOException) e1 : new IOException(e1);
+					connection.disconnect();
+				}
+			}
 			Message message = client.readMessage();
-			finished = (message == null) || (disconnected = client.isDisconnected());
+			if ((message == null) || client.isDisconnected()) {
+				connection.removeConnectionListener(client);
+				client = null;
+				try {
+					reconnect((sendFailure != null) ? sendFailure : new IOException("Connection terminated"));
+					reattach = acknowledged;
+					sendFailure = null;
+				} catch (IOException ioe1) {
+					failure = ioe1;
+					finished = true;
+				}
+				continue;
+			}
 			logger.log(Level.FINE, "Received message: " + message);
-			if (!finished) {
-				@SuppressWarnings("null")
-				String messageName = message.getName();
-				if ("URIGenerated".equals(messageName)) {
+			String messageName = message.getName();
+			acknowledged |= putDir.getIdentifier().equals(message.getIdentifier());
+			if ("IdentifierCollision".equals(messageName) || (reattach && "ProtocolError".equals(messageName))) {
+				/* the node knows the request after all, or it has forgotten it. */
+				reattach = "IdentifierCollision".equals(messageName);
+				acknowledged = reattach;
+				if (!retryPolicy.isRetryAllowed(++retries)) {
+					failure = new IOException(message.get("CodeDescription"));
+					finished = true;
+				}
+				connection.removeConnectionListener(client);
+				client = null;
+				continue;
+			}
+			if ("URIGenerated".equals(messageName)) {
+				finalURI = message.get("URI");
+				projectInsertListeners.fireProjectURIGenerated(project, finalURI);
+			}
+			if ("SimpleProgress".equals(messageName)) {
+				int total = Integer.parseInt(message.get("Total"));
+				manifestBlocks = total;
+				int succeeded = Integer.parseInt(message.get("Succeeded"));
+				int fatal = Integer.parseInt(message.get("FatallyFailed"));
+				int failed = Integer.parseInt(message.get("Failed"));
+				boolean finalized = Boolean.parseBoolean(message.get("FinalizedTotal"));
+				projectInsertListeners.fireProjectInsertProgress(project, succeeded, failed, fatal, total, finalized);
+			}
+			if ("PutSuccessful".equals(messageName)) {
+				success = true;
+				if ((finalURI == null) && (message.get("URI") != null)) {
 					finalURI = message.get("URI");
 					projectInsertListeners.fireProjectURIGenerated(project, finalURI);
 				}
-				if ("SimpleProgress".equals(messageName)) {
-					int total = Integer.parseInt(message.get("Total"));
-					int succeeded = Integer.parseInt(message.get("Succeeded"));
-					int fatal = Integer.parseInt(message.get("FatallyFailed"));
-					int failed = Integer.parseInt(message.get("Failed"));
-					boolean finalized = Boolean.parseBoolean(message.get("FinalizedTotal"));
-					projectInsertListeners.fireProjectInsertProgress(project, succeeded, failed, fatal, total, finalized);
-				}
-				success |= "PutSuccessful".equals(messageName);
-				finished = (success && (finalURI != null)) || "PutFailed".equals(messageName) || messageName.endsWith("Error");
 			}
+			finished = (success && (finalURI != null)) || "PutFailed".equals(messageName) || messageName.endsWith("Error");
+		}
+		insertRecord.setBlockCount(getInsertedBlocks(manifestBlocks));
+		if (sent) {
+			removeRequest(putDir.getIdentifier());
 		}
 
 		/* post-insert work */
 		if (success) {
-			@SuppressWarnings("null")
 			String editionPart = finalURI.substring(finalURI.lastIndexOf('/') + 1);
 			int newEdition = Integer.parseInt(editionPart);
 			project.setEdition(newEdition);
+			insertRecord.setEdition(newEdition);
 			project.setLastInsertionTime(System.currentTimeMillis());
+			updateInsertThroughput(manifestBlocks, System.currentTimeMillis() - startTime);
 			project.onSuccessfulInsert();
 		}
-		projectInsertListeners.fireProjectInsertFinished(project, success, cancelled ? new AbortedException() : (disconnected ? new IOException("Connection terminated") : null));
+		finishInsert(success, cancellationToken.isCancelled() ? new AbortedException() : failure);
+	}
+
+	/**
+	 * Connects to the node.
+	 *
+	 * @throws IOException
+	 *             if the connection can not be established
+	 */
+	private void connect() throws IOException {
+		if (!connection.connect()) {
+			throw new IOException("Node did not answer");
+		}
+	}
+
+	/**
+	 * Connects to the node again after the connection was lost. Before every
+	 * attempt the inserter waits for the delay of the {@link RetryPolicy} and
+	 * notifies all listeners about the retry.
+	 *
+	 * @param cause
+	 *            The reason why the connection was lost
+	 * @throws IOException
+	 *             if the insert was cancelled or the retry budget is exhausted
+	 *             before a connection could be established
+	 */
+	private void reconnect(IOException cause) throws IOException {
+		IOException lastCause = cause;
+		connection.disconnect();
+		while (!cancellationToken.isCancelled()) {
+			int retry = ++retries;
+			if (!retryPolicy.isRetryAllowed(retry)) {
+				throw lastCause;
+			}
+			long delay = retryPolicy.getDelay(retry);
+			logger.log(Level.INFO, String.format("Lost connection to node (%s), retry %d of %d in %d ms.", lastCause.getMessage(), retry, retryPolicy.getMaxRetries(), delay));
+			projectInsertListeners.fireProjectInsertRetrying(project, retry, retryPolicy.getMaxRetries(), delay);
+			synchronized (lockObject) {
+				try {
+					if (!cancellationToken.isCancelled()) {
+						lockObject.wait(delay);
+					}
+				} catch (InterruptedException ie1) {
+					Thread.currentThread().interrupt();
+					throw lastCause;
+				}
+			}
+			if (cancellationToken.isCancelled()) {
+				break;
+			}
+			try {
+				connect();
+				return;
+			} catch (IOException ioe1) {
+				lastCause = ioe1;
+			}
+		}
+		throw new IOException("Insert cancelled");
+	}
+
+	/**
+	 * Removes the persistent request with the given identifier from the node
+	 * and closes the connection. If the insert was cancelled the connection
+	 * is established once more so that the node stops inserting. If the
+	 * removal has to wait for a running upload, the connection is only closed
+	 * once the removal has been written.
+	 *
+	 * @param identifier
+	 *            The identifier of the request
+	 */
+	private void removeRequest(String identifier) {
+		try {
+			if (!connection.isConnected()) {
+				connect();
+			}
+			connection.execute(new RemovePersistentRequest(identifier)).get(REMOVE_REQUEST_TIMEOUT, TimeUnit.MILLISECONDS);
+		} catch (IOException | IllegalStateException | TimeoutException e1) {
+			logger.log(Level.WARNING, String.format("Could not remove request %s.", identifier), e1);
+		} catch (ExecutionException ee1) {
+			logger.log(Level.WARNING, String.format("Could not remove request %s.", identifier), ee1.getCause());
+		} catch (InterruptedException ie1) {
+			logger.log(Level.WARNING, String.format("Interrupted while removing request %s.", identifier), ie1);
+			Thread.currentThread().interrupt();
+		} finally {
+			connection.disconnect();
+		}
 	}
 
 	//
@@ -335,9 +1103,10 @@ public class ProjectInserter implements FileScannerListener, Runnable {
 	@Override
 	public void fileScannerFinished(boolean error, Collection<ScannedFile> files) {
 		if (!error) {
-			new Thread(this).start();
+			TaskExecutors.INSERT.execute(this);
 		} else {
-			projectInsertListeners.fireProjectInsertFinished(project, false, null);
+			payloadStage.delete();
+			projectInsertListeners.fireProjectInsertFinished(project, false, cancellationToken.isCancelled() ? new AbortedException() : null);
 		}
 	}
 
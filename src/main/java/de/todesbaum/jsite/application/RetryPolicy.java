@@ -0,0 +1,124 @@
+/*
+ * jSite - RetryPolicy.java - Copyright © 2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.jsite.application;
+
+import java.util.Random;
+
+/**
+ * Decides how often and after which delay an insert is retried after the
+ * connection to the node was lost. The delay grows exponentially with every
+ * retry, up to a maximum, and is randomized (“jitter”) so that several
+ * clients that lost their connection at the same time do not all reconnect
+ * at the same moment.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class RetryPolicy {
+
+	/** The default number of retries. */
+	public static final int DEFAULT_MAX_RETRIES = 5;
+
+	/** The default delay before the first retry (in milliseconds). */
+	public static final long DEFAULT_BASE_DELAY = 2000;
+
+	/** The default maximum delay between two retries (in milliseconds). */
+	public static final long DEFAULT_MAX_DELAY = 5 * 60 * 1000;
+
+	/** The maximum number of retries. */
+	private final int maxRetries;
+
+	/** The delay before the first retry (in milliseconds). */
+	private final long baseDelay;
+
+	/** The maximum delay between two retries (in milliseconds). */
+	private final long maxDelay;
+
+	/** The random number generator for the jitter. */
+	private final Random random;
+
+	/**
+	 * Creates a new retry policy with the default delays.
+	 *
+	 * @param maxRetries
+	 *            The maximum number of retries
+	 */
+	public RetryPolicy(int maxRetries) {
+		this(maxRetries, DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY, new Random());
+	}
+
+	/**
+	 * Creates a new retry policy.
+	 *
+	 * @param maxRetries
+	 *            The maximum number of retries
+	 * @param baseDelay
+	 *            The delay before the first retry (in milliseconds)
+	 * @param maxDelay
+	 *            The maximum delay between two retries (in milliseconds)
+	 * @param random
+	 *            The random number generator for the jitter
+	 */
+	RetryPolicy(int maxRetries, long baseDelay, long maxDelay, Random random) {
+		this.maxRetries = Math.max(0, maxRetries);
+		this.baseDelay = baseDelay;
+		this.maxDelay = maxDelay;
+		this.random = random;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the maximum number of retries.
+	 *
+	 * @return The maximum number of retries
+	 */
+	public int getMaxRetries() {
+		return maxRetries;
+	}
+
+	/**
+	 * Returns whether the given retry is still within the retry budget.
+	 *
+	 * @param retry
+	 *            The number of the retry, starting at 1
+	 * @return {@code true} if the retry may be attempted, {@code false} if the
+	 *         retry budget is exhausted
+	 */
+	public boolean isRetryAllowed(int retry) {
+		return retry <= maxRetries;
+	}
+
+	/**
+	 * Returns the delay before the given retry. The delay is chosen randomly
+	 * between half and all of the exponential delay for the retry.
+	 *
+	 * @param retry
+	 *            The number of the retry, starting at 1
+	 * @return The delay before the retry (in milliseconds)
+	 */
+	public long getDelay(int retry) {
+		long delay = Math.min(maxDelay, baseDelay << Math.min(Math.max(0, retry - 1), 30));
+		synchronized (random) {
+			return (delay / 2) + (long) (random.nextDouble() * (delay - (delay / 2)));
+		}
+	}
+
+}
@@ -0,0 +1,735 @@
+/*
+ * jSite - SiteIndex.java - Copyright © 2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.jsite.application;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.todesbaum.util.io.Hex;
+
+/**
+ * Compact storage for the file-level state of a project. Every file is
+ * stored as an entry in a set of primitive arrays: the directory of the file
+ * is shared with all other files in the same directory, the name is stored
+ * as UTF-8 in a common byte array, and hashes that are hexadecimal SHA-256
+ * or XXH64 values are stored as 32 or 8 raw bytes. Custom file options are only kept for
+ * the files that actually have them; {@link FileOption}s for all other files
+ * are created on demand and write their changes back into this index.
+ * <p>
+ * Entries are identified by an index that does not change until the site
+ * index is {@link #clear() cleared}. Removed entries keep their index and are
+ * reused if the same file is added again; anything that was written to a
+ * removed entry in the meantime is discarded at that point.
+ * <p>
+ * All methods are synchronized on the site index. The file options of a
+ * project are written by insert threads while the user interface reads them,
+ * and adding a file may grow the arrays of the index.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class SiteIndex {
+
+	/** The length of a raw hash. */
+	private static final int HASH_LENGTH = 32;
+
+	/** Flag for entries that have not been removed. */
+	private static final int FLAG_PRESENT = 1;
+
+	/** Flag for entries with a raw last insert hash. */
+	private static final int FLAG_RAW_LAST_INSERT_HASH = 2;
+
+	/** Flag for entries with a raw current hash. */
+	private static final int FLAG_RAW_CURRENT_HASH = 4;
+
+	/** Flag for entries whose insert is forced. */
+	private static final int FLAG_FORCE_INSERT = 8;
+
+	/** Flag for entries whose last insert filename is their filename. */
+	private static final int FLAG_LAST_INSERT_FILENAME_UNCHANGED = 16;
+
+	/** Flag for entries whose raw last insert hash is an XXH64 hash. */
+	private static final int FLAG_XXH64_LAST_INSERT_HASH = 32;
+
+	/** Flag for entries whose raw current hash is an XXH64 hash. */
+	private static final int FLAG_XXH64_CURRENT_HASH = 64;
+
+	/** The initial capacity. */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** The names of all directories, including the trailing slash. */
+	private final List<String> directories = new ArrayList<String>();
+
+	/** The indexes of all directories. */
+	private final Map<String, Integer> directoryIndexes = new HashMap<String, Integer>();
+
+	/** The number of used entries, including removed entries. */
+	private int entryCount;
+
+	/** The number of entries that have not been removed. */
+	private int size;
+
+	/** The directory index of each entry. */
+	private int[] entryDirectories;
+
+	/** The start of the name of each entry in {@link #names}. */
+	private int[] nameOffsets;
+
+	/** The names of all entries, in UTF-8. */
+	private byte[] names;
+
+	/** The number of used bytes in {@link #names}. */
+	private int namesLength;
+
+	/** The hash code of the filename of each entry. */
+	private int[] filenameHashCodes;
+
+	/** The flags of each entry. */
+	private byte[] flags;
+
+	/** The raw last insert hashes. */
+	private byte[] lastInsertHashes;
+
+	/** The raw current hashes. */
+	private byte[] currentHashes;
+
+	/** The last insert edition of each entry. */
+	private int[] lastInsertEditions;
+
+	/** Last insert hashes that are not raw hashes, by entry. */
+	private final Map<Integer, String> otherLastInsertHashes = new HashMap<Integer, String>();
+
+	/** Current hashes that are not raw hashes, by entry. */
+	private final Map<Integer, String> otherCurrentHashes = new HashMap<Integer, String>();
+
+	/** Last insert filenames that differ from the filename, by entry. */
+	private final Map<Integer, String> lastInsertFilenames = new HashMap<Integer, String>();
+
+	/** Last insert keys, by entry. */
+	private final Map<Integer, String> lastInsertKeys = new HashMap<Integer, String>();
+
+	/** Custom file options, by entry. */
+	private final Map<Integer, FileOption> customOptions = new HashMap<Integer, FileOption>();
+
+	/** Hash table of entry indexes plus one, by filename hash code. */
+	private int[] table;
+
+	/** The number of times this index has been cleared. */
+	private int generation;
+
+	/**
+	 * Creates a new, empty site index.
+	 */
+	public SiteIndex() {
+		clear();
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the generation of this index. The generation changes every time
+	 * the index is {@link #clear() cleared}, invalidating all entry indexes.
+	 *
+	 * @return The generation of this index
+	 */
+	synchronized int getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Returns the number of files in this index.
+	 *
+	 * @return The number of files
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of entries in this index, including removed entries.
+	 * All valid entry indexes are smaller than this number.
+	 *
+	 * @return The number of entries
+	 */
+	public synchronized int getEntryCount() {
+		return entryCount;
+	}
+
+	/**
+	 * Returns whether the entry with the given index has not been removed.
+	 *
+	 * @param index
+	 *            The index of the entry
+	 * @return {@code true} if the entry is present, {@code false} if it has
+	 *         been removed
+	 */
+	public synchronized boolean isPresent(int index) {
+		return hasFlag(index, FLAG_PRESENT);
+	}
+
+	/**
+	 * Returns the index of the entry for the given file.
+	 *
+	 * @param filename
+	 *            The name of the file
+	 * @return The index of the entry, or {@code -1} if there is no entry for
+	 *         the file
+	 */
+	public synchronized int indexOf(String filename) {
+		int index = find(filename);
+		return ((index > -1) && isPresent(index)) ? index : -1;
+	}
+
+	/**
+	 * Returns the name of the file of the given entry.
+	 *
+	 * @param index
+	 *            The index of the entry
+	 * @return The name of the file
+	 */
+	public synchronized String getFilename(int index) {
+		return directories.get(entryDirectories[index]) + new String(names, nameOffsets[index], nameOffsets[index + 1] - nameOffsets[index], UTF_8);
+	}
+
+	/**
+	 * Returns the last insert hash of the given entry.
+	 *
+	 * @param index
+	 *            The index of the entry
+	 * @return The last insert hash, or {@code null} if none is set
+	 */
+	public synchronized String getLastInsertHash(int index) {
+		if (hasFlag(index, FLAG_RAW_LAST_INSERT_HASH)) {
+			return toHash(lastInsertHashes, index, hasFlag(index, FLAG_XXH64_LAST_INSERT_HASH));
+		}
+		return otherLastInsertHashes.get(index);
+	}
+
+	/**
+	 * Sets the last insert hash of the given entry.
+	 *
+	 * @param index
+	 *            The index of the entry
+	 * @param lastInsertHash
+	 *            The last insert hash, or {@code null} to remove it
+	 */
+	public synchronized void setLastInsertHash(int index, String lastInsertHash) {
+		otherLastInsertHashes.remove(index);
+		setFlag(index, FLAG_XXH64_LAST_INSERT_HASH, isXXH64Hash(lastInsertHash));
+		if (fromHash(lastInsertHash, lastInsertHashes, index)) {
+			setFlag(index, FLAG_RAW_LAST_INSERT_HASH, true);
+			return;
+		}
+		setFlag(index, FLAG_RAW_LAST_INSERT_HASH, false);
+		if (lastInsertHash != null) {
+			otherLastInsertHashes.put(index, lastInsertHash);
+		}
+	}
+
+	/**
+	 * Returns the current hash of the given entry.
+	 *
+	 * @param index
+	 *            The index of the entry
+	 * @return The current hash, or {@code null} if none is set
+	 */
+	public synchronized String getCurrentHash(int index) {
+		if (hasFlag(index, FLAG_RAW_CURRENT_HASH)) {
+			return toHash(currentHashes, index, hasFlag(index, FLAG_XXH64_CURRENT_HASH));
+		}
+		return otherCurrentHashes.get(index);
+	}
+
+	/**
+	 * Sets the current hash of the given entry.
+	 *
+	 * @param index
+	 *            The index of the entry
+	 * @param currentHash
+	 *            The current hash, or {@code null} to remove it
+	 */
+	public synchronized void setCurrentHash(int index, String currentHash) {
+		otherCurrentHashes.remove(index);
+		setFlag(index, FLAG_XXH64_CURRENT_HASH, isXXH64Hash(currentHash));
+		if (fromHash(currentHash, currentHashes, index)) {
+			setFlag(index, FLAG_RAW_CURRENT_HASH, true);
+			return;
+		}
+		setFlag(index, FLAG_RAW_CURRENT_HASH, false);
+		if (currentHash != null) {
+			otherCurrentHashes.put(index, currentHash);
+		}
+	}
+
+	/**
+	 * Returns the last insert edition of the given entry.
+	 *
+	 * @param index
+	 *            The index of the entry
+	 * @return The last insert edition
+	 */
+	public synchronized int getLastInsertEdition(int index) {
+		return lastInsertEditions[index];
+	}
+
+	/**
+	 * Sets the last insert edition of the given entry.
+	 *
+	 * @param index
+	 *            The index of the entry
+	 * @param lastInsertEdition
+	 *            The last insert edition
+	 */
+	public synchronized void setLastInsertEdition(int index, int lastInsertEdition) {
+		lastInsertEditions[index] = lastInsertEdition;
+	}
+
+	/**
+	 * Returns the last insert filename of the given entry.
+	 *
+	 * @param index
+	 *            The index of the entry
+	 * @return The last insert filename, or {@code null} if none is set
+	 */
+	public synchronized String getLastInsertFilename(int index) {
+		if (hasFlag(index, FLAG_LAST_INSERT_FILENAME_UNCHANGED)) {
+			return getFilename(index);
+		}
+		return lastInsertFilenames.get(index);
+	}
+
+	/**
+	 * Sets the last insert filename of the given entry.
+	 *
+	 * @param index
+	 *            The index of the entry
+	 * @param lastInsertFilename
+	 *            The last insert filename, or {@code null} to remove it
+	 */
+	public synchronized void setLastInsertFilename(int index, String lastInsertFilename) {
+		lastInsertFilenames.remove(index);
+		boolean unchanged = (lastInsertFilename != null) && lastInsertFilename.equals(getFilename(index));
+		setFlag(index, FLAG_LAST_INSERT_FILENAME_UNCHANGED, unchanged);
+		if (!unchanged && (lastInsertFilename != null)) {
+			lastInsertFilenames.put(index, lastInsertFilename);
+		}
+	}
+
+	/**
+	 * Returns the last insert key of the given entry.
+	 *
+	 * @param index
+	 *            The index of the entry
+	 * @return The last insert key, or {@code null} if none is set
+	 */
+	public synchronized String getLastInsertKey(int index) {
+		return lastInsertKeys.get(index);
+	}
+
+	/**
+	 * Sets the last insert key of the given entry.
+	 *
+	 * @param index
+	 *            The index of the entry
+	 * @param lastInsertKey
+	 *            The last insert key, or {@code null} to remove it
+	 */
+	public synchronized void setLastInsertKey(int index, String lastInsertKey) {
+		if (lastInsertKey == null) {
+			lastInsertKeys.remove(index);
+		} else {
+			lastInsertKeys.put(index, lastInsertKey);
+		}
+	}
+
+	/**
+	 * Returns whether the insert of the given entry is forced.
+	 *
+	 * @param index
+	 *            The index of the entry
+	 * @return {@code true} if the insert is forced, {@code false} otherwise
+	 */
+	public synchronized boolean isForceInsert(int index) {
+		return hasFlag(index, FLAG_FORCE_INSERT);
+	}
+
+	/**
+	 * Sets whether the insert of the given entry is forced.
+	 *
+	 * @param index
+	 *            The index of the entry
+	 * @param forceInsert
+	 *            {@code true} to force the insert, {@code false} otherwise
+	 */
+	public synchronized void setForceInsert(int index, boolean forceInsert) {
+		setFlag(index, FLAG_FORCE_INSERT, forceInsert);
+	}
+
+	/**
+	 * Returns the custom options of the given entry.
+	 *
+	 * @param index
+	 *            The index of the entry
+	 * @return The custom options, or {@code null} if the entry uses the
+	 *         default options
+	 */
+	synchronized FileOption getCustomOptions(int index) {
+		return customOptions.get(index);
+	}
+
+	/**
+	 * Sets the custom options of the given entry.
+	 *
+	 * @param index
+	 *            The index of the entry
+	 * @param fileOption
+	 *            The custom options, or {@code null} to use the default
+	 *            options
+	 */
+	synchronized void setCustomOptions(int index, FileOption fileOption) {
+		if (fileOption == null) {
+			customOptions.remove(index);
+		} else {
+			customOptions.put(index, fileOption);
+		}
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Adds an entry for the given file, if it does not exist yet.
+	 *
+	 * @param filename
+	 *            The name of the file
+	 * @return The index of the entry for the file
+	 */
+	public synchronized int add(String filename) {
+		int index = find(filename);
+		if (index > -1) {
+			if (!isPresent(index)) {
+				/* file options of the removed file may have written to it. */
+				clearEntry(index);
+				flags[index] = FLAG_PRESENT;
+				size++;
+			}
+			return index;
+		}
+		int lastSlash = filename.lastIndexOf('/');
+		String directory = filename.substring(0, lastSlash + 1);
+		Integer directoryIndex = directoryIndexes.get(directory);
+		if (directoryIndex == null) {
+			directoryIndex = directories.size();
+			directories.add(directory);
+			directoryIndexes.put(directory, directoryIndex);
+		}
+		byte[] name = filename.substring(lastSlash + 1).getBytes(UTF_8);
+		ensureCapacity(entryCount + 1, name.length);
+		index = entryCount++;
+		entryDirectories[index] = directoryIndex;
+		System.arraycopy(name, 0, names, namesLength, name.length);
+		namesLength += name.length;
+		nameOffsets[index + 1] = namesLength;
+		filenameHashCodes[index] = filename.hashCode();
+		flags[index] = FLAG_PRESENT;
+		size++;
+		if ((entryCount * 2) > table.length) {
+			rehash(table.length * 2);
+		} else {
+			insertIntoTable(index);
+		}
+		return index;
+	}
+
+	/**
+	 * Removes the entry for the given file.
+	 *
+	 * @param filename
+	 *            The name of the file
+	 */
+	public synchronized void remove(String filename) {
+		int index = indexOf(filename);
+		if (index == -1) {
+			return;
+		}
+		clearEntry(index);
+		size--;
+	}
+
+	/**
+	 * Removes all entries from this index and releases the memory used by
+	 * them.
+	 */
+	public synchronized void clear() {
+		directories.clear();
+		directoryIndexes.clear();
+		entryCount = 0;
+		size = 0;
+		entryDirectories = new int[INITIAL_CAPACITY];
+		nameOffsets = new int[INITIAL_CAPACITY + 1];
+		names = new byte[INITIAL_CAPACITY * 16];
+		namesLength = 0;
+		filenameHashCodes = new int[INITIAL_CAPACITY];
+		flags = new byte[INITIAL_CAPACITY];
+		lastInsertHashes = new byte[INITIAL_CAPACITY * HASH_LENGTH];
+		currentHashes = new byte[INITIAL_CAPACITY * HASH_LENGTH];
+		lastInsertEditions = new int[INITIAL_CAPACITY];
+		otherLastInsertHashes.clear();
+		otherCurrentHashes.clear();
+		lastInsertFilenames.clear();
+		lastInsertKeys.clear();
+		customOptions.clear();
+		table = new int[INITIAL_CAPACITY * 2];
+		generation++;
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Removes all state of the given entry and marks it as removed.
+	 *
+	 * @param index
+	 *            The index of the entry
+	 */
+	private void clearEntry(int index) {
+		flags[index] = 0;
+		lastInsertEditions[index] = 0;
+		otherLastInsertHashes.remove(index);
+		otherCurrentHashes.remove(index);
+		lastInsertFilenames.remove(index);
+		lastInsertKeys.remove(index);
+		customOptions.remove(index);
+	}
+
+	/**
+	 * Returns whether the given hash can be stored as a raw hash.
+	 *
+	 * @param hash
+	 *            The hash
+	 * @return {@code true} if the hash can be stored as a raw hash,
+	 *         {@code false} otherwise
+	 */
+	private static boolean isRawHash(String hash) {
+		return (hash != null) && (hash.length() == HASH_LENGTH * 2);
+	}
+
+	/**
+	 * Returns whether the given hash is an XXH64 hash that can be stored as
+	 * a raw hash.
+	 *
+	 * @param hash
+	 *            The hash
+	 * @return {@code true} if the hash is an XXH64 hash, {@code false}
+	 *         otherwise
+	 */
+	private static boolean isXXH64Hash(String hash) {
+		return (hash != null) && hash.startsWith(HashAlgorithm.XXH64.getPrefix()) && (hash.length() == HashAlgorithm.XXH64.getPrefix().length() + HashAlgorithm.XXH64.getDigestLength() * 2);
+	}
+
+	/**
+	 * Stores the given hash as a raw hash in the given array.
+	 *
+	 * @param hash
+	 *            The hash to store
+	 * @param hashes
+	 *            The array of raw hashes
+	 * @param index
+	 *            The index of the entry
+	 * @return {@code true} if the hash was stored, {@code false} if it can
+	 *         not be stored as a raw hash
+	 */
+	private static boolean fromHash(String hash, byte[] hashes, int index) {
+		if (isRawHash(hash)) {
+			return Hex.fromHex(hash, hashes, index * HASH_LENGTH);
+		}
+		if (isXXH64Hash(hash)) {
+			return Hex.fromHex(hash.substring(HashAlgorithm.XXH64.getPrefix().length()), hashes, index * HASH_LENGTH);
+		}
+		return false;
+	}
+
+	/**
+	 * Converts the raw hash of the given entry back into a hash.
+	 *
+	 * @param hashes
+	 *            The array of raw hashes
+	 * @param index
+	 *            The index of the entry
+	 * @param xxh64
+	 *            {@code true} if the raw hash is an XXH64 hash, {@code false}
+	 *            if it is a SHA-256 hash
+	 * @return The hash
+	 */
+	private static String toHash(byte[] hashes, int index, boolean xxh64) {
+		if (xxh64) {
+			return HashAlgorithm.XXH64.getPrefix() + Hex.toHex(hashes, index * HASH_LENGTH, HashAlgorithm.XXH64.getDigestLength());
+		}
+		return Hex.toHex(hashes, index * HASH_LENGTH, HASH_LENGTH);
+	}
+
+	/**
+	 * Returns whether the given entry has the given flag.
+	 *
+	 * @param index
+	 *            The index of the entry
+	 * @param flag
+	 *            The flag
+	 * @return {@code true} if the flag is set, {@code false} otherwise
+	 */
+	private boolean hasFlag(int index, int flag) {
+		return (flags[index] & flag) != 0;
+	}
+
+	/**
+	 * Sets or clears the given flag of the given entry.
+	 *
+	 * @param index
+	 *            The index of the entry
+	 * @param flag
+	 *            The flag
+	 * @param set
+	 *            {@code true} to set the flag, {@code false} to clear it
+	 */
+	private void setFlag(int index, int flag, boolean set) {
+		flags[index] = (byte) (set ? (flags[index] | flag) : (flags[index] & ~flag));
+	}
+
+	/**
+	 * Finds the entry for the given file, even if it has been removed.
+	 *
+	 * @param filename
+	 *            The name of the file
+	 * @return The index of the entry, or {@code -1} if there is no entry
+	 */
+	private int find(String filename) {
+		int hashCode = filename.hashCode();
+		int mask = table.length - 1;
+		for (int slot = spread(hashCode) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+			int index = table[slot] - 1;
+			if ((filenameHashCodes[index] == hashCode) && matches(index, filename)) {
+				return index;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns whether the given entry belongs to the given file.
+	 *
+	 * @param index
+	 *            The index of the entry
+	 * @param filename
+	 *            The name of the file
+	 * @return {@code true} if the entry belongs to the file, {@code false}
+	 *         otherwise
+	 */
+	private boolean matches(int index, String filename) {
+		String directory = directories.get(entryDirectories[index]);
+		if (!filename.startsWith(directory) || (filename.indexOf('/', directory.length()) != -1)) {
+			return false;
+		}
+		byte[] name = filename.substring(directory.length()).getBytes(UTF_8);
+		int nameLength = nameOffsets[index + 1] - nameOffsets[index];
+		if (name.length != nameLength) {
+			return false;
+		}
+		for (int position = 0; position < nameLength; position++) {
+			if (name[position] != names[nameOffsets[index] + position]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Spreads the bits of a hash code so that similar filenames do not end
+	 * up in neighbouring slots.
+	 *
+	 * @param hashCode
+	 *            The hash code
+	 * @return The spread hash code
+	 */
+	private static int spread(int hashCode) {
+		int spreadHashCode = hashCode * 0x9e3779b9;
+		return spreadHashCode ^ (spreadHashCode >>> 16);
+	}
+
+	/**
+	 * Inserts the given entry into the hash table.
+	 *
+	 * @param index
+	 *            The index of the entry
+	 */
+	private void insertIntoTable(int index) {
+		int mask = table.length - 1;
+		int slot = spread(filenameHashCodes[index]) & mask;
+		while (table[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		table[slot] = index + 1;
+	}
+
+	/**
+	 * Rebuilds the hash table with the given size.
+	 *
+	 * @param tableSize
+	 *            The new size of the hash table (a power of two)
+	 */
+	private void rehash(int tableSize) {
+		table = new int[tableSize];
+		for (int index = 0; index < entryCount; index++) {
+			insertIntoTable(index);
+		}
+	}
+
+	/**
+	 * Makes sure that the arrays can hold the given number of entries and the
+	 * given number of additional name bytes.
+	 *
+	 * @param capacity
+	 *            The number of entries
+	 * @param additionalNameLength
+	 *            The number of additional name bytes
+	 */
+	private void ensureCapacity(int capacity, int additionalNameLength) {
+		if (capacity > flags.length) {
+			int newCapacity = Math.max(capacity, flags.length * 3 / 2);
+			entryDirectories = Arrays.copyOf(entryDirectories, newCapacity);
+			nameOffsets = Arrays.copyOf(nameOffsets, newCapacity + 1);
+			filenameHashCodes = Arrays.copyOf(filenameHashCodes, newCapacity);
+			flags = Arrays.copyOf(flags, newCapacity);
+			lastInsertHashes = Arrays.copyOf(lastInsertHashes, newCapacity * HASH_LENGTH);
+			currentHashes = Arrays.copyOf(currentHashes, newCapacity * HASH_LENGTH);
+			lastInsertEditions = Arrays.copyOf(lastInsertEditions, newCapacity);
+		}
+		if ((namesLength + additionalNameLength) > names.length) {
+			names = Arrays.copyOf(names, Math.max(namesLength + additionalNameLength, names.length * 3 / 2));
+		}
+	}
+
+}
@@ -0,0 +1,44 @@
+/*
+ * jSite - SymlinkPolicy.java - Copyright © 2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.jsite.application;
+
+/**
+ * Defines how symbolic links in the local directory of a project are handled
+ * when the project is scanned.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public enum SymlinkPolicy {
+
+	/**
+	 * Symbolic links are followed, and their targets are inserted as if they
+	 * were located at the link. Links that would create a loop are skipped.
+	 */
+	FOLLOW,
+
+	/** Symbolic links are ignored. */
+	SKIP,
+
+	/**
+	 * Symbolic links whose targets are located inside the project are
+	 * inserted as redirects to the targets; other links are followed.
+	 */
+	REDIRECT
+
+}
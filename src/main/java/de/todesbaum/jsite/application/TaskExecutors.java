@@ -0,0 +1,72 @@
+/*
+ * jSite - TaskExecutors.java - Copyright © 2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+
+package de.todesbaum.jsite.application;
+
+import de.todesbaum.util.thread.ManagedExecutor;
+
+/**
+ * The executors jSite runs its background work on. Every kind of work has an
+ * executor of its own, so that e.g. a large number of queued file scans can
+ * not keep an insert from starting.
+ *
+ * @see ManagedExecutor
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class TaskExecutors {
+
+	/** Runs project inserts. */
+	public static final ManagedExecutor INSERT = ManagedExecutor.createBlocking("Insert", 8);
+
+	/**
+	 * Runs short-lived blocking work: scanning files, talking to the web of
+	 * trust, generating key pairs, and loading projects.
+	 */
+	public static final ManagedExecutor IO = ManagedExecutor.createBlocking("I/O", 16);
+
+	/**
+	 * Runs the update checker, which waits for new editions for as long as
+	 * jSite runs and would otherwise permanently take a thread from
+	 * {@link #IO}.
+	 */
+	public static final ManagedExecutor UPDATE = ManagedExecutor.createBlocking("Update Checker", 1);
+
+	/** The time running tasks get to finish when jSite exits (in milliseconds). */
+	public static final long SHUTDOWN_TIMEOUT = 2000;
+
+	/**
+	 * Private constructor, utility class.
+	 */
+	private TaskExecutors() {
+		/* do nothing. */
+	}
+
+	//
+	// STATIC METHODS
+	//
+
+	/**
+	 * Shuts down all executors, giving running tasks
+	 * {@value #SHUTDOWN_TIMEOUT} milliseconds to finish.
+	 */
+	public static void shutdown() {
+		ManagedExecutor.shutdownAll(SHUTDOWN_TIMEOUT);
+	}
+
+}
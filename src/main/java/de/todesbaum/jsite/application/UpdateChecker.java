@@ -34,10 +34,15 @@ import de.todesbaum.util.freenet.fcp2.Connection;
 import de.todesbaum.util.freenet.fcp2.Message;
 import de.todesbaum.util.freenet.fcp2.Persistence;
 import de.todesbaum.util.freenet.fcp2.ReturnType;
+import de.todesbaum.util.freenet.fcp2.SubscribeUSK;
+import de.todesbaum.util.freenet.fcp2.UnsubscribeUSK;
 import de.todesbaum.util.freenet.fcp2.Verbosity;
 
 /**
- * Checks for newer versions of jSite.
+ * Checks for newer versions of jSite. The update checker subscribes to the
+ * update key on the {@link Freenet7Interface#getSharedConnection() shared
+ * connection} and lets the node look for new editions; the properties file
+ * describing a version is only fetched when the node reports a new edition.
  *
  * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
  */
@@ -46,8 +51,11 @@ public class UpdateChecker implements Runnable {
 	/** The logger. */
 	private static final Logger logger = Logger.getLogger(UpdateChecker.class.getName());
 
-	/** Counter for connection names. */
-	private static int counter = 0;
+	/** The identifier of the subscription to the update key. */
+	private static final String SUBSCRIPTION_IDENTIFIER = "jSite-update-subscription";
+
+	/** The time to wait before connecting again (in milliseconds). */
+	private static final long RECONNECT_DELAY = 60 * 1000;
 
 	/** The edition for the update check URL. */
 	private static final int UPDATE_EDITION = 12;
@@ -67,6 +75,12 @@ public class UpdateChecker implements Runnable {
 	/** Current last found edition of update key. */
 	private int lastUpdateEdition = UPDATE_EDITION;
 
+	/** The last edition whose properties file was fetched. */
+	private int fetchedEdition = -1;
+
+	/** The client of the current subscription. */
+	private Client subscriptionClient;
+
 	/** Last found version. */
 	private Version lastVersion;
 
@@ -141,10 +155,11 @@ public class UpdateChecker implements Runnable {
 	//
 
 	/**
-	 * Starts the update checker.
+	 * Starts the update checker on the {@link TaskExecutors#UPDATE update
+	 * checker executor}.
 	 */
 	public void start() {
-		new Thread(this).start();
+		TaskExecutors.UPDATE.execute(this);
 	}
 
 	/**
@@ -153,6 +168,9 @@ public class UpdateChecker implements Runnable {
 	public void stop() {
 		synchronized (syncObject) {
 			shouldStop = true;
+			if (subscriptionClient != null) {
+				subscriptionClient.close();
+			}
 			syncObject.notifyAll();
 		}
 	}
@@ -184,115 +202,155 @@ public class UpdateChecker implements Runnable {
 		return UPDATE_KEY + "/jSite/" + edition + "/jSite.properties";
 	}
 
-	//
-	// INTERFACE Runnable
-	//
-
 	/**
-	 * {@inheritDoc}
+	 * Subscribes to the update key and waits for new editions until the
+	 * update checker is stopped or the connection is lost.
+	 *
+	 * @param connection
+	 *            The connection to subscribe on
+	 * @throws IOException
+	 *             if an I/O error occurs
 	 */
-	@Override
-	public void run() {
-		int currentEdition = lastUpdateEdition;
-		while (!shouldStop()) {
-
-			/* try to connect. */
-			Client client;
-			while (true) {
-				Connection connection = freenetInterface.getConnection("jSite-" + ++counter + "-UpdateChecker");
-				try {
-					connection.connect();
-					logger.log(Level.INFO, "Connected to " + freenetInterface.getNode() + ".");
-					client = new Client(connection);
+	private void watchUpdateKey(Connection connection) throws IOException {
+		Client client = new Client(connection);
+		synchronized (syncObject) {
+			if (shouldStop) {
+				return;
+			}
+			subscriptionClient = client;
+		}
+		try {
+			logger.log(Level.FINE, "Subscribing to " + UPDATE_KEY + "/jSite/" + lastUpdateEdition + "/");
+			client.execute(new SubscribeUSK(SUBSCRIPTION_IDENTIFIER, UPDATE_KEY + "/jSite/" + lastUpdateEdition + "/"));
+			while (!shouldStop()) {
+				Message message = client.readMessage();
+				logger.log(Level.FINEST, "Received message: " + message);
+				if (message == null) {
 					break;
-				} catch (IOException ioe1) {
-					logger.log(Level.INFO, "Could not connect to " + freenetInterface.getNode() + ".", ioe1);
 				}
-				if (!connection.isConnected()) {
+				if ("SubscribedUSKUpdate".equals(message.getName())) {
+					int edition = -1;
 					try {
-						Thread.sleep(60 * 1000);
-					} catch (InterruptedException ie1) {
-						/* ignore, we’re looping. */
+						edition = Integer.parseInt(message.get("Edition"));
+					} catch (NumberFormatException nfe1) {
+						/* ignore. */
+					}
+					if (edition > fetchedEdition) {
+						logger.log(Level.INFO, "Found new edition " + edition);
+						lastUpdateEdition = edition;
+						fetchUpdate(connection, edition);
 					}
 				}
 			}
+		} finally {
+			synchronized (syncObject) {
+				subscriptionClient = null;
+			}
+			client.close();
+			if (connection.isConnected()) {
+				try {
+					connection.execute(new UnsubscribeUSK(SUBSCRIPTION_IDENTIFIER));
+				} catch (IOException | IllegalStateException e1) {
+					/* ignore, the subscription ends with the connection. */
+				}
+			}
+		}
+	}
 
-			boolean checkNow = false;
-			logger.log(Level.FINE, "Trying " + constructUpdateKey(currentEdition));
-			ClientGet clientGet = new ClientGet("get-update-key");
-			clientGet.setUri(constructUpdateKey(currentEdition));
-			clientGet.setPersistence(Persistence.CONNECTION);
-			clientGet.setReturnType(ReturnType.direct);
-			clientGet.setVerbosity(Verbosity.ALL);
-			try {
-				client.execute(clientGet);
-				boolean stop = false;
-				while (!stop) {
-					Message message = client.readMessage();
-					logger.log(Level.FINEST, "Received message: " + message);
-					if (message == null) {
-						break;
+	/**
+	 * Fetches the properties file of the given edition and notifies all
+	 * listeners about the version it describes.
+	 *
+	 * @param connection
+	 *            The connection to fetch the file on
+	 * @param edition
+	 *            The edition to fetch
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private void fetchUpdate(Connection connection, int edition) throws IOException {
+		logger.log(Level.FINE, "Trying " + constructUpdateKey(edition));
+		ClientGet clientGet = new ClientGet("get-update-key-" + edition);
+		clientGet.setUri(constructUpdateKey(edition));
+		clientGet.setPersistence(Persistence.CONNECTION);
+		clientGet.setReturnType(ReturnType.direct);
+		clientGet.setVerbosity(Verbosity.ALL);
+		Client client = new Client(connection);
+		try {
+			client.execute(clientGet);
+			while (!shouldStop()) {
+				Message message = client.readMessage();
+				logger.log(Level.FINEST, "Received message: " + message);
+				if (message == null) {
+					return;
+				}
+				if ("GetFailed".equals(message.getName())) {
+					logger.log(Level.INFO, "Could not fetch " + constructUpdateKey(edition) + ": " + message.get("CodeDescription"));
+					return;
+				}
+				if ("AllData".equals(message.getName())) {
+					logger.log(Level.FINE, "Update data found.");
+					if (message.getPayloadInputStream() == null) {
+						logger.log(Level.WARNING, "Could not store update data of edition " + edition + ".");
+						return;
 					}
-					if ("GetFailed".equals(message.getName())) {
-						if ("27".equals(message.get("code"))) {
-							String editionString = message.get("redirecturi").split("/")[2];
-							int editionNumber = -1;
+					fetchedEdition = edition;
+					InputStream dataInputStream = null;
+					Properties properties = new Properties();
+					try {
+						dataInputStream = message.getPayloadInputStream();
+						properties.load(dataInputStream);
+					} finally {
+						Closer.close(dataInputStream);
+					}
+
+					String foundVersionString = properties.getProperty("jSite.Version");
+					if (foundVersionString != null) {
+						Version foundVersion = Version.parse(foundVersionString);
+						if (foundVersion != null) {
+							lastVersion = foundVersion;
+							String versionTimestampString = properties.getProperty("jSite.Date");
+							logger.log(Level.FINEST, "Version timestamp: " + versionTimestampString);
+							long versionTimestamp = -1;
 							try {
-								editionNumber = Integer.parseInt(editionString);
+								versionTimestamp = Long.parseLong(versionTimestampString);
 							} catch (NumberFormatException nfe1) {
 								/* ignore. */
 							}
-							if (editionNumber != -1) {
-								logger.log(Level.INFO, "Found new edition " + editionNumber);
-								currentEdition = editionNumber;
-								lastUpdateEdition = editionNumber;
-								checkNow = true;
-								break;
-							}
-						}
-					}
-					if ("AllData".equals(message.getName())) {
-						logger.log(Level.FINE, "Update data found.");
-						InputStream dataInputStream = null;
-						Properties properties = new Properties();
-						try {
-							dataInputStream = message.getPayloadInputStream();
-							properties.load(dataInputStream);
-						} finally {
-							Closer.close(dataInputStream);
-						}
-
-						String foundVersionString = properties.getProperty("jSite.Version");
-						if (foundVersionString != null) {
-							Version foundVersion = Version.parse(foundVersionString);
-							if (foundVersion != null) {
-								lastVersion = foundVersion;
-								String versionTimestampString = properties.getProperty("jSite.Date");
-								logger.log(Level.FINEST, "Version timestamp: " + versionTimestampString);
-								long versionTimestamp = -1;
-								try {
-									versionTimestamp = Long.parseLong(versionTimestampString);
-								} catch (NumberFormatException nfe1) {
-									/* ignore. */
-								}
-								fireUpdateFound(foundVersion, versionTimestamp);
-								stop = true;
-								checkNow = true;
-								++currentEdition;
-							}
+							fireUpdateFound(foundVersion, versionTimestamp);
 						}
 					}
+					return;
 				}
-			} catch (IOException e) {
-				logger.log(Level.INFO, "Got IOException: " + e.getMessage());
-				e.printStackTrace();
 			}
-			if (!checkNow && !shouldStop()) {
-				synchronized (syncObject) {
+		} finally {
+			client.close();
+		}
+	}
+
+	//
+	// INTERFACE Runnable
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void run() {
+		while (!shouldStop()) {
+			try {
+				Connection connection = freenetInterface.getSharedConnection();
+				logger.log(Level.INFO, "Connected to " + freenetInterface.getNode() + ".");
+				watchUpdateKey(connection);
+			} catch (IOException ioe1) {
+				logger.log(Level.INFO, "Could not watch update key on " + freenetInterface.getNode() + ".", ioe1);
+			}
+			synchronized (syncObject) {
+				if (!shouldStop) {
 					try {
-						syncObject.wait(15 * 60 * 1000);
+						syncObject.wait(RECONNECT_DELAY);
 					} catch (InterruptedException ie1) {
-						/* ignore. */
+						/* ignore, we’re looping. */
 					}
 				}
 			}
@@ -19,10 +19,15 @@
 package de.todesbaum.jsite.application;
 
 import static java.util.Collections.emptyList;
+import static java.util.Collections.unmodifiableList;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -32,11 +37,17 @@ import de.todesbaum.util.freenet.fcp2.Client;
 import de.todesbaum.util.freenet.fcp2.Connection;
 import de.todesbaum.util.freenet.fcp2.FcpPluginMessage;
 import de.todesbaum.util.freenet.fcp2.Message;
+import de.todesbaum.util.freenet.fcp2.Node;
 import de.todesbaum.util.freenet.fcp2.wot.DefaultOwnIdentity;
 import de.todesbaum.util.freenet.fcp2.wot.OwnIdentity;
 
 /**
  * FCP interface to the node’s web of trust.
+ * <p>
+ * The own identities are cached for {@link #CACHE_TIME} and loaded in the
+ * background over the {@link Freenet7Interface#getSharedConnection() shared
+ * connection}, so that callers never have to wait for the WebOfTrust plugin.
+ * Listeners are notified whenever new identities have been loaded.
  *
  * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
  */
@@ -45,12 +56,39 @@ public class WebOfTrustInterface {
 	/** The logger. */
 	private static final Logger logger = Logging.getLogger(WebOfTrustInterface.class);
 
+	/** How long loaded identities are used before they are loaded again. */
+	private static final long CACHE_TIME = 10 * 60 * 1000;
+
+	/** How long to wait for the reply of the WebOfTrust plugin. */
+	private static final long REPLY_TIMEOUT = 60 * 1000;
+
+	/** The prefix of the parameters of the plugin reply. */
+	private static final String REPLY_PREFIX = "replies.";
+
 	/** Unique ID for the command identifier. */
 	private static final AtomicLong commandCounter = new AtomicLong(System.nanoTime());
 
 	/** The freenet interface. */
 	private final Freenet7Interface freenetInterface;
 
+	/** The listeners for loaded identities. */
+	private final List<OwnIdentityListener> ownIdentityListeners = new CopyOnWriteArrayList<OwnIdentityListener>();
+
+	/** Object used for synchronization. */
+	private final Object syncObject = new Object();
+
+	/** The cached own identities. */
+	private List<OwnIdentity> ownIdentities = emptyList();
+
+	/** The time the own identities were last loaded, 0 if never. */
+	private long lastLoadTime;
+
+	/** The node the own identities were loaded from. */
+	private Node loadedNode;
+
+	/** Whether the own identities are currently being loaded. */
+	private boolean loading;
+
 	/**
 	 * Creates a new web of trust interface.
 	 *
@@ -61,50 +99,141 @@ public class WebOfTrustInterface {
 		this.freenetInterface = freenetInterface;
 	}
 
+	//
+	// EVENT LISTENER MANAGEMENT
+	//
+
+	/**
+	 * Adds a listener that is notified when own identities have been loaded.
+	 *
+	 * @param ownIdentityListener
+	 *            The listener to add
+	 */
+	public void addOwnIdentityListener(OwnIdentityListener ownIdentityListener) {
+		ownIdentityListeners.add(ownIdentityListener);
+	}
+
+	/**
+	 * Removes the given listener from the list of registered listeners.
+	 *
+	 * @param ownIdentityListener
+	 *            The listener to remove
+	 */
+	public void removeOwnIdentityListener(OwnIdentityListener ownIdentityListener) {
+		ownIdentityListeners.remove(ownIdentityListener);
+	}
+
+	/**
+	 * Notifies all listeners that own identities have been loaded.
+	 *
+	 * @param ownIdentities
+	 *            The loaded own identities
+	 */
+	private void fireOwnIdentitiesLoaded(List<OwnIdentity> ownIdentities) {
+		for (OwnIdentityListener ownIdentityListener : ownIdentityListeners) {
+			ownIdentityListener.ownIdentitiesLoaded(ownIdentities);
+		}
+	}
+
 	//
 	// ACCESSORS
 	//
 
 	/**
 	 * Returns a list of own identities. If the identities have not yet been
-	 * retrieved, an empty list is returned.
+	 * retrieved, an empty list is returned. If the cached identities are
+	 * older than {@link #CACHE_TIME} or were loaded from another node, they
+	 * are loaded again in the background and all {@link OwnIdentityListener}s
+	 * are notified when they arrive.
 	 *
 	 * @return The list of own identities
 	 */
 	public List<OwnIdentity> getOwnIdentities() {
-		try {
+		loadOwnIdentities(false);
+		synchronized (syncObject) {
+			return ownIdentities;
+		}
+	}
 
-			/* connect. */
-			Connection connection = freenetInterface.getConnection("jSite-WoT-Connector");
-			logger.log(Level.INFO, String.format("Trying to connect to node at %s...", freenetInterface.getNode()));
-			if (!connection.connect()) {
-				logger.log(Level.WARNING, "Connection failed.");
-				return emptyList();
-			}
-			Client client = new Client(connection);
+	//
+	// ACTIONS
+	//
 
-			/* send FCP command to WebOfTrust plugin. */
-			sendFcpCommandToWotPlugin(client);
+	/**
+	 * Loads the own identities in the background, even if the cached
+	 * identities are not outdated yet.
+	 */
+	public void refreshOwnIdentities() {
+		loadOwnIdentities(true);
+	}
 
-			/* read a message. */
-			Message message = null;
-			while (!client.isDisconnected() && (message == null)) {
-				message = client.readMessage(1000);
-			}
-			if (message == null) {
-				return emptyList();
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Starts loading the own identities in the background unless they are
+	 * already being loaded.
+	 *
+	 * @param force
+	 *            {@code true} to load the identities even if the cached
+	 *            identities are still current, {@code false} otherwise
+	 */
+	private void loadOwnIdentities(boolean force) {
+		final Node node = freenetInterface.getNode();
+		synchronized (syncObject) {
+			if (loading || (!force && (node == loadedNode) && ((System.currentTimeMillis() - lastLoadTime) < CACHE_TIME))) {
+				return;
 			}
+			loading = true;
+		}
+		TaskExecutors.IO.execute(new Runnable() {
 
-			/* evaluate message. */
-			List<OwnIdentity> ownIdentities = parseOwnIdentitiesFromMessage(message);
+			@Override
+			@SuppressWarnings("synthetic-access")
+			public void run() {
+				List<OwnIdentity> loadedOwnIdentities = null;
+				try {
+					loadedOwnIdentities = unmodifiableList(requestOwnIdentities());
+				} catch (IOException ioe1) {
+					logger.log(Level.WARNING, String.format("Communication with node at %s failed.", freenetInterface.getNode()), ioe1);
+				} finally {
+					synchronized (syncObject) {
+						loading = false;
+						if (loadedOwnIdentities != null) {
+							ownIdentities = loadedOwnIdentities;
+							lastLoadTime = System.currentTimeMillis();
+							loadedNode = node;
+						}
+					}
+				}
+				if (loadedOwnIdentities != null) {
+					fireOwnIdentitiesLoaded(loadedOwnIdentities);
+				}
+			}
+		});
+	}
 
-            /* disconnect. */
-			logger.log(Level.INFO, "Disconnecting from Node.");
-			connection.disconnect();
-			return ownIdentities;
-		} catch (IOException ioe1) {
-			logger.log(Level.WARNING, String.format("Communication with node at %s failed.", freenetInterface.getNode()), ioe1);
-			return emptyList();
+	/**
+	 * Requests the own identities from the WebOfTrust plugin.
+	 *
+	 * @return The own identities
+	 * @throws IOException
+	 *             if the node can not be reached or the plugin does not
+	 *             answer
+	 */
+	private List<OwnIdentity> requestOwnIdentities() throws IOException {
+		Connection connection = freenetInterface.getSharedConnection();
+		Client client = new Client(connection);
+		try {
+			sendFcpCommandToWotPlugin(client);
+			Message message = client.readMessage(REPLY_TIMEOUT);
+			if (message == null) {
+				throw new IOException(client.isDisconnected() ? "Connection terminated" : "WebOfTrust did not answer");
+			}
+			return parseOwnIdentitiesFromMessage(message);
+		} finally {
+			client.close();
 		}
 	}
 
@@ -116,18 +245,47 @@ public class WebOfTrustInterface {
 		client.execute(pluginMessage);
 	}
 
-	private List<OwnIdentity> parseOwnIdentitiesFromMessage(Message message) {
+	/**
+	 * Parses the own identities from the reply of the WebOfTrust plugin. The
+	 * parameters of the reply are collected by their index in a single pass.
+	 *
+	 * @param message
+	 *            The reply of the plugin
+	 * @return The own identities contained in the reply
+	 */
+	static List<OwnIdentity> parseOwnIdentitiesFromMessage(Message message) {
 		List<OwnIdentity> ownIdentities = new ArrayList<OwnIdentity>();
 		if (message.getName().equals("FCPPluginReply")) {
 			logger.log(Level.FINE, "Got matching Reply from WebOfTrust.");
-				/* parse identities. */
-			int identityCounter = -1;
-			while (message.get("Replies.Identity" + ++identityCounter) != null) {
-				String id = message.get("Replies.Identity" + identityCounter);
-				String nickname = message.get("Replies.Nickname" + identityCounter);
-				String requestUri = shortenUri(message.get("Replies.RequestURI" + identityCounter));
-				String insertUri = shortenUri(message.get("Replies.InsertURI" + identityCounter));
-				DefaultOwnIdentity ownIdentity = new DefaultOwnIdentity(id, nickname, requestUri, insertUri);
+			Map<Integer, Map<String, String>> identityParameters = new TreeMap<Integer, Map<String, String>>();
+			for (Entry<String, String> parameter : message.entrySet()) {
+				String key = parameter.getKey();
+				if (!key.startsWith(REPLY_PREFIX)) {
+					continue;
+				}
+				int indexStart = key.length();
+				while ((indexStart > REPLY_PREFIX.length()) && Character.isDigit(key.charAt(indexStart - 1))) {
+					indexStart--;
+				}
+				if ((indexStart == key.length()) || ((key.length() - indexStart) > 9)) {
+					continue;
+				}
+				Integer index = Integer.valueOf(key.substring(indexStart));
+				Map<String, String> parameters = identityParameters.get(index);
+				if (parameters == null) {
+					parameters = new TreeMap<String, String>();
+					identityParameters.put(index, parameters);
+				}
+				parameters.put(key.substring(REPLY_PREFIX.length(), indexStart), parameter.getValue());
+			}
+			for (Map<String, String> parameters : identityParameters.values()) {
+				String id = parameters.get("identity");
+				String requestUri = parameters.get("requesturi");
+				String insertUri = parameters.get("inserturi");
+				if ((id == null) || (requestUri == null) || (insertUri == null)) {
+					continue;
+				}
+				DefaultOwnIdentity ownIdentity = new DefaultOwnIdentity(id, parameters.get("nickname"), shortenUri(requestUri), shortenUri(insertUri));
 				logger.log(Level.FINE, String.format("Parsed Own Identity %s.", ownIdentity));
 				ownIdentities.add(ownIdentity);
 			}
@@ -150,7 +308,7 @@ public class WebOfTrustInterface {
 	 */
 	private static String shortenUri(String uri) {
 		String shortenedUri = uri;
-		if (shortenedUri.charAt(3) == '@') {
+		if ((shortenedUri.length() > 3) && (shortenedUri.charAt(3) == '@')) {
 			shortenedUri = shortenedUri.substring(4);
 		}
 		if (shortenedUri.indexOf('/') > -1) {
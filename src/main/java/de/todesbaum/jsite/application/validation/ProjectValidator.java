@@ -96,7 +96,7 @@ public class ProjectValidator {
 			if ((fileOption != null) && !fileOption.isInsert()) {
 				continue;
 			}
-			totalSize += new File(project.getLocalPath(), fileName).length();
+			totalSize += Math.max(0, scannedFile.getSize());
 		}
 		if (totalSize > 2 * 1024 * 1024) {
 			checkReport.addIssue("warning.site-larger-than-2-mib", false);
@@ -19,25 +19,48 @@
 package de.todesbaum.jsite.gui;
 
 import java.io.File;
-import java.io.FileFilter;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.security.DigestOutputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributes;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import net.pterodactylus.util.io.Closer;
-import net.pterodactylus.util.io.NullOutputStream;
-import net.pterodactylus.util.io.StreamCopier;
+import de.todesbaum.jsite.application.HashAlgorithm;
+import de.todesbaum.jsite.application.PathFilter;
 import de.todesbaum.jsite.application.Project;
+import de.todesbaum.jsite.application.SymlinkPolicy;
+import de.todesbaum.jsite.application.TaskExecutors;
 import de.todesbaum.jsite.i18n.I18n;
+import de.todesbaum.util.freenet.fcp2.PayloadStage;
+import de.todesbaum.util.io.ContentAnalyzer;
+import de.todesbaum.util.thread.CancellationToken;
 
 /**
  * Scans the local path of a project anychronously and returns the list of found
@@ -52,6 +75,15 @@ public class FileScanner implements Runnable {
 	/** The logger. */
 	private final static Logger logger = Logger.getLogger(FileScanner.class.getName());
 
+	/** The minimum size of a file that is mapped into memory. */
+	private static final long MAP_THRESHOLD = 1024 * 1024;
+
+	/** The size of the part of a file that is mapped into memory at once. */
+	private static final long MAP_WINDOW_SIZE = 64 * 1024 * 1024;
+
+	/** The size of the parts of a mapped window that are processed at once. */
+	private static final int MAP_SLICE_SIZE = 1024 * 1024;
+
 	/** The list of listeners. */
 	private final FileScannerListener fileScannerListener;
 
@@ -67,6 +99,21 @@ public class FileScanner implements Runnable {
 	/** The name of the last file scanned. */
 	private String lastFilename;
 
+	/** The stage to write the data of files to, if any. */
+	private PayloadStage payloadStage;
+
+	/** Decides which files are written to the stage. */
+	private StageFilter stageFilter;
+
+	/** Decides which staged files are kept in the stage. */
+	private Predicate<ScannedFile> keepFilter;
+
+	/** The token that cancels the scan. */
+	private CancellationToken cancellationToken = new CancellationToken();
+
+	/** The cache of earlier scans, if any. */
+	private HashCache hashCache;
+
 	/**
 	 * Creates a new file scanner for the given project.
 	 *
@@ -88,8 +135,55 @@ public class FileScanner implements Runnable {
 		return lastFilename;
 	}
 
+	/**
+	 * Sets the stage that the data of files is written to while they are
+	 * hashed, so that files that need to be inserted do not have to be read a
+	 * second time. Only files accepted by the stage filter are written to the
+	 * stage; after a file has been read completely, it is removed from the
+	 * stage again if the keep filter rejects it.
+	 *
+	 * @param payloadStage
+	 *            The stage to write the data of files to
+	 * @param stageFilter
+	 *            Decides which files are written to the stage
+	 * @param keepFilter
+	 *            Decides which staged files are kept in the stage
+	 */
+	public void setPayloadStage(PayloadStage payloadStage, StageFilter stageFilter, Predicate<ScannedFile> keepFilter) {
+		this.payloadStage = payloadStage;
+		this.stageFilter = stageFilter;
+		this.keepFilter = keepFilter;
+	}
+
+	/**
+	 * Sets the token that cancels the scan. The token is checked before every
+	 * directory and file and between all blocks of data that are read from a
+	 * file; once it has been cancelled, the scan stops with an error.
+	 *
+	 * @param cancellationToken
+	 *            The token that cancels the scan
+	 */
+	public void setCancellationToken(CancellationToken cancellationToken) {
+		this.cancellationToken = Objects.requireNonNull(cancellationToken);
+	}
+
+	/**
+	 * Sets the cache of earlier scans. A file whose size and modification
+	 * time match an earlier scan is not read again; its data is not written
+	 * to the payload stage, either.
+	 *
+	 * @param hashCache
+	 *            The cache of earlier scans, or {@code null} to read all files
+	 */
+	public void setHashCache(HashCache hashCache) {
+		this.hashCache = hashCache;
+	}
+
+	/**
+	 * Starts scanning the files on the {@link TaskExecutors#IO I/O executor}.
+	 */
 	public void startInBackground() {
-		new Thread(this).start();
+		TaskExecutors.IO.execute(this);
 	}
 
 	/**
@@ -134,7 +228,11 @@ public class FileScanner implements Runnable {
 	}
 
 	/**
-	 * Recursively scans a directory and adds all found files to the given list.
+	 * Walks the given directory and adds all found files to the given list.
+	 * The attributes of every file and directory are read only once, while
+	 * the directory is listed; the size and modification time of files are
+	 * passed on in the {@link ScannedFile}s. Symbolic links are handled
+	 * according to the {@link Project#getSymlinkPolicy() project’s policy}.
 	 *
 	 * @param rootDir
 	 *            The directory to scan
@@ -144,71 +242,508 @@ public class FileScanner implements Runnable {
 	 *             if an I/O error occurs
 	 */
 	private void scanFiles(File rootDir, List<ScannedFile> fileList) throws IOException {
-		File[] files = rootDir.listFiles(new FileFilter() {
+		Path rootPath = rootDir.toPath();
+		TreeWalk treeWalk = new TreeWalk(rootPath.toRealPath(), fileList);
+		treeWalk.walk(rootPath, "", null);
+	}
 
-			@Override
-			@SuppressWarnings("synthetic-access")
-			public boolean accept(File file) {
-				return !project.isIgnoreHiddenFiles() || !file.isHidden();
-			}
-		});
-		if (files == null) {
-			throw new IOException(I18n.getMessage("jsite.file-scanner.can-not-read-directory"));
-		}
-		for (File file : files) {
-			if (file.isDirectory()) {
-				scanFiles(file, fileList);
-				continue;
-			}
-			String filename = project.shortenFilename(file).replace('\\', '/');
-			String hash = hashFile(project.getLocalPath(), filename);
-			fileList.add(new ScannedFile(filename, hash));
-			lastFilename = filename;
-		}
+	/**
+	 * Returns the name of the given file, relative to the given root
+	 * directory, using “/” as separator.
+	 *
+	 * @param rootPath
+	 *            The root directory
+	 * @param path
+	 *            The file
+	 * @return The name of the file
+	 */
+	private static String getFilename(Path rootPath, Path path) {
+		return rootPath.relativize(path).toString().replace('\\', '/');
 	}
 
 	/**
-	 * Hashes the given file.
+	 * Returns whether the given file is hidden, using the attributes that have
+	 * already been read. On Windows, the attributes carry the DOS “hidden”
+	 * flag; everywhere else, files whose names start with a dot are hidden.
 	 *
 	 * @param path
-	 *            The path of the project
+	 *            The file
+	 * @param attributes
+	 *            The attributes of the file
+	 * @return {@code true} if the file is hidden, {@code false} otherwise
+	 */
+	private static boolean isHidden(Path path, BasicFileAttributes attributes) {
+		if (attributes instanceof DosFileAttributes) {
+			return ((DosFileAttributes) attributes).isHidden();
+		}
+		Path name = path.getFileName();
+		return (name != null) && name.toString().startsWith(".");
+	}
+
+	/**
+	 * Reads the given file once, calculating its hash, detecting its MIME
+	 * type, estimating its entropy and, if a payload stage has been set,
+	 * writing its data to the stage. Large files are mapped into memory so
+	 * that their data is hashed without copying it first.
+	 * <p>
+	 * If the last insert hash of the file was calculated with another
+	 * algorithm than the one of the project, the file is hashed with that
+	 * algorithm as well so that it can still be recognized as unchanged.
+	 *
+	 * @param file
+	 *            The file to scan
 	 * @param filename
 	 *            The name of the file, relative to the project path
-	 * @return The hash of the file
+	 * @param attributes
+	 *            The attributes of the file
+	 * @return The scanned file
+	 * @throws InterruptedIOException
+	 *             if the scan is cancelled
 	 */
-	private static String hashFile(String path, String filename) {
-		InputStream fileInputStream = null;
-		DigestOutputStream digestOutputStream = null;
-		File file = new File(path, filename);
+	private ScannedFile scanFile(Path file, String filename, BasicFileAttributes attributes) throws InterruptedIOException {
+		cancellationToken.throwIfCancelled();
+		FileChannel fileChannel = null;
+		long lastModified = attributes.lastModifiedTime().toMillis();
+		HashAlgorithm hashAlgorithm = project.getHashAlgorithm();
+		HashAlgorithm previousHashAlgorithm = HashAlgorithm.getByHash(project.getFileOption(filename).getLastInsertHash());
+		if (hashCache != null) {
+			Optional<ScannedFile> cachedFile = hashCache.get(file, attributes.size(), lastModified);
+			if (cachedFile.isPresent() && cachedFile.get().hasHashes(hashAlgorithm, previousHashAlgorithm)) {
+				return new ScannedFile(filename, cachedFile.get(), -1);
+			}
+		}
+		ContentAnalyzer contentAnalyzer = new ContentAnalyzer();
+		long stageOffset = -1;
+		try {
+			if ((payloadStage != null) && stageFilter.isStageable(filename, attributes.size(), isProbablyModified(file, attributes)) && payloadStage.reserve(attributes.size())) {
+				stageOffset = payloadStage.getLength();
+			}
+		} catch (IOException ioe1) {
+			logger.log(Level.WARNING, "Could not access payload stage!", ioe1);
+		}
 		try {
-			fileInputStream = new FileInputStream(file);
-			digestOutputStream = new DigestOutputStream(new NullOutputStream(), MessageDigest.getInstance("SHA-256"));
-			StreamCopier.copy(fileInputStream, digestOutputStream, file.length());
-			return toHex(digestOutputStream.getMessageDigest().digest());
+			MessageDigest messageDigest = hashAlgorithm.createDigest();
+			MessageDigest previousMessageDigest = ((previousHashAlgorithm != null) && (previousHashAlgorithm != hashAlgorithm)) ? previousHashAlgorithm.createDigest() : null;
+			fileChannel = FileChannel.open(file, StandardOpenOption.READ);
+			long size = fileChannel.size();
+			if (size >= MAP_THRESHOLD) {
+				try {
+					for (long position = 0; position < size; position += MAP_WINDOW_SIZE) {
+						MappedByteBuffer window = fileChannel.map(MapMode.READ_ONLY, position, Math.min(MAP_WINDOW_SIZE, size - position));
+						for (int slicePosition = 0; slicePosition < window.limit(); slicePosition += MAP_SLICE_SIZE) {
+							ByteBuffer slice = window.duplicate();
+							slice.position(slicePosition).limit(Math.min(slicePosition + MAP_SLICE_SIZE, window.limit()));
+							stageOffset = processData(slice, messageDigest, previousMessageDigest, contentAnalyzer, stageOffset);
+						}
+					}
+				} catch (InternalError ie1) {
+					/* the file was truncated while it was mapped. */
+					throw new IOException("File changed while it was read!", ie1);
+				}
+			} else {
+				ByteBuffer buffer = ByteBuffer.allocate(65536);
+				while (fileChannel.read(buffer) != -1) {
+					buffer.flip();
+					stageOffset = processData(buffer, messageDigest, previousMessageDigest, contentAnalyzer, stageOffset);
+					buffer.clear();
+				}
+			}
+			ScannedFile scannedFile = new ScannedFile(filename, messageDigest.digest(), contentAnalyzer.getLength(), lastModified, contentAnalyzer.getMimeType(), contentAnalyzer.getEntropy(), -1);
+			if (previousMessageDigest != null) {
+				scannedFile = scannedFile.withPreviousHash(previousMessageDigest.digest());
+			}
+			if (hashCache != null) {
+				hashCache.put(file, scannedFile);
+			}
+			if ((stageOffset > -1) && !keepFilter.test(scannedFile)) {
+				unstage(stageOffset);
+				stageOffset = -1;
+			}
+			if (stageOffset > -1) {
+				return new ScannedFile(filename, scannedFile, stageOffset);
+			}
+			return scannedFile;
 		} catch (NoSuchAlgorithmException nsae1) {
-			logger.log(Level.WARNING, "Could not get SHA-256 digest!", nsae1);
+			logger.log(Level.WARNING, String.format("Could not get %s digest!", hashAlgorithm.getName()), nsae1);
+		} catch (InterruptedIOException iioe1) {
+			/* the payload stage is deleted with the cancelled insert. */
+			throw iioe1;
 		} catch (IOException ioe1) {
 			logger.log(Level.WARNING, "Could not read file!", ioe1);
 		} finally {
-			Closer.close(digestOutputStream);
-			Closer.close(fileInputStream);
+			Closer.close(fileChannel);
+		}
+		if (stageOffset > -1) {
+			unstage(stageOffset);
 		}
-		return toHex(new byte[32]);
+		return new ScannedFile(filename, new byte[32], attributes.size(), lastModified, null, 0, -1);
 	}
 
 	/**
-	 * Converts the given byte array into a hexadecimal string.
+	 * Returns whether the given file has probably been modified since it was
+	 * last inserted, i.e. whether it has been modified after the last insert
+	 * of the project or after it has last been scanned. The guess is made
+	 * before the file is read; it only decides whether the data of the file
+	 * is written to the payload stage.
 	 *
-	 * @param array
-	 *            The array to convert
-	 * @return The hexadecimal string
+	 * @param file
+	 *            The file
+	 * @param attributes
+	 *            The attributes of the file
+	 * @return {@code true} if the file has probably been modified,
+	 *         {@code false} otherwise
 	 */
-	private static String toHex(byte[] array) {
-		StringBuilder hexString = new StringBuilder(array.length * 2);
-		for (byte b : array) {
-			hexString.append("0123456789abcdef".charAt((b >>> 4) & 0x0f)).append("0123456789abcdef".charAt(b & 0xf));
+	private boolean isProbablyModified(Path file, BasicFileAttributes attributes) {
+		long lastModified = attributes.lastModifiedTime().toMillis();
+		if (lastModified > project.getLastInsertionTime()) {
+			return true;
 		}
-		return hexString.toString();
+		return (hashCache != null) && hashCache.isChanged(file, attributes.size(), lastModified);
+	}
+
+	/**
+	 * Hands the given data to the digests, the content analyzer and, if the
+	 * file is being staged, to the payload stage.
+	 *
+	 * @param data
+	 *            The data
+	 * @param messageDigest
+	 *            The digest of the project’s hash algorithm
+	 * @param previousMessageDigest
+	 *            The digest of the algorithm of the last insert hash, or
+	 *            {@code null}
+	 * @param contentAnalyzer
+	 *            The content analyzer
+	 * @param stageOffset
+	 *            The offset of the file in the payload stage, or {@code -1}
+	 *            if the file is not staged
+	 * @return The offset of the file in the payload stage, or {@code -1} if
+	 *         the file is not (or no longer) staged
+	 * @throws InterruptedIOException
+	 *             if the scan is cancelled
+	 */
+	private long processData(ByteBuffer data, MessageDigest messageDigest, MessageDigest previousMessageDigest, ContentAnalyzer contentAnalyzer, long stageOffset) throws InterruptedIOException {
+		cancellationToken.throwIfCancelled();
+		long newStageOffset = stageOffset;
+		contentAnalyzer.update(data);
+		if (newStageOffset > -1) {
+			try {
+				payloadStage.write(data);
+			} catch (IOException ioe1) {
+				logger.log(Level.WARNING, "Could not write to payload stage!", ioe1);
+				unstage(newStageOffset);
+				newStageOffset = -1;
+			}
+		}
+		if (previousMessageDigest != null) {
+			previousMessageDigest.update(data.duplicate());
+		}
+		messageDigest.update(data);
+		return newStageOffset;
+	}
+
+	/**
+	 * Creates a scanned file for a file whose content has already been
+	 * scanned under another name. If the content has been staged and the file
+	 * would be staged as well, the file refers to the same data in the stage.
+	 *
+	 * @param filename
+	 *            The name of the file
+	 * @param scannedContent
+	 *            The already scanned file with the same content
+	 * @return The scanned file
+	 */
+	private ScannedFile shareContent(String filename, ScannedFile scannedContent) {
+		ScannedFile scannedFile = new ScannedFile(filename, scannedContent, -1);
+		if (scannedContent.isStaged() && stageFilter.isStageable(filename, scannedContent.getSize(), true) && keepFilter.test(scannedFile)) {
+			return new ScannedFile(filename, scannedContent, scannedContent.getStageOffset());
+		}
+		return scannedFile;
+	}
+
+	/**
+	 * Removes all data after the given offset from the payload stage.
+	 *
+	 * @param stageOffset
+	 *            The offset to truncate the stage to
+	 */
+	private void unstage(long stageOffset) {
+		try {
+			payloadStage.truncate(stageOffset);
+		} catch (IOException ioe1) {
+			logger.log(Level.WARNING, "Could not truncate payload stage!", ioe1);
+		}
+	}
+
+	/**
+	 * A single walk over the directory tree of a project. The walk remembers
+	 * the keys of the directories it is currently in to detect loops created
+	 * by symbolic links, and the scanned content of every file key so that
+	 * files with several names (hard links, or symbolic links that are
+	 * followed) are read only once.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	private class TreeWalk {
+
+		/** The real path of the project directory. */
+		private final Path realRootPath;
+
+		/** The list to add found files to. */
+		private final List<ScannedFile> fileList;
+
+		/** The path filter of the project. */
+		private final PathFilter pathFilter = project.getPathFilter();
+
+		/** Whether hidden files are ignored. */
+		private final boolean ignoreHiddenFiles = project.isIgnoreHiddenFiles();
+
+		/** The symbolic link policy of the project. */
+		private final SymlinkPolicy symlinkPolicy = project.getSymlinkPolicy();
+
+		/** The keys of the directories that are currently being walked. */
+		private final Set<Object> activeDirectoryKeys = new HashSet<Object>();
+
+		/** The scanned files, by the key of the file they were read from. */
+		private final Map<Object, ScannedFile> scannedContents = new HashMap<Object, ScannedFile>();
+
+		/**
+		 * Creates a new tree walk.
+		 *
+		 * @param realRootPath
+		 *            The real path of the project directory
+		 * @param fileList
+		 *            The list to add found files to
+		 */
+		public TreeWalk(Path realRootPath, List<ScannedFile> fileList) {
+			this.realRootPath = realRootPath;
+			this.fileList = fileList;
+		}
+
+		/**
+		 * Walks the given directory.
+		 *
+		 * @param directory
+		 *            The directory to walk
+		 * @param namePrefix
+		 *            The name of the directory in the project, including a
+		 *            trailing “/”, or an empty string for the project
+		 *            directory
+		 * @param linkPrefix
+		 *            If not {@code null}, all files in the directory are
+		 *            added as redirects to files whose names start with this
+		 *            prefix
+		 * @throws IOException
+		 *             if a directory can not be read
+		 */
+		public void walk(final Path directory, final String namePrefix, final String linkPrefix) throws IOException {
+			Files.walkFileTree(directory, EnumSet.noneOf(FileVisitOption.class), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+
+				/** The keys of the directories entered by this walk. */
+				private final Deque<Object> directoryKeys = new ArrayDeque<Object>();
+
+				@Override
+				@SuppressWarnings("synthetic-access")
+				public FileVisitResult preVisitDirectory(Path visitedDirectory, BasicFileAttributes attributes) throws IOException {
+					cancellationToken.throwIfCancelled();
+					if (!visitedDirectory.equals(directory)) {
+						if (ignoreHiddenFiles && isHidden(visitedDirectory, attributes)) {
+							return FileVisitResult.SKIP_SUBTREE;
+						}
+						if (!pathFilter.acceptsDirectory(namePrefix + getFilename(directory, visitedDirectory))) {
+							return FileVisitResult.SKIP_SUBTREE;
+						}
+					}
+					Object directoryKey = getDirectoryKey(visitedDirectory, attributes);
+					if (!activeDirectoryKeys.add(directoryKey)) {
+						logger.log(Level.WARNING, String.format("Skipping %s, it would create a loop.", visitedDirectory));
+						return FileVisitResult.SKIP_SUBTREE;
+					}
+					directoryKeys.push(directoryKey);
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				@SuppressWarnings("synthetic-access")
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+					if (ignoreHiddenFiles && isHidden(file, attributes)) {
+						return FileVisitResult.CONTINUE;
+					}
+					String relativeName = getFilename(directory, file);
+					String filename = namePrefix + relativeName;
+					if (attributes.isSymbolicLink()) {
+						visitLink(file, filename, linkPrefix);
+					} else if (attributes.isRegularFile()) {
+						if (linkPrefix != null) {
+							addLink(filename, linkPrefix + relativeName, attributes);
+						} else {
+							addFile(file, filename, attributes);
+						}
+					}
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFileFailed(Path file, IOException exception) throws IOException {
+					throw new IOException(I18n.getMessage("jsite.file-scanner.can-not-read-directory"), exception);
+				}
+
+				@Override
+				@SuppressWarnings("synthetic-access")
+				public FileVisitResult postVisitDirectory(Path visitedDirectory, IOException exception) throws IOException {
+					activeDirectoryKeys.remove(directoryKeys.pop());
+					if (exception != null) {
+						throw new IOException(I18n.getMessage("jsite.file-scanner.can-not-read-directory"), exception);
+					}
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		}
+
+		/**
+		 * Handles a symbolic link according to the symbolic link policy of
+		 * the project.
+		 *
+		 * @param link
+		 *            The symbolic link
+		 * @param filename
+		 *            The name of the link in the project
+		 * @param linkPrefix
+		 *            The link prefix of the directory containing the link, or
+		 *            {@code null}
+		 * @throws IOException
+		 *             if a directory can not be read
+		 */
+		private void visitLink(Path link, String filename, String linkPrefix) throws IOException {
+			if (symlinkPolicy == SymlinkPolicy.SKIP) {
+				return;
+			}
+			Path target;
+			BasicFileAttributes targetAttributes;
+			try {
+				target = link.toRealPath();
+				targetAttributes = Files.readAttributes(target, BasicFileAttributes.class);
+			} catch (IOException ioe1) {
+				logger.log(Level.WARNING, String.format("Skipping %s, its target can not be read.", link), ioe1);
+				return;
+			}
+			String targetName = null;
+			if ((symlinkPolicy == SymlinkPolicy.REDIRECT) && target.startsWith(realRootPath) && !target.equals(realRootPath)) {
+				targetName = getFilename(realRootPath, target);
+			}
+			if (targetAttributes.isDirectory()) {
+				if (!pathFilter.acceptsDirectory(filename)) {
+					return;
+				}
+				walk(target, filename + "/", (targetName != null) ? (targetName + "/") : ((linkPrefix != null) ? (linkPrefix + getFilename(link.getParent(), link) + "/") : null));
+			} else if (targetAttributes.isRegularFile()) {
+				if ((targetName != null) && pathFilter.acceptsFile(targetName)) {
+					addLink(filename, targetName, targetAttributes);
+				} else {
+					addFile(target, filename, targetAttributes);
+				}
+			}
+		}
+
+		/**
+		 * Adds a file that is inserted as a redirect to another file of the
+		 * project.
+		 *
+		 * @param filename
+		 *            The name of the file
+		 * @param targetName
+		 *            The name of the file to redirect to
+		 * @param attributes
+		 *            The attributes of the target
+		 */
+		@SuppressWarnings("synthetic-access")
+		private void addLink(String filename, String targetName, BasicFileAttributes attributes) {
+			if (!pathFilter.acceptsFile(filename)) {
+				return;
+			}
+			fileList.add(new ScannedFile(filename, targetName, attributes.lastModifiedTime().toMillis()));
+			lastFilename = filename;
+		}
+
+		/**
+		 * Scans a file and adds it to the list of files. If a file with the
+		 * same key has already been scanned, its results are reused.
+		 *
+		 * @param file
+		 *            The file to scan
+		 * @param filename
+		 *            The name of the file in the project
+		 * @param attributes
+		 *            The attributes of the file
+		 * @throws InterruptedIOException
+		 *             if the scan is cancelled
+		 */
+		@SuppressWarnings("synthetic-access")
+		private void addFile(Path file, String filename, BasicFileAttributes attributes) throws InterruptedIOException {
+			if (!pathFilter.acceptsFile(filename)) {
+				return;
+			}
+			Object fileKey = attributes.fileKey();
+			ScannedFile scannedContent = (fileKey != null) ? scannedContents.get(fileKey) : null;
+			ScannedFile scannedFile;
+			if ((scannedContent != null) && (scannedContent.getSize() == attributes.size()) && (scannedContent.getLastModified() == attributes.lastModifiedTime().toMillis())) {
+				scannedFile = shareContent(filename, scannedContent);
+			} else {
+				scannedFile = scanFile(file, filename, attributes);
+				if (fileKey != null) {
+					scannedContents.put(fileKey, scannedFile);
+				}
+			}
+			fileList.add(scannedFile);
+			lastFilename = filename;
+		}
+
+		/**
+		 * Returns the key of the given directory.
+		 *
+		 * @param directory
+		 *            The directory
+		 * @param attributes
+		 *            The attributes of the directory
+		 * @return The key of the directory
+		 */
+		private Object getDirectoryKey(Path directory, BasicFileAttributes attributes) {
+			if (attributes.fileKey() != null) {
+				return attributes.fileKey();
+			}
+			try {
+				return directory.toRealPath();
+			} catch (IOException ioe1) {
+				return directory.toAbsolutePath().normalize();
+			}
+		}
+
+	}
+
+	/**
+	 * Decides which files are written to the payload stage while they are
+	 * hashed.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	public interface StageFilter {
+
+		/**
+		 * Returns whether the data of the given file should be written to
+		 * the payload stage.
+		 *
+		 * @param filename
+		 *            The name of the file
+		 * @param size
+		 *            The size of the file
+		 * @param probablyModified
+		 *            {@code true} if the file has probably been modified
+		 *            since it was last inserted, {@code false} otherwise
+		 * @return {@code true} if the file should be staged, {@code false}
+		 *         otherwise
+		 */
+		boolean isStageable(String filename, long size, boolean probablyModified);
+
 	}
 
 }
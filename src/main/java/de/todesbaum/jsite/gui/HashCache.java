@@ -0,0 +1,139 @@
+/*
+ * jSite - HashCache.java - Copyright © 2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+
+package de.todesbaum.jsite.gui;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Remembers the results of scanning files so that a file whose size and
+ * modification time have not changed does not have to be read again. A cache
+ * can be shared by several {@link FileScanner}s, e.g. by the plan and the
+ * insert of a project. Only the least recently used
+ * {@link #DEFAULT_MAX_ENTRIES} files are remembered.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class HashCache {
+
+	/** The default maximum number of remembered files. */
+	public static final int DEFAULT_MAX_ENTRIES = 100000;
+
+	/** The scanned files, by absolute path. */
+	private final Map<Path, ScannedFile> scannedFiles;
+
+	/**
+	 * Creates a new hash cache that remembers at most
+	 * {@value #DEFAULT_MAX_ENTRIES} files.
+	 */
+	public HashCache() {
+		this(DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * Creates a new hash cache.
+	 *
+	 * @param maxEntries
+	 *            The maximum number of remembered files
+	 */
+	@SuppressWarnings("serial")
+	public HashCache(final int maxEntries) {
+		scannedFiles = new LinkedHashMap<Path, ScannedFile>(16, 0.75f, true) {
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Path, ScannedFile> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the number of remembered files.
+	 *
+	 * @return The number of remembered files
+	 */
+	public synchronized int size() {
+		return scannedFiles.size();
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Returns the remembered scan of the given file if the file still has
+	 * the given size and modification time.
+	 *
+	 * @param file
+	 *            The file
+	 * @param size
+	 *            The current size of the file
+	 * @param lastModified
+	 *            The current modification time of the file, in milliseconds
+	 *            since the epoch
+	 * @return The remembered scan of the file, or an empty optional if the
+	 *         file is not remembered or has changed
+	 */
+	public synchronized Optional<ScannedFile> get(Path file, long size, long lastModified) {
+		ScannedFile scannedFile = scannedFiles.get(file.toAbsolutePath().normalize());
+		if ((scannedFile == null) || (scannedFile.getSize() != size) || (scannedFile.getLastModified() != lastModified)) {
+			return Optional.empty();
+		}
+		return Optional.of(scannedFile);
+	}
+
+	/**
+	 * Returns whether the given file has been scanned before and has changed
+	 * its size or modification time since.
+	 *
+	 * @param file
+	 *            The file
+	 * @param size
+	 *            The current size of the file
+	 * @param lastModified
+	 *            The current modification time of the file, in milliseconds
+	 *            since the epoch
+	 * @return {@code true} if the file is remembered and has changed,
+	 *         {@code false} otherwise
+	 */
+	public synchronized boolean isChanged(Path file, long size, long lastModified) {
+		ScannedFile scannedFile = scannedFiles.get(file.toAbsolutePath().normalize());
+		return (scannedFile != null) && ((scannedFile.getSize() != size) || (scannedFile.getLastModified() != lastModified));
+	}
+
+	/**
+	 * Remembers the scan of the given file.
+	 *
+	 * @param file
+	 *            The file
+	 * @param scannedFile
+	 *            The scan of the file
+	 */
+	public synchronized void put(Path file, ScannedFile scannedFile) {
+		scannedFiles.put(file.toAbsolutePath().normalize(), scannedFile);
+	}
+
+}
@@ -58,7 +58,7 @@ import javax.swing.KeyStroke;
 import javax.swing.SwingConstants;
 
 import net.pterodactylus.util.swing.ComboBoxModelList;
-import de.todesbaum.jsite.application.Freenet7Interface;
+import de.todesbaum.jsite.application.KeyPairPool;
 import de.todesbaum.jsite.application.Project;
 import de.todesbaum.jsite.i18n.I18n;
 import de.todesbaum.jsite.i18n.I18nContainer;
@@ -71,8 +71,8 @@ import de.todesbaum.util.freenet.fcp2.wot.OwnIdentity;
  */
 public class KeyDialog extends JDialog {
 
-	/** Interface to the freenet node. */
-	private final Freenet7Interface freenetInterface;
+	/** The pool to take generated key pairs from. */
+	private final KeyPairPool keyPairPool;
 
 	/** The public key. */
 	private String publicKey;
@@ -119,14 +119,14 @@ public class KeyDialog extends JDialog {
 	/**
 	 * Creates a new key dialog.
 	 *
-	 * @param freenetInterface
-	 *            Interface to the freenet node
+	 * @param keyPairPool
+	 *            The pool to take generated key pairs from
 	 * @param parent
 	 *            The parent frame
 	 */
-	public KeyDialog(Freenet7Interface freenetInterface, JFrame parent) {
+	public KeyDialog(KeyPairPool keyPairPool, JFrame parent) {
 		super(parent, I18n.getMessage("jsite.key-dialog.title"), true);
-		this.freenetInterface = freenetInterface;
+		this.keyPairPool = keyPairPool;
 		addWindowListener(new WindowAdapter() {
 
 			@Override
@@ -489,7 +489,7 @@ public class KeyDialog extends JDialog {
 		}
 		String[] keyPair = null;
 		try {
-			keyPair = freenetInterface.generateKeyPair();
+			keyPair = keyPairPool.getKeyPair();
 		} catch (IOException ioe1) {
 			JOptionPane.showMessageDialog(this, MessageFormat.format(I18n.getMessage("jsite.project.keygen.io-error"), ioe1.getMessage()), null, JOptionPane.ERROR_MESSAGE);
 			return;
@@ -75,6 +75,9 @@ public class PreferencesPage extends TWizardPage {
 	/** Action when a priority was selected. */
 	private Action priorityAction;
 
+	/** Action when selecting “insert large files separately.” */
+	private Action insertFilesSeparatelyAction;
+
 	/** The text field containing the directory. */
 	private JTextField tempDirectoryTextField;
 
@@ -90,6 +93,9 @@ public class PreferencesPage extends TWizardPage {
 	/** The prioriy for inserts. */
 	private PriorityClass priority;
 
+	/** Whether to insert large files separately. */
+	private boolean insertFilesSeparately;
+
 	/** The “default” button. */
 	private JRadioButton defaultTempDirectory;
 
@@ -111,6 +117,9 @@ public class PreferencesPage extends TWizardPage {
 	/** The insert priority select box. */
 	private JComboBox insertPriorityComboBox;
 
+	/** The “insert large files separately” checkbox. */
+	private JCheckBox insertFilesSeparatelyCheckBox;
+
 	/**
 	 * Creates a new “preferences” page.
 	 *
@@ -242,6 +251,28 @@ public class PreferencesPage extends TWizardPage {
 		useEarlyEncodeCheckBox.setSelected(useEarlyEncode);
 	}
 
+	/**
+	 * Returns whether large files should be inserted separately.
+	 *
+	 * @return {@code true} to insert large files separately, {@code false}
+	 *         to insert all files in a single request
+	 */
+	public boolean insertFilesSeparately() {
+		return insertFilesSeparately;
+	}
+
+	/**
+	 * Sets whether large files should be inserted separately.
+	 *
+	 * @param insertFilesSeparately
+	 *            {@code true} to insert large files separately, {@code false}
+	 *            to insert all files in a single request
+	 */
+	public void setInsertFilesSeparately(boolean insertFilesSeparately) {
+		this.insertFilesSeparately = insertFilesSeparately;
+		insertFilesSeparatelyCheckBox.setSelected(insertFilesSeparately);
+	}
+
 	/**
 	 * Returns the configured insert priority.
 	 *
@@ -360,6 +391,14 @@ public class PreferencesPage extends TWizardPage {
 				priority = (PriorityClass) insertPriorityComboBox.getSelectedItem();
 			}
 		};
+		insertFilesSeparatelyAction = new AbstractAction(I18n.getMessage("jsite.preferences.insert-options.insert-files-separately")) {
+
+			@Override
+			@SuppressWarnings("synthetic-access")
+			public void actionPerformed(ActionEvent actionEvent) {
+				insertFilesSeparately = insertFilesSeparatelyCheckBox.isSelected();
+			}
+		};
 
 		I18nContainer.getInstance().registerRunnable(new Runnable() {
 
@@ -373,6 +412,7 @@ public class PreferencesPage extends TWizardPage {
 				homeDirectoryAction.putValue(Action.NAME, I18n.getMessage("jsite.preferences.config-directory.home"));
 				customDirectoryAction.putValue(Action.NAME, I18n.getMessage("jsite.preferences.config-directory.custom"));
 				useEarlyEncodeAction.putValue(Action.NAME, I18n.getMessage("jsite.preferences.insert-options.use-early-encode"));
+				insertFilesSeparatelyAction.putValue(Action.NAME, I18n.getMessage("jsite.preferences.insert-options.insert-files-separately"));
 			}
 		});
 	}
@@ -443,6 +483,9 @@ public class PreferencesPage extends TWizardPage {
 		insertPriorityComboBox.setAction(priorityAction);
 		preferencesPanel.add(insertPriorityComboBox, new GridBagConstraints(1, 9, 2, 1, 1.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.HORIZONTAL, new Insets(0, 18, 0, 0), 0, 0));
 
+		insertFilesSeparatelyCheckBox = new JCheckBox(insertFilesSeparatelyAction);
+		preferencesPanel.add(insertFilesSeparatelyCheckBox, new GridBagConstraints(0, 10, 3, 1, 1.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.NONE, new Insets(6, 18, 0, 0), 0, 0));
+
 		I18nContainer.getInstance().registerRunnable(new Runnable() {
 
 			/**
@@ -21,7 +21,9 @@ package de.todesbaum.jsite.gui;
 import static java.util.Optional.ofNullable;
 
 import java.awt.BorderLayout;
+import java.awt.Component;
 import java.awt.Dimension;
+import java.awt.FlowLayout;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.Insets;
@@ -31,15 +33,17 @@ import java.awt.event.KeyEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
-import java.util.Set;
 import java.util.function.Consumer;
 import javax.swing.AbstractAction;
 import javax.swing.Action;
 import javax.swing.BorderFactory;
+import javax.swing.DefaultListCellRenderer;
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
@@ -51,10 +55,12 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
+import javax.swing.JTable;
 import javax.swing.JTextField;
 import javax.swing.ListSelectionModel;
 import javax.swing.SwingConstants;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.WindowConstants;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
@@ -66,10 +72,12 @@ import javax.swing.text.JTextComponent;
 
 import net.pterodactylus.util.io.MimeTypes;
 import net.pterodactylus.util.swing.SwingUtils;
-import net.pterodactylus.util.thread.StoppableDelay;
 
 import de.todesbaum.jsite.application.FileOption;
+import de.todesbaum.jsite.application.InsertPlan;
+import de.todesbaum.jsite.application.InsertPlanner;
 import de.todesbaum.jsite.application.Project;
+import de.todesbaum.jsite.application.SymlinkPolicy;
 import de.todesbaum.jsite.i18n.I18n;
 import de.todesbaum.jsite.i18n.I18nContainer;
 import de.todesbaum.util.swing.TLabel;
@@ -89,14 +97,32 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 	/** The “scan files” action. */
 	private Action scanAction;
 
+	/** The “plan insert” action. */
+	private Action planAction;
+
+	/** The planner for the “plan insert” action. */
+	private InsertPlanner insertPlanner = new InsertPlanner();
+
+	/** The files found by the last scan. */
+	private List<ScannedFile> scannedFiles = Collections.emptyList();
+
 	/** The “always force insert” checkbox. */
 	private JCheckBox alwaysForceInsertCheckBox;
 
 	/** The “ignore hidden files” checkbox. */
 	private JCheckBox ignoreHiddenFilesCheckBox;
 
-	/** The list of project files. */
-	private JList projectFileList;
+	/** The combo box for the symbolic link policy. */
+	private JComboBox symlinkPolicyComboBox;
+
+	/** The table of project files. */
+	private JTable projectFileTable;
+
+	/** The model of the project file table. */
+	private final ProjectFilesTableModel projectFilesTableModel = new ProjectFilesTableModel();
+
+	/** The text field for searching files. */
+	private JTextField searchTextField;
 
 	/** The “default file” checkbox. */
 	private JCheckBox defaultFileCheckBox;
@@ -122,8 +148,14 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 	/** The “mime type” combo box. */
 	private JComboBox fileOptionsMIMETypeComboBox;
 
-	/** Delayed notification for file scanning. */
-	private StoppableDelay delayedNotification;
+	/** Shows the scanning dialog if scanning takes a while. */
+	private Timer scanningFilesDialogTimer;
+
+	/** Shows the name of the last scanned file while scanning. */
+	private Timer progressTimer;
+
+	/** Whether files are being scanned; only accessed on the event thread. */
+	private boolean scanning;
 
 	/** Dialog to display while scanning. */
 	private JDialog scanningFilesDialog;
@@ -169,6 +201,18 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 		scanAction.putValue(Action.MNEMONIC_KEY, KeyEvent.VK_S);
 		scanAction.putValue(Action.SHORT_DESCRIPTION, I18n.getMessage("jsite.project-files.action.rescan.tooltip"));
 
+		planAction = new AbstractAction(I18n.getMessage("jsite.project-files.action.plan")) {
+
+			@Override
+			@SuppressWarnings("synthetic-access")
+			public void actionPerformed(ActionEvent actionEvent) {
+				actionPlan();
+			}
+		};
+		planAction.putValue(Action.MNEMONIC_KEY, KeyEvent.VK_P);
+		planAction.putValue(Action.SHORT_DESCRIPTION, I18n.getMessage("jsite.project-files.action.plan.tooltip"));
+		planAction.setEnabled(false);
+
 		I18nContainer.getInstance().registerRunnable(new Runnable() {
 
 			@Override
@@ -176,6 +220,8 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 			public void run() {
 				scanAction.putValue(Action.NAME, I18n.getMessage("jsite.project-files.action.rescan"));
 				scanAction.putValue(Action.SHORT_DESCRIPTION, I18n.getMessage("jsite.project-files.action.rescan.tooltip"));
+				planAction.putValue(Action.NAME, I18n.getMessage("jsite.project-files.action.plan"));
+				planAction.putValue(Action.SHORT_DESCRIPTION, I18n.getMessage("jsite.project-files.action.plan.tooltip"));
 			}
 		});
 	}
@@ -202,12 +248,24 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 	private JComponent createProjectFilesPanel() {
 		JPanel projectFilesPanel = new JPanel(new BorderLayout(12, 12));
 
-		projectFileList = new JList();
-		projectFileList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
-		projectFileList.setMinimumSize(new Dimension(250, projectFileList.getPreferredSize().height));
-		projectFileList.addListSelectionListener(this);
-
-		projectFilesPanel.add(new JScrollPane(projectFileList), BorderLayout.CENTER);
+		projectFileTable = new JTable(projectFilesTableModel);
+		projectFileTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		projectFileTable.setFillsViewportHeight(true);
+		projectFileTable.setMinimumSize(new Dimension(250, projectFileTable.getPreferredSize().height));
+		projectFileTable.getColumnModel().getColumn(ProjectFilesTableModel.COLUMN_NAME).setPreferredWidth(400);
+		projectFileTable.getSelectionModel().addListSelectionListener(this);
+
+		JPanel fileListPanel = new JPanel(new BorderLayout(6, 6));
+		projectFilesPanel.add(fileListPanel, BorderLayout.CENTER);
+		fileListPanel.add(new JScrollPane(projectFileTable), BorderLayout.CENTER);
+
+		searchTextField = new JTextField();
+		searchTextField.getDocument().addDocumentListener(new StoreDocument(this::updateSearchText));
+		JPanel searchPanel = new JPanel(new BorderLayout(6, 6));
+		final TLabel searchLabel = new TLabel(I18n.getMessage("jsite.project-files.search") + ":", KeyEvent.VK_E, searchTextField);
+		searchPanel.add(searchLabel, BorderLayout.LINE_START);
+		searchPanel.add(searchTextField, BorderLayout.CENTER);
+		fileListPanel.add(searchPanel, BorderLayout.PAGE_START);
 
 		JPanel fileOptionsAlignmentPanel = new JPanel(new BorderLayout(12, 12));
 		projectFilesPanel.add(fileOptionsAlignmentPanel, BorderLayout.PAGE_END);
@@ -226,10 +284,29 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 		ignoreHiddenFilesCheckBox.addActionListener(this);
 		fileOptionsPanel.add(ignoreHiddenFilesCheckBox, new GridBagConstraints(0, 1, 5, 1, 1.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.NONE, new Insets(0, 0, 0, 0), 0, 0));
 
-		fileOptionsPanel.add(new JButton(scanAction), new GridBagConstraints(0, 2, 5, 1, 1.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.NONE, new Insets(6, 0, 0, 0), 0, 0));
+		symlinkPolicyComboBox = new JComboBox(SymlinkPolicy.values());
+		symlinkPolicyComboBox.setToolTipText(I18n.getMessage("jsite.project-files.symlink-policy.tooltip"));
+		symlinkPolicyComboBox.setName("symlink-policy");
+		symlinkPolicyComboBox.setRenderer(new DefaultListCellRenderer() {
+
+			@Override
+			public Component getListCellRendererComponent(JList list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+				String text = (value != null) ? I18n.getMessage("jsite.project-files.symlink-policy." + ((SymlinkPolicy) value).name().toLowerCase(Locale.ENGLISH)) : "";
+				return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+			}
+		});
+		symlinkPolicyComboBox.addActionListener(this);
+		final TLabel symlinkPolicyLabel = new TLabel(I18n.getMessage("jsite.project-files.symlink-policy") + ":", KeyEvent.VK_L, symlinkPolicyComboBox);
+		fileOptionsPanel.add(symlinkPolicyLabel, new GridBagConstraints(0, 2, 1, 1, 0.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.NONE, new Insets(6, 0, 0, 0), 0, 0));
+		fileOptionsPanel.add(symlinkPolicyComboBox, new GridBagConstraints(1, 2, 4, 1, 0.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.NONE, new Insets(6, 6, 0, 0), 0, 0));
+
+		JPanel scanButtonPanel = new JPanel(new FlowLayout(FlowLayout.LEADING, 6, 0));
+		scanButtonPanel.add(new JButton(scanAction));
+		scanButtonPanel.add(new JButton(planAction));
+		fileOptionsPanel.add(scanButtonPanel, new GridBagConstraints(0, 3, 5, 1, 1.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.NONE, new Insets(6, -6, 0, 0), 0, 0));
 
 		final JLabel fileOptionsLabel = new JLabel("<html><b>" + I18n.getMessage("jsite.project-files.file-options") + "</b></html>");
-		fileOptionsPanel.add(fileOptionsLabel, new GridBagConstraints(0, 3, 5, 1, 1.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.NONE, new Insets(6, 0, 0, 0), 0, 0));
+		fileOptionsPanel.add(fileOptionsLabel, new GridBagConstraints(0, 4, 5, 1, 1.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.NONE, new Insets(6, 0, 0, 0), 0, 0));
 
 		defaultFileCheckBox = new JCheckBox(I18n.getMessage("jsite.project-files.default"));
 		defaultFileCheckBox.setToolTipText(I18n.getMessage("jsite.project-files.default.tooltip"));
@@ -237,7 +314,7 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 		defaultFileCheckBox.addActionListener(this);
 		defaultFileCheckBox.setEnabled(false);
 
-		fileOptionsPanel.add(defaultFileCheckBox, new GridBagConstraints(0, 4, 5, 1, 0.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.HORIZONTAL, new Insets(6, 18, 0, 0), 0, 0));
+		fileOptionsPanel.add(defaultFileCheckBox, new GridBagConstraints(0, 5, 5, 1, 0.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.HORIZONTAL, new Insets(6, 18, 0, 0), 0, 0));
 
 		fileOptionsInsertCheckBox = new JCheckBox(I18n.getMessage("jsite.project-files.insert"), true);
 		fileOptionsInsertCheckBox.setToolTipText(I18n.getMessage("jsite.project-files.insert.tooltip"));
@@ -246,7 +323,7 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 		fileOptionsInsertCheckBox.addActionListener(this);
 		fileOptionsInsertCheckBox.setEnabled(false);
 
-		fileOptionsPanel.add(fileOptionsInsertCheckBox, new GridBagConstraints(0, 5, 5, 1, 0.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.NONE, new Insets(6, 18, 0, 0), 0, 0));
+		fileOptionsPanel.add(fileOptionsInsertCheckBox, new GridBagConstraints(0, 6, 5, 1, 0.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.NONE, new Insets(6, 18, 0, 0), 0, 0));
 
 		fileOptionsForceInsertCheckBox = new JCheckBox(I18n.getMessage("jsite.project-files.force-insert"));
 		fileOptionsForceInsertCheckBox.setToolTipText(I18n.getMessage("jsite.project-files.force-insert.tooltip"));
@@ -255,7 +332,7 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 		fileOptionsForceInsertCheckBox.addActionListener(this);
 		fileOptionsForceInsertCheckBox.setEnabled(false);
 
-		fileOptionsPanel.add(fileOptionsForceInsertCheckBox, new GridBagConstraints(0, 6, 5, 1, 0.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.NONE, new Insets(6, 18, 0, 0), 0, 0));
+		fileOptionsPanel.add(fileOptionsForceInsertCheckBox, new GridBagConstraints(0, 7, 5, 1, 0.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.NONE, new Insets(6, 18, 0, 0), 0, 0));
 
 		fileOptionsCustomKeyTextField = new JTextField(45);
 		fileOptionsCustomKeyTextField.setToolTipText(I18n.getMessage("jsite.project-files.custom-key.tooltip"));
@@ -270,9 +347,9 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 		fileOptionsInsertRedirectCheckBox.setEnabled(false);
 
 		final TLabel customKeyLabel = new TLabel(I18n.getMessage("jsite.project-files.custom-key") + ":", KeyEvent.VK_K, fileOptionsCustomKeyTextField);
-		fileOptionsPanel.add(fileOptionsInsertRedirectCheckBox, new GridBagConstraints(0, 7, 1, 1, 0.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.NONE, new Insets(6, 18, 0, 0), 0, 0));
-		fileOptionsPanel.add(customKeyLabel, new GridBagConstraints(1, 7, 1, 1, 0.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.NONE, new Insets(6, 6, 0, 0), 0, 0));
-		fileOptionsPanel.add(fileOptionsCustomKeyTextField, new GridBagConstraints(2, 7, 3, 1, 1.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.HORIZONTAL, new Insets(6, 6, 0, 0), 0, 0));
+		fileOptionsPanel.add(fileOptionsInsertRedirectCheckBox, new GridBagConstraints(0, 8, 1, 1, 0.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.NONE, new Insets(6, 18, 0, 0), 0, 0));
+		fileOptionsPanel.add(customKeyLabel, new GridBagConstraints(1, 8, 1, 1, 0.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.NONE, new Insets(6, 6, 0, 0), 0, 0));
+		fileOptionsPanel.add(fileOptionsCustomKeyTextField, new GridBagConstraints(2, 8, 3, 1, 1.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.HORIZONTAL, new Insets(6, 6, 0, 0), 0, 0));
 
 		fileOptionsRenameCheckBox = new JCheckBox(I18n.getMessage("jsite.project-files.rename"), false);
 		fileOptionsRenameCheckBox.setToolTipText(I18n.getMessage("jsite.project-files.rename.tooltip"));
@@ -285,8 +362,8 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 		fileOptionsRenameTextField.setEnabled(false);
 		fileOptionsRenameTextField.getDocument().addDocumentListener(new StoreDocument(this::updateChangedName));
 
-		fileOptionsPanel.add(fileOptionsRenameCheckBox, new GridBagConstraints(0, 8, 2, 1, 0.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.NONE, new Insets(6, 18, 0, 0), 0, 0));
-		fileOptionsPanel.add(fileOptionsRenameTextField, new GridBagConstraints(2, 8, 3, 1, 1.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.HORIZONTAL, new Insets(6, 6, 0, 0), 0, 0));
+		fileOptionsPanel.add(fileOptionsRenameCheckBox, new GridBagConstraints(0, 9, 2, 1, 0.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.NONE, new Insets(6, 18, 0, 0), 0, 0));
+		fileOptionsPanel.add(fileOptionsRenameTextField, new GridBagConstraints(2, 9, 3, 1, 1.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.HORIZONTAL, new Insets(6, 6, 0, 0), 0, 0));
 
 		fileOptionsMIMETypeComboBox = new JComboBox(MimeTypes.getAllMimeTypes().toArray());
 		fileOptionsMIMETypeComboBox.setToolTipText(I18n.getMessage("jsite.project-files.mime-type.tooltip"));
@@ -299,8 +376,8 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 				.addDocumentListener(new StoreDocument(this::updateMimeType));
 
 		final TLabel mimeTypeLabel = new TLabel(I18n.getMessage("jsite.project-files.mime-type") + ":", KeyEvent.VK_M, fileOptionsMIMETypeComboBox);
-		fileOptionsPanel.add(mimeTypeLabel, new GridBagConstraints(0, 9, 1, 1, 0.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.NONE, new Insets(6, 18, 0, 0), 0, 0));
-		fileOptionsPanel.add(fileOptionsMIMETypeComboBox, new GridBagConstraints(1, 9, 4, 1, 1.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.HORIZONTAL, new Insets(6, 6, 0, 0), 0, 0));
+		fileOptionsPanel.add(mimeTypeLabel, new GridBagConstraints(0, 10, 1, 1, 0.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.NONE, new Insets(6, 18, 0, 0), 0, 0));
+		fileOptionsPanel.add(fileOptionsMIMETypeComboBox, new GridBagConstraints(1, 10, 4, 1, 1.0, 0.0, GridBagConstraints.LINE_START, GridBagConstraints.HORIZONTAL, new Insets(6, 6, 0, 0), 0, 0));
 
 		/* create dialog to show while scanning. */
 		scanningFilesDialog = new JDialog(wizard);
@@ -341,6 +418,9 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 				alwaysForceInsertCheckBox.setToolTipText(I18n.getMessage("jsite.project-files.always-force-insert.tooltip"));
 				ignoreHiddenFilesCheckBox.setText(I18n.getMessage("jsite.project-files.ignore-hidden-files"));
 				ignoreHiddenFilesCheckBox.setToolTipText(I18n.getMessage("jsite.projet-files.ignore-hidden-files.tooltip"));
+				symlinkPolicyLabel.setText(I18n.getMessage("jsite.project-files.symlink-policy") + ":");
+				symlinkPolicyComboBox.setToolTipText(I18n.getMessage("jsite.project-files.symlink-policy.tooltip"));
+				symlinkPolicyComboBox.repaint();
 				fileOptionsLabel.setText("<html><b>" + I18n.getMessage("jsite.project-files.file-options") + "</b></html>");
 				defaultFileCheckBox.setText(I18n.getMessage("jsite.project-files.default"));
 				defaultFileCheckBox.setToolTipText(I18n.getMessage("jsite.project-files.default.tooltip"));
@@ -357,6 +437,9 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 				fileOptionsMIMETypeComboBox.setToolTipText(I18n.getMessage("jsite.project-files.mime-type.tooltip"));
 				mimeTypeLabel.setText(I18n.getMessage("jsite.project-files.mime-type") + ":");
 				scanningLabel.setText(I18n.getMessage("jsite.project-files.scanning"));
+				searchLabel.setText(I18n.getMessage("jsite.project-files.search") + ":");
+				projectFilesTableModel.fireTableStructureChanged();
+				projectFileTable.getColumnModel().getColumn(ProjectFilesTableModel.COLUMN_NAME).setPreferredWidth(400);
 			}
 		});
 
@@ -374,6 +457,9 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 		setHeading(MessageFormat.format(I18n.getMessage("jsite.project-files.heading"), project.getName()));
 		setDescription(I18n.getMessage("jsite.project-files.description"));
 		ignoreHiddenFilesCheckBox.setSelected(project.isIgnoreHiddenFiles());
+		symlinkPolicyComboBox.removeActionListener(this);
+		symlinkPolicyComboBox.setSelectedItem(project.getSymlinkPolicy());
+		symlinkPolicyComboBox.addActionListener(this);
 		alwaysForceInsertCheckBox.setSelected(project.isAlwaysForceInsert());
 		I18nContainer.getInstance().registerRunnable(new Runnable() {
 
@@ -385,56 +471,82 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 		});
 	}
 
+	/**
+	 * Sets the planner that is used to show what an insert of the project
+	 * would do.
+	 *
+	 * @param insertPlanner
+	 *            The insert planner
+	 */
+	public void setInsertPlanner(InsertPlanner insertPlanner) {
+		this.insertPlanner = insertPlanner;
+	}
+
 	//
 	// ACTIONS
 	//
 
+	/**
+	 * Shows what an insert of the project would do with the files found by
+	 * the last scan.
+	 */
+	private void actionPlan() {
+		InsertPlan insertPlan = insertPlanner.plan(project, scannedFiles);
+		StringBuilder planText = new StringBuilder("<html>");
+		planText.append(MessageFormat.format(I18n.getMessage("jsite.project-files.plan.payload"), insertPlan.getFileCount(InsertPlan.Action.PAYLOAD), insertPlan.getSize(InsertPlan.Action.PAYLOAD))).append("<br>");
+		planText.append(MessageFormat.format(I18n.getMessage("jsite.project-files.plan.separate"), insertPlan.getFileCount(InsertPlan.Action.SEPARATE), insertPlan.getSize(InsertPlan.Action.SEPARATE))).append("<br>");
+		planText.append(MessageFormat.format(I18n.getMessage("jsite.project-files.plan.unchanged"), insertPlan.getFileCount(InsertPlan.Action.REDIRECT_UNCHANGED), insertPlan.getSize(InsertPlan.Action.REDIRECT_UNCHANGED))).append("<br>");
+		planText.append(MessageFormat.format(I18n.getMessage("jsite.project-files.plan.redirect"), insertPlan.getFileCount(InsertPlan.Action.REDIRECT_CUSTOM_KEY) + insertPlan.getFileCount(InsertPlan.Action.REDIRECT_LINK))).append("<br>");
+		planText.append(MessageFormat.format(I18n.getMessage("jsite.project-files.plan.skipped"), insertPlan.getFileCount(InsertPlan.Action.SKIP))).append("<br><br>");
+		planText.append(MessageFormat.format(I18n.getMessage("jsite.project-files.plan.upload-size"), insertPlan.getUploadSize())).append("<br>");
+		planText.append(MessageFormat.format(I18n.getMessage("jsite.project-files.plan.blocks"), insertPlan.getBlockCount())).append("<br>");
+		long estimatedDuration = insertPlan.getEstimatedDuration();
+		String duration = (estimatedDuration < 0) ? I18n.getMessage("jsite.project-files.plan.duration.unknown") : String.format("%d:%02d:%02d", estimatedDuration / 3600000, (estimatedDuration / 60000) % 60, (estimatedDuration / 1000) % 60);
+		planText.append(MessageFormat.format(I18n.getMessage("jsite.project-files.plan.duration"), duration)).append("<br><br>");
+		planText.append("<b>").append(I18n.getMessage(insertPlan.isInsertNeeded() ? "jsite.project-files.plan.insert-needed" : "jsite.project-files.plan.insert-not-needed")).append("</b></html>");
+		JOptionPane.showMessageDialog(wizard, planText.toString(), I18n.getMessage("jsite.project-files.plan.title"), insertPlan.isInsertNeeded() ? JOptionPane.INFORMATION_MESSAGE : JOptionPane.WARNING_MESSAGE);
+	}
+
 	/**
 	 * Rescans the project’s files.
 	 */
 	private void actionScan() {
-		projectFileList.clearSelection();
-		projectFileList.setListData(new Object[0]);
+		projectFileTable.clearSelection();
+		projectFilesTableModel.setFiles(project, Collections.<ScannedFile> emptyList());
 
 		wizard.setNextEnabled(false);
 		wizard.setPreviousEnabled(false);
 		wizard.setQuitEnabled(false);
 
 		ignoreHiddenFilesCheckBox.setEnabled(false);
+		symlinkPolicyComboBox.setEnabled(false);
 		scanAction.setEnabled(false);
+		planAction.setEnabled(false);
 
-		delayedNotification = new StoppableDelay(new Runnable() {
+		scanning = true;
+		scanningFilesDialogTimer = new Timer(2000, new ActionListener() {
 
 			@Override
 			@SuppressWarnings("synthetic-access")
-			public void run() {
-				scanningFilesDialog.setVisible(true);
+			public void actionPerformed(ActionEvent actionEvent) {
+				/* the timer may fire once more after it was stopped. */
+				if (scanning) {
+					scanningFilesDialog.setVisible(true);
+				}
 			}
-		}, new Runnable() {
+		});
+		scanningFilesDialogTimer.setRepeats(false);
+		progressTimer = new Timer(250, new ActionListener() {
 
 			@Override
 			@SuppressWarnings("synthetic-access")
-			public void run() {
-				scanningFilesDialog.setVisible(false);
+			public void actionPerformed(ActionEvent actionEvent) {
+				progressBar.setString(fileScanner.getLastFilename());
 			}
-		}, 2000);
+		});
 		fileScanner.startInBackground();
-		new Thread(delayedNotification).start();
-		new Thread(new Runnable() {
-
-			@Override
-			@SuppressWarnings("synthetic-access")
-			public void run() {
-				while (!delayedNotification.isFinished()) {
-					try {
-						Thread.sleep(250);
-					} catch (InterruptedException ie1) {
-						/* ignore. */
-					}
-					progressBar.setString(fileScanner.getLastFilename());
-				}
-			}
-		}).start();
+		scanningFilesDialogTimer.start();
+		progressTimer.start();
 	}
 
 	/**
@@ -444,35 +556,31 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 	 */
 	@Override
 	public void fileScannerFinished(boolean error, Collection<ScannedFile> files) {
-		delayedNotification.finish();
+		SwingUtilities.invokeLater(new Runnable() {
+
+			@Override
+			@SuppressWarnings("synthetic-access")
+			public void run() {
+				scanning = false;
+				scanningFilesDialogTimer.stop();
+				progressTimer.stop();
+				scanningFilesDialog.setVisible(false);
+			}
+		});
 		if (!error) {
+			final List<ScannedFile> sortedFiles = new ArrayList<ScannedFile>(files);
+			Collections.sort(sortedFiles);
+			removeStaleFileOptions(sortedFiles);
 			SwingUtilities.invokeLater(new Runnable() {
 
 				@Override
 				@SuppressWarnings("synthetic-access")
 				public void run() {
-					projectFileList.setListData(files.toArray());
-					projectFileList.clearSelection();
+					scannedFiles = sortedFiles;
+					projectFilesTableModel.setFiles(project, sortedFiles);
+					projectFileTable.clearSelection();
 				}
 			});
-			Set<String> entriesToRemove = new HashSet<String>();
-			Iterator<String> filenames = new HashSet<String>(project.getFileOptions().keySet()).iterator();
-			while (filenames.hasNext()) {
-				String filename = filenames.next();
-				boolean found = false;
-				for (ScannedFile scannedFile : files) {
-					if (scannedFile.getFilename().equals(filename)) {
-						found = true;
-						break;
-					}
-				}
-				if (!found) {
-					entriesToRemove.add(filename);
-				}
-			}
-			for (String filename : entriesToRemove) {
-				project.setFileOption(filename, null);
-			}
 		} else {
 			JOptionPane.showMessageDialog(wizard, I18n.getMessage("jsite.project-files.scan-error"), null, JOptionPane.ERROR_MESSAGE);
 		}
@@ -485,13 +593,71 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 				wizard.setNextEnabled(!error);
 				wizard.setQuitEnabled(true);
 				ignoreHiddenFilesCheckBox.setEnabled(true);
+				symlinkPolicyComboBox.setEnabled(true);
 				scanAction.setEnabled(true);
+				planAction.setEnabled(!error);
 			}
 		});
 	}
 
+	/**
+	 * Removes the options of all files that do not exist anymore. The names of
+	 * the file options and the scanned files are compared in a single merge
+	 * of both sorted lists. This method is called from the file scanner’s
+	 * thread, not from the event dispatch thread.
+	 *
+	 * @param sortedFiles
+	 *            The scanned files, sorted by name
+	 */
+	private void removeStaleFileOptions(List<ScannedFile> sortedFiles) {
+		List<String> optionFilenames = new ArrayList<String>(project.getFileOptions().keySet());
+		Collections.sort(optionFilenames);
+		int fileIndex = 0;
+		for (String optionFilename : optionFilenames) {
+			int comparison = -1;
+			while ((fileIndex < sortedFiles.size()) && ((comparison = sortedFiles.get(fileIndex).getFilename().compareTo(optionFilename)) < 0)) {
+				fileIndex++;
+			}
+			if ((fileIndex == sortedFiles.size()) || (comparison != 0)) {
+				project.setFileOption(optionFilename, null);
+			}
+		}
+	}
+
+	/**
+	 * Returns the currently selected file.
+	 *
+	 * @return The selected file, or {@code null} if no file is selected
+	 */
+	private ScannedFile getSelectedScannedFile() {
+		int selectedRow = projectFileTable.getSelectedRow();
+		return (selectedRow == -1) ? null : projectFilesTableModel.getFile(projectFileTable.convertRowIndexToModel(selectedRow));
+	}
+
+	/**
+	 * Updates the row of the currently selected file.
+	 */
+	private void refreshSelectedFile() {
+		int selectedRow = projectFileTable.getSelectedRow();
+		if (selectedRow != -1) {
+			int modelRow = projectFileTable.convertRowIndexToModel(selectedRow);
+			projectFilesTableModel.fireTableRowsUpdated(modelRow, modelRow);
+		}
+	}
+
+	/**
+	 * Shows only the files whose name contains the given text.
+	 *
+	 * @param searchText
+	 *            The text to search for
+	 */
+	private void updateSearchText(String searchText) {
+		projectFileTable.clearSelection();
+		projectFilesTableModel.setSearchText(searchText);
+	}
+
 	private Optional<FileOption> getSelectedFile() {
-		return ofNullable(((ScannedFile) projectFileList.getSelectedValue()))
+		return ofNullable(getSelectedScannedFile())
 				.map(scannedFile -> project.getFileOption(scannedFile.getFilename()));
 	}
 
@@ -514,10 +680,20 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 			} else if ("always-force-insert".equals(checkboxName)) {
 				project.setAlwaysForceInsert(((JCheckBox) source).isSelected());
 				valueChanged(null);
+				if (projectFilesTableModel.getRowCount() > 0) {
+					projectFilesTableModel.fireTableRowsUpdated(0, projectFilesTableModel.getRowCount() - 1);
+				}
 				return;
 			}
+		} else if ((source instanceof JComboBox) && "symlink-policy".equals(((JComboBox) source).getName())) {
+			SymlinkPolicy symlinkPolicy = (SymlinkPolicy) ((JComboBox) source).getSelectedItem();
+			if (symlinkPolicy != project.getSymlinkPolicy()) {
+				project.setSymlinkPolicy(symlinkPolicy);
+				actionScan();
+			}
+			return;
 		}
-		ScannedFile scannedFile = (ScannedFile) projectFileList.getSelectedValue();
+		ScannedFile scannedFile = getSelectedScannedFile();
 		if (scannedFile == null) {
 			return;
 		}
@@ -560,10 +736,12 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 				updateMimeType((String) comboBox.getSelectedItem());
 			}
 		}
+		refreshSelectedFile();
 	}
 
 	private void updateMimeType(String mimeType) {
 		getSelectedFile().ifPresent(fileOption -> fileOption.setMimeType(mimeType));
+		refreshSelectedFile();
 	}
 
 	private void updateChangedName(String changedName) {
@@ -580,7 +758,7 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 	@Override
 	@SuppressWarnings("null")
 	public void valueChanged(ListSelectionEvent e) {
-		ScannedFile scannedFile = (ScannedFile) projectFileList.getSelectedValue();
+		ScannedFile scannedFile = getSelectedScannedFile();
 		boolean enabled = scannedFile != null;
 		String filename = (scannedFile == null) ? null : scannedFile.getFilename();
 		defaultFileCheckBox.setEnabled(enabled);
@@ -591,7 +769,7 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 			FileOption fileOption = project.getFileOption(filename);
 			defaultFileCheckBox.setSelected(filename.equals(project.getIndexFile()));
 			fileOptionsInsertCheckBox.setSelected(fileOption.isInsert());
-			fileOptionsForceInsertCheckBox.setEnabled(!project.isAlwaysForceInsert() && scannedFile.getHash().equals(fileOption.getLastInsertHash()));
+			fileOptionsForceInsertCheckBox.setEnabled(!project.isAlwaysForceInsert() && scannedFile.hasHash(fileOption.getLastInsertHash()));
 			fileOptionsForceInsertCheckBox.setSelected(fileOption.isForceInsert());
 			fileOptionsInsertRedirectCheckBox.setEnabled(!fileOption.isInsert());
 			fileOptionsInsertRedirectCheckBox.setSelected(fileOption.isInsertRedirect());
@@ -630,7 +808,7 @@ public class ProjectFilesPage extends TWizardPage implements ActionListener, Lis
 	 *            The document event to process
 	 */
 	private void processDocumentUpdate(DocumentEvent documentEvent) {
-		ScannedFile scannedFile = (ScannedFile) projectFileList.getSelectedValue();
+		ScannedFile scannedFile = getSelectedScannedFile();
 		if (scannedFile == null) {
 			return;
 		}
@@ -0,0 +1,269 @@
+/*
+ * jSite - ProjectFilesTableModel.java - Copyright © 2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.jsite.gui;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import javax.swing.table.AbstractTableModel;
+
+import de.todesbaum.jsite.application.FileOption;
+import de.todesbaum.jsite.application.Project;
+import de.todesbaum.jsite.i18n.I18n;
+
+/**
+ * Table model for the files of a project. The model only keeps a reference to
+ * the scanned files; all displayed values are calculated when a row is
+ * actually shown. The files can be filtered by a search text; when the search
+ * text is extended, only the rows that are currently shown are searched again.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+class ProjectFilesTableModel extends AbstractTableModel {
+
+	/** The serial version UID. */
+	private static final long serialVersionUID = 1L;
+
+	/** The index of the name column. */
+	static final int COLUMN_NAME = 0;
+
+	/** The index of the size column. */
+	static final int COLUMN_SIZE = 1;
+
+	/** The index of the status column. */
+	static final int COLUMN_STATUS = 2;
+
+	/** The index of the MIME type column. */
+	static final int COLUMN_MIME_TYPE = 3;
+
+	/** The i18n keys of the column names. */
+	private static final String[] COLUMN_NAME_KEYS = { "jsite.project-files.column.name", "jsite.project-files.column.size", "jsite.project-files.column.status", "jsite.project-files.column.mime-type" };
+
+	/** The project the files belong to. */
+	private Project project;
+
+	/** All files of the project, sorted by name. */
+	private List<ScannedFile> files = new ArrayList<ScannedFile>();
+
+	/** The lower-case names of all files, created when first searched. */
+	private String[] searchNames;
+
+	/** The indexes of the shown files. */
+	private int[] shownFiles = new int[0];
+
+	/** The number of shown files. */
+	private int shownFileCount;
+
+	/** The current search text, in lower case. */
+	private String searchText = "";
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Sets the files to show.
+	 *
+	 * @param project
+	 *            The project the files belong to
+	 * @param files
+	 *            The files of the project, sorted by name
+	 */
+	public void setFiles(Project project, List<ScannedFile> files) {
+		this.project = project;
+		this.files = files;
+		searchNames = null;
+		applySearchText(searchText, false);
+	}
+
+	/**
+	 * Sets the search text. Only files that contain the search text in their
+	 * name are shown.
+	 *
+	 * @param searchText
+	 *            The search text
+	 */
+	public void setSearchText(String searchText) {
+		String newSearchText = searchText.toLowerCase(Locale.ROOT);
+		if (newSearchText.equals(this.searchText)) {
+			return;
+		}
+		applySearchText(newSearchText, newSearchText.contains(this.searchText));
+	}
+
+	/**
+	 * Returns the file shown in the given row.
+	 *
+	 * @param row
+	 *            The index of the row
+	 * @return The file shown in the row
+	 */
+	public ScannedFile getFile(int row) {
+		return files.get(shownFiles[row]);
+	}
+
+	/**
+	 * Returns the status of the given file.
+	 *
+	 * @param file
+	 *            The file to get the status for
+	 * @return The status of the file
+	 */
+	private FileStatus getStatus(ScannedFile file) {
+		FileOption fileOption = project.getFileOption(file.getFilename());
+		if (fileOption.isInsert() && file.isLink()) {
+			return FileStatus.REDIRECT;
+		}
+		if (!fileOption.isInsert()) {
+			return fileOption.isInsertRedirect() ? FileStatus.REDIRECT : FileStatus.SKIPPED;
+		}
+		if (project.isAlwaysForceInsert() || fileOption.isForceInsert() || !file.hasHash(fileOption.getLastInsertHash())) {
+			return FileStatus.CHANGED;
+		}
+		return FileStatus.UNCHANGED;
+	}
+
+	//
+	// TABLEMODEL METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getRowCount() {
+		return shownFileCount;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getColumnCount() {
+		return COLUMN_NAME_KEYS.length;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getColumnName(int column) {
+		return I18n.getMessage(COLUMN_NAME_KEYS[column]);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Class<?> getColumnClass(int column) {
+		return (column == COLUMN_SIZE) ? Long.class : String.class;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Object getValueAt(int row, int column) {
+		ScannedFile file = getFile(row);
+		switch (column) {
+			case COLUMN_NAME:
+				return file.getFilename();
+			case COLUMN_SIZE:
+				return file.getSize();
+			case COLUMN_STATUS:
+				return I18n.getMessage("jsite.project-files.status." + getStatus(file).name().toLowerCase(Locale.ENGLISH));
+			case COLUMN_MIME_TYPE:
+				return project.getFileOption(file.getFilename()).getMimeType();
+			default:
+				return null;
+		}
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Applies the given search text to the files.
+	 *
+	 * @param newSearchText
+	 *            The new search text, in lower case
+	 * @param narrowing
+	 *            {@code true} if the new search text contains the old search
+	 *            text so that only the currently shown files need to be
+	 *            searched, {@code false} to search all files
+	 */
+	private void applySearchText(String newSearchText, boolean narrowing) {
+		searchText = newSearchText;
+		if (newSearchText.isEmpty()) {
+			shownFiles = new int[files.size()];
+			for (int index = 0; index < shownFiles.length; index++) {
+				shownFiles[index] = index;
+			}
+			shownFileCount = shownFiles.length;
+			fireTableDataChanged();
+			return;
+		}
+		if (searchNames == null) {
+			searchNames = new String[files.size()];
+			for (int index = 0; index < searchNames.length; index++) {
+				searchNames[index] = files.get(index).getFilename().toLowerCase(Locale.ROOT);
+			}
+		}
+		int[] candidates = narrowing ? shownFiles : null;
+		int candidateCount = narrowing ? shownFileCount : files.size();
+		int[] matchingFiles = narrowing ? shownFiles : new int[files.size()];
+		int matchingFileCount = 0;
+		for (int candidate = 0; candidate < candidateCount; candidate++) {
+			int fileIndex = (candidates != null) ? candidates[candidate] : candidate;
+			if (searchNames[fileIndex].contains(newSearchText)) {
+				matchingFiles[matchingFileCount++] = fileIndex;
+			}
+		}
+		shownFiles = matchingFiles;
+		shownFileCount = matchingFileCount;
+		fireTableDataChanged();
+	}
+
+	/**
+	 * The insert status of a file.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	private enum FileStatus {
+
+		/** The file has changed and will be inserted. */
+		CHANGED,
+
+		/** The file has not changed; a redirect to the last insert is used. */
+		UNCHANGED,
+
+		/**
+		 * The file is not inserted but redirects to a custom key or, if it is
+		 * a symbolic link, to another file of the project.
+		 */
+		REDIRECT,
+
+		/** The file is not inserted at all. */
+		SKIPPED
+
+	}
+
+}
@@ -341,6 +341,45 @@ public class ProjectInsertPage extends TWizardPage implements InsertListener, Cl
 		projectInserter.setPriority(priority);
 	}
 
+	/**
+	 * Sets whether large files should be inserted separately.
+	 *
+	 * @param insertFilesSeparately
+	 *            {@code true} to insert large files separately, {@code false}
+	 *            to insert all files in a single request
+	 * @param separateInsertThreshold
+	 *            The minimum size of a separately inserted file (in bytes)
+	 * @param separateInsertConcurrency
+	 *            The maximum number of parallel file inserts
+	 */
+	public void setInsertFilesSeparately(boolean insertFilesSeparately, long separateInsertThreshold, int separateInsertConcurrency) {
+		projectInserter.setInsertFilesSeparately(insertFilesSeparately);
+		projectInserter.setSeparateInsertThreshold(separateInsertThreshold);
+		projectInserter.setSeparateInsertConcurrency(separateInsertConcurrency);
+	}
+
+	/**
+	 * Sets how often the insert is retried after the connection to the node
+	 * was lost.
+	 *
+	 * @param maxRetries
+	 *            The maximum number of retries
+	 */
+	public void setMaxRetries(int maxRetries) {
+		projectInserter.setMaxRetries(maxRetries);
+	}
+
+	/**
+	 * Sets the minimum size of a file whose CHK is recorded.
+	 *
+	 * @param chkCaptureThreshold
+	 *            The minimum size of a file whose CHK is recorded (in bytes),
+	 *            or {@code -1} to not record any CHKs
+	 */
+	public void setChkCaptureThreshold(long chkCaptureThreshold) {
+		projectInserter.setChkCaptureThreshold(chkCaptureThreshold);
+	}
+
 	//
 	// INTERFACE InsertListener
 	//
@@ -444,6 +483,21 @@ public class ProjectInsertPage extends TWizardPage implements InsertListener, Cl
 		});
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void projectInsertRetrying(Project project, final int retry, final int maxRetries, final long delay) {
+		SwingUtilities.invokeLater(new Runnable() {
+
+			@Override
+			@SuppressWarnings("synthetic-access")
+			public void run() {
+				progressBar.setString(MessageFormat.format(I18n.getMessage("jsite.insert.retrying"), retry, maxRetries, (delay + 999) / 1000));
+			}
+		});
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -32,8 +32,11 @@ import java.awt.datatransfer.Transferable;
 import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
 import java.io.IOException;
+import java.text.DateFormat;
 import java.text.MessageFormat;
+import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map.Entry;
 
 import javax.swing.AbstractAction;
@@ -48,6 +51,7 @@ import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextField;
 import javax.swing.ListSelectionModel;
+import javax.swing.SwingUtilities;
 import javax.swing.border.EmptyBorder;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
@@ -62,10 +66,17 @@ import javax.swing.text.DocumentFilter;
 import net.pterodactylus.util.swing.SortedListModel;
 import de.todesbaum.jsite.application.FileOption;
 import de.todesbaum.jsite.application.Freenet7Interface;
+import de.todesbaum.jsite.application.InsertHistory;
+import de.todesbaum.jsite.application.InsertHistory.Period;
+import de.todesbaum.jsite.application.InsertRecord;
+import de.todesbaum.jsite.application.InsertRecord.Phase;
+import de.todesbaum.jsite.application.KeyPairPool;
+import de.todesbaum.jsite.application.OwnIdentityListener;
 import de.todesbaum.jsite.application.Project;
 import de.todesbaum.jsite.application.WebOfTrustInterface;
 import de.todesbaum.jsite.i18n.I18n;
 import de.todesbaum.jsite.i18n.I18nContainer;
+import de.todesbaum.util.freenet.fcp2.wot.OwnIdentity;
 import de.todesbaum.util.swing.TLabel;
 import de.todesbaum.util.swing.TWizard;
 import de.todesbaum.util.swing.TWizardPage;
@@ -77,9 +88,21 @@ import de.todesbaum.util.swing.TWizardPage;
  */
 public class ProjectPage extends TWizardPage implements ListSelectionListener, DocumentListener, ClipboardOwner {
 
+	/** The number of recent inserts shown in the insert history. */
+	private static final int HISTORY_RECORDS = 20;
+
+	/** The length of a period of the trend shown in the insert history. */
+	private static final long TREND_PERIOD_LENGTH = 30L * 24 * 60 * 60 * 1000;
+
+	/** The number of periods of the trend shown in the insert history. */
+	private static final int TREND_PERIOD_COUNT = 6;
+
 	/** The freenet interface. */
 	private Freenet7Interface freenetInterface;
 
+	/** The pool of generated key pairs. */
+	private KeyPairPool keyPairPool;
+
 	/** The web of trust interface. */
 	private WebOfTrustInterface webOfTrustInterface;
 
@@ -104,6 +127,9 @@ public class ProjectPage extends TWizardPage implements ListSelectionListener, D
 	/** The “reset edition” action. */
 	private Action projectResetEditionAction;
 
+	/** The “insert history” action. */
+	private Action projectInsertHistoryAction;
+
 	/** The file chooser. */
 	private JFileChooser pathChooser;
 
@@ -294,6 +320,18 @@ public class ProjectPage extends TWizardPage implements ListSelectionListener, D
 		projectResetEditionAction.putValue(Action.MNEMONIC_KEY, KeyEvent.VK_R);
 		projectResetEditionAction.setEnabled(false);
 
+		projectInsertHistoryAction = new AbstractAction(I18n.getMessage("jsite.project.action.insert-history")) {
+
+			@Override
+			@SuppressWarnings("synthetic-access")
+			public void actionPerformed(ActionEvent actionEvent) {
+				actionInsertHistory();
+			}
+		};
+		projectInsertHistoryAction.putValue(Action.SHORT_DESCRIPTION, I18n.getMessage("jsite.project.action.insert-history.tooltip"));
+		projectInsertHistoryAction.putValue(Action.MNEMONIC_KEY, KeyEvent.VK_H);
+		projectInsertHistoryAction.setEnabled(false);
+
 		I18nContainer.getInstance().registerRunnable(new Runnable() {
 
 			@Override
@@ -313,6 +351,8 @@ public class ProjectPage extends TWizardPage implements ListSelectionListener, D
 				projectManageKeysAction.putValue(Action.SHORT_DESCRIPTION, I18n.getMessage("jsite.project.action.manage-keys.tooltip"));
 				projectResetEditionAction.putValue(Action.NAME, I18n.getMessage("jsite.project.action.reset-edition"));
 				projectResetEditionAction.putValue(Action.SHORT_DESCRIPTION, I18n.getMessage("jsite.project.action.reset-edition.tooltip"));
+				projectInsertHistoryAction.putValue(Action.NAME, I18n.getMessage("jsite.project.action.insert-history"));
+				projectInsertHistoryAction.putValue(Action.SHORT_DESCRIPTION, I18n.getMessage("jsite.project.action.insert-history.tooltip"));
 				pathChooser.setApproveButtonText(I18n.getMessage("jsite.project.action.browse.choose"));
 			}
 		});
@@ -334,6 +374,7 @@ public class ProjectPage extends TWizardPage implements ListSelectionListener, D
 		functionButtons.add(new JButton(projectDeleteAction));
 		functionButtons.add(new JButton(projectCloneAction));
 		functionButtons.add(new JButton(projectManageKeysAction));
+		functionButtons.add(new JButton(projectInsertHistoryAction));
 
 		informationPanel.add(functionButtons, BorderLayout.PAGE_START);
 		informationPanel.add(informationTable, BorderLayout.CENTER);
@@ -469,6 +510,16 @@ public class ProjectPage extends TWizardPage implements ListSelectionListener, D
 		this.freenetInterface = freenetInterface;
 	}
 
+	/**
+	 * Sets the pool to take generated key pairs from.
+	 *
+	 * @param keyPairPool
+	 *            The key pair pool to use
+	 */
+	public void setKeyPairPool(KeyPairPool keyPairPool) {
+		this.keyPairPool = keyPairPool;
+	}
+
 	/**
 	 * Sets the web of trust interface to use.
 	 *
@@ -561,7 +612,7 @@ public class ProjectPage extends TWizardPage implements ListSelectionListener, D
 			return;
 		}
 		try {
-			keyPair = freenetInterface.generateKeyPair();
+			keyPair = keyPairPool.getKeyPair();
 		} catch (IOException ioe1) {
 			JOptionPane.showMessageDialog(this, MessageFormat.format(I18n.getMessage("jsite.project.keygen.io-error"), ioe1.getMessage()), null, JOptionPane.ERROR_MESSAGE);
 			return;
@@ -629,12 +680,30 @@ public class ProjectPage extends TWizardPage implements ListSelectionListener, D
 		int selectedIndex = projectList.getSelectedIndex();
 		if (selectedIndex > -1) {
 			Project selectedProject = (Project) projectList.getSelectedValue();
-			KeyDialog keyDialog = new KeyDialog(freenetInterface, wizard);
+			final KeyDialog keyDialog = new KeyDialog(keyPairPool, wizard);
 			keyDialog.setPrivateKey(selectedProject.getInsertURI());
 			keyDialog.setPublicKey(selectedProject.getRequestURI());
 			keyDialog.setProjects(getProjects());
-			keyDialog.setOwnIdentities(webOfTrustInterface.getOwnIdentities());
-			keyDialog.setVisible(true);
+			OwnIdentityListener ownIdentityListener = new OwnIdentityListener() {
+
+				@Override
+				public void ownIdentitiesLoaded(final List<OwnIdentity> ownIdentities) {
+					SwingUtilities.invokeLater(new Runnable() {
+
+						@Override
+						public void run() {
+							keyDialog.setOwnIdentities(ownIdentities);
+						}
+					});
+				}
+			};
+			webOfTrustInterface.addOwnIdentityListener(ownIdentityListener);
+			try {
+				keyDialog.setOwnIdentities(webOfTrustInterface.getOwnIdentities());
+				keyDialog.setVisible(true);
+			} finally {
+				webOfTrustInterface.removeOwnIdentityListener(ownIdentityListener);
+			}
 			if (!keyDialog.wasCancelled()) {
 				String originalPublicKey = selectedProject.getRequestURI();
 				String originalPrivateKey = selectedProject.getInsertURI();
@@ -666,6 +735,61 @@ public class ProjectPage extends TWizardPage implements ListSelectionListener, D
 		}
 	}
 
+	/**
+	 * Shows the recent inserts of the currently selected project and, for
+	 * every node the project was inserted to, how the inserts developed over
+	 * the last months.
+	 */
+	private void actionInsertHistory() {
+		int selectedIndex = projectList.getSelectedIndex();
+		if (selectedIndex < 0) {
+			return;
+		}
+		Project selectedProject = (Project) projectList.getSelectedValue();
+		InsertHistory insertHistory = selectedProject.getInsertHistory();
+		List<InsertRecord> records = insertHistory.getRecords();
+		String title = MessageFormat.format(I18n.getMessage("jsite.project.insert-history.title"), selectedProject.getName());
+		if (records.isEmpty()) {
+			JOptionPane.showMessageDialog(this, I18n.getMessage("jsite.project.insert-history.empty"), title, JOptionPane.INFORMATION_MESSAGE);
+			return;
+		}
+		DateFormat dateFormat = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT);
+		StringBuilder historyText = new StringBuilder("<html><b>").append(I18n.getMessage("jsite.project.insert-history.recent")).append("</b><table>");
+		historyText.append("<tr><th>").append(I18n.getMessage("jsite.project.insert-history.column.time")).append("</th><th>").append(I18n.getMessage("jsite.project.insert-history.column.node")).append("</th><th>").append(I18n.getMessage("jsite.project.insert-history.column.edition")).append("</th><th>").append(I18n.getMessage("jsite.project.insert-history.column.outcome")).append("</th><th>").append(I18n.getMessage("jsite.project.insert-history.column.duration")).append("</th><th>").append(I18n.getMessage("jsite.project.insert-history.column.bytes")).append("</th><th>").append(I18n.getMessage("jsite.project.insert-history.column.files")).append("</th><th>").append(I18n.getMessage("jsite.project.insert-history.column.retries")).append("</th><th>").append(I18n.getMessage("jsite.project.insert-history.column.throughput")).append("</th><th>").append(I18n.getMessage("jsite.project.insert-history.column.phases")).append("</th></tr>");
+		for (InsertRecord record : records.subList(Math.max(0, records.size() - HISTORY_RECORDS), records.size())) {
+			StringBuilder phases = new StringBuilder();
+			for (Phase phase : Phase.values()) {
+				if (record.getPhaseDuration(phase) > 0) {
+					phases.append((phases.length() > 0) ? ", " : "").append(I18n.getMessage("jsite.project.insert-history.phase." + phase.name().toLowerCase(Locale.ENGLISH).replace('_', '-'))).append(' ').append(formatDuration(record.getPhaseDuration(phase)));
+				}
+			}
+			historyText.append("<tr><td>").append(dateFormat.format(new Date(record.getStartTime()))).append("</td><td>").append(record.getNode()).append("</td><td>").append(record.getEdition()).append("</td><td>").append(I18n.getMessage("jsite.project.insert-history.outcome." + record.getOutcome().name().toLowerCase(Locale.ENGLISH))).append("</td><td>").append(formatDuration(record.getDuration())).append("</td><td>").append(record.getUploadedBytes()).append("</td><td>").append(MessageFormat.format(I18n.getMessage("jsite.project.insert-history.files"), record.getChangedFileCount(), record.getRedirectedFileCount(), record.getSkippedFileCount())).append("</td><td>").append(record.getRetries()).append("</td><td>").append(String.format("%.1f", record.getThroughput())).append("</td><td>").append(phases).append("</td></tr>");
+		}
+		historyText.append("</table>");
+		DateFormat periodFormat = DateFormat.getDateInstance(DateFormat.SHORT);
+		for (String node : insertHistory.getNodes()) {
+			historyText.append("<br><b>").append(MessageFormat.format(I18n.getMessage("jsite.project.insert-history.trend"), node)).append("</b><table>");
+			historyText.append("<tr><th>").append(I18n.getMessage("jsite.project.insert-history.column.period")).append("</th><th>").append(I18n.getMessage("jsite.project.insert-history.column.inserts")).append("</th><th>").append(I18n.getMessage("jsite.project.insert-history.column.throughput")).append("</th><th>").append(I18n.getMessage("jsite.project.insert-history.column.average-bytes")).append("</th><th>").append(I18n.getMessage("jsite.project.insert-history.column.average-changed-files")).append("</th><th>").append(I18n.getMessage("jsite.project.insert-history.column.average-duration")).append("</th></tr>");
+			for (Period period : insertHistory.getTrend(node, TREND_PERIOD_LENGTH, TREND_PERIOD_COUNT, System.currentTimeMillis())) {
+				historyText.append("<tr><td>").append(periodFormat.format(new Date(period.getStartTime()))).append(" – ").append(periodFormat.format(new Date(period.getEndTime()))).append("</td><td>").append(MessageFormat.format(I18n.getMessage("jsite.project.insert-history.inserts"), period.getSuccessfulInsertCount(), period.getInsertCount())).append("</td><td>").append(String.format("%.1f", period.getThroughput())).append("</td><td>").append(period.getAverageUploadedBytes()).append("</td><td>").append(String.format("%.1f", period.getAverageChangedFileCount())).append("</td><td>").append(formatDuration(period.getAverageDuration())).append("</td></tr>");
+			}
+			historyText.append("</table>");
+		}
+		historyText.append("</html>");
+		JOptionPane.showMessageDialog(this, historyText.toString(), title, JOptionPane.INFORMATION_MESSAGE);
+	}
+
+	/**
+	 * Formats the given duration as hours, minutes, and seconds.
+	 *
+	 * @param duration
+	 *            The duration (in milliseconds)
+	 * @return The formatted duration
+	 */
+	private static String formatDuration(long duration) {
+		return String.format("%d:%02d:%02d", duration / 3600000, (duration / 60000) % 60, (duration / 1000) % 60);
+	}
+
 	/**
 	 * Updates the complete URI text field.
 	 */
@@ -698,6 +822,7 @@ public class ProjectPage extends TWizardPage implements ListSelectionListener, D
 		projectCopyURIAction.setEnabled(selectedRow > -1);
 		projectManageKeysAction.setEnabled(selectedRow > -1);
 		projectResetEditionAction.setEnabled(selectedRow > -1);
+		projectInsertHistoryAction.setEnabled(selectedRow > -1);
 		if (selectedRow > -1) {
 			projectNameTextField.setText(selectedProject.getName());
 			projectDescriptionTextField.setText(selectedProject.getDescription());
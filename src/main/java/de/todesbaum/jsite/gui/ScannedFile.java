@@ -1,8 +1,10 @@
 package de.todesbaum.jsite.gui;
 
+import de.todesbaum.jsite.application.HashAlgorithm;
+
 /**
- * Container for a scanned file, consisting of the name of the file and its
- * hash.
+ * Container for a scanned file, consisting of the name of the file, its hash,
+ * and the properties of its content that were determined while hashing it.
  *
  * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
  */
@@ -12,7 +14,31 @@ public class ScannedFile implements Comparable<ScannedFile> {
 	private final String filename;
 
 	/** The hash of the file. */
-	private final String hash;
+	private final byte[] hash;
+
+	/**
+	 * The raw hash of the file in the algorithm of its last insert hash, if
+	 * that is a different algorithm.
+	 */
+	private final byte[] previousHash;
+
+	/** The size of the file. */
+	private final long size;
+
+	/** The time of the last modification of the file. */
+	private final long lastModified;
+
+	/** The MIME type detected from the content of the file. */
+	private final String detectedMimeType;
+
+	/** The entropy of the content of the file, in bits per byte. */
+	private final double entropy;
+
+	/** The offset of the data of the file in the payload stage. */
+	private final long stageOffset;
+
+	/** The name of the file this file is a symbolic link to. */
+	private final String linkTarget;
 
 	/**
 	 * Creates a new scanned file.
@@ -20,11 +46,102 @@ public class ScannedFile implements Comparable<ScannedFile> {
 	 * @param filename
 	 *            The name of the file
 	 * @param hash
-	 *            The hash of the file
+	 *            The raw hash of the file
 	 */
-	public ScannedFile(String filename, String hash) {
+	public ScannedFile(String filename, byte[] hash) {
+		this(filename, hash, -1, 0, null, 0, -1);
+	}
+
+	/**
+	 * Creates a new scanned file.
+	 *
+	 * @param filename
+	 *            The name of the file
+	 * @param hash
+	 *            The raw hash of the file
+	 * @param size
+	 *            The size of the file, or {@code -1} if it is not known
+	 * @param lastModified
+	 *            The time of the last modification of the file, in
+	 *            milliseconds since the epoch, or {@code 0} if it is not known
+	 * @param detectedMimeType
+	 *            The MIME type detected from the content of the file, or
+	 *            {@code null} if none was detected
+	 * @param entropy
+	 *            The entropy of the content of the file, in bits per byte
+	 * @param stageOffset
+	 *            The offset of the data of the file in the payload stage, or
+	 *            {@code -1} if the file was not staged
+	 */
+	public ScannedFile(String filename, byte[] hash, long size, long lastModified, String detectedMimeType, double entropy, long stageOffset) {
+		this(filename, hash, null, size, lastModified, detectedMimeType, entropy, stageOffset, null);
+	}
+
+	/**
+	 * Creates a new scanned file that has the same content as the given file,
+	 * e.g. because both are hard links to the same data.
+	 *
+	 * @param filename
+	 *            The name of the file
+	 * @param scannedFile
+	 *            The scanned file with the same content
+	 * @param stageOffset
+	 *            The offset of the data of the file in the payload stage, or
+	 *            {@code -1} if the file was not staged
+	 */
+	public ScannedFile(String filename, ScannedFile scannedFile, long stageOffset) {
+		this(filename, scannedFile.hash, scannedFile.previousHash, scannedFile.size, scannedFile.lastModified, scannedFile.detectedMimeType, scannedFile.entropy, stageOffset, null);
+	}
+
+	/**
+	 * Creates a new scanned file for a symbolic link to another file of the
+	 * project. Its content is not read; instead it is inserted as a redirect
+	 * to the target.
+	 *
+	 * @param filename
+	 *            The name of the file
+	 * @param linkTarget
+	 *            The name of the file the link points to
+	 * @param lastModified
+	 *            The time of the last modification of the link target
+	 */
+	public ScannedFile(String filename, String linkTarget, long lastModified) {
+		this(filename, new byte[32], null, -1, lastModified, null, 0, -1, linkTarget);
+	}
+
+	/**
+	 * Creates a new scanned file.
+	 *
+	 * @param filename
+	 *            The name of the file
+	 * @param hash
+	 *            The raw hash of the file
+	 * @param previousHash
+	 *            The raw hash of the file in the algorithm of its last insert
+	 *            hash, or {@code null}
+	 * @param size
+	 *            The size of the file
+	 * @param lastModified
+	 *            The time of the last modification of the file
+	 * @param detectedMimeType
+	 *            The detected MIME type of the file
+	 * @param entropy
+	 *            The entropy of the content of the file
+	 * @param stageOffset
+	 *            The offset of the data of the file in the payload stage
+	 * @param linkTarget
+	 *            The name of the file this file links to, or {@code null}
+	 */
+	private ScannedFile(String filename, byte[] hash, byte[] previousHash, long size, long lastModified, String detectedMimeType, double entropy, long stageOffset, String linkTarget) {
 		this.filename = filename;
 		this.hash = hash;
+		this.previousHash = previousHash;
+		this.size = size;
+		this.lastModified = lastModified;
+		this.detectedMimeType = detectedMimeType;
+		this.entropy = entropy;
+		this.stageOffset = stageOffset;
+		this.linkTarget = linkTarget;
 	}
 
 	//
@@ -43,10 +160,140 @@ public class ScannedFile implements Comparable<ScannedFile> {
 	/**
 	 * Returns the hash of the file.
 	 *
-	 * @return The hash of the file
+	 * @see HashAlgorithm#toHash(byte[])
+	 * @return The hash of the file, in hexadecimal notation
 	 */
 	public String getHash() {
-		return hash;
+		return HashAlgorithm.getByDigest(hash).toHash(hash);
+	}
+
+	/**
+	 * Returns whether the given hash is the hash of this file. The hash may
+	 * have been calculated with the current algorithm or, while hashes are
+	 * migrated to another algorithm, with the algorithm of the file’s last
+	 * insert hash.
+	 *
+	 * @param otherHash
+	 *            The hash to compare, may be {@code null}
+	 * @return {@code true} if the given hash is the hash of this file,
+	 *         {@code false} otherwise
+	 */
+	public boolean hasHash(String otherHash) {
+		if (otherHash == null) {
+			return false;
+		}
+		return otherHash.equals(getHash()) || ((previousHash != null) && otherHash.equals(HashAlgorithm.getByDigest(previousHash).toHash(previousHash)));
+	}
+
+	/**
+	 * Returns whether this file carries its hash in the given algorithm and,
+	 * if it is a different one, in the given algorithm of its last insert
+	 * hash.
+	 *
+	 * @param hashAlgorithm
+	 *            The algorithm of the project
+	 * @param previousHashAlgorithm
+	 *            The algorithm of the last insert hash, or {@code null}
+	 * @return {@code true} if this file carries the hashes in the given
+	 *         algorithms, {@code false} otherwise
+	 */
+	boolean hasHashes(HashAlgorithm hashAlgorithm, HashAlgorithm previousHashAlgorithm) {
+		if (HashAlgorithm.getByDigest(hash) != hashAlgorithm) {
+			return false;
+		}
+		return (previousHashAlgorithm == null) || (previousHashAlgorithm == hashAlgorithm) || ((previousHash != null) && (HashAlgorithm.getByDigest(previousHash) == previousHashAlgorithm));
+	}
+
+	/**
+	 * Returns a copy of this file that also carries its hash in the algorithm
+	 * of its last insert hash.
+	 *
+	 * @param previousHash
+	 *            The raw hash in the algorithm of the last insert hash
+	 * @return A copy of this file with the given previous hash
+	 */
+	ScannedFile withPreviousHash(byte[] previousHash) {
+		return new ScannedFile(filename, hash, previousHash, size, lastModified, detectedMimeType, entropy, stageOffset, linkTarget);
+	}
+
+	/**
+	 * Returns the size of the file, as it was reported while scanning.
+	 *
+	 * @return The size of the file, or {@code -1} if it is not known
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns the time of the last modification of the file, as it was
+	 * reported while scanning.
+	 *
+	 * @return The time of the last modification, in milliseconds since the
+	 *         epoch, or {@code 0} if it is not known
+	 */
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	/**
+	 * Returns the MIME type that was detected from the content of the file.
+	 *
+	 * @return The detected MIME type, or {@code null} if no MIME type was
+	 *         detected
+	 */
+	public String getDetectedMimeType() {
+		return detectedMimeType;
+	}
+
+	/**
+	 * Returns the entropy of the content of the file.
+	 *
+	 * @return The entropy of the content, in bits per byte
+	 */
+	public double getEntropy() {
+		return entropy;
+	}
+
+	/**
+	 * Returns whether the data of the file was written to the payload stage
+	 * while it was hashed.
+	 *
+	 * @return {@code true} if the file was staged, {@code false} otherwise
+	 */
+	public boolean isStaged() {
+		return stageOffset > -1;
+	}
+
+	/**
+	 * Returns the offset of the data of the file in the payload stage.
+	 *
+	 * @return The offset of the data in the payload stage, or {@code -1} if
+	 *         the file was not staged
+	 */
+	public long getStageOffset() {
+		return stageOffset;
+	}
+
+	/**
+	 * Returns whether this file is a symbolic link that is inserted as a
+	 * redirect to another file of the project.
+	 *
+	 * @return {@code true} if this file is a redirecting link, {@code false}
+	 *         otherwise
+	 */
+	public boolean isLink() {
+		return linkTarget != null;
+	}
+
+	/**
+	 * Returns the name of the file this file is a symbolic link to.
+	 *
+	 * @return The name of the link target, or {@code null} if this file is
+	 *         not a redirecting link
+	 */
+	public String getLinkTarget() {
+		return linkTarget;
 	}
 
 	//
@@ -18,16 +18,41 @@
 
 package de.todesbaum.jsite.main;
 
+import java.io.File;
 import java.io.PrintWriter;
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
 
 import net.pterodactylus.util.io.StreamCopier.ProgressListener;
+import de.todesbaum.jsite.application.FetchPlan;
+import de.todesbaum.jsite.application.FetchPlanner;
 import de.todesbaum.jsite.application.Freenet7Interface;
+import de.todesbaum.jsite.application.HashAlgorithm;
+import de.todesbaum.jsite.application.InsertHistory;
+import de.todesbaum.jsite.application.InsertHistory.Period;
+import de.todesbaum.jsite.application.InsertPlan;
+import de.todesbaum.jsite.application.InsertPlan.Action;
+import de.todesbaum.jsite.application.InsertPlan.PlannedFile;
+import de.todesbaum.jsite.application.InsertPlanner;
 import de.todesbaum.jsite.application.InsertListener;
+import de.todesbaum.jsite.application.InsertRecord;
+import de.todesbaum.jsite.application.InsertRecord.Phase;
 import de.todesbaum.jsite.application.Node;
 import de.todesbaum.jsite.application.Project;
 import de.todesbaum.jsite.application.ProjectInserter;
+import de.todesbaum.jsite.application.SymlinkPolicy;
+import de.todesbaum.jsite.application.TaskExecutors;
+import de.todesbaum.jsite.gui.FileScanner;
 import de.todesbaum.jsite.main.JarFileLocator.DefaultJarFileLocator;
+import de.todesbaum.util.freenet.fcp2.ManifestPutter;
+import de.todesbaum.util.freenet.fcp2.PriorityClass;
+import de.todesbaum.util.io.TempSpace;
 
 /**
  * Command-line interface for jSite.
@@ -36,6 +61,15 @@ import de.todesbaum.jsite.main.JarFileLocator.DefaultJarFileLocator;
  */
 public class CLI implements InsertListener {
 
+	/** The number of recent inserts shown by --history. */
+	private static final int HISTORY_RECORDS = 20;
+
+	/** The length of a period of the trend shown by --history. */
+	private static final long TREND_PERIOD_LENGTH = 30L * 24 * 60 * 60 * 1000;
+
+	/** The number of periods of the trend shown by --history. */
+	private static final int TREND_PERIOD_COUNT = 6;
+
 	/** Object used for synchronization. */
 	private Object lockObject = new Object();
 
@@ -48,12 +82,33 @@ public class CLI implements InsertListener {
 	/** The project inserter. */
 	private ProjectInserter projectInserter = new ProjectInserter();
 
+	/** The insert planner. */
+	private final InsertPlanner insertPlanner = new InsertPlanner();
+
+	/** The fetch planner. */
+	private final FetchPlanner fetchPlanner = new FetchPlanner();
+
+	/** The default insert priority. */
+	private PriorityClass defaultPriority;
+
+	/** Whether to only plan the inserts. */
+	private boolean planOnly;
+
+	/** Whether to only show the insert histories. */
+	private boolean historyOnly;
+
 	/** The list of nodes. */
 	private Node[] nodes;
 
 	/** The projects. */
 	private List<Project> projects;
 
+	/** The saved include rules of projects changed by --include. */
+	private final Map<Project, List<String>> savedIncludeRules = new HashMap<Project, List<String>>();
+
+	/** The saved exclude rules of projects changed by --exclude. */
+	private final Map<Project, List<String>> savedExcludeRules = new HashMap<Project, List<String>>();
+
 	/** Whether the insert has finished. */
 	private boolean finished = false;
 
@@ -76,9 +131,33 @@ public class CLI implements InsertListener {
 			outputWriter.println("  --local-directory=<local directory>");
 			outputWriter.println("  --path=<path>");
 			outputWriter.println("  --edition=<edition>");
+			outputWriter.println("  --include=<pattern>");
+			outputWriter.println("  --exclude=<pattern>");
+			outputWriter.println("  --symlinks=<follow|skip|redirect>");
+			outputWriter.println("  --priority=<priority class>");
+			outputWriter.println("  --hash-algorithm=<sha-256|xxh64>");
+			outputWriter.println("  --manifest-putter=<simple|default>");
+			outputWriter.println("  --container-size=<bytes>");
+			outputWriter.println("  --export-config=<file>");
+			outputWriter.println("  --plan");
+			outputWriter.println("  --history");
 			outputWriter.println("\nA project gets inserted when a new project is loaded on the command line,");
 			outputWriter.println("or when the command line is finished. --local-directory, --path, and --edition");
-			outputWriter.println("override the parameters in the project.");
+			outputWriter.println("override the parameters in the project. --include and --exclude add a glob pattern");
+			outputWriter.println("(e.g. \"**/node_modules/**\", \"*.psd\", or \".git/\") to the include or exclude rules");
+			outputWriter.println("of the project for this run only. --symlinks sets how symbolic links in the local directory are");
+			outputWriter.println("handled. --priority sets the FCP priority class the project is inserted with, e.g.");
+			outputWriter.println("\"interactive\" or \"bulk\". --hash-algorithm sets how changed files are detected:");
+			outputWriter.println("\"xxh64\" is a lot faster than \"sha-256\"; existing hashes are migrated on the next insert.");
+			outputWriter.println("--manifest-putter sets how the node packs the files into containers: \"simple\" inserts");
+			outputWriter.println("every file as a key of its own, \"default\" packs small files into containers.");
+			outputWriter.println("--container-size sets the container size --plan assumes, 0 for the default.");
+			outputWriter.println("--export-config writes the configuration, including the state of all");
+			outputWriter.println("files of all projects, to a single file. With --plan, projects are not inserted;");
+			outputWriter.println("instead, the files that would be uploaded and estimates for the insert and for");
+			outputWriter.println("the number of fetches needed to load the project are shown. With --history, projects");
+			outputWriter.println("are not inserted either; instead, their recent inserts and the monthly development of");
+			outputWriter.println("throughput, uploaded bytes, and changed files per node are shown.");
 			return;
 		}
 
@@ -87,6 +166,10 @@ public class CLI implements InsertListener {
 			String value = argument.substring(argument.indexOf('=') + 1).trim();
 			if (argument.startsWith("--config-file=")) {
 				configFile = value;
+			} else if (argument.equals("--plan")) {
+				planOnly = true;
+			} else if (argument.equals("--history")) {
+				historyOnly = true;
 			}
 		}
 
@@ -105,11 +188,22 @@ public class CLI implements InsertListener {
 		freenetInterface.setNode(node);
 
 		projectInserter.setFreenetInterface(freenetInterface);
-        projectInserter.setPriority(configuration.getPriority());
+		defaultPriority = configuration.getPriority();
+		projectInserter.setInsertFilesSeparately(configuration.insertFilesSeparately());
+		projectInserter.setSeparateInsertThreshold(configuration.getSeparateInsertThreshold());
+		projectInserter.setSeparateInsertConcurrency(configuration.getSeparateInsertConcurrency());
+		projectInserter.setMaxRetries(configuration.getInsertRetries());
+		projectInserter.setChkCaptureThreshold(configuration.getChkCaptureThreshold());
+		projectInserter.setTempDirectory(configuration.getTempDirectory());
+		TempSpace.forDirectories(configuration.getTempDirectory()).deleteOrphans();
+		insertPlanner.setInsertFilesSeparately(configuration.insertFilesSeparately());
+		insertPlanner.setSeparateInsertThreshold(configuration.getSeparateInsertThreshold());
+		insertPlanner.setChkCaptureThreshold(configuration.getChkCaptureThreshold());
+		insertPlanner.setNode(node);
 
 		Project currentProject = null;
 		for (String argument : args) {
-			if (argument.startsWith("--config-file=")) {
+			if (argument.startsWith("--config-file=") || argument.equals("--plan") || argument.equals("--history")) {
 				/* we already parsed this one. */
 				continue;
 			}
@@ -122,13 +216,19 @@ public class CLI implements InsertListener {
 				}
 				node = newNode;
 				freenetInterface.setNode(node);
+				insertPlanner.setNode(node);
 			} else if (argument.startsWith("--project=")) {
 				if (currentProject != null) {
-					if (insertProject(currentProject)) {
+					if (historyOnly) {
+						showHistory(currentProject);
+					} else if (planOnly) {
+						planProject(currentProject);
+					} else if (insertProject(currentProject)) {
 						outputWriter.println("Project \"" + currentProject.getName() + "\" successfully inserted.");
 					} else {
 						outputWriter.println("Project \"" + currentProject.getName() + "\" was not successfully inserted.");
 					}
+					configuration.releaseFileState(currentProject);
 					currentProject = null;
 				}
 				currentProject = getProject(value);
@@ -153,6 +253,85 @@ public class CLI implements InsertListener {
 					return;
 				}
 				currentProject.setEdition(Integer.parseInt(value));
+			} else if (argument.startsWith("--include=")) {
+				if (currentProject == null) {
+					outputWriter.println("You can't specify --include before --project.");
+					return;
+				}
+				List<String> includeRules = new ArrayList<String>(currentProject.getIncludeRules());
+				savedIncludeRules.putIfAbsent(currentProject, new ArrayList<String>(currentProject.getIncludeRules()));
+				includeRules.add(value);
+				currentProject.setIncludeRules(includeRules);
+			} else if (argument.startsWith("--exclude=")) {
+				if (currentProject == null) {
+					outputWriter.println("You can't specify --exclude before --project.");
+					return;
+				}
+				List<String> excludeRules = new ArrayList<String>(currentProject.getExcludeRules());
+				savedExcludeRules.putIfAbsent(currentProject, new ArrayList<String>(currentProject.getExcludeRules()));
+				excludeRules.add(value);
+				currentProject.setExcludeRules(excludeRules);
+			} else if (argument.startsWith("--symlinks=")) {
+				if (currentProject == null) {
+					outputWriter.println("You can't specify --symlinks before --project.");
+					return;
+				}
+				try {
+					currentProject.setSymlinkPolicy(SymlinkPolicy.valueOf(value.toUpperCase(Locale.ENGLISH)));
+				} catch (IllegalArgumentException iae1) {
+					outputWriter.println("Unknown symlink policy: " + value);
+					return;
+				}
+			} else if (argument.startsWith("--priority=")) {
+				if (currentProject == null) {
+					outputWriter.println("You can't specify --priority before --project.");
+					return;
+				}
+				PriorityClass priority = PriorityClass.valueOf(value);
+				if (priority == null) {
+					outputWriter.println("Unknown priority class: " + value);
+					return;
+				}
+				currentProject.setPriority(priority);
+			} else if (argument.startsWith("--hash-algorithm=")) {
+				if (currentProject == null) {
+					outputWriter.println("You can't specify --hash-algorithm before --project.");
+					return;
+				}
+				HashAlgorithm hashAlgorithm = HashAlgorithm.getByName(value);
+				if (hashAlgorithm == null) {
+					outputWriter.println("Unknown hash algorithm: " + value);
+					return;
+				}
+				currentProject.setHashAlgorithm(hashAlgorithm);
+			} else if (argument.startsWith("--manifest-putter=")) {
+				if (currentProject == null) {
+					outputWriter.println("You can't specify --manifest-putter before --project.");
+					return;
+				}
+				ManifestPutter manifestPutter = ManifestPutter.valueOf(value);
+				if (manifestPutter == null) {
+					outputWriter.println("Unknown manifest putter: " + value);
+					return;
+				}
+				currentProject.setManifestPutter(manifestPutter);
+			} else if (argument.startsWith("--container-size=")) {
+				if (currentProject == null) {
+					outputWriter.println("You can't specify --container-size before --project.");
+					return;
+				}
+				try {
+					currentProject.setContainerSize(Long.parseLong(value));
+				} catch (NumberFormatException nfe1) {
+					outputWriter.println("Invalid container size: " + value);
+					return;
+				}
+			} else if (argument.startsWith("--export-config=")) {
+				if (configuration.exportConfiguration(new File(value), projects)) {
+					outputWriter.println("Configuration exported to \"" + value + "\".");
+				} else {
+					outputWriter.println("Could not export configuration to \"" + value + "\".");
+				}
 			} else {
 				outputWriter.println("Unknown parameter: " + argument);
 				return;
@@ -160,6 +339,23 @@ public class CLI implements InsertListener {
 		}
 
 		int errorCode = 1;
+		if (historyOnly) {
+			if (currentProject != null) {
+				showHistory(currentProject);
+				errorCode = 0;
+			}
+			TaskExecutors.shutdown();
+			TempSpace.closeAll();
+			System.exit(errorCode);
+		}
+		if (planOnly) {
+			if ((currentProject != null) && planProject(currentProject)) {
+				errorCode = 0;
+			}
+			TaskExecutors.shutdown();
+			TempSpace.closeAll();
+			System.exit(errorCode);
+		}
 		if (currentProject != null) {
 			if (insertProject(currentProject)) {
 				outputWriter.println("Project \"" + currentProject.getName() + "\" successfully inserted.");
@@ -169,9 +365,18 @@ public class CLI implements InsertListener {
 			}
 		}
 
+		/* rules from the command line are not saved with the project. */
+		for (Entry<Project, List<String>> savedIncludeRule : savedIncludeRules.entrySet()) {
+			savedIncludeRule.getKey().setIncludeRules(savedIncludeRule.getValue());
+		}
+		for (Entry<Project, List<String>> savedExcludeRule : savedExcludeRules.entrySet()) {
+			savedExcludeRule.getKey().setExcludeRules(savedExcludeRule.getValue());
+		}
 		configuration.setProjects(projects);
 		configuration.save();
 
+		TaskExecutors.shutdown();
+		TempSpace.closeAll();
 		System.exit(errorCode);
 	}
 
@@ -207,6 +412,83 @@ public class CLI implements InsertListener {
 		return null;
 	}
 
+	/**
+	 * Scans the files of the given project and shows what an insert of the
+	 * project would do, without contacting the node.
+	 *
+	 * @param currentProject
+	 *            The project to plan the insert for
+	 * @return {@code true} if the plan could be created, {@code false} if the
+	 *         files of the project could not be scanned
+	 */
+	private boolean planProject(Project currentProject) {
+		FileScanner fileScanner = new FileScanner(currentProject, (error, files) -> {
+			/* we run the scanner ourselves. */
+		});
+		fileScanner.run();
+		if (fileScanner.isError()) {
+			outputWriter.println("Could not scan files of project \"" + currentProject.getName() + "\".");
+			return false;
+		}
+		InsertPlan insertPlan = insertPlanner.plan(currentProject, fileScanner.getFiles());
+		outputWriter.println("Insert plan for project \"" + currentProject.getName() + "\":");
+		for (PlannedFile plannedFile : insertPlan.getPlannedFiles()) {
+			if (plannedFile.getAction().isUpload()) {
+				outputWriter.println("  " + plannedFile.getFilename() + ": " + plannedFile.getSize() + " bytes" + ((plannedFile.getAction() == Action.SEPARATE) ? ", inserted separately" : ""));
+			}
+		}
+		outputWriter.println("Files uploaded with the manifest: " + insertPlan.getFileCount(Action.PAYLOAD) + " (" + insertPlan.getSize(Action.PAYLOAD) + " bytes)");
+		outputWriter.println("Files inserted separately: " + insertPlan.getFileCount(Action.SEPARATE) + " (" + insertPlan.getSize(Action.SEPARATE) + " bytes)");
+		outputWriter.println("Unchanged files: " + insertPlan.getFileCount(Action.REDIRECT_UNCHANGED) + " (" + insertPlan.getSize(Action.REDIRECT_UNCHANGED) + " bytes)");
+		outputWriter.println("Redirects to custom keys: " + insertPlan.getFileCount(Action.REDIRECT_CUSTOM_KEY));
+		outputWriter.println("Redirects for symbolic links: " + insertPlan.getFileCount(Action.REDIRECT_LINK));
+		outputWriter.println("Skipped files: " + insertPlan.getFileCount(Action.SKIP));
+		outputWriter.println("Bytes to upload: " + insertPlan.getUploadSize());
+		outputWriter.println("Estimated blocks: " + insertPlan.getBlockCount() + " (including redundancy and " + insertPlan.getManifestBlockCount() + " for the manifest)");
+		long estimatedDuration = insertPlan.getEstimatedDuration();
+		outputWriter.println("Estimated duration: " + ((estimatedDuration < 0) ? "unknown" : formatDuration(estimatedDuration)));
+		FetchPlan fetchPlan = fetchPlanner.plan(currentProject, insertPlan);
+		outputWriter.println("Expected fetches to load all " + fetchPlan.getFileCount() + " files with the \"" + fetchPlan.getManifestPutter() + "\" manifest putter: " + fetchPlan.getFetchCount() + " (" + fetchPlan.getManifestCount() + " manifests, " + fetchPlan.getContainerCount() + " additional containers of up to " + fetchPlan.getContainerSize() + " bytes, " + fetchPlan.getKeyCount() + " single keys)");
+		outputWriter.println(insertPlan.isInsertNeeded() ? "Files have changed, an insert is needed." : "No files have changed since the last insert.");
+		return true;
+	}
+
+	/**
+	 * Shows the recent inserts of the given project and, for every node the
+	 * project was inserted to, how throughput, uploaded bytes, and changed
+	 * files developed over the last months.
+	 *
+	 * @param currentProject
+	 *            The project to show the insert history of
+	 */
+	private void showHistory(Project currentProject) {
+		InsertHistory insertHistory = currentProject.getInsertHistory();
+		List<InsertRecord> records = insertHistory.getRecords();
+		outputWriter.println("Insert history for project \"" + currentProject.getName() + "\":");
+		if (records.isEmpty()) {
+			outputWriter.println("  No inserts recorded.");
+			return;
+		}
+		DateFormat dateFormat = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT);
+		for (InsertRecord record : records.subList(Math.max(0, records.size() - HISTORY_RECORDS), records.size())) {
+			outputWriter.println("  " + dateFormat.format(new Date(record.getStartTime())) + ", " + record.getNode() + ", edition " + record.getEdition() + ": " + record.getOutcome().name().toLowerCase(Locale.ENGLISH) + " after " + formatDuration(record.getDuration()) + ", " + record.getUploadedBytes() + " bytes, " + record.getChangedFileCount() + " changed, " + record.getRedirectedFileCount() + " redirected, " + record.getSkippedFileCount() + " skipped, " + record.getRetries() + " retries, " + String.format("%.1f", record.getThroughput()) + " blocks/min");
+			StringBuilder phases = new StringBuilder();
+			for (Phase phase : Phase.values()) {
+				if (record.getPhaseDuration(phase) > 0) {
+					phases.append((phases.length() > 0) ? ", " : "").append(phase.name().toLowerCase(Locale.ENGLISH).replace('_', ' ')).append(' ').append(formatDuration(record.getPhaseDuration(phase)));
+				}
+			}
+			outputWriter.println("    " + phases);
+		}
+		DateFormat periodFormat = DateFormat.getDateInstance(DateFormat.SHORT);
+		for (String node : insertHistory.getNodes()) {
+			outputWriter.println("Monthly trend for node " + node + ":");
+			for (Period period : insertHistory.getTrend(node, TREND_PERIOD_LENGTH, TREND_PERIOD_COUNT, System.currentTimeMillis())) {
+				outputWriter.println("  " + periodFormat.format(new Date(period.getStartTime())) + " - " + periodFormat.format(new Date(period.getEndTime())) + ": " + period.getSuccessfulInsertCount() + " of " + period.getInsertCount() + " inserts successful, " + String.format("%.1f", period.getThroughput()) + " blocks/min, " + period.getAverageUploadedBytes() + " bytes and " + String.format("%.1f", period.getAverageChangedFileCount()) + " changed files per insert, " + formatDuration(period.getAverageDuration()) + " per successful insert");
+			}
+		}
+	}
+
 	/**
 	 * Inserts the given project.
 	 *
@@ -221,6 +503,7 @@ public class CLI implements InsertListener {
 			return false;
 		}
 		projectInserter.setProject(currentProject);
+		projectInserter.setPriority(currentProject.getPriority(defaultPriority));
 		projectInserter.start(new ProgressListener() {
 
 			@Override
@@ -240,6 +523,17 @@ public class CLI implements InsertListener {
 		return success;
 	}
 
+	/**
+	 * Formats the given duration as hours, minutes, and seconds.
+	 *
+	 * @param duration
+	 *            The duration (in milliseconds)
+	 * @return The formatted duration
+	 */
+	private static String formatDuration(long duration) {
+		return String.format("%d:%02d:%02d", duration / 3600000, (duration / 60000) % 60, (duration / 1000) % 60);
+	}
+
 	//
 	// INTERFACE InsertListener
 	//
@@ -279,6 +573,14 @@ public class CLI implements InsertListener {
 		outputWriter.println("Progress: " + succeeded + " done, " + failed + " failed, " + fatal + " fatal, " + total + " total" + (finalized ? " (finalized)" : "") + ", " + ((succeeded + failed + fatal) * 100 / total) + "%");
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void projectInsertRetrying(Project project, int retry, int maxRetries, long delay) {
+		outputWriter.println("Connection lost, retry " + retry + " of " + maxRetries + " in " + ((delay + 999) / 1000) + "s...");
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
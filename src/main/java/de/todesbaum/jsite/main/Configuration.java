@@ -25,13 +25,19 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -40,14 +46,27 @@ import net.pterodactylus.util.io.StreamCopier;
 import net.pterodactylus.util.xml.SimpleXML;
 import net.pterodactylus.util.xml.XML;
 import de.todesbaum.jsite.application.FileOption;
+import de.todesbaum.jsite.application.HashAlgorithm;
+import de.todesbaum.jsite.application.InsertPlanner;
+import de.todesbaum.jsite.application.InsertQueue;
 import de.todesbaum.jsite.application.Node;
 import de.todesbaum.jsite.application.Project;
+import de.todesbaum.jsite.application.RetryPolicy;
+import de.todesbaum.jsite.application.SymlinkPolicy;
 import de.todesbaum.jsite.main.ConfigurationLocator.ConfigurationLocation;
+import de.todesbaum.util.freenet.fcp2.ManifestPutter;
 import de.todesbaum.util.freenet.fcp2.PriorityClass;
 import org.w3c.dom.Document;
 
 /**
  * The configuration.
+ * <p>
+ * The projects are loaded in the background while the user interface reads
+ * the other settings, and their file-level state is loaded lazily from
+ * whatever thread first accesses it. The lazily created stores and the sets
+ * of project IDs are therefore guarded; they are never locked while a
+ * project is accessed, because a project calls back into the configuration
+ * while holding its own lock.
  *
  * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
  */
@@ -60,7 +79,22 @@ public class Configuration {
 	private final ConfigurationLocator configurationLocator;
 
 	/** Where the configuration resides. */
-	private ConfigurationLocation configurationLocation;
+	private volatile ConfigurationLocation configurationLocation;
+
+	/** The projects that will be written by {@link #save()}. */
+	private volatile List<Project> projects;
+
+	/** The store for the file-level state of the projects. */
+	private ProjectStateStore projectStateStore;
+
+	/** The store for the insert histories of the projects. */
+	private InsertHistoryStore insertHistoryStore;
+
+	/** IDs of projects whose file-level state was read from the XML. */
+	private final Set<String> inlineProjectIds = Collections.synchronizedSet(new HashSet<String>());
+
+	/** IDs of projects whose file-level state could not be loaded. */
+	private final Set<String> unloadableProjectIds = Collections.synchronizedSet(new HashSet<String>());
 
 	/**
 	 * Creates a new configuration that is read from the given file.
@@ -162,13 +196,98 @@ public class Configuration {
 				return false;
 			}
 		}
+		if (projects != null) {
+			saveProjects();
+		}
+		return writeConfiguration(rootNode, configurationFile);
+	}
+
+	/**
+	 * Exports the configuration to the given file. The exported configuration
+	 * contains the file-level state of all given projects in the XML format
+	 * that was used before the project state store existed.
+	 *
+	 * @param exportFile
+	 *            The file to export the configuration to
+	 * @param projects
+	 *            The projects to export
+	 * @return {@code true} if the configuration was exported, {@code false}
+	 *         otherwise
+	 */
+	public boolean exportConfiguration(File exportFile, List<Project> projects) {
+		Document exportDocument = XML.transformToDocument(XML.transformToByteArray(rootNode.getDocument()));
+		if (exportDocument == null) {
+			return false;
+		}
+		SimpleXML exportNode = SimpleXML.fromDocument(exportDocument);
+		exportNode.replace(createProjectListNode(projects, projects));
+		return writeConfiguration(exportNode, exportFile);
+	}
+
+	/**
+	 * Writes the file-level state of all projects to the project state store
+	 * and stores the project list in the configuration. The file-level state
+	 * of projects that could not be written to the store is stored in the
+	 * configuration itself.
+	 */
+	private void saveProjects() {
+		List<Project> projects = this.projects;
+		ProjectStateStore projectStateStore = getProjectStateStore();
+		List<Project> unstoredProjects = new ArrayList<Project>();
+		List<String> projectIds = new ArrayList<String>();
+		for (Project project : projects) {
+			projectIds.add(project.getId());
+			if (projectStateStore == null) {
+				unstoredProjects.add(project);
+				continue;
+			}
+			if (!project.isFileOptionsLoaded() || unloadableProjectIds.contains(project.getId())) {
+				/* state was not loaded, so it did not change. */
+				continue;
+			}
+			try {
+				projectStateStore.save(project);
+				inlineProjectIds.remove(project.getId());
+			} catch (IOException ioe1) {
+				Logger.getLogger(Configuration.class.getName()).log(Level.WARNING, "Could not store state of project " + project.getName(), ioe1);
+				unstoredProjects.add(project);
+			}
+		}
+		if ((projectStateStore != null) && unstoredProjects.isEmpty()) {
+			projectStateStore.retain(projectIds);
+		}
+		saveInsertHistories(projects, projectIds);
+		rootNode.replace(createProjectListNode(projects, unstoredProjects));
+	}
+
+	/**
+	 * Writes the given configuration to the given file. The configuration is
+	 * first written to a temporary file which then replaces the given file so
+	 * that a crash while writing does not destroy the existing file.
+	 *
+	 * @param configurationNode
+	 *            The configuration to write
+	 * @param configurationFile
+	 *            The file to write the configuration to
+	 * @return {@code true} if the configuration was written, {@code false}
+	 *         otherwise
+	 */
+	private static boolean writeConfiguration(SimpleXML configurationNode, File configurationFile) {
+		File temporaryFile = new File(configurationFile.getPath() + ".tmp");
 		FileOutputStream fileOutputStream = null;
 		ByteArrayInputStream configurationInputStream = null;
 		try {
-			byte[] configurationBytes = XML.transformToByteArray(rootNode.getDocument());
+			byte[] configurationBytes = XML.transformToByteArray(configurationNode.getDocument());
 			configurationInputStream = new ByteArrayInputStream(configurationBytes);
-			fileOutputStream = new FileOutputStream(configurationFile);
+			fileOutputStream = new FileOutputStream(temporaryFile);
 			StreamCopier.copy(configurationInputStream, fileOutputStream, configurationBytes.length);
+			fileOutputStream.getFD().sync();
+			fileOutputStream.close();
+			try {
+				Files.move(temporaryFile.toPath(), configurationFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException amnse1) {
+				Files.move(temporaryFile.toPath(), configurationFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
 			return true;
 		} catch (IOException ioe1) {
 			/* ignore. */
@@ -179,6 +298,97 @@ public class Configuration {
 		return false;
 	}
 
+	/**
+	 * Appends the new insert records of all projects to the insert history
+	 * store and removes the histories of deleted projects. Histories that have
+	 * not been loaded can not contain new records and are skipped.
+	 *
+	 * @param projects
+	 *            All projects
+	 * @param projectIds
+	 *            The IDs of all projects
+	 */
+	private void saveInsertHistories(List<Project> projects, List<String> projectIds) {
+		InsertHistoryStore insertHistoryStore = getInsertHistoryStore();
+		if (insertHistoryStore == null) {
+			return;
+		}
+		boolean allStored = true;
+		for (Project project : projects) {
+			if (!project.isInsertHistoryLoaded()) {
+				continue;
+			}
+			try {
+				insertHistoryStore.save(project);
+			} catch (IOException ioe1) {
+				Logger.getLogger(Configuration.class.getName()).log(Level.WARNING, "Could not store insert history of project " + project.getName(), ioe1);
+				allStored = false;
+			}
+		}
+		if (allStored) {
+			insertHistoryStore.retain(projectIds);
+		}
+	}
+
+	/**
+	 * Loads the insert history of the given project from the insert history
+	 * store. This method is used as insert history loader of the projects, so
+	 * that histories are only read when they are first accessed. A history
+	 * that can not be loaded is logged and starts empty.
+	 *
+	 * @param project
+	 *            The project to load the insert history for
+	 */
+	private void loadInsertHistory(Project project) {
+		InsertHistoryStore insertHistoryStore = getInsertHistoryStore();
+		if (insertHistoryStore == null) {
+			return;
+		}
+		try {
+			insertHistoryStore.load(project);
+		} catch (IOException ioe1) {
+			Logger.getLogger(Configuration.class.getName()).log(Level.WARNING, "Could not load insert history of project " + project.getName(), ioe1);
+		}
+	}
+
+	/**
+	 * Returns the store for the insert histories of the projects. The store
+	 * resides in a directory next to the configuration file.
+	 *
+	 * @return The insert history store, or {@code null} if the configuration
+	 *         location is not valid
+	 */
+	private synchronized InsertHistoryStore getInsertHistoryStore() {
+		String configurationFilename = configurationLocator.getFile(configurationLocation);
+		if (configurationFilename == null) {
+			return null;
+		}
+		File insertHistoryDirectory = new File(configurationFilename + ".history");
+		if ((insertHistoryStore == null) || !insertHistoryStore.getDirectory().equals(insertHistoryDirectory)) {
+			insertHistoryStore = new InsertHistoryStore(insertHistoryDirectory);
+		}
+		return insertHistoryStore;
+	}
+
+	/**
+	 * Returns the store for the file-level state of the projects. The store
+	 * resides in a directory next to the configuration file.
+	 *
+	 * @return The project state store, or {@code null} if the configuration
+	 *         location is not valid
+	 */
+	private synchronized ProjectStateStore getProjectStateStore() {
+		String configurationFilename = configurationLocator.getFile(configurationLocation);
+		if (configurationFilename == null) {
+			return null;
+		}
+		File projectStateDirectory = new File(configurationFilename + ".projects");
+		if ((projectStateStore == null) || !projectStateStore.getDirectory().equals(projectStateDirectory)) {
+			projectStateStore = new ProjectStateStore(projectStateDirectory);
+		}
+		return projectStateStore;
+	}
+
 	/**
 	 * Returns the value of a node.
 	 *
@@ -220,6 +430,25 @@ public class Configuration {
 		return defaultValue;
 	}
 
+	/**
+	 * Returns the long value of a node.
+	 *
+	 * @param nodeNames
+	 *            The names of all nodes in the chain
+	 * @param defaultValue
+	 *            The default value to return if the node can not be found
+	 * @return The parsed long value, or the default value if the node can not
+	 *         be found or the value can not be parsed into a long
+	 */
+	private long getNodeLongValue(String[] nodeNames, long defaultValue) {
+		try {
+			return Long.parseLong(getNodeValue(nodeNames, String.valueOf(defaultValue)));
+		} catch (NumberFormatException nfe1) {
+			/* ignore. */
+		}
+		return defaultValue;
+	}
+
 	/**
 	 * Returns the boolean value of a node.
 	 *
@@ -319,6 +548,10 @@ public class Configuration {
 				try {
 					Project project = new Project();
 					projects.add(project);
+					String projectId = projectNode.getValue("id", null);
+					if (projectId != null) {
+						project.setId(projectId);
+					}
 					project.setDescription(projectNode.getValue("description", ""));
 					String indexFile = projectNode.getValue("index-file", "");
 					if (indexFile.indexOf('/') > -1) {
@@ -326,6 +559,7 @@ public class Configuration {
 					}
 					project.setIndexFile(indexFile);
 					project.setLastInsertionTime(Long.parseLong(projectNode.getValue("last-insertion-time", "0")));
+					project.setInsertThroughput(Double.parseDouble(projectNode.getValue("insert-throughput", "0")));
 					project.setLocalPath(projectNode.getValue("local-path", ""));
 					project.setName(projectNode.getValue("name", ""));
 					project.setPath(projectNode.getValue("path", ""));
@@ -341,44 +575,15 @@ public class Configuration {
 						project.setIgnoreHiddenFiles(true);
 					}
 					project.setAlwaysForceInsert(Boolean.parseBoolean(projectNode.getValue("always-force-insert", "false")));
-
-					/* load last insert hashes. */
-					Map<String, FileOption> fileOptions = new HashMap<String, FileOption>();
-					SimpleXML lastInsertHashesNode = projectNode.getNode("last-insert-hashes");
-					if (lastInsertHashesNode != null) {
-						for (SimpleXML fileNode : lastInsertHashesNode.getNodes("file")) {
-							String filename = fileNode.getNode("filename").getValue();
-							String lastInsertHash = fileNode.getNode("last-insert-hash").getValue();
-							int lastInsertEdition = Integer.valueOf(fileNode.getNode("last-insert-edition").getValue());
-							String lastInsertFilename = filename;
-							if (fileNode.getNode("last-insert-filename") != null) {
-								lastInsertFilename = fileNode.getNode("last-insert-filename").getValue();
-							}
-							FileOption fileOption = project.getFileOption(filename);
-							fileOption.setLastInsertHash(lastInsertHash).setLastInsertEdition(lastInsertEdition).setLastInsertFilename(lastInsertFilename);
-							fileOptions.put(filename, fileOption);
-						}
-					}
-
-					SimpleXML fileOptionsNode = projectNode.getNode("file-options");
-					if (fileOptionsNode != null) {
-						SimpleXML[] fileOptionNodes = fileOptionsNode.getNodes("file-option");
-						for (SimpleXML fileOptionNode : fileOptionNodes) {
-							String filename = fileOptionNode.getNode("filename").getValue();
-							FileOption fileOption = project.getFileOption(filename);
-							fileOption.setInsert(Boolean.parseBoolean(fileOptionNode.getNode("insert").getValue()));
-							if (fileOptionNode.getNode("insert-redirect") != null) {
-								fileOption.setInsertRedirect(Boolean.parseBoolean(fileOptionNode.getNode("insert-redirect").getValue()));
-							}
-							fileOption.setCustomKey(fileOptionNode.getValue("custom-key", ""));
-							if (fileOptionNode.getNode("changed-name") != null) {
-								fileOption.setChangedName(fileOptionNode.getNode("changed-name").getValue());
-							}
-							fileOption.setMimeType(fileOptionNode.getValue("mime-type", ""));
-							fileOptions.put(filename, fileOption);
-						}
-					}
-					project.setFileOptions(fileOptions);
+					project.setSymlinkPolicy(getSymlinkPolicy(projectNode.getValue("symlink-policy", "FOLLOW")));
+					project.setHashAlgorithm(HashAlgorithm.getByName(projectNode.getValue("hash-algorithm", "")));
+					project.setPriority(PriorityClass.valueOf(projectNode.getValue("insert-priority", "")));
+					project.setManifestPutter(ManifestPutter.valueOf(projectNode.getValue("manifest-putter", "")));
+					project.setContainerSize(Long.parseLong(projectNode.getValue("container-size", "0")));
+					project.setIncludeRules(getRules(projectNode.getNode("include-rules")));
+					project.setExcludeRules(getRules(projectNode.getNode("exclude-rules")));
+					loadFileState(project, projectNode);
+					project.setInsertHistoryLoader(this::loadInsertHistory);
 				} catch (NumberFormatException nfe1) {
 					nfe1.printStackTrace();
 				}
@@ -388,19 +593,193 @@ public class Configuration {
 	}
 
 	/**
-	 * Sets the list of all projects.
+	 * Parses the given symbolic link policy, falling back to
+	 * {@link SymlinkPolicy#FOLLOW} for unknown values.
+	 *
+	 * @param symlinkPolicy
+	 *            The name of the symbolic link policy
+	 * @return The symbolic link policy
+	 */
+	private static SymlinkPolicy getSymlinkPolicy(String symlinkPolicy) {
+		try {
+			return SymlinkPolicy.valueOf(symlinkPolicy);
+		} catch (IllegalArgumentException iae1) {
+			Logger.getLogger(Configuration.class.getName()).log(Level.WARNING, String.format("Unknown symlink policy: %s", symlinkPolicy));
+			return SymlinkPolicy.FOLLOW;
+		}
+	}
+
+	/**
+	 * Returns the include or exclude rules stored in the given node.
+	 *
+	 * @param rulesNode
+	 *            The node containing the rules (may be {@code null})
+	 * @return The rules
+	 */
+	private static List<String> getRules(SimpleXML rulesNode) {
+		List<String> rules = new ArrayList<String>();
+		if (rulesNode != null) {
+			for (SimpleXML ruleNode : rulesNode.getNodes("rule")) {
+				rules.add(ruleNode.getValue());
+			}
+		}
+		return rules;
+	}
+
+	/**
+	 * Appends the given include or exclude rules to the given node.
+	 *
+	 * @param rulesNode
+	 *            The node to append the rules to
+	 * @param rules
+	 *            The rules to append
+	 */
+	private static void appendRules(SimpleXML rulesNode, List<String> rules) {
+		for (String rule : rules) {
+			rulesNode.append("rule", rule);
+		}
+	}
+
+	/**
+	 * Releases the file-level state of the given project. The state is
+	 * written to the project state store and then discarded; it is loaded
+	 * again when it is accessed the next time. The state of projects that have
+	 * not yet been written to the store since they were read from the XML can
+	 * not be released.
+	 *
+	 * @param project
+	 *            The project to release the file-level state of
+	 * @return {@code true} if the state was released, {@code false} otherwise
+	 */
+	public boolean releaseFileState(Project project) {
+		if (!project.isFileOptionsLoaded()) {
+			return true;
+		}
+		ProjectStateStore projectStateStore = getProjectStateStore();
+		if ((projectStateStore == null) || inlineProjectIds.contains(project.getId()) || unloadableProjectIds.contains(project.getId())) {
+			return false;
+		}
+		try {
+			projectStateStore.save(project);
+		} catch (IOException ioe1) {
+			Logger.getLogger(Configuration.class.getName()).log(Level.WARNING, "Could not store state of project " + project.getName(), ioe1);
+			return false;
+		}
+		projectStateStore.forget(project.getId());
+		project.setFileOptionsLoader(this::loadStoredFileState);
+		return true;
+	}
+
+	/**
+	 * Prepares the loading of the file-level state of the given project. If
+	 * the configuration contains file-level state for the project (because it
+	 * was written by an older version, or because the project state store
+	 * could not be written) it is read right away, otherwise the state is
+	 * loaded from the project state store when it is first accessed.
+	 *
+	 * @param project
+	 *            The project to load the file-level state for
+	 * @param projectNode
+	 *            The configuration node of the project
+	 */
+	private void loadFileState(Project project, SimpleXML projectNode) {
+		boolean hasInlineState = (projectNode.getNode("last-insert-hashes") != null) || (projectNode.getNode("file-options") != null);
+		ProjectStateStore projectStateStore = getProjectStateStore();
+		if (!hasInlineState) {
+			if ((projectStateStore != null) && projectStateStore.hasState(project.getId())) {
+				project.setFileOptionsLoader(this::loadStoredFileState);
+			}
+			return;
+		}
+		inlineProjectIds.add(project.getId());
+
+		/* load last insert hashes. */
+		project.setFileOptions(Collections.<String, FileOption> emptyMap());
+		SimpleXML lastInsertHashesNode = projectNode.getNode("last-insert-hashes");
+		if (lastInsertHashesNode != null) {
+			for (SimpleXML fileNode : lastInsertHashesNode.getNodes("file")) {
+				String filename = fileNode.getNode("filename").getValue();
+				String lastInsertHash = fileNode.getNode("last-insert-hash").getValue();
+				int lastInsertEdition = Integer.valueOf(fileNode.getNode("last-insert-edition").getValue());
+				String lastInsertFilename = filename;
+				if (fileNode.getNode("last-insert-filename") != null) {
+					lastInsertFilename = fileNode.getNode("last-insert-filename").getValue();
+				}
+				String lastInsertKey = fileNode.getValue("last-insert-key", null);
+				FileOption fileOption = project.getFileOption(filename);
+				fileOption.setLastInsertHash(lastInsertHash).setLastInsertEdition(lastInsertEdition).setLastInsertFilename(lastInsertFilename).setLastInsertKey(lastInsertKey);
+			}
+		}
+
+		SimpleXML fileOptionsNode = projectNode.getNode("file-options");
+		if (fileOptionsNode != null) {
+			SimpleXML[] fileOptionNodes = fileOptionsNode.getNodes("file-option");
+			for (SimpleXML fileOptionNode : fileOptionNodes) {
+				String filename = fileOptionNode.getNode("filename").getValue();
+				FileOption fileOption = project.getFileOption(filename);
+				fileOption.setInsert(Boolean.parseBoolean(fileOptionNode.getNode("insert").getValue()));
+				if (fileOptionNode.getNode("insert-redirect") != null) {
+					fileOption.setInsertRedirect(Boolean.parseBoolean(fileOptionNode.getNode("insert-redirect").getValue()));
+				}
+				fileOption.setCustomKey(fileOptionNode.getValue("custom-key", ""));
+				if (fileOptionNode.getNode("changed-name") != null) {
+					fileOption.setChangedName(fileOptionNode.getNode("changed-name").getValue());
+				}
+				fileOption.setMimeType(fileOptionNode.getValue("mime-type", ""));
+			}
+		}
+	}
+
+	/**
+	 * Loads the file-level state of the given project from the project state
+	 * store. If the state can not be loaded, the project is marked so that its
+	 * stored state is not overwritten.
+	 *
+	 * @param project
+	 *            The project to load the file-level state for
+	 */
+	private void loadStoredFileState(Project project) {
+		try {
+			Logger.getLogger(Configuration.class.getName()).log(Level.FINE, "Loading state of project " + project.getName());
+			getProjectStateStore().load(project);
+		} catch (IOException ioe1) {
+			Logger.getLogger(Configuration.class.getName()).log(Level.WARNING, "Could not load state of project " + project.getName(), ioe1);
+			unloadableProjectIds.add(project.getId());
+		}
+	}
+
+	/**
+	 * Sets the list of all projects. The projects are written when the
+	 * configuration is {@link #save() saved}.
 	 *
 	 * @param projects
 	 *            The list of all projects
 	 */
 	public void setProjects(List<Project> projects) {
+		this.projects = new ArrayList<Project>(projects);
+		rootNode.replace(createProjectListNode(projects, Collections.<Project> emptyList()));
+	}
+
+	/**
+	 * Creates the configuration node for the given projects.
+	 *
+	 * @param projects
+	 *            The projects
+	 * @param inlineProjects
+	 *            The projects whose file-level state should be stored in the
+	 *            node as well
+	 * @return The configuration node containing the projects
+	 */
+	private static SimpleXML createProjectListNode(List<Project> projects, Collection<Project> inlineProjects) {
 		SimpleXML projectsNode = new SimpleXML("project-list");
 		for (Project project : projects) {
 			SimpleXML projectNode = projectsNode.append("project");
+			projectNode.append("id", project.getId());
 			projectNode.append("edition", String.valueOf(project.getEdition()));
 			projectNode.append("description", project.getDescription());
 			projectNode.append("index-file", project.getIndexFile());
 			projectNode.append("last-insertion-time", String.valueOf(project.getLastInsertionTime()));
+			projectNode.append("insert-throughput", String.valueOf(project.getInsertThroughput()));
 			projectNode.append("local-path", project.getLocalPath());
 			projectNode.append("name", project.getName());
 			projectNode.append("path", project.getPath());
@@ -408,6 +787,22 @@ public class Configuration {
 			projectNode.append("request-uri", project.getRequestURI());
 			projectNode.append("ignore-hidden-files", String.valueOf(project.isIgnoreHiddenFiles()));
 			projectNode.append("always-force-insert", String.valueOf(project.isAlwaysForceInsert()));
+			projectNode.append("symlink-policy", project.getSymlinkPolicy().name());
+			projectNode.append("hash-algorithm", project.getHashAlgorithm().getName());
+			if (project.getPriority() != null) {
+				projectNode.append("insert-priority", project.getPriority().getName());
+			}
+			if (project.getManifestPutter() != null) {
+				projectNode.append("manifest-putter", project.getManifestPutter().getName());
+			}
+			if (project.getContainerSize() > 0) {
+				projectNode.append("container-size", String.valueOf(project.getContainerSize()));
+			}
+			appendRules(projectNode.append("include-rules"), project.getIncludeRules());
+			appendRules(projectNode.append("exclude-rules"), project.getExcludeRules());
+			if (!inlineProjects.contains(project)) {
+				continue;
+			}
 
 			/* store last insert hashes. */
 			SimpleXML lastInsertHashesNode = projectNode.append("last-insert-hashes");
@@ -420,6 +815,9 @@ public class Configuration {
 				fileNode.append("last-insert-hash", fileOption.getValue().getLastInsertHash());
 				fileNode.append("last-insert-edition", String.valueOf(fileOption.getValue().getLastInsertEdition()));
 				fileNode.append("last-insert-filename", fileOption.getValue().getLastInsertFilename());
+				if (fileOption.getValue().getLastInsertKey() != null) {
+					fileNode.append("last-insert-key", fileOption.getValue().getLastInsertKey());
+				}
 			}
 
 			SimpleXML fileOptionsNode = projectNode.append("file-options");
@@ -438,7 +836,7 @@ public class Configuration {
 				}
 			}
 		}
-		rootNode.replace(projectsNode);
+		return projectsNode;
 	}
 
 	/**
@@ -556,7 +954,9 @@ public class Configuration {
 	}
 
 	/**
-	 * Returns the temp directory to use.
+	 * Returns the temp directory to use. Several temp directories can be
+	 * given, separated by the {@link java.io.File#pathSeparator path
+	 * separator}; temporary files are then spread over all of them.
 	 *
 	 * @return The temp directoy, or {@code null} to use the default temp
 	 *         directory
@@ -626,4 +1026,78 @@ public class Configuration {
 		return this;
 	}
 
+	/**
+	 * Returns whether large files should be inserted separately, with the
+	 * project manifest only redirecting to them.
+	 *
+	 * @return {@code true} to insert large files separately, {@code false} to
+	 *         insert all files in a single request
+	 */
+	public boolean insertFilesSeparately() {
+		return getNodeBooleanValue(new String[] { "insert-files-separately" }, false);
+	}
+
+	/**
+	 * Sets whether large files should be inserted separately.
+	 *
+	 * @param insertFilesSeparately
+	 *            {@code true} to insert large files separately, {@code false}
+	 *            to insert all files in a single request
+	 * @return This configuration
+	 */
+	public Configuration setInsertFilesSeparately(boolean insertFilesSeparately) {
+		rootNode.replace("insert-files-separately", String.valueOf(insertFilesSeparately));
+		return this;
+	}
+
+	/**
+	 * Returns the minimum size of a file that is inserted separately.
+	 *
+	 * @return The minimum size of a separately inserted file (in bytes)
+	 */
+	public long getSeparateInsertThreshold() {
+		return getNodeLongValue(new String[] { "separate-insert-threshold" }, 1024 * 1024);
+	}
+
+	/**
+	 * Returns the maximum number of files that are inserted separately at the
+	 * same time.
+	 *
+	 * @return The maximum number of parallel file inserts
+	 */
+	public int getSeparateInsertConcurrency() {
+		return getNodeIntValue(new String[] { "separate-insert-concurrency" }, 4);
+	}
+
+	/**
+	 * Returns the minimum size of a file whose CHK is recorded when it is
+	 * inserted with the project manifest.
+	 *
+	 * @return The minimum size of a file whose CHK is recorded (in bytes), or
+	 *         {@code -1} to not record any CHKs
+	 */
+	public long getChkCaptureThreshold() {
+		return getNodeLongValue(new String[] { "chk-capture-threshold" }, InsertPlanner.DEFAULT_CHK_CAPTURE_THRESHOLD);
+	}
+
+	/**
+	 * Returns how often an insert is retried after the connection to the
+	 * node was lost.
+	 *
+	 * @return The maximum number of retries of an insert
+	 */
+	public int getInsertRetries() {
+		return getNodeIntValue(new String[] { "insert-retries" }, RetryPolicy.DEFAULT_MAX_RETRIES);
+	}
+
+	/**
+	 * Returns the maximum number of queued inserts that run on the same node
+	 * at the same time.
+	 *
+	 * @return The maximum number of inserts per node
+	 */
+	public int getMaxInsertsPerNode() {
+		return getNodeIntValue(new String[] { "max-inserts-per-node" }, InsertQueue.DEFAULT_MAX_INSERTS_PER_NODE);
+	}
+
 }
@@ -0,0 +1,456 @@
+/*
+ * jSite - InsertHistoryStore.java - Copyright © 2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+
+package de.todesbaum.jsite.main;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import net.pterodactylus.util.io.Closer;
+import de.todesbaum.jsite.application.InsertHistory;
+import de.todesbaum.jsite.application.InsertRecord;
+import de.todesbaum.jsite.application.InsertRecord.Outcome;
+import de.todesbaum.jsite.application.InsertRecord.Phase;
+import de.todesbaum.jsite.application.Project;
+
+/**
+ * Stores the {@link InsertHistory insert histories} of projects in one file
+ * per project. New records are appended to the file, and the file is synced
+ * to disk before a save returns. Records that are incomplete or damaged (e.g.
+ * because jSite crashed while writing them) end the history when it is read.
+ * Once a file contains twice as many records as a history keeps, it is
+ * rewritten with the current records only.
+ * <p>
+ * Every record consists of the length of its data, the CRC32 of its data, and
+ * the data itself. Phases and outcomes are stored by name so that records
+ * remain readable when phases are added.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class InsertHistoryStore {
+
+	/** The logger. */
+	private static final Logger logger = Logger.getLogger(InsertHistoryStore.class.getName());
+
+	/** The magic number at the start of every history file (“jSIH”). */
+	private static final int MAGIC = 0x6a534948;
+
+	/** The version of the history format. */
+	private static final int VERSION = 1;
+
+	/** The length of the header of a history file. */
+	private static final int HEADER_LENGTH = 8;
+
+	/** The length of the header of a record. */
+	private static final int RECORD_HEADER_LENGTH = 8;
+
+	/** The directory the history files are stored in. */
+	private final File directory;
+
+	/** The length and record count of the files that were read, by ID. */
+	private final Map<String, long[]> fileStates = new HashMap<String, long[]>();
+
+	/**
+	 * Creates a new insert history store that keeps its files in the given
+	 * directory.
+	 *
+	 * @param directory
+	 *            The directory to store the history files in
+	 */
+	public InsertHistoryStore(File directory) {
+		this.directory = directory;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the directory the history files are stored in.
+	 *
+	 * @return The directory of this store
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Loads the insert history of the given project.
+	 *
+	 * @param project
+	 *            The project to load the insert history for
+	 * @throws IOException
+	 *             if the history file can not be read
+	 */
+	public void load(Project project) throws IOException {
+		List<InsertRecord> records = new ArrayList<InsertRecord>();
+		synchronized (this) {
+			fileStates.put(project.getId(), readHistory(project.getId(), records));
+		}
+		project.getInsertHistory().setSavedRecords(records);
+	}
+
+	/**
+	 * Saves the records of the insert history of the given project that have
+	 * not been saved yet.
+	 *
+	 * @param project
+	 *            The project to save the insert history for
+	 * @throws IOException
+	 *             if the history file can not be written
+	 */
+	public void save(Project project) throws IOException {
+		save(project.getId(), project.getInsertHistory());
+	}
+
+	/**
+	 * Removes the history files of all projects whose IDs are not contained
+	 * in the given collection.
+	 *
+	 * @param projectIds
+	 *            The IDs of all projects whose history files should be kept
+	 */
+	public synchronized void retain(Collection<String> projectIds) {
+		Set<String> historyFilenames = new HashSet<String>();
+		for (String projectId : projectIds) {
+			historyFilenames.add(getHistoryFile(projectId).getName());
+		}
+		File[] historyFiles = directory.listFiles();
+		if (historyFiles == null) {
+			return;
+		}
+		for (File historyFile : historyFiles) {
+			if (historyFile.getName().endsWith(".history") && !historyFilenames.contains(historyFile.getName())) {
+				logger.log(Level.INFO, "Removing insert history of deleted project: " + historyFile);
+				if (!historyFile.delete()) {
+					logger.log(Level.WARNING, "Could not remove insert history: " + historyFile);
+				}
+			}
+		}
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Saves the records of the given insert history that have not been saved
+	 * yet.
+	 *
+	 * @param projectId
+	 *            The ID of the project the insert history belongs to
+	 * @param insertHistory
+	 *            The insert history to save
+	 * @throws IOException
+	 *             if the history file can not be written
+	 */
+	private synchronized void save(String projectId, InsertHistory insertHistory) throws IOException {
+		List<InsertRecord> unsavedRecords = insertHistory.getUnsavedRecords();
+		if (unsavedRecords.isEmpty()) {
+			return;
+		}
+		long[] fileState = fileStates.get(projectId);
+		if (fileState == null) {
+			fileState = readHistory(projectId, new ArrayList<InsertRecord>());
+			fileStates.put(projectId, fileState);
+		}
+		ByteArrayOutputStream newRecords = new ByteArrayOutputStream();
+		for (InsertRecord record : unsavedRecords) {
+			writeRecord(newRecords, encodeRecord(record));
+		}
+		if ((fileState[0] == 0) || (fileState[1] + unsavedRecords.size() > 2 * InsertHistory.MAX_RECORDS)) {
+			List<InsertRecord> records = insertHistory.getRecords();
+			fileState[0] = writeCompactedHistory(projectId, records);
+			fileState[1] = records.size();
+		} else {
+			appendToHistory(projectId, fileState[0], newRecords.toByteArray());
+			fileState[0] += newRecords.size();
+			fileState[1] += unsavedRecords.size();
+		}
+		insertHistory.markSaved(unsavedRecords);
+	}
+
+	/**
+	 * Returns the history file for the project with the given ID.
+	 *
+	 * @param projectId
+	 *            The ID of the project
+	 * @return The history file of the project
+	 */
+	private File getHistoryFile(String projectId) {
+		return new File(directory, projectId.replaceAll("[^A-Za-z0-9-]", "_") + ".history");
+	}
+
+	/**
+	 * Reads the history file of the project with the given ID. Reading stops
+	 * at the first record that is incomplete or damaged.
+	 *
+	 * @param projectId
+	 *            The ID of the project
+	 * @param records
+	 *            The list to add the read records to
+	 * @return The length of the valid part of the file and the number of
+	 *         records in it, or two zeroes if the file does not exist
+	 * @throws IOException
+	 *             if the history file can not be read
+	 */
+	private long[] readHistory(String projectId, List<InsertRecord> records) throws IOException {
+		File historyFile = getHistoryFile(projectId);
+		if (!historyFile.exists()) {
+			return new long[2];
+		}
+		InputStream historyInputStream = null;
+		try {
+			historyInputStream = new BufferedInputStream(new FileInputStream(historyFile));
+			DataInputStream historyDataInputStream = new DataInputStream(historyInputStream);
+			if ((historyDataInputStream.readInt() != MAGIC) || (historyDataInputStream.readInt() != VERSION)) {
+				throw new IOException("Invalid insert history: " + historyFile);
+			}
+			long position = HEADER_LENGTH;
+			while (true) {
+				byte[] record;
+				try {
+					int length = historyDataInputStream.readInt();
+					int checksum = historyDataInputStream.readInt();
+					if ((length < 1) || (position + RECORD_HEADER_LENGTH + length > historyFile.length())) {
+						break;
+					}
+					record = new byte[length];
+					historyDataInputStream.readFully(record);
+					if (checksum != checksum(record)) {
+						break;
+					}
+				} catch (EOFException eofe1) {
+					break;
+				}
+				records.add(decodeRecord(record));
+				position += RECORD_HEADER_LENGTH + record.length;
+			}
+			if (position < historyFile.length()) {
+				logger.log(Level.WARNING, String.format("Ignoring %d bytes of damaged data in %s.", historyFile.length() - position, historyFile));
+			}
+			return new long[] { position, records.size() };
+		} finally {
+			Closer.close(historyInputStream);
+		}
+	}
+
+	/**
+	 * Appends the given records to the history file of the project with the
+	 * given ID. Damaged data after the given position is overwritten.
+	 *
+	 * @param projectId
+	 *            The ID of the project
+	 * @param position
+	 *            The position to append the records at
+	 * @param records
+	 *            The records to append
+	 * @throws IOException
+	 *             if the records can not be written
+	 */
+	private void appendToHistory(String projectId, long position, byte[] records) throws IOException {
+		FileChannel historyChannel = FileChannel.open(getHistoryFile(projectId).toPath(), StandardOpenOption.WRITE);
+		try {
+			historyChannel.truncate(position);
+			ByteBuffer recordBuffer = ByteBuffer.wrap(records);
+			long writePosition = position;
+			while (recordBuffer.hasRemaining()) {
+				writePosition += historyChannel.write(recordBuffer, writePosition);
+			}
+			historyChannel.force(false);
+		} finally {
+			Closer.close(historyChannel);
+		}
+	}
+
+	/**
+	 * Writes a new history file containing only the given records and
+	 * atomically replaces the existing history file with it.
+	 *
+	 * @param projectId
+	 *            The ID of the project
+	 * @param records
+	 *            The records to write
+	 * @return The length of the new history file
+	 * @throws IOException
+	 *             if the history file can not be written
+	 */
+	private long writeCompactedHistory(String projectId, List<InsertRecord> records) throws IOException {
+		if (!directory.exists() && !directory.mkdirs()) {
+			throw new IOException("Could not create directory: " + directory);
+		}
+		File historyFile = getHistoryFile(projectId);
+		File temporaryFile = new File(directory, historyFile.getName() + ".tmp");
+		ByteArrayOutputStream historyOutputStream = new ByteArrayOutputStream();
+		DataOutputStream historyDataOutputStream = new DataOutputStream(historyOutputStream);
+		historyDataOutputStream.writeInt(MAGIC);
+		historyDataOutputStream.writeInt(VERSION);
+		for (InsertRecord record : records) {
+			writeRecord(historyOutputStream, encodeRecord(record));
+		}
+		FileChannel temporaryChannel = FileChannel.open(temporaryFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		try {
+			ByteBuffer historyBuffer = ByteBuffer.wrap(historyOutputStream.toByteArray());
+			while (historyBuffer.hasRemaining()) {
+				temporaryChannel.write(historyBuffer);
+			}
+			temporaryChannel.force(false);
+		} finally {
+			Closer.close(temporaryChannel);
+		}
+		try {
+			Files.move(temporaryFile.toPath(), historyFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException amnse1) {
+			Files.move(temporaryFile.toPath(), historyFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		return historyOutputStream.size();
+	}
+
+	/**
+	 * Writes a single record, preceded by its length and checksum, to the
+	 * given output stream.
+	 *
+	 * @param outputStream
+	 *            The output stream to write to
+	 * @param record
+	 *            The record to write
+	 */
+	private static void writeRecord(ByteArrayOutputStream outputStream, byte[] record) {
+		DataOutputStream dataOutputStream = new DataOutputStream(outputStream);
+		try {
+			dataOutputStream.writeInt(record.length);
+			dataOutputStream.writeInt(checksum(record));
+			dataOutputStream.write(record);
+		} catch (IOException ioe1) {
+			/* ByteArrayOutputStream does not throw. */
+		}
+	}
+
+	/**
+	 * Calculates the checksum of the given record.
+	 *
+	 * @param record
+	 *            The record
+	 * @return The checksum of the record
+	 */
+	private static int checksum(byte[] record) {
+		CRC32 crc32 = new CRC32();
+		crc32.update(record, 0, record.length);
+		return (int) crc32.getValue();
+	}
+
+	/**
+	 * Encodes an insert record.
+	 *
+	 * @param record
+	 *            The insert record to encode
+	 * @return The encoded record
+	 */
+	private static byte[] encodeRecord(InsertRecord record) {
+		ByteArrayOutputStream recordOutputStream = new ByteArrayOutputStream();
+		DataOutputStream recordDataOutputStream = new DataOutputStream(recordOutputStream);
+		try {
+			recordDataOutputStream.writeLong(record.getStartTime());
+			recordDataOutputStream.writeUTF(record.getNode());
+			recordDataOutputStream.writeInt(record.getEdition());
+			recordDataOutputStream.writeUTF(record.getOutcome().name());
+			recordDataOutputStream.writeByte(Phase.values().length);
+			for (Phase phase : Phase.values()) {
+				recordDataOutputStream.writeUTF(phase.name());
+				recordDataOutputStream.writeLong(record.getPhaseDuration(phase));
+			}
+			recordDataOutputStream.writeLong(record.getUploadedBytes());
+			recordDataOutputStream.writeLong(record.getBlockCount());
+			recordDataOutputStream.writeInt(record.getChangedFileCount());
+			recordDataOutputStream.writeInt(record.getRedirectedFileCount());
+			recordDataOutputStream.writeInt(record.getSkippedFileCount());
+			recordDataOutputStream.writeInt(record.getRetries());
+		} catch (IOException ioe1) {
+			/* ByteArrayOutputStream does not throw. */
+		}
+		return recordOutputStream.toByteArray();
+	}
+
+	/**
+	 * Decodes an insert record.
+	 *
+	 * @param record
+	 *            The encoded record
+	 * @return The decoded insert record
+	 * @throws IOException
+	 *             if the record can not be decoded
+	 */
+	private static InsertRecord decodeRecord(byte[] record) throws IOException {
+		DataInputStream recordDataInputStream = new DataInputStream(new ByteArrayInputStream(record));
+		InsertRecord insertRecord = new InsertRecord(recordDataInputStream.readLong());
+		insertRecord.setNode(recordDataInputStream.readUTF());
+		insertRecord.setEdition(recordDataInputStream.readInt());
+		try {
+			insertRecord.setOutcome(Outcome.valueOf(recordDataInputStream.readUTF()));
+		} catch (IllegalArgumentException iae1) {
+			insertRecord.setOutcome(Outcome.FAILURE);
+		}
+		int phaseCount = recordDataInputStream.readUnsignedByte();
+		for (int phaseIndex = 0; phaseIndex < phaseCount; phaseIndex++) {
+			String phaseName = recordDataInputStream.readUTF();
+			long phaseDuration = recordDataInputStream.readLong();
+			try {
+				insertRecord.addPhaseDuration(Phase.valueOf(phaseName), phaseDuration);
+			} catch (IllegalArgumentException iae1) {
+				/* ignore unknown phases. */
+			}
+		}
+		insertRecord.setUploadedBytes(recordDataInputStream.readLong());
+		insertRecord.setBlockCount(recordDataInputStream.readLong());
+		insertRecord.setChangedFileCount(recordDataInputStream.readInt());
+		insertRecord.setRedirectedFileCount(recordDataInputStream.readInt());
+		insertRecord.setSkippedFileCount(recordDataInputStream.readInt());
+		insertRecord.setRetries(recordDataInputStream.readInt());
+		return insertRecord;
+	}
+
+}
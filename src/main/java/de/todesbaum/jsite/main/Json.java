@@ -0,0 +1,151 @@
+/*
+ * jSite - Json.java - Copyright © 2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.jsite.main;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Minimal JSON writer for the responses of the {@link Server}. Maps are
+ * written as objects, iterables and arrays as arrays, numbers and booleans as
+ * they are, and everything else as a string.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+final class Json {
+
+	/**
+	 * Private constructor, utility class.
+	 */
+	private Json() {
+		/* nothing here. */
+	}
+
+	/**
+	 * Converts the given value to JSON.
+	 *
+	 * @param value
+	 *            The value to convert (may be {@code null})
+	 * @return The JSON representation of the value
+	 */
+	static String toJson(Object value) {
+		StringBuilder json = new StringBuilder();
+		append(json, value);
+		return json.toString();
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Appends the JSON representation of the given value.
+	 *
+	 * @param json
+	 *            The string builder to append to
+	 * @param value
+	 *            The value to append (may be {@code null})
+	 */
+	private static void append(StringBuilder json, Object value) {
+		if (value == null) {
+			json.append("null");
+		} else if ((value instanceof Double) || (value instanceof Float)) {
+			double number = ((Number) value).doubleValue();
+			json.append((Double.isNaN(number) || Double.isInfinite(number)) ? "null" : value.toString());
+		} else if ((value instanceof Number) || (value instanceof Boolean)) {
+			json.append(value);
+		} else if (value instanceof Map) {
+			json.append('{');
+			Iterator<? extends Entry<?, ?>> entries = ((Map<?, ?>) value).entrySet().iterator();
+			while (entries.hasNext()) {
+				Entry<?, ?> entry = entries.next();
+				appendString(json, String.valueOf(entry.getKey()));
+				json.append(':');
+				append(json, entry.getValue());
+				if (entries.hasNext()) {
+					json.append(',');
+				}
+			}
+			json.append('}');
+		} else if (value instanceof Iterable) {
+			json.append('[');
+			Iterator<?> elements = ((Iterable<?>) value).iterator();
+			while (elements.hasNext()) {
+				append(json, elements.next());
+				if (elements.hasNext()) {
+					json.append(',');
+				}
+			}
+			json.append(']');
+		} else if (value instanceof Object[]) {
+			Object[] elements = (Object[]) value;
+			json.append('[');
+			for (int index = 0; index < elements.length; index++) {
+				if (index > 0) {
+					json.append(',');
+				}
+				append(json, elements[index]);
+			}
+			json.append(']');
+		} else {
+			appendString(json, value.toString());
+		}
+	}
+
+	/**
+	 * Appends the given string as a quoted JSON string.
+	 *
+	 * @param json
+	 *            The string builder to append to
+	 * @param string
+	 *            The string to append
+	 */
+	private static void appendString(StringBuilder json, String string) {
+		json.append('"');
+		for (int index = 0; index < string.length(); index++) {
+			char character = string.charAt(index);
+			switch (character) {
+				case '"':
+					json.append("\\\"");
+					break;
+				case '\\':
+					json.append("\\\\");
+					break;
+				case '\n':
+					json.append("\\n");
+					break;
+				case '\r':
+					json.append("\\r");
+					break;
+				case '\t':
+					json.append("\\t");
+					break;
+				default:
+					if ((character < 0x20) || (character == '\u2028') || (character == '\u2029')) {
+						json.append(String.format("\\u%04x", (int) character));
+					} else {
+						json.append(character);
+					}
+			}
+		}
+		json.append('"');
+	}
+
+}
@@ -25,8 +25,13 @@ import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Handler;
 import java.util.logging.Level;
@@ -49,8 +54,11 @@ import javax.swing.event.ListSelectionListener;
 import net.pterodactylus.util.image.IconLoader;
 
 import de.todesbaum.jsite.application.Freenet7Interface;
+import de.todesbaum.jsite.application.InsertPlanner;
+import de.todesbaum.jsite.application.KeyPairPool;
 import de.todesbaum.jsite.application.Node;
 import de.todesbaum.jsite.application.Project;
+import de.todesbaum.jsite.application.TaskExecutors;
 import de.todesbaum.jsite.application.UpdateChecker;
 import de.todesbaum.jsite.application.UpdateListener;
 import de.todesbaum.jsite.application.WebOfTrustInterface;
@@ -67,6 +75,7 @@ import de.todesbaum.jsite.i18n.I18n;
 import de.todesbaum.jsite.i18n.I18nContainer;
 import de.todesbaum.jsite.main.ConfigurationLocator.ConfigurationLocation;
 import de.todesbaum.jsite.main.JarFileLocator.DefaultJarFileLocator;
+import de.todesbaum.util.io.TempSpace;
 import de.todesbaum.util.swing.TWizard;
 import de.todesbaum.util.swing.TWizardPage;
 import de.todesbaum.util.swing.WizardListener;
@@ -90,6 +99,9 @@ public class Main implements ActionListener, ListSelectionListener, WizardListen
 	/** The freenet interface. */
 	private Freenet7Interface freenetInterface = new Freenet7Interface();
 
+	/** The pool of generated key pairs. */
+	private final KeyPairPool keyPairPool = new KeyPairPool(freenetInterface);
+
 	/** The update checker. */
 	private final UpdateChecker updateChecker;
 
@@ -158,12 +170,18 @@ public class Main implements ActionListener, ListSelectionListener, WizardListen
 	/** The currently selected node. */
 	private Node selectedNode;
 
-	/** Mapping from page type to page. */
+	/** Mapping from page type to page, filled when a page is first used. */
 	private final Map<PageType, TWizardPage> pages = new HashMap<PageType, TWizardPage>();
 
+	/** The projects, loaded from the configuration in the background. */
+	private final FutureTask<List<Project>> projectLoader;
+
 	/** The original location of the configuration file. */
 	private ConfigurationLocation originalLocation;
 
+	/** The project that was selected last. */
+	private Project lastSelectedProject;
+
 	/**
 	 * Creates a new core with the default configuration file.
 	 */
@@ -178,6 +196,9 @@ public class Main implements ActionListener, ListSelectionListener, WizardListen
 	 *            The name of the configuration file
 	 */
 	private Main(String configFilename) {
+		long startupTime = System.nanoTime();
+		long phaseTime = startupTime;
+
 		/* collect all possible configuration file locations. */
 		ConfigurationLocator configurationLocator = new ConfigurationLocator(new DefaultJarFileLocator(getClass().getClassLoader()));
 		if (configFilename != null) {
@@ -187,6 +208,31 @@ public class Main implements ActionListener, ListSelectionListener, WizardListen
 		originalLocation = configurationLocator.findPreferredLocation();
 		logger.log(Level.CONFIG, "Using configuration from " + originalLocation + ".");
 		configuration = new Configuration(configurationLocator, originalLocation);
+		phaseTime = logStartupPhase("configuration", phaseTime);
+
+		/* create the projects while the user interface is built. */
+		projectLoader = new FutureTask<List<Project>>(new Callable<List<Project>>() {
+
+			@Override
+			@SuppressWarnings("synthetic-access")
+			public List<Project> call() {
+				long loadTime = System.nanoTime();
+				List<Project> projects = configuration.getProjects();
+				logStartupPhase("projects (" + projects.size() + ")", loadTime);
+				return projects;
+			}
+		});
+		TaskExecutors.IO.execute(projectLoader);
+
+		/* remove temporary files left over by earlier runs. */
+		TaskExecutors.IO.execute(new Runnable() {
+
+			@Override
+			@SuppressWarnings("synthetic-access")
+			public void run() {
+				TempSpace.forDirectories(configuration.getTempDirectory()).deleteOrphans();
+			}
+		});
 
 		Locale.setDefault(configuration.getLocale());
 		I18n.setLocale(configuration.getLocale());
@@ -199,15 +245,37 @@ public class Main implements ActionListener, ListSelectionListener, WizardListen
 		wizard.addWizardListener(this);
 		jSiteIcon = IconLoader.loadIcon("/jsite-icon.png");
 		wizard.setIcon(jSiteIcon);
-
 		updateChecker = new UpdateChecker(freenetInterface, getVersion());
 		updateChecker.addUpdateListener(this);
-		updateChecker.start();
-
 		webOfTrustInterface = new WebOfTrustInterface(freenetInterface);
+		phaseTime = logStartupPhase("user interface", phaseTime);
 
-		initPages();
 		showPage(PageType.PAGE_PROJECTS);
+		phaseTime = logStartupPhase("project page", phaseTime);
+
+		/* everything that talks to the node runs in the background. */
+		updateChecker.start();
+		if (freenetInterface.hasNode()) {
+			webOfTrustInterface.refreshOwnIdentities();
+		}
+		logStartupPhase("background services", phaseTime);
+		logger.log(Level.INFO, "Startup took {0} ms.", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startupTime));
+	}
+
+	/**
+	 * Logs the duration of a startup phase.
+	 *
+	 * @param phase
+	 *            The name of the phase
+	 * @param phaseTime
+	 *            The time the phase started, as returned by
+	 *            {@link System#nanoTime()}
+	 * @return The time the phase ended, i.e. the start of the next phase
+	 */
+	private static long logStartupPhase(String phase, long phaseTime) {
+		long now = System.nanoTime();
+		logger.log(Level.FINE, "Startup phase {0} took {1} ms.", new Object[] { phase, TimeUnit.NANOSECONDS.toMillis(now - phaseTime) });
+		return now;
 	}
 
 	/**
@@ -337,36 +405,90 @@ public class Main implements ActionListener, ListSelectionListener, WizardListen
 	}
 
 	/**
-	 * Initializes all pages.
+	 * Returns the page with the given type, creating it if it has not been
+	 * used before.
+	 *
+	 * @param pageType
+	 *            The type of the page
+	 * @return The page
 	 */
-	private void initPages() {
-		NodeManagerPage nodeManagerPage = new NodeManagerPage(wizard);
-		nodeManagerPage.setName("page.node-manager");
-		nodeManagerPage.addNodeManagerListener(this);
-		nodeManagerPage.setNodes(configuration.getNodes());
-		pages.put(PageType.PAGE_NODE_MANAGER, nodeManagerPage);
-
-		ProjectPage projectPage = new ProjectPage(wizard);
-		projectPage.setName("page.project");
-		projectPage.setProjects(configuration.getProjects());
-		projectPage.setFreenetInterface(freenetInterface);
-		projectPage.setWebOfTrustInterface(webOfTrustInterface);
-		projectPage.addListSelectionListener(this);
-		pages.put(PageType.PAGE_PROJECTS, projectPage);
-
-		ProjectFilesPage projectFilesPage = new ProjectFilesPage(wizard);
-		projectFilesPage.setName("page.project.files");
-		pages.put(PageType.PAGE_PROJECT_FILES, projectFilesPage);
-
-		ProjectInsertPage projectInsertPage = new ProjectInsertPage(wizard);
-		projectInsertPage.setName("page.project.insert");
-		projectInsertPage.setFreenetInterface(freenetInterface);
-		pages.put(PageType.PAGE_INSERT_PROJECT, projectInsertPage);
-
-		PreferencesPage preferencesPage = new PreferencesPage(wizard);
-		preferencesPage.setName("page.preferences");
-		preferencesPage.setTempDirectory(configuration.getTempDirectory());
-		pages.put(PageType.PAGE_PREFERENCES, preferencesPage);
+	private TWizardPage getPage(PageType pageType) {
+		TWizardPage page = pages.get(pageType);
+		if (page == null) {
+			page = createPage(pageType);
+			pages.put(pageType, page);
+		}
+		return page;
+	}
+
+	/**
+	 * Creates the page with the given type.
+	 *
+	 * @param pageType
+	 *            The type of the page
+	 * @return The created page
+	 */
+	private TWizardPage createPage(PageType pageType) {
+		switch (pageType) {
+			case PAGE_NODE_MANAGER:
+				NodeManagerPage nodeManagerPage = new NodeManagerPage(wizard);
+				nodeManagerPage.setName("page.node-manager");
+				nodeManagerPage.addNodeManagerListener(this);
+				nodeManagerPage.setNodes(configuration.getNodes());
+				return nodeManagerPage;
+			case PAGE_PROJECTS:
+				ProjectPage projectPage = new ProjectPage(wizard);
+				projectPage.setName("page.project");
+				projectPage.setProjects(getLoadedProjects());
+				projectPage.setFreenetInterface(freenetInterface);
+				projectPage.setKeyPairPool(keyPairPool);
+				projectPage.setWebOfTrustInterface(webOfTrustInterface);
+				projectPage.addListSelectionListener(this);
+				return projectPage;
+			case PAGE_PROJECT_FILES:
+				ProjectFilesPage projectFilesPage = new ProjectFilesPage(wizard);
+				projectFilesPage.setName("page.project.files");
+				return projectFilesPage;
+			case PAGE_INSERT_PROJECT:
+				ProjectInsertPage projectInsertPage = new ProjectInsertPage(wizard);
+				projectInsertPage.setName("page.project.insert");
+				projectInsertPage.setFreenetInterface(freenetInterface);
+				return projectInsertPage;
+			case PAGE_PREFERENCES:
+				PreferencesPage preferencesPage = new PreferencesPage(wizard);
+				preferencesPage.setName("page.preferences");
+				preferencesPage.setTempDirectory(configuration.getTempDirectory());
+				return preferencesPage;
+			default:
+				throw new IllegalArgumentException("Unknown page type: " + pageType);
+		}
+	}
+
+	/**
+	 * Waits for the projects to be loaded from the configuration.
+	 *
+	 * @return The loaded projects
+	 */
+	private List<Project> getLoadedProjects() {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return projectLoader.get();
+				} catch (InterruptedException ie1) {
+					interrupted = true;
+				}
+			}
+		} catch (ExecutionException ee1) {
+			if (ee1.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) ee1.getCause();
+			}
+			throw new IllegalStateException("Could not load projects.", ee1.getCause());
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
 	}
 
 	/**
@@ -377,9 +499,10 @@ public class Main implements ActionListener, ListSelectionListener, WizardListen
 	 */
 	private void showPage(PageType pageType) {
 		wizard.setPreviousEnabled(pageType.ordinal() > 0);
-		wizard.setNextEnabled(pageType.ordinal() < (pages.size() - 1));
-		wizard.setPage(pages.get(pageType));
-		wizard.setTitle(pages.get(pageType).getHeading() + " - jSite");
+		wizard.setNextEnabled(pageType.ordinal() < (PageType.values().length - 1));
+		TWizardPage page = getPage(pageType);
+		wizard.setPage(page);
+		wizard.setTitle(page.getHeading() + " - jSite");
 	}
 
 	/**
@@ -400,17 +523,22 @@ public class Main implements ActionListener, ListSelectionListener, WizardListen
 	 *         <code>false</code> otherwise
 	 */
 	private boolean saveConfiguration() {
+		/* pages that were never shown can not have changed anything. */
 		NodeManagerPage nodeManagerPage = (NodeManagerPage) pages.get(PageType.PAGE_NODE_MANAGER);
-		configuration.setNodes(nodeManagerPage.getNodes());
+		if (nodeManagerPage != null) {
+			configuration.setNodes(nodeManagerPage.getNodes());
+		}
 		if (selectedNode != null) {
 			configuration.setSelectedNode(selectedNode);
 		}
 
-		ProjectPage projectPage = (ProjectPage) pages.get(PageType.PAGE_PROJECTS);
+		ProjectPage projectPage = (ProjectPage) getPage(PageType.PAGE_PROJECTS);
 		configuration.setProjects(projectPage.getProjects());
 
 		PreferencesPage preferencesPage = (PreferencesPage) pages.get(PageType.PAGE_PREFERENCES);
-		configuration.setTempDirectory(preferencesPage.getTempDirectory());
+		if (preferencesPage != null) {
+			configuration.setTempDirectory(preferencesPage.getTempDirectory());
+		}
 
 		return configuration.save();
 	}
@@ -482,11 +610,12 @@ public class Main implements ActionListener, ListSelectionListener, WizardListen
 	 * Shows a dialog with general preferences.
 	 */
 	private void optionsPreferences() {
-		((PreferencesPage) pages.get(PageType.PAGE_PREFERENCES)).setConfigurationLocation(configuration.getConfigurationDirectory());
-		((PreferencesPage) pages.get(PageType.PAGE_PREFERENCES)).setHasNextToJarConfiguration(configuration.getConfigurationLocator().isValidLocation(ConfigurationLocation.NEXT_TO_JAR_FILE));
-		((PreferencesPage) pages.get(PageType.PAGE_PREFERENCES)).setHasCustomConfiguration(configuration.getConfigurationLocator().isValidLocation(ConfigurationLocation.CUSTOM));
-		((PreferencesPage) pages.get(PageType.PAGE_PREFERENCES)).setUseEarlyEncode(configuration.useEarlyEncode());
-		((PreferencesPage) pages.get(PageType.PAGE_PREFERENCES)).setPriority(configuration.getPriority());
+		((PreferencesPage) getPage(PageType.PAGE_PREFERENCES)).setConfigurationLocation(configuration.getConfigurationDirectory());
+		((PreferencesPage) getPage(PageType.PAGE_PREFERENCES)).setHasNextToJarConfiguration(configuration.getConfigurationLocator().isValidLocation(ConfigurationLocation.NEXT_TO_JAR_FILE));
+		((PreferencesPage) getPage(PageType.PAGE_PREFERENCES)).setHasCustomConfiguration(configuration.getConfigurationLocator().isValidLocation(ConfigurationLocation.CUSTOM));
+		((PreferencesPage) getPage(PageType.PAGE_PREFERENCES)).setUseEarlyEncode(configuration.useEarlyEncode());
+		((PreferencesPage) getPage(PageType.PAGE_PREFERENCES)).setPriority(configuration.getPriority());
+		((PreferencesPage) getPage(PageType.PAGE_PREFERENCES)).setInsertFilesSeparately(configuration.insertFilesSeparately());
 		showPage(PageType.PAGE_PREFERENCES);
 		optionsPreferencesAction.setEnabled(false);
 		wizard.setNextEnabled(true);
@@ -514,6 +643,8 @@ public class Main implements ActionListener, ListSelectionListener, WizardListen
 	 */
 	private void quit() {
 		updateChecker.stop();
+		TaskExecutors.shutdown();
+		TempSpace.closeAll();
 		System.exit(0);
 	}
 
@@ -529,6 +660,11 @@ public class Main implements ActionListener, ListSelectionListener, WizardListen
 		JList list = (JList) e.getSource();
 		int selectedRow = list.getSelectedIndex();
 		wizard.setNextEnabled(selectedRow > -1);
+		Project selectedProject = (Project) list.getSelectedValue();
+		if ((lastSelectedProject != null) && (lastSelectedProject != selectedProject)) {
+			configuration.releaseFileState(lastSelectedProject);
+		}
+		lastSelectedProject = selectedProject;
 	}
 
 	//
@@ -554,11 +690,12 @@ public class Main implements ActionListener, ListSelectionListener, WizardListen
 				JOptionPane.showMessageDialog(wizard, I18n.getMessage("jsite.warning.no-path"), null, JOptionPane.ERROR_MESSAGE);
 				return;
 			}
-			((ProjectFilesPage) pages.get(PageType.PAGE_PROJECT_FILES)).setProject(project);
-			((ProjectInsertPage) pages.get(PageType.PAGE_INSERT_PROJECT)).setProject(project);
+			((ProjectFilesPage) getPage(PageType.PAGE_PROJECT_FILES)).setProject(project);
+			((ProjectFilesPage) getPage(PageType.PAGE_PROJECT_FILES)).setInsertPlanner(new InsertPlanner().setInsertFilesSeparately(configuration.insertFilesSeparately()).setSeparateInsertThreshold(configuration.getSeparateInsertThreshold()).setChkCaptureThreshold(configuration.getChkCaptureThreshold()).setNode(freenetInterface.getNode()));
+			((ProjectInsertPage) getPage(PageType.PAGE_INSERT_PROJECT)).setProject(project);
 			showPage(PageType.PAGE_PROJECT_FILES);
 		} else if ("page.project.files".equals(pageName)) {
-			ProjectPage projectPage = (ProjectPage) pages.get(PageType.PAGE_PROJECTS);
+			ProjectPage projectPage = (ProjectPage) getPage(PageType.PAGE_PROJECTS);
 			Project project = projectPage.getSelectedProject();
 			if (selectedNode == null) {
 				JOptionPane.showMessageDialog(wizard, I18n.getMessage("jsite.error.no-node-selected"), null, JOptionPane.ERROR_MESSAGE);
@@ -586,16 +723,19 @@ public class Main implements ActionListener, ListSelectionListener, WizardListen
 			}
 			configuration.save();
 			showPage(PageType.PAGE_INSERT_PROJECT);
-			ProjectInsertPage projectInsertPage = (ProjectInsertPage) pages.get(PageType.PAGE_INSERT_PROJECT);
-			String tempDirectory = ((PreferencesPage) pages.get(PageType.PAGE_PREFERENCES)).getTempDirectory();
+			ProjectInsertPage projectInsertPage = (ProjectInsertPage) getPage(PageType.PAGE_INSERT_PROJECT);
+			String tempDirectory = ((PreferencesPage) getPage(PageType.PAGE_PREFERENCES)).getTempDirectory();
 			projectInsertPage.setTempDirectory(tempDirectory);
 			projectInsertPage.setUseEarlyEncode(configuration.useEarlyEncode());
-			projectInsertPage.setPriority(configuration.getPriority());
+			projectInsertPage.setPriority(project.getPriority(configuration.getPriority()));
+			projectInsertPage.setInsertFilesSeparately(configuration.insertFilesSeparately(), configuration.getSeparateInsertThreshold(), configuration.getSeparateInsertConcurrency());
+			projectInsertPage.setMaxRetries(configuration.getInsertRetries());
+			projectInsertPage.setChkCaptureThreshold(configuration.getChkCaptureThreshold());
 			projectInsertPage.startInsert();
 			nodeMenu.setEnabled(false);
 			optionsPreferencesAction.setEnabled(false);
 		} else if ("page.project.insert".equals(pageName)) {
-			ProjectInsertPage projectInsertPage = (ProjectInsertPage) pages.get(PageType.PAGE_INSERT_PROJECT);
+			ProjectInsertPage projectInsertPage = (ProjectInsertPage) getPage(PageType.PAGE_INSERT_PROJECT);
 			if (projectInsertPage.isRunning()) {
 				projectInsertPage.stopInsert();
 			} else {
@@ -604,11 +744,12 @@ public class Main implements ActionListener, ListSelectionListener, WizardListen
 				optionsPreferencesAction.setEnabled(true);
 			}
 		} else if ("page.preferences".equals(pageName)) {
-			PreferencesPage preferencesPage = (PreferencesPage) pages.get(PageType.PAGE_PREFERENCES);
+			PreferencesPage preferencesPage = (PreferencesPage) getPage(PageType.PAGE_PREFERENCES);
 			showPage(PageType.PAGE_PROJECTS);
 			optionsPreferencesAction.setEnabled(true);
 			configuration.setUseEarlyEncode(preferencesPage.useEarlyEncode());
 			configuration.setPriority(preferencesPage.getPriority());
+			configuration.setInsertFilesSeparately(preferencesPage.insertFilesSeparately());
 			configuration.setConfigurationLocation(preferencesPage.getConfigurationLocation());
 		}
 	}
@@ -634,7 +775,8 @@ public class Main implements ActionListener, ListSelectionListener, WizardListen
 	 */
 	@Override
 	public void wizardQuitPressed(TWizard wizard) {
-		if (((ProjectPage) pages.get(PageType.PAGE_PROJECTS)).wasUriCopied() || ((ProjectInsertPage) pages.get(PageType.PAGE_INSERT_PROJECT)).wasUriCopied()) {
+		ProjectInsertPage projectInsertPage = (ProjectInsertPage) pages.get(PageType.PAGE_INSERT_PROJECT);
+		if (((ProjectPage) getPage(PageType.PAGE_PROJECTS)).wasUriCopied() || ((projectInsertPage != null) && projectInsertPage.wasUriCopied())) {
 			JOptionPane.showMessageDialog(wizard, I18n.getMessage("jsite.project.warning.use-clipboard-now"));
 		}
 		if (JOptionPane.showConfirmDialog(wizard, I18n.getMessage("jsite.quit.question"), I18n.getMessage("jsite.quit.question.title"), JOptionPane.OK_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE) == JOptionPane.OK_OPTION) {
@@ -688,6 +830,7 @@ public class Main implements ActionListener, ListSelectionListener, WizardListen
 		nodeMenu.add(manageNodeAction);
 		selectedNode = newSelectedNode;
 		freenetInterface.setNode(selectedNode);
+		keyPairPool.refill();
 	}
 
 	/**
@@ -703,6 +846,7 @@ public class Main implements ActionListener, ListSelectionListener, WizardListen
 			}
 		}
 		freenetInterface.setNode(node);
+		keyPairPool.refill();
 		selectedNode = node;
 	}
 
@@ -721,6 +865,7 @@ public class Main implements ActionListener, ListSelectionListener, WizardListen
 			Node node = (Node) menuItem.getClientProperty("Node");
 			selectedNode = node;
 			freenetInterface.setNode(selectedNode);
+			keyPairPool.refill();
 		}
 	}
 
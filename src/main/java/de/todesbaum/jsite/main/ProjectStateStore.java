@@ -0,0 +1,680 @@
+/*
+ * jSite - ProjectStateStore.java - Copyright © 2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.jsite.main;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import net.pterodactylus.util.io.Closer;
+import de.todesbaum.jsite.application.FileOption;
+import de.todesbaum.jsite.application.Project;
+
+/**
+ * Stores the file-level state of projects (last insert hashes and custom file
+ * options) in one journal file per project. Saving a project only appends the
+ * entries that changed since the last save, followed by a commit record; the
+ * journal is synced to disk before a save returns. When a journal is read,
+ * entries that are not followed by a commit record (e.g. because jSite
+ * crashed while writing them) are ignored. Once a journal has grown to a
+ * multiple of its live size it is compacted by writing a new journal to a
+ * temporary file and atomically replacing the old one.
+ * <p>
+ * This store only holds its own lock while it accesses its journals; it never
+ * calls into a project while holding it, because projects load their file
+ * options through this store while holding their own lock.
+ * <p>
+ * Every record of a journal consists of the length of its data, the CRC32 of
+ * its data, and the data itself. The first byte of the data denotes the type
+ * of the record.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class ProjectStateStore {
+
+	/** The logger. */
+	private static final Logger logger = Logger.getLogger(ProjectStateStore.class.getName());
+
+	/** The magic number at the start of every journal file (“jSPS”). */
+	private static final int MAGIC = 0x6a535053;
+
+	/** The version of the journal format. */
+	private static final int VERSION = 1;
+
+	/** The length of the journal header. */
+	private static final int HEADER_LENGTH = 8;
+
+	/** The length of the header of a record. */
+	private static final int RECORD_HEADER_LENGTH = 8;
+
+	/** Record type for the state of a file. */
+	private static final byte RECORD_FILE = 1;
+
+	/** Record type for the removal of a file. */
+	private static final byte RECORD_REMOVE = 2;
+
+	/** Record type for a commit. */
+	private static final byte RECORD_COMMIT = 3;
+
+	/** Flag for a file record that contains last insert information. */
+	private static final int FLAG_LAST_INSERT = 1;
+
+	/** Flag for a file record that contains a last insert key. */
+	private static final int FLAG_LAST_INSERT_KEY = 2;
+
+	/** Flag for a file record that contains custom file options. */
+	private static final int FLAG_CUSTOM = 4;
+
+	/** Journals smaller than this are never compacted. */
+	private static final long MINIMUM_COMPACTION_SIZE = 64 * 1024;
+
+	/** The directory the journals are stored in. */
+	private final File directory;
+
+	/** The state of the journals that have been read or written, by ID. */
+	private final Map<String, JournalState> journalStates = new HashMap<String, JournalState>();
+
+	/**
+	 * Creates a new project state store that keeps its journals in the given
+	 * directory.
+	 *
+	 * @param directory
+	 *            The directory to store the journals in
+	 */
+	public ProjectStateStore(File directory) {
+		this.directory = directory;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the directory the journals are stored in.
+	 *
+	 * @return The directory of this store
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Returns whether this store contains state for the project with the given
+	 * ID.
+	 *
+	 * @param projectId
+	 *            The ID of the project
+	 * @return {@code true} if this store contains state for the project,
+	 *         {@code false} otherwise
+	 */
+	public boolean hasState(String projectId) {
+		return getJournalFile(projectId).exists();
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Loads the file-level state of the given project from its journal and
+	 * sets it as the file options of the project.
+	 *
+	 * @param project
+	 *            The project to load the state for
+	 * @throws IOException
+	 *             if the journal can not be read
+	 */
+	public void load(Project project) throws IOException {
+		JournalState journalState;
+		synchronized (this) {
+			journalState = readJournal(project.getId());
+		}
+		project.setFileOptions(Collections.<String, FileOption> emptyMap());
+		for (Entry<String, byte[]> fileRecord : journalState.records.entrySet()) {
+			decodeFileOption(fileRecord.getValue(), project.getFileOption(fileRecord.getKey()));
+		}
+		journalState.records = null;
+		synchronized (this) {
+			journalStates.put(project.getId(), journalState);
+		}
+	}
+
+	/**
+	 * Saves the file-level state of the given project. Only the files whose
+	 * state differs from the state in the journal are written.
+	 *
+	 * @param project
+	 *            The project to save the state for
+	 * @throws IOException
+	 *             if the journal can not be written
+	 */
+	public void save(Project project) throws IOException {
+		Map<String, byte[]> fileRecords = new LinkedHashMap<String, byte[]>();
+		for (Entry<String, FileOption> fileOption : project.getFileOptions().entrySet()) {
+			if (isStored(fileOption.getValue())) {
+				fileRecords.put(fileOption.getKey(), encodeFileOption(fileOption.getKey(), fileOption.getValue()));
+			}
+		}
+		save(project.getId(), fileRecords);
+	}
+
+	/**
+	 * Saves the given file records of the project with the given ID. Only the
+	 * records that differ from the records in the journal are written.
+	 *
+	 * @param projectId
+	 *            The ID of the project
+	 * @param fileRecords
+	 *            The records of all files that have to be stored, by filename
+	 * @throws IOException
+	 *             if the journal can not be written
+	 */
+	private synchronized void save(String projectId, Map<String, byte[]> fileRecords) throws IOException {
+		JournalState journalState = journalStates.get(projectId);
+		if (journalState == null) {
+			journalState = readJournal(projectId);
+			journalState.records = null;
+			journalStates.put(projectId, journalState);
+		}
+		Map<String, Fingerprint> currentFingerprints = new HashMap<String, Fingerprint>();
+		ByteArrayOutputStream changedRecords = new ByteArrayOutputStream();
+		for (Entry<String, byte[]> fileRecord : fileRecords.entrySet()) {
+			Fingerprint fingerprint = new Fingerprint(fileRecord.getValue());
+			currentFingerprints.put(fileRecord.getKey(), fingerprint);
+			if (!fingerprint.equals(journalState.fingerprints.get(fileRecord.getKey()))) {
+				writeRecord(changedRecords, fileRecord.getValue());
+			}
+		}
+		for (String filename : journalState.fingerprints.keySet()) {
+			if (!currentFingerprints.containsKey(filename)) {
+				writeRecord(changedRecords, encodeRemoval(filename));
+			}
+		}
+		boolean journalExists = getJournalFile(projectId).exists();
+		if ((changedRecords.size() == 0) && journalExists) {
+			return;
+		}
+		writeRecord(changedRecords, new byte[] { RECORD_COMMIT });
+		long liveLength = HEADER_LENGTH + RECORD_HEADER_LENGTH + 1;
+		for (Fingerprint fingerprint : currentFingerprints.values()) {
+			liveLength += RECORD_HEADER_LENGTH + fingerprint.record.length;
+		}
+		long journalLength = journalState.validLength + changedRecords.size();
+		if ((journalState.validLength == 0) || !journalExists || ((journalLength > MINIMUM_COMPACTION_SIZE) && (journalLength > 2 * liveLength))) {
+			journalState.validLength = writeCompactedJournal(projectId, fileRecords.values());
+		} else {
+			journalState.validLength = appendToJournal(projectId, journalState.validLength, changedRecords.toByteArray());
+		}
+		journalState.fingerprints = currentFingerprints;
+	}
+
+	/**
+	 * Discards everything this store remembers about the journal of the
+	 * project with the given ID. The next {@link #save(Project) save} of the
+	 * project reads the journal again.
+	 *
+	 * @param projectId
+	 *            The ID of the project
+	 */
+	public synchronized void forget(String projectId) {
+		journalStates.remove(projectId);
+	}
+
+	/**
+	 * Removes the journals of all projects whose IDs are not contained in the
+	 * given collection.
+	 *
+	 * @param projectIds
+	 *            The IDs of all projects whose journals should be kept
+	 */
+	public synchronized void retain(Collection<String> projectIds) {
+		Set<String> journalFilenames = new HashSet<String>();
+		for (String projectId : projectIds) {
+			journalFilenames.add(getJournalFile(projectId).getName());
+		}
+		File[] journalFiles = directory.listFiles();
+		if (journalFiles == null) {
+			return;
+		}
+		for (File journalFile : journalFiles) {
+			if (journalFile.getName().endsWith(".journal") && !journalFilenames.contains(journalFile.getName())) {
+				logger.log(Level.INFO, "Removing journal of deleted project: " + journalFile);
+				if (!journalFile.delete()) {
+					logger.log(Level.WARNING, "Could not remove journal: " + journalFile);
+				}
+			}
+		}
+		Iterator<String> projectIdIterator = journalStates.keySet().iterator();
+		while (projectIdIterator.hasNext()) {
+			if (!projectIds.contains(projectIdIterator.next())) {
+				projectIdIterator.remove();
+			}
+		}
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Returns the journal file for the project with the given ID.
+	 *
+	 * @param projectId
+	 *            The ID of the project
+	 * @return The journal file of the project
+	 */
+	private File getJournalFile(String projectId) {
+		return new File(directory, projectId.replaceAll("[^A-Za-z0-9-]", "_") + ".journal");
+	}
+
+	/**
+	 * Returns whether the given file option has to be stored at all.
+	 *
+	 * @param fileOption
+	 *            The file option
+	 * @return {@code true} if the file option has to be stored, {@code false}
+	 *         if it only contains default values
+	 */
+	private static boolean isStored(FileOption fileOption) {
+		return hasLastInsert(fileOption) || fileOption.isCustom();
+	}
+
+	/**
+	 * Returns whether the given file option contains information about the
+	 * last insert of the file.
+	 *
+	 * @param fileOption
+	 *            The file option
+	 * @return {@code true} if the file was inserted before, {@code false}
+	 *         otherwise
+	 */
+	private static boolean hasLastInsert(FileOption fileOption) {
+		return (fileOption.getLastInsertHash() != null) && (fileOption.getLastInsertHash().length() > 0);
+	}
+
+	/**
+	 * Reads the journal of the project with the given ID. Reading stops at the
+	 * first record that is incomplete or damaged; all records after the last
+	 * commit record are discarded.
+	 *
+	 * @param projectId
+	 *            The ID of the project
+	 * @return The state of the journal, including the records of all files
+	 * @throws IOException
+	 *             if the journal can not be read
+	 */
+	private JournalState readJournal(String projectId) throws IOException {
+		JournalState journalState = new JournalState();
+		File journalFile = getJournalFile(projectId);
+		if (!journalFile.exists()) {
+			return journalState;
+		}
+		InputStream journalInputStream = null;
+		try {
+			journalInputStream = new BufferedInputStream(new FileInputStream(journalFile));
+			DataInputStream journalDataInputStream = new DataInputStream(journalInputStream);
+			if ((journalDataInputStream.readInt() != MAGIC) || (journalDataInputStream.readInt() != VERSION)) {
+				throw new IOException("Invalid journal: " + journalFile);
+			}
+			long position = HEADER_LENGTH;
+			journalState.validLength = position;
+			Map<String, byte[]> pendingRecords = new LinkedHashMap<String, byte[]>();
+			while (true) {
+				byte[] record;
+				try {
+					int length = journalDataInputStream.readInt();
+					int checksum = journalDataInputStream.readInt();
+					if ((length < 1) || (position + RECORD_HEADER_LENGTH + length > journalFile.length())) {
+						break;
+					}
+					record = new byte[length];
+					journalDataInputStream.readFully(record);
+					if (checksum != checksum(record)) {
+						break;
+					}
+					position += RECORD_HEADER_LENGTH + length;
+				} catch (EOFException eofe1) {
+					break;
+				}
+				if (record[0] == RECORD_COMMIT) {
+					for (Entry<String, byte[]> pendingRecord : pendingRecords.entrySet()) {
+						if (pendingRecord.getValue() == null) {
+							journalState.records.remove(pendingRecord.getKey());
+							journalState.fingerprints.remove(pendingRecord.getKey());
+						} else {
+							journalState.records.put(pendingRecord.getKey(), pendingRecord.getValue());
+							journalState.fingerprints.put(pendingRecord.getKey(), new Fingerprint(pendingRecord.getValue()));
+						}
+					}
+					pendingRecords.clear();
+					journalState.validLength = position;
+				} else {
+					String filename = new DataInputStream(new ByteArrayInputStream(record, 1, record.length - 1)).readUTF();
+					pendingRecords.put(filename, (record[0] == RECORD_FILE) ? record : null);
+				}
+			}
+			if (journalState.validLength < journalFile.length()) {
+				logger.log(Level.WARNING, String.format("Ignoring %d bytes of uncommitted data in %s.", journalFile.length() - journalState.validLength, journalFile));
+			}
+		} finally {
+			Closer.close(journalInputStream);
+		}
+		return journalState;
+	}
+
+	/**
+	 * Appends the given records to the journal of the project with the given
+	 * ID. Uncommitted data after the given position is overwritten. If the
+	 * journal does not exist (anymore), it is created and the records are
+	 * written after its header.
+	 *
+	 * @param projectId
+	 *            The ID of the project
+	 * @param position
+	 *            The position to append the records at
+	 * @param records
+	 *            The records to append
+	 * @return The length of the journal after the records were appended
+	 * @throws IOException
+	 *             if the records can not be written
+	 */
+	private long appendToJournal(String projectId, long position, byte[] records) throws IOException {
+		if (!directory.exists() && !directory.mkdirs()) {
+			throw new IOException("Could not create directory: " + directory);
+		}
+		FileChannel journalChannel = FileChannel.open(getJournalFile(projectId).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		try {
+			long writePosition = position;
+			if (journalChannel.size() < HEADER_LENGTH) {
+				ByteBuffer headerBuffer = ByteBuffer.allocate(HEADER_LENGTH).putInt(MAGIC).putInt(VERSION);
+				headerBuffer.flip();
+				writePosition = 0;
+				while (headerBuffer.hasRemaining()) {
+					writePosition += journalChannel.write(headerBuffer, writePosition);
+				}
+			}
+			journalChannel.truncate(writePosition);
+			ByteBuffer recordBuffer = ByteBuffer.wrap(records);
+			while (recordBuffer.hasRemaining()) {
+				writePosition += journalChannel.write(recordBuffer, writePosition);
+			}
+			journalChannel.force(false);
+			return writePosition;
+		} finally {
+			Closer.close(journalChannel);
+		}
+	}
+
+	/**
+	 * Writes a new journal containing only the given records and atomically
+	 * replaces the existing journal of the project with the given ID with it.
+	 *
+	 * @param projectId
+	 *            The ID of the project
+	 * @param fileRecords
+	 *            The records of all files that have to be stored
+	 * @return The length of the new journal
+	 * @throws IOException
+	 *             if the journal can not be written
+	 */
+	private long writeCompactedJournal(String projectId, Collection<byte[]> fileRecords) throws IOException {
+		if (!directory.exists() && !directory.mkdirs()) {
+			throw new IOException("Could not create directory: " + directory);
+		}
+		File journalFile = getJournalFile(projectId);
+		File temporaryFile = new File(directory, journalFile.getName() + ".tmp");
+		ByteArrayOutputStream journalOutputStream = new ByteArrayOutputStream();
+		DataOutputStream journalDataOutputStream = new DataOutputStream(journalOutputStream);
+		journalDataOutputStream.writeInt(MAGIC);
+		journalDataOutputStream.writeInt(VERSION);
+		for (byte[] fileRecord : fileRecords) {
+			writeRecord(journalOutputStream, fileRecord);
+		}
+		writeRecord(journalOutputStream, new byte[] { RECORD_COMMIT });
+		FileChannel temporaryChannel = FileChannel.open(temporaryFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		try {
+			ByteBuffer journalBuffer = ByteBuffer.wrap(journalOutputStream.toByteArray());
+			while (journalBuffer.hasRemaining()) {
+				temporaryChannel.write(journalBuffer);
+			}
+			temporaryChannel.force(false);
+		} finally {
+			Closer.close(temporaryChannel);
+		}
+		try {
+			Files.move(temporaryFile.toPath(), journalFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException amnse1) {
+			Files.move(temporaryFile.toPath(), journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		return journalOutputStream.size();
+	}
+
+	/**
+	 * Writes a single record, preceded by its length and checksum, to the
+	 * given output stream.
+	 *
+	 * @param outputStream
+	 *            The output stream to write to
+	 * @param record
+	 *            The record to write
+	 */
+	private static void writeRecord(ByteArrayOutputStream outputStream, byte[] record) {
+		DataOutputStream dataOutputStream = new DataOutputStream(outputStream);
+		try {
+			dataOutputStream.writeInt(record.length);
+			dataOutputStream.writeInt(checksum(record));
+			dataOutputStream.write(record);
+		} catch (IOException ioe1) {
+			/* ByteArrayOutputStream does not throw. */
+		}
+	}
+
+	/**
+	 * Calculates the checksum of the given record.
+	 *
+	 * @param record
+	 *            The record
+	 * @return The checksum of the record
+	 */
+	private static int checksum(byte[] record) {
+		CRC32 crc32 = new CRC32();
+		crc32.update(record, 0, record.length);
+		return (int) crc32.getValue();
+	}
+
+	/**
+	 * Encodes the state of a file into a file record.
+	 *
+	 * @param filename
+	 *            The name of the file
+	 * @param fileOption
+	 *            The file option to encode
+	 * @return The encoded file record
+	 */
+	private static byte[] encodeFileOption(String filename, FileOption fileOption) {
+		ByteArrayOutputStream recordOutputStream = new ByteArrayOutputStream();
+		DataOutputStream recordDataOutputStream = new DataOutputStream(recordOutputStream);
+		try {
+			recordDataOutputStream.writeByte(RECORD_FILE);
+			recordDataOutputStream.writeUTF(filename);
+			boolean lastInsert = hasLastInsert(fileOption);
+			boolean lastInsertKey = lastInsert && (fileOption.getLastInsertKey() != null);
+			boolean custom = fileOption.isCustom();
+			recordDataOutputStream.writeByte((lastInsert ? FLAG_LAST_INSERT : 0) | (lastInsertKey ? FLAG_LAST_INSERT_KEY : 0) | (custom ? FLAG_CUSTOM : 0));
+			if (lastInsert) {
+				recordDataOutputStream.writeUTF(fileOption.getLastInsertHash());
+				recordDataOutputStream.writeInt(fileOption.getLastInsertEdition());
+				recordDataOutputStream.writeUTF((fileOption.getLastInsertFilename() != null) ? fileOption.getLastInsertFilename() : filename);
+				if (lastInsertKey) {
+					recordDataOutputStream.writeUTF(fileOption.getLastInsertKey());
+				}
+			}
+			if (custom) {
+				recordDataOutputStream.writeBoolean(fileOption.isInsert());
+				recordDataOutputStream.writeBoolean(fileOption.isInsertRedirect());
+				recordDataOutputStream.writeUTF(fileOption.getCustomKey());
+				recordDataOutputStream.writeUTF(fileOption.getChangedName().orElse(""));
+				recordDataOutputStream.writeUTF(fileOption.getMimeType());
+			}
+		} catch (IOException ioe1) {
+			/* ByteArrayOutputStream does not throw. */
+		}
+		return recordOutputStream.toByteArray();
+	}
+
+	/**
+	 * Encodes the removal of a file into a removal record.
+	 *
+	 * @param filename
+	 *            The name of the file
+	 * @return The encoded removal record
+	 */
+	private static byte[] encodeRemoval(String filename) {
+		ByteArrayOutputStream recordOutputStream = new ByteArrayOutputStream();
+		DataOutputStream recordDataOutputStream = new DataOutputStream(recordOutputStream);
+		try {
+			recordDataOutputStream.writeByte(RECORD_REMOVE);
+			recordDataOutputStream.writeUTF(filename);
+		} catch (IOException ioe1) {
+			/* ByteArrayOutputStream does not throw. */
+		}
+		return recordOutputStream.toByteArray();
+	}
+
+	/**
+	 * Decodes a file record into the given file option.
+	 *
+	 * @param record
+	 *            The file record
+	 * @param fileOption
+	 *            The file option to store the decoded state in
+	 * @throws IOException
+	 *             if the record can not be decoded
+	 */
+	private static void decodeFileOption(byte[] record, FileOption fileOption) throws IOException {
+		DataInputStream recordDataInputStream = new DataInputStream(new ByteArrayInputStream(record, 1, record.length - 1));
+		recordDataInputStream.readUTF();
+		int flags = recordDataInputStream.readByte();
+		if ((flags & FLAG_LAST_INSERT) != 0) {
+			fileOption.setLastInsertHash(recordDataInputStream.readUTF());
+			fileOption.setLastInsertEdition(recordDataInputStream.readInt());
+			fileOption.setLastInsertFilename(recordDataInputStream.readUTF());
+			if ((flags & FLAG_LAST_INSERT_KEY) != 0) {
+				fileOption.setLastInsertKey(recordDataInputStream.readUTF());
+			}
+		}
+		if ((flags & FLAG_CUSTOM) != 0) {
+			fileOption.setInsert(recordDataInputStream.readBoolean());
+			fileOption.setInsertRedirect(recordDataInputStream.readBoolean());
+			fileOption.setCustomKey(recordDataInputStream.readUTF());
+			fileOption.setChangedName(recordDataInputStream.readUTF());
+			fileOption.setMimeType(recordDataInputStream.readUTF());
+		}
+	}
+
+	/**
+	 * The state of a journal: its committed length and the fingerprints of all
+	 * file records in it.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	private static class JournalState {
+
+		/** The length of the committed part of the journal. */
+		long validLength;
+
+		/** The fingerprints of the file records, by filename. */
+		Map<String, Fingerprint> fingerprints = new HashMap<String, Fingerprint>();
+
+		/** The file records, by filename; only used while reading. */
+		Map<String, byte[]> records = new LinkedHashMap<String, byte[]>();
+
+	}
+
+	/**
+	 * The fingerprint of a record. Fingerprints compare the complete data of
+	 * their records, so that a changed record is never mistaken for the
+	 * record that is stored in the journal.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	private static class Fingerprint {
+
+		/** The data of the record. */
+		final byte[] record;
+
+		/**
+		 * Creates the fingerprint of the given record.
+		 *
+		 * @param record
+		 *            The record
+		 */
+		Fingerprint(byte[] record) {
+			this.record = record;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(record);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public boolean equals(Object object) {
+			if (!(object instanceof Fingerprint)) {
+				return false;
+			}
+			Fingerprint fingerprint = (Fingerprint) object;
+			return Arrays.equals(record, fingerprint.record);
+		}
+
+	}
+
+}
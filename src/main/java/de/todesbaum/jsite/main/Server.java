@@ -0,0 +1,1147 @@
+/*
+ * jSite - Server.java - Copyright © 2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.jsite.main;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.ConsoleHandler;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import net.pterodactylus.util.io.StreamCopier.ProgressListener;
+import de.todesbaum.jsite.application.AbortedException;
+import de.todesbaum.jsite.application.FetchPlan;
+import de.todesbaum.jsite.application.FetchPlanner;
+import de.todesbaum.jsite.application.Freenet7Interface;
+import de.todesbaum.jsite.application.InsertListener;
+import de.todesbaum.jsite.application.InsertPlan;
+import de.todesbaum.jsite.application.InsertPlan.Action;
+import de.todesbaum.jsite.application.InsertPlan.PlannedFile;
+import de.todesbaum.jsite.application.InsertPlanner;
+import de.todesbaum.jsite.application.InsertQueue;
+import de.todesbaum.jsite.application.InsertQueue.QueuedInsert;
+import de.todesbaum.jsite.application.KeyPairPool;
+import de.todesbaum.jsite.application.Node;
+import de.todesbaum.jsite.application.Project;
+import de.todesbaum.jsite.application.ProjectInserter;
+import de.todesbaum.jsite.application.TaskExecutors;
+import de.todesbaum.jsite.gui.FileScanner;
+import de.todesbaum.jsite.gui.HashCache;
+import de.todesbaum.jsite.main.JarFileLocator.DefaultJarFileLocator;
+import de.todesbaum.util.freenet.fcp2.PriorityClass;
+import de.todesbaum.util.io.TempSpace;
+import de.todesbaum.util.thread.ManagedExecutor;
+
+/**
+ * Headless jSite that keeps the configuration, the projects and the
+ * connection settings in memory and offers a small HTTP API on the loopback
+ * interface, so that repeated inserts do not have to pay for starting a JVM
+ * and loading the configuration every time. All responses are JSON:
+ * <ul>
+ * <li>{@code GET /projects} lists all projects,</li>
+ * <li>{@code POST /projects} creates a project from the parameters
+ * {@code name}, {@code path}, {@code local-directory}, and
+ * {@code description}, using a pre-generated key pair,</li>
+ * <li>{@code GET /projects/<id>/plan} shows what an insert of the project
+ * would do,</li>
+ * <li>{@code POST /projects/<id>/insert} queues an insert of the project,
+ * optionally with the parameters {@code edition} and {@code priority} (an
+ * FCP priority class such as {@code interactive} or {@code bulk}),</li>
+ * <li>{@code POST /projects/<id>/cancel} cancels a queued or running
+ * insert,</li>
+ * <li>{@code GET /inserts} shows the last insert of every project,</li>
+ * <li>{@code GET /events} streams the progress of all inserts as
+ * server-sent events.</li>
+ * </ul>
+ * Inserts are started by an {@link InsertQueue}, which limits the number of
+ * inserts per node and lets inserts with a higher priority go first. Plans
+ * and inserts share a {@link HashCache}, so files whose size and
+ * modification time have not changed are not read again.
+ * Parameters can be given in the query string or as a form-encoded request
+ * body. Because browsers may send requests to the loopback interface on
+ * behalf of any web site, requests are refused when they carry an
+ * {@code Origin} header that does not name the loopback interface, or when
+ * their {@code Host} header does not name the loopback interface and the
+ * port of the server (which protects against DNS rebinding). At most
+ * {@value #MAX_EVENT_STREAMS} event streams are served at the same time so
+ * that they can not occupy all threads of the server.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class Server {
+
+	/** The logger. */
+	private static final Logger logger = Logger.getLogger(Server.class.getName());
+
+	/** The default port of the server. */
+	public static final int DEFAULT_PORT = 9480;
+
+	/** The interval of keep-alive comments on event streams (in seconds). */
+	private static final int KEEP_ALIVE_INTERVAL = 15;
+
+	/** The maximum number of events queued for a single event stream. */
+	private static final int MAX_QUEUED_EVENTS = 1000;
+
+	/** The minimum time between two upload progress events (in milliseconds). */
+	private static final long UPLOAD_PROGRESS_INTERVAL = 1000;
+
+	/** The maximum number of requests that are handled at the same time. */
+	private static final int MAX_HTTP_THREADS = 64;
+
+	/** The maximum number of event streams that are served at the same time. */
+	static final int MAX_EVENT_STREAMS = 16;
+
+	/** The configuration. */
+	private final Configuration configuration;
+
+	/** The projects. */
+	private final List<Project> projects;
+
+	/** The freenet interface. */
+	private final Freenet7Interface freenetInterface = new Freenet7Interface();
+
+	/** The results of earlier scans, shared by all plans and inserts. */
+	private final HashCache hashCache = new HashCache();
+
+	/** The pool of generated key pairs. */
+	private final KeyPairPool keyPairPool = new KeyPairPool(freenetInterface);
+
+	/** The last insert of every project, by project ID. */
+	private final Map<String, Insert> inserts = new LinkedHashMap<String, Insert>();
+
+	/** Counter for insert IDs. */
+	private final AtomicInteger insertCounter = new AtomicInteger();
+
+	/** The queue for all inserts. */
+	private final InsertQueue insertQueue;
+
+	/** The queues of the connected event streams. */
+	private final List<BlockingQueue<String>> eventQueues = new CopyOnWriteArrayList<BlockingQueue<String>>();
+
+	/** Limits the number of event streams. */
+	private final Semaphore eventStreamPermits = new Semaphore(MAX_EVENT_STREAMS);
+
+	/** The HTTP server. */
+	private HttpServer httpServer;
+
+	/** The executor of the HTTP server. */
+	private ManagedExecutor httpExecutor;
+
+	/**
+	 * Creates a new server.
+	 *
+	 * @param configuration
+	 *            The configuration to use
+	 * @param node
+	 *            The node to insert to
+	 */
+	public Server(Configuration configuration, Node node) {
+		this.configuration = configuration;
+		this.projects = configuration.getProjects();
+		this.insertQueue = new InsertQueue(configuration.getMaxInsertsPerNode());
+		freenetInterface.setNode(node);
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the port the server listens on.
+	 *
+	 * @return The port of the server, or {@code -1} if the server has not
+	 *         been started
+	 */
+	public int getPort() {
+		return (httpServer != null) ? httpServer.getAddress().getPort() : -1;
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Starts the HTTP server on the loopback interface.
+	 *
+	 * @param port
+	 *            The port to listen on, or {@code 0} to use any free port
+	 * @throws IOException
+	 *             if the server can not be started
+	 */
+	public void start(int port) throws IOException {
+		httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		httpServer.createContext("/", new HttpHandler() {
+
+			@Override
+			@SuppressWarnings("synthetic-access")
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					handleRequest(exchange);
+				} catch (IOException ioe1) {
+					logger.log(Level.FINE, "Could not handle request.", ioe1);
+				} catch (RuntimeException re1) {
+					logger.log(Level.WARNING, "Could not handle request.", re1);
+					sendError(exchange, 500, String.valueOf(re1.getMessage()));
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		/* event streams block their thread, so allow plenty of threads. */
+		httpExecutor = ManagedExecutor.createBlocking("HTTP", MAX_HTTP_THREADS);
+		httpServer.setExecutor(httpExecutor);
+		httpServer.start();
+		keyPairPool.refill();
+		TaskExecutors.IO.execute(() -> TempSpace.forDirectories(configuration.getTempDirectory()).deleteOrphans());
+		logger.log(Level.INFO, "Listening on {0}.", httpServer.getAddress());
+	}
+
+	/**
+	 * Stops the HTTP server, cancels all running inserts, saves the
+	 * configuration, and shuts down all executors.
+	 */
+	public void stop() {
+		close();
+		TaskExecutors.shutdown();
+		TempSpace.closeAll();
+	}
+
+	/**
+	 * Stops the HTTP server, ends all event streams, cancels all running
+	 * inserts and saves the configuration. Unlike {@link #stop()}, this
+	 * leaves the executors shared with the rest of jSite running.
+	 */
+	void close() {
+		if (httpServer != null) {
+			eventQueues.clear();
+			httpServer.stop(0);
+			httpExecutor.shutdownNow();
+		}
+		for (Insert insert : getInserts()) {
+			insert.cancel();
+		}
+		saveConfiguration();
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Dispatches a request to the method that handles it.
+	 *
+	 * @param exchange
+	 *            The HTTP exchange
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private void handleRequest(HttpExchange exchange) throws IOException {
+		String method = exchange.getRequestMethod().toUpperCase(Locale.ENGLISH);
+		String[] path = exchange.getRequestURI().getRawPath().replaceAll("^/+|/+$", "").split("/+");
+		if (!isLocalOrigin(exchange.getRequestHeaders().getFirst("Origin"))) {
+			sendError(exchange, 403, "Requests from web pages are not allowed.");
+			return;
+		}
+		if (!isLocalHost(exchange.getRequestHeaders().getFirst("Host"), exchange.getLocalAddress().getPort())) {
+			sendError(exchange, 403, "Requests for other hosts are not allowed.");
+			return;
+		}
+		if ((path.length == 1) && "projects".equals(path[0])) {
+			if ("GET".equals(method)) {
+				listProjects(exchange);
+				return;
+			} else if ("POST".equals(method)) {
+				createProject(exchange, getParameters(exchange));
+				return;
+			}
+		} else if ((path.length == 3) && "projects".equals(path[0])) {
+			Project project = getProject(decode(path[1]));
+			if (project == null) {
+				sendError(exchange, 404, "Project not found.");
+				return;
+			}
+			if ("GET".equals(method) && "plan".equals(path[2])) {
+				planInsert(exchange, project);
+				return;
+			} else if ("POST".equals(method) && "insert".equals(path[2])) {
+				startInsert(exchange, project, getParameters(exchange));
+				return;
+			} else if ("POST".equals(method) && "cancel".equals(path[2])) {
+				cancelInsert(exchange, project);
+				return;
+			}
+		} else if ((path.length == 1) && "inserts".equals(path[0]) && "GET".equals(method)) {
+			List<Map<String, Object>> insertList = new ArrayList<Map<String, Object>>();
+			for (Insert insert : getInserts()) {
+				insertList.add(insert.toMap());
+			}
+			sendJson(exchange, 200, insertList);
+			return;
+		} else if ((path.length == 1) && "events".equals(path[0]) && "GET".equals(method)) {
+			streamEvents(exchange);
+			return;
+		}
+		sendError(exchange, 404, "Unknown request: " + method + " " + exchange.getRequestURI().getPath());
+	}
+
+	/**
+	 * Sends the list of all projects.
+	 *
+	 * @param exchange
+	 *            The HTTP exchange
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private void listProjects(HttpExchange exchange) throws IOException {
+		List<Map<String, Object>> projectList = new ArrayList<Map<String, Object>>();
+		synchronized (projects) {
+			for (Project project : projects) {
+				projectList.add(toMap(project));
+			}
+		}
+		sendJson(exchange, 200, projectList);
+	}
+
+	/**
+	 * Creates a new project with a key pair from the key pair pool.
+	 *
+	 * @param exchange
+	 *            The HTTP exchange
+	 * @param parameters
+	 *            The request parameters
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private void createProject(HttpExchange exchange, Map<String, String> parameters) throws IOException {
+		String name = parameters.get("name");
+		if ((name == null) || (name.trim().length() == 0)) {
+			sendError(exchange, 400, "Parameter “name” is missing.");
+			return;
+		}
+		if (!freenetInterface.hasNode()) {
+			sendError(exchange, 503, "No node set.");
+			return;
+		}
+		String[] keyPair;
+		try {
+			keyPair = keyPairPool.getKeyPair();
+		} catch (IOException ioe1) {
+			sendError(exchange, 503, "Could not generate key pair: " + ioe1.getMessage());
+			return;
+		}
+		Project project = new Project();
+		project.setName(name.trim());
+		project.setDescription(getParameter(parameters, "description", ""));
+		project.setPath(getParameter(parameters, "path", "").replaceAll("/", ""));
+		project.setLocalPath(getParameter(parameters, "local-directory", ""));
+		project.setInsertURI(keyPair[0]);
+		project.setRequestURI(keyPair[1]);
+		project.setEdition(-1);
+		synchronized (projects) {
+			projects.add(project);
+		}
+		saveConfiguration();
+		sendJson(exchange, 201, toMap(project));
+	}
+
+	/**
+	 * Scans the files of the given project and sends what an insert of the
+	 * project would do.
+	 *
+	 * @param exchange
+	 *            The HTTP exchange
+	 * @param project
+	 *            The project to plan the insert for
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private void planInsert(HttpExchange exchange, Project project) throws IOException {
+		FileScanner fileScanner = new FileScanner(project, (error, files) -> {
+			/* we run the scanner ourselves. */
+		});
+		fileScanner.setHashCache(hashCache);
+		fileScanner.run();
+		if (fileScanner.isError()) {
+			sendError(exchange, 500, "Could not scan files of project.");
+			return;
+		}
+		InsertPlanner insertPlanner = new InsertPlanner().setInsertFilesSeparately(configuration.insertFilesSeparately()).setSeparateInsertThreshold(configuration.getSeparateInsertThreshold()).setChkCaptureThreshold(configuration.getChkCaptureThreshold()).setNode(freenetInterface.getNode());
+		InsertPlan insertPlan = insertPlanner.plan(project, fileScanner.getFiles());
+		Map<String, Object> plan = new LinkedHashMap<String, Object>();
+		plan.put("project", project.getId());
+		List<Map<String, Object>> uploads = new ArrayList<Map<String, Object>>();
+		for (PlannedFile plannedFile : insertPlan.getPlannedFiles()) {
+			if (plannedFile.getAction().isUpload()) {
+				Map<String, Object> upload = new LinkedHashMap<String, Object>();
+				upload.put("filename", plannedFile.getFilename());
+				upload.put("size", plannedFile.getSize());
+				upload.put("separate", plannedFile.getAction() == Action.SEPARATE);
+				uploads.add(upload);
+			}
+		}
+		plan.put("uploads", uploads);
+		Map<String, Object> fileCounts = new LinkedHashMap<String, Object>();
+		for (Action action : Action.values()) {
+			fileCounts.put(action.name().toLowerCase(Locale.ENGLISH).replace('_', '-'), insertPlan.getFileCount(action));
+		}
+		plan.put("file-counts", fileCounts);
+		plan.put("upload-size", insertPlan.getUploadSize());
+		plan.put("block-count", insertPlan.getBlockCount());
+		plan.put("manifest-block-count", insertPlan.getManifestBlockCount());
+		long estimatedDuration = insertPlan.getEstimatedDuration();
+		plan.put("estimated-duration", (estimatedDuration < 0) ? null : estimatedDuration);
+		plan.put("insert-needed", insertPlan.isInsertNeeded());
+		FetchPlan fetchPlan = new FetchPlanner().plan(project, insertPlan);
+		Map<String, Object> fetches = new LinkedHashMap<String, Object>();
+		fetches.put("manifest-putter", fetchPlan.getManifestPutter().getName());
+		fetches.put("container-size", fetchPlan.getContainerSize());
+		fetches.put("files", fetchPlan.getFileCount());
+		fetches.put("manifests", fetchPlan.getManifestCount());
+		fetches.put("containers", fetchPlan.getContainerCount());
+		fetches.put("keys", fetchPlan.getKeyCount());
+		fetches.put("total", fetchPlan.getFetchCount());
+		plan.put("fetches", fetches);
+		sendJson(exchange, 200, plan);
+	}
+
+	/**
+	 * Starts an insert of the given project.
+	 *
+	 * @param exchange
+	 *            The HTTP exchange
+	 * @param project
+	 *            The project to insert
+	 * @param parameters
+	 *            The request parameters
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private void startInsert(HttpExchange exchange, Project project, Map<String, String> parameters) throws IOException {
+		if (!freenetInterface.hasNode()) {
+			sendError(exchange, 503, "No node set.");
+			return;
+		}
+		Insert insert;
+		synchronized (inserts) {
+			Insert lastInsert = inserts.get(project.getId());
+			if ((lastInsert != null) && lastInsert.isActive()) {
+				sendError(exchange, 409, "Project is already being inserted.");
+				return;
+			}
+			PriorityClass priority = project.getPriority(configuration.getPriority());
+			if (parameters.containsKey("priority")) {
+				priority = PriorityClass.valueOf(parameters.get("priority"));
+				if (priority == null) {
+					sendError(exchange, 400, "Unknown priority class: " + parameters.get("priority"));
+					return;
+				}
+			}
+			if (parameters.containsKey("edition")) {
+				try {
+					project.setEdition(Integer.parseInt(parameters.get("edition")));
+				} catch (NumberFormatException nfe1) {
+					sendError(exchange, 400, "Invalid edition: " + parameters.get("edition"));
+					return;
+				}
+			}
+			insert = new Insert(insertCounter.incrementAndGet(), project, priority);
+			inserts.remove(project.getId());
+			inserts.put(project.getId(), insert);
+		}
+		insert.start();
+		sendJson(exchange, 202, insert.toMap());
+	}
+
+	/**
+	 * Cancels the queued or running insert of the given project.
+	 *
+	 * @param exchange
+	 *            The HTTP exchange
+	 * @param project
+	 *            The project to cancel the insert of
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private void cancelInsert(HttpExchange exchange, Project project) throws IOException {
+		Insert insert;
+		synchronized (inserts) {
+			insert = inserts.get(project.getId());
+		}
+		if ((insert == null) || !insert.isActive()) {
+			sendError(exchange, 409, "Project is not being inserted.");
+			return;
+		}
+		insert.cancel();
+		sendJson(exchange, 202, insert.toMap());
+	}
+
+	/**
+	 * Streams all events as server-sent events until the client disconnects.
+	 * If {@value #MAX_EVENT_STREAMS} event streams are already being served,
+	 * the request is refused.
+	 *
+	 * @param exchange
+	 *            The HTTP exchange
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private void streamEvents(HttpExchange exchange) throws IOException {
+		if (!eventStreamPermits.tryAcquire()) {
+			sendError(exchange, 503, "Too many event streams.");
+			return;
+		}
+		BlockingQueue<String> eventQueue = new LinkedBlockingQueue<String>(MAX_QUEUED_EVENTS);
+		eventQueues.add(eventQueue);
+		try {
+			exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+			exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+			exchange.sendResponseHeaders(200, 0);
+			OutputStream responseBody = exchange.getResponseBody();
+			for (Insert insert : getInserts()) {
+				responseBody.write(formatEvent("insert", insert.toMap()).getBytes(UTF_8));
+			}
+			responseBody.flush();
+			while (eventQueues.contains(eventQueue)) {
+				String event = eventQueue.poll(KEEP_ALIVE_INTERVAL, TimeUnit.SECONDS);
+				responseBody.write(((event != null) ? event : ":\n\n").getBytes(UTF_8));
+				responseBody.flush();
+			}
+		} catch (InterruptedException ie1) {
+			Thread.currentThread().interrupt();
+		} finally {
+			eventQueues.remove(eventQueue);
+			eventStreamPermits.release();
+		}
+	}
+
+	/**
+	 * Sends an event to all connected event streams. Event streams that can
+	 * not keep up are disconnected.
+	 *
+	 * @param name
+	 *            The name of the event
+	 * @param data
+	 *            The data of the event
+	 */
+	private void publishEvent(String name, Map<String, Object> data) {
+		String event = formatEvent(name, data);
+		for (BlockingQueue<String> eventQueue : eventQueues) {
+			if (!eventQueue.offer(event)) {
+				logger.log(Level.WARNING, "Disconnecting slow event stream.");
+				eventQueues.remove(eventQueue);
+			}
+		}
+	}
+
+	/**
+	 * Formats a server-sent event.
+	 *
+	 * @param name
+	 *            The name of the event
+	 * @param data
+	 *            The data of the event
+	 * @return The formatted event
+	 */
+	private static String formatEvent(String name, Map<String, Object> data) {
+		return "event: " + name + "\ndata: " + Json.toJson(data) + "\n\n";
+	}
+
+	/**
+	 * Saves the configuration, including the state of all projects.
+	 */
+	private void saveConfiguration() {
+		List<Project> projectsToSave;
+		synchronized (projects) {
+			projectsToSave = new ArrayList<Project>(projects);
+		}
+		synchronized (configuration) {
+			configuration.setProjects(projectsToSave);
+			if (!configuration.save()) {
+				logger.log(Level.WARNING, "Could not save configuration.");
+			}
+		}
+	}
+
+	/**
+	 * Returns the project with the given ID.
+	 *
+	 * @param id
+	 *            The ID of the project
+	 * @return The project, or {@code null} if there is no project with the
+	 *         given ID
+	 */
+	private Project getProject(String id) {
+		synchronized (projects) {
+			for (Project project : projects) {
+				if (project.getId().equals(id)) {
+					return project;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the last insert of every project.
+	 *
+	 * @return The last inserts
+	 */
+	private List<Insert> getInserts() {
+		synchronized (inserts) {
+			return new ArrayList<Insert>(inserts.values());
+		}
+	}
+
+	/**
+	 * Returns whether the given project is currently queued or being
+	 * inserted.
+	 *
+	 * @param project
+	 *            The project
+	 * @return {@code true} if the project is queued or being inserted,
+	 *         {@code false} otherwise
+	 */
+	private boolean isActive(Project project) {
+		synchronized (inserts) {
+			Insert insert = inserts.get(project.getId());
+			return (insert != null) && insert.isActive();
+		}
+	}
+
+	/**
+	 * Converts the given project into a map for a JSON response.
+	 *
+	 * @param project
+	 *            The project to convert
+	 * @return The map
+	 */
+	private Map<String, Object> toMap(Project project) {
+		Map<String, Object> projectMap = new LinkedHashMap<String, Object>();
+		projectMap.put("id", project.getId());
+		projectMap.put("name", project.getName());
+		projectMap.put("description", project.getDescription());
+		projectMap.put("path", project.getPath());
+		projectMap.put("local-directory", project.getLocalPath());
+		projectMap.put("edition", project.getEdition());
+		projectMap.put("request-uri", project.getFinalRequestURI(0));
+		projectMap.put("last-insertion-time", project.getLastInsertionTime());
+		projectMap.put("priority", project.getPriority(configuration.getPriority()).getName());
+		projectMap.put("active", isActive(project));
+		return projectMap;
+	}
+
+	/**
+	 * Returns whether the given {@code Origin} header allows a request, i.e.
+	 * whether it is missing or names the loopback interface.
+	 *
+	 * @param origin
+	 *            The {@code Origin} header of the request, or {@code null}
+	 * @return {@code true} if the request is allowed, {@code false} otherwise
+	 */
+	static boolean isLocalOrigin(String origin) {
+		if (origin == null) {
+			return true;
+		}
+		try {
+			String host = new URI(origin.trim()).getHost();
+			return "localhost".equalsIgnoreCase(host) || "127.0.0.1".equals(host) || "[::1]".equals(host);
+		} catch (URISyntaxException use1) {
+			return false;
+		}
+	}
+
+	/**
+	 * Returns whether the given {@code Host} header allows a request, i.e.
+	 * whether it names the loopback interface and, if it contains a port,
+	 * the given port.
+	 *
+	 * @param host
+	 *            The {@code Host} header of the request, or {@code null}
+	 * @param port
+	 *            The port the server is listening on
+	 * @return {@code true} if the request is allowed, {@code false} otherwise
+	 */
+	static boolean isLocalHost(String host, int port) {
+		if (host == null) {
+			return false;
+		}
+		String hostname = host.trim();
+		int portSeparator = hostname.lastIndexOf(':');
+		if ((portSeparator > -1) && (portSeparator > hostname.lastIndexOf(']'))) {
+			if (!hostname.substring(portSeparator + 1).equals(String.valueOf(port))) {
+				return false;
+			}
+			hostname = hostname.substring(0, portSeparator);
+		}
+		return "localhost".equalsIgnoreCase(hostname) || "127.0.0.1".equals(hostname) || "[::1]".equals(hostname);
+	}
+
+	/**
+	 * Returns the parameters of the given request, from both the query string
+	 * and a form-encoded request body.
+	 *
+	 * @param exchange
+	 *            The HTTP exchange
+	 * @return The parameters of the request
+	 * @throws IOException
+	 *             if the request body can not be read
+	 */
+	private static Map<String, String> getParameters(HttpExchange exchange) throws IOException {
+		Map<String, String> parameters = new HashMap<String, String>();
+		parseParameters(exchange.getRequestURI().getRawQuery(), parameters);
+		ByteArrayOutputStream requestBody = new ByteArrayOutputStream();
+		InputStream requestStream = exchange.getRequestBody();
+		byte[] buffer = new byte[4096];
+		int read;
+		while ((read = requestStream.read(buffer)) != -1) {
+			requestBody.write(buffer, 0, read);
+		}
+		parseParameters(new String(requestBody.toByteArray(), UTF_8), parameters);
+		return parameters;
+	}
+
+	/**
+	 * Parses form-encoded parameters.
+	 *
+	 * @param encodedParameters
+	 *            The encoded parameters (may be {@code null})
+	 * @param parameters
+	 *            The map to store the parameters in
+	 */
+	static void parseParameters(String encodedParameters, Map<String, String> parameters) {
+		if ((encodedParameters == null) || (encodedParameters.trim().length() == 0)) {
+			return;
+		}
+		for (String parameter : encodedParameters.trim().split("&")) {
+			int equals = parameter.indexOf('=');
+			if (equals == -1) {
+				parameters.put(decode(parameter), "");
+			} else {
+				parameters.put(decode(parameter.substring(0, equals)), decode(parameter.substring(equals + 1)));
+			}
+		}
+	}
+
+	/**
+	 * Returns the parameter with the given name.
+	 *
+	 * @param parameters
+	 *            The parameters
+	 * @param name
+	 *            The name of the parameter
+	 * @param defaultValue
+	 *            The value to return if the parameter is not set
+	 * @return The value of the parameter, or the default value
+	 */
+	private static String getParameter(Map<String, String> parameters, String name, String defaultValue) {
+		String value = parameters.get(name);
+		return (value != null) ? value : defaultValue;
+	}
+
+	/**
+	 * URL-decodes the given string.
+	 *
+	 * @param encoded
+	 *            The encoded string
+	 * @return The decoded string
+	 */
+	private static String decode(String encoded) {
+		try {
+			return URLDecoder.decode(encoded, "UTF-8");
+		} catch (UnsupportedEncodingException uee1) {
+			/* UTF-8 is always supported. */
+			throw new AssertionError(uee1);
+		}
+	}
+
+	/**
+	 * Sends the given value as JSON.
+	 *
+	 * @param exchange
+	 *            The HTTP exchange
+	 * @param status
+	 *            The HTTP status code
+	 * @param value
+	 *            The value to send
+	 * @throws IOException
+	 *             if the response can not be sent
+	 */
+	private static void sendJson(HttpExchange exchange, int status, Object value) throws IOException {
+		byte[] responseBody = Json.toJson(value).getBytes(UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, responseBody.length);
+		exchange.getResponseBody().write(responseBody);
+	}
+
+	/**
+	 * Sends an error as JSON.
+	 *
+	 * @param exchange
+	 *            The HTTP exchange
+	 * @param status
+	 *            The HTTP status code
+	 * @param message
+	 *            The error message
+	 * @throws IOException
+	 *             if the response can not be sent
+	 */
+	private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+		sendJson(exchange, status, Collections.singletonMap("error", message));
+	}
+
+	/**
+	 * A single insert of a project.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	private class Insert implements InsertListener, ProgressListener {
+
+		/** The ID of the insert. */
+		private final int id;
+
+		/** The project being inserted. */
+		private final Project project;
+
+		/** The project inserter. */
+		private final ProjectInserter projectInserter = new ProjectInserter();
+
+		/** The priority class of the insert. */
+		private final PriorityClass priority;
+
+		/** The time the insert was queued. */
+		private final long queueTime = System.currentTimeMillis();
+
+		/** The insert in the insert queue. */
+		private volatile QueuedInsert queuedInsert;
+
+		/** The state of the insert. */
+		private volatile String state = "queued";
+
+		/** The error message of a failed insert. */
+		private volatile String error;
+
+		/** The generated URI. */
+		private volatile String uri;
+
+		/** The number of uploaded bytes. */
+		private volatile long uploaded;
+
+		/** The number of bytes to upload. */
+		private volatile long uploadSize;
+
+		/** The time of the last upload progress event. */
+		private volatile long lastUploadProgressTime;
+
+		/** The block counts: succeeded, failed, fatal, total. */
+		private volatile int[] blocks = new int[4];
+
+		/** The time the insert finished. */
+		private volatile long endTime;
+
+		/**
+		 * Creates a new insert.
+		 *
+		 * @param id
+		 *            The ID of the insert
+		 * @param project
+		 *            The project to insert
+		 * @param priority
+		 *            The priority class of the insert
+		 */
+		public Insert(int id, Project project, PriorityClass priority) {
+			this.id = id;
+			this.project = project;
+			this.priority = priority;
+			projectInserter.setProject(project);
+			projectInserter.setFreenetInterface(freenetInterface);
+			projectInserter.setTempDirectory(configuration.getTempDirectory());
+			projectInserter.setHashCache(hashCache);
+			projectInserter.setUseEarlyEncode(configuration.useEarlyEncode());
+			projectInserter.setInsertFilesSeparately(configuration.insertFilesSeparately());
+			projectInserter.setSeparateInsertThreshold(configuration.getSeparateInsertThreshold());
+			projectInserter.setSeparateInsertConcurrency(configuration.getSeparateInsertConcurrency());
+			projectInserter.setMaxRetries(configuration.getInsertRetries());
+			projectInserter.setChkCaptureThreshold(configuration.getChkCaptureThreshold());
+			projectInserter.addInsertListener(this);
+		}
+
+		//
+		// ACCESSORS
+		//
+
+		/**
+		 * Returns whether the insert is queued or running.
+		 *
+		 * @return {@code true} if the insert is queued or running,
+		 *         {@code false} if it has finished
+		 */
+		public boolean isActive() {
+			return "queued".equals(state) || "running".equals(state);
+		}
+
+		/**
+		 * Converts this insert into a map for a JSON response.
+		 *
+		 * @return The map
+		 */
+		public Map<String, Object> toMap() {
+			Map<String, Object> insertMap = new LinkedHashMap<String, Object>();
+			insertMap.put("id", id);
+			insertMap.put("project", project.getId());
+			insertMap.put("state", state);
+			insertMap.put("priority", priority.getName());
+			insertMap.put("error", error);
+			insertMap.put("uri", uri);
+			insertMap.put("uploaded", uploaded);
+			insertMap.put("upload-size", uploadSize);
+			int[] currentBlocks = blocks;
+			insertMap.put("succeeded-blocks", currentBlocks[0]);
+			insertMap.put("failed-blocks", currentBlocks[1]);
+			insertMap.put("fatal-blocks", currentBlocks[2]);
+			insertMap.put("total-blocks", currentBlocks[3]);
+			insertMap.put("queue-time", queueTime);
+			insertMap.put("end-time", (endTime == 0) ? null : endTime);
+			return insertMap;
+		}
+
+		//
+		// ACTIONS
+		//
+
+		/**
+		 * Adds the insert to the insert queue.
+		 */
+		@SuppressWarnings("synthetic-access")
+		public void start() {
+			publishEvent("queued", toMap());
+			queuedInsert = insertQueue.enqueue(projectInserter, freenetInterface.getNode(), priority, this);
+		}
+
+		/**
+		 * Cancels the insert.
+		 */
+		@SuppressWarnings("synthetic-access")
+		public void cancel() {
+			if (!isActive() || (queuedInsert == null)) {
+				return;
+			}
+			if (insertQueue.cancel(queuedInsert)) {
+				endTime = System.currentTimeMillis();
+				state = "cancelled";
+				publishEvent("finished", toMap());
+			}
+		}
+
+		//
+		// INTERFACE ProgressListener
+		//
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		@SuppressWarnings("synthetic-access")
+		public void onProgress(long copied, long length) {
+			uploaded = copied;
+			uploadSize = length;
+			long now = System.currentTimeMillis();
+			if ((copied == length) || ((now - lastUploadProgressTime) >= UPLOAD_PROGRESS_INTERVAL)) {
+				lastUploadProgressTime = now;
+				publishEvent("upload-progress", toMap());
+			}
+		}
+
+		//
+		// INTERFACE InsertListener
+		//
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		@SuppressWarnings("synthetic-access")
+		public void projectInsertStarted(Project project) {
+			state = "running";
+			publishEvent("started", toMap());
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		@SuppressWarnings("synthetic-access")
+		public void projectUploadFinished(Project project) {
+			publishEvent("uploaded", toMap());
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		@SuppressWarnings("synthetic-access")
+		public void projectURIGenerated(Project project, String uri) {
+			this.uri = uri;
+			publishEvent("uri", toMap());
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		@SuppressWarnings("synthetic-access")
+		public void projectInsertProgress(Project project, int succeeded, int failed, int fatal, int total, boolean finalized) {
+			blocks = new int[] { succeeded, failed, fatal, total };
+			publishEvent("progress", toMap());
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		@SuppressWarnings("synthetic-access")
+		public void projectInsertRetrying(Project project, int retry, int maxRetries, long delay) {
+			Map<String, Object> event = toMap();
+			event.put("retry", retry);
+			event.put("max-retries", maxRetries);
+			event.put("delay", delay);
+			publishEvent("retrying", event);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		@SuppressWarnings("synthetic-access")
+		public void projectInsertFinished(Project project, boolean success, Throwable cause) {
+			endTime = System.currentTimeMillis();
+			if (success) {
+				state = "succeeded";
+			} else if (cause instanceof AbortedException) {
+				state = "cancelled";
+			} else {
+				state = "failed";
+				error = (cause != null) ? String.valueOf(cause.getMessage()) : null;
+			}
+			saveConfiguration();
+			publishEvent("finished", toMap());
+		}
+
+	}
+
+	//
+	// MAIN
+	//
+
+	/**
+	 * Starts a server with the given arguments.
+	 *
+	 * @param args
+	 *            The command-line arguments
+	 */
+	public static void main(String[] args) {
+		String configFile = System.getProperty("user.home") + "/.jSite/config7";
+		String nodeName = null;
+		int port = DEFAULT_PORT;
+		for (String argument : args) {
+			String value = argument.substring(argument.indexOf('=') + 1).trim();
+			if (argument.startsWith("--config-file=")) {
+				configFile = value;
+			} else if (argument.startsWith("--node=")) {
+				nodeName = value;
+			} else if (argument.startsWith("--port=")) {
+				port = Integer.parseInt(value);
+			} else if ("--debug".equals(argument)) {
+				Logger jSiteLogger = Logger.getLogger("de.todesbaum");
+				Handler handler = new ConsoleHandler();
+				handler.setLevel(Level.ALL);
+				jSiteLogger.addHandler(handler);
+				jSiteLogger.setLevel(Level.ALL);
+			} else {
+				System.out.println("\nParameters:\n");
+				System.out.println("  --config-file=<configuration file>");
+				System.out.println("  --node=<node name>");
+				System.out.println("  --port=<port>  (default: " + DEFAULT_PORT + ")");
+				System.out.println("  --debug");
+				System.out.println("\nThe server only listens on the loopback interface.");
+				return;
+			}
+		}
+
+		ConfigurationLocator configurationLocator = new ConfigurationLocator(new DefaultJarFileLocator(Server.class.getClassLoader()));
+		configurationLocator.setCustomLocation(configFile);
+		Configuration configuration = new Configuration(configurationLocator, configurationLocator.findPreferredLocation());
+		Node node = configuration.getSelectedNode();
+		if (nodeName != null) {
+			node = null;
+			for (Node configuredNode : configuration.getNodes()) {
+				if (configuredNode.getName().equals(nodeName)) {
+					node = configuredNode;
+				}
+			}
+			if (node == null) {
+				System.out.println("Node \"" + nodeName + "\" not found.");
+				return;
+			}
+		}
+
+		final Server server = new Server(configuration, node);
+		try {
+			server.start(port);
+		} catch (IOException ioe1) {
+			System.out.println("Could not start server: " + ioe1.getMessage());
+			return;
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				server.stop();
+			}
+		}, "Server Shutdown"));
+	}
+
+}
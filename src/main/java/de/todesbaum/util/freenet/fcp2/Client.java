@@ -227,6 +227,20 @@ public class Client implements ConnectionListener {
 		}
 	}
 
+	/**
+	 * Detaches this client from its connection. The connection itself stays
+	 * connected so that it can be shared with other clients; this client
+	 * behaves as if it was disconnected, i.e. a thread that is waiting in
+	 * {@link #readMessage()} returns <code>null</code>.
+	 */
+	public void close() {
+		connection.removeConnectionListener(this);
+		synchronized (messageQueue) {
+			disconnected = true;
+			messageQueue.notify();
+		}
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
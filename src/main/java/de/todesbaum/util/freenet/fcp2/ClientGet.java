@@ -369,6 +369,7 @@ public class ClientGet extends Command {
 		}
 		writer.write("Global=" + global + LINEFEED);
 		writer.write("BinaryBlob=" + binaryBlob + LINEFEED);
+		writer.write("ReturnType=" + returnType.name() + LINEFEED);
 		if (allowedMimeTypes != null) {
 			writer.write("AllowedMIMETypes=" + allowedMimeTypes + LINEFEED);
 		}
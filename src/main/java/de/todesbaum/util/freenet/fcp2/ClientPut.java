@@ -135,6 +135,23 @@ public abstract class ClientPut extends Command {
 		this.global = global;
 	}
 
+	/**
+	 * Returns the persistence of this request.
+	 * @return The persistence of this request
+	 */
+	public Persistence getPersistence() {
+		return persistence;
+	}
+
+	/**
+	 * Sets the persistence of this request.
+	 * @param persistence
+	 *            The persistence of this request
+	 */
+	public void setPersistence(Persistence persistence) {
+		this.persistence = persistence;
+	}
+
 	/**
 	 * Returns the maximum number of retries of this request.
 	 * @return The maximum number of retries of this request
@@ -228,7 +245,7 @@ public abstract class ClientPut extends Command {
 			writer.write("Verbosity=" + verbosity.getValue() + LINEFEED);
 		if (maxRetries != 0)
 			writer.write("MaxRetries=" + maxRetries + LINEFEED);
-		writer.write("EarlyEncode=" + earlyEncode);
+		writer.write("EarlyEncode=" + earlyEncode + LINEFEED);
 		if (priorityClass != null)
 			writer.write("PriorityClass=" + priorityClass.getValue() + LINEFEED);
 		writer.write("GetCHKOnly=" + getCHKOnly + LINEFEED);
@@ -20,15 +20,21 @@ package de.todesbaum.util.freenet.fcp2;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import net.pterodactylus.util.io.Closer;
+import de.todesbaum.util.io.TempSpace;
+import de.todesbaum.util.thread.CancellationToken;
 
 /**
  * Implementation of the <code>ClientPutComplexDir</code> command. This command
@@ -48,11 +54,17 @@ public class ClientPutComplexDir extends ClientPutDir<ClientPutComplexDir> {
 	/** The input streams for the payload. */
 	private File payloadFile;
 
+	/** Whether any file entry is a {@link StagedFileEntry}. */
+	private boolean hasStagedEntries = false;
+
 	/** The total number of bytes of the payload. */
 	private long payloadLength = 0;
 
-	/** The temp directory to use. */
-	private final String tempDirectory;
+	/** The temp space to create the payload file in. */
+	private final TempSpace tempSpace;
+
+	/** The token that cancels copying data to the payload file. */
+	private CancellationToken cancellationToken = new CancellationToken();
 
 	/**
 	 * Creates a new <code>ClientPutComplexDir</code> command with the specified
@@ -64,7 +76,7 @@ public class ClientPutComplexDir extends ClientPutDir<ClientPutComplexDir> {
 	 *            The URI of the command
 	 */
 	public ClientPutComplexDir(String identifier, String uri) {
-		this(identifier, uri, null);
+		this(identifier, uri, TempSpace.forDirectories(null));
 	}
 
 	/**
@@ -75,64 +87,98 @@ public class ClientPutComplexDir extends ClientPutDir<ClientPutComplexDir> {
 	 *            The identifier of the command
 	 * @param uri
 	 *            The URI of the command
-	 * @param tempDirectory
-	 *            The temp directory to use, or {@code null} to use the default
-	 *            temp directory
+	 * @param tempSpace
+	 *            The temp space to create the payload file in
 	 */
-	public ClientPutComplexDir(String identifier, String uri, String tempDirectory) {
+	public ClientPutComplexDir(String identifier, String uri, TempSpace tempSpace) {
 		super("ClientPutComplexDir", identifier, uri);
-		this.tempDirectory = tempDirectory;
+		this.tempSpace = tempSpace;
 	}
 
 	/**
-	 * Adds a file to the directory inserted by this request.
+	 * Sets the token that cancels copying the data of file entries to the
+	 * temporary payload file. The token is checked between all blocks that
+	 * are copied; once it has been cancelled, the payload file is deleted and
+	 * {@link #addFileEntry(FileEntry)} throws an exception.
+	 *
+	 * @param cancellationToken
+	 *            The token that cancels copying
+	 */
+	public void setCancellationToken(CancellationToken cancellationToken) {
+		this.cancellationToken = cancellationToken;
+	}
+
+	/**
+	 * Adds a file to the directory inserted by this request. The data of
+	 * {@link DirectFileEntry}s is copied to a temporary file, except for
+	 * {@link StagedFileEntry}s whose data is sent directly from their stage.
+	 * The space for the data is reserved in the temp space before it is
+	 * copied.
 	 *
 	 * @param fileEntry
 	 *            The file entry to add to the directory
 	 * @throws IOException
-	 *             if an I/O error occurs when creating the payload stream
+	 *             if an I/O error occurs when creating the payload stream, if
+	 *             there is not enough temp space, or if copying is cancelled
 	 */
 	public void addFileEntry(FileEntry fileEntry) throws IOException {
-		if (fileEntry instanceof DirectFileEntry) {
+		if (fileEntry instanceof StagedFileEntry) {
+			hasStagedEntries = true;
+			hasPayload = true;
+			fileEntries.add(fileEntry);
+		} else if (fileEntry instanceof DirectFileEntry) {
+			long dataLength = ((DirectFileEntry) fileEntry).getDataLength();
 			if (payloadFile == null) {
-				try {
-					payloadFile = File.createTempFile("payload", ".dat", (tempDirectory != null) ? new File(tempDirectory) : null);
-					payloadFile.deleteOnExit();
-				} catch (IOException e) {
-					/* ignore. */
-				}
+				payloadFile = tempSpace.createFile("payload", dataLength);
+			} else {
+				tempSpace.reserve(payloadFile, payloadFile.length() + dataLength);
 			}
-			if (payloadFile != null) {
-				InputStream payloadInputStream = ((DirectFileEntry) fileEntry).getDataInputStream();
-				FileOutputStream payloadOutputStream = null;
-				try {
-					payloadOutputStream = new FileOutputStream(payloadFile, true);
-					byte[] buffer = new byte[65536];
-					int read = 0;
-					while ((read = payloadInputStream.read(buffer)) != -1) {
-						payloadOutputStream.write(buffer, 0, read);
-					}
-					payloadOutputStream.flush();
-					fileEntries.add(fileEntry);
-				} catch (IOException ioe1) {
-					payloadFile.delete();
-					throw ioe1;
-				} finally {
-					Closer.close(payloadOutputStream);
-					Closer.close(payloadInputStream);
+			InputStream payloadInputStream = null;
+			FileOutputStream payloadOutputStream = null;
+			try {
+				payloadInputStream = ((DirectFileEntry) fileEntry).getDataInputStream();
+				payloadOutputStream = new FileOutputStream(payloadFile, true);
+				byte[] buffer = new byte[65536];
+				int read = 0;
+				while ((read = payloadInputStream.read(buffer)) != -1) {
+					cancellationToken.throwIfCancelled();
+					payloadOutputStream.write(buffer, 0, read);
 				}
+				payloadOutputStream.flush();
+				hasPayload = true;
+				fileEntries.add(fileEntry);
+			} catch (IOException ioe1) {
+				Closer.close(payloadOutputStream);
+				deletePayload();
+				throw ioe1;
+			} finally {
+				Closer.close(payloadOutputStream);
+				Closer.close(payloadInputStream);
 			}
 		} else {
 			fileEntries.add(fileEntry);
 		}
 	}
 
+	/**
+	 * Deletes the temporary payload file. This request can not be sent
+	 * anymore once its payload has been deleted.
+	 */
+	public void deletePayload() {
+		if (payloadFile != null) {
+			tempSpace.delete(payloadFile);
+			payloadFile = null;
+		}
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
 	protected void write(Writer writer) throws IOException {
 		super.write(writer);
+		/* the request is written again when it is resent after a reconnect. */
+		payloadLength = 0;
 		int fileIndex = 0;
 		for (FileEntry fileEntry : fileEntries) {
 			writer.write("Files." + fileIndex + ".Name=" + fileEntry.getFilename() + LINEFEED);
@@ -141,7 +187,6 @@ public class ClientPutComplexDir extends ClientPutDir<ClientPutComplexDir> {
 			}
 			writer.write("Files." + fileIndex + ".UploadFrom=" + fileEntry.getName() + LINEFEED);
 			if (fileEntry instanceof DirectFileEntry) {
-				hasPayload = true;
 				writer.write("Files." + fileIndex + ".DataLength=" + ((DirectFileEntry) fileEntry).getDataLength() + LINEFEED);
 				payloadLength += ((DirectFileEntry) fileEntry).getDataLength();
 			} else if (fileEntry instanceof DiskFileEntry) {
@@ -173,15 +218,81 @@ public class ClientPutComplexDir extends ClientPutDir<ClientPutComplexDir> {
 	 * {@inheritDoc}
 	 */
 	@Override
-	protected InputStream getPayload() {
-		if (payloadFile != null) {
+	protected InputStream getPayload() throws IOException {
+		if (hasStagedEntries) {
 			try {
-				return new FileInputStream(payloadFile);
-			} catch (FileNotFoundException e) {
-				/* shouldn't occur. */
+				return new SequenceInputStream(new PayloadStreams());
+			} catch (UncheckedIOException uioe1) {
+				throw uioe1.getCause();
 			}
 		}
+		if (payloadFile != null) {
+			return new FileInputStream(payloadFile);
+		}
 		return null;
 	}
 
+	/**
+	 * Opens the payload streams of all {@link DirectFileEntry}s one after the
+	 * other, reading staged entries from their stage and all other entries
+	 * from the temporary payload file. A stream that can not be opened is
+	 * reported as an {@link UncheckedIOException}, which
+	 * {@link Connection} unwraps again.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	private class PayloadStreams implements Enumeration<InputStream> {
+
+		/** The file entries. */
+		private final Iterator<FileEntry> fileEntryIterator = fileEntries.iterator();
+
+		/** The next direct file entry. */
+		private DirectFileEntry nextFileEntry;
+
+		/** The offset of the next copied entry in the payload file. */
+		private long payloadOffset = 0;
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public boolean hasMoreElements() {
+			while ((nextFileEntry == null) && fileEntryIterator.hasNext()) {
+				FileEntry fileEntry = fileEntryIterator.next();
+				if (fileEntry instanceof DirectFileEntry) {
+					nextFileEntry = (DirectFileEntry) fileEntry;
+				}
+			}
+			return nextFileEntry != null;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		@SuppressWarnings("synthetic-access")
+		public InputStream nextElement() {
+			if (!hasMoreElements()) {
+				throw new NoSuchElementException();
+			}
+			DirectFileEntry fileEntry = nextFileEntry;
+			nextFileEntry = null;
+			if (fileEntry instanceof StagedFileEntry) {
+				InputStream dataInputStream = fileEntry.getDataInputStream();
+				if (dataInputStream == null) {
+					throw new UncheckedIOException(new IOException("Could not read staged data of " + fileEntry.getFilename()));
+				}
+				return dataInputStream;
+			}
+			long offset = payloadOffset;
+			payloadOffset += fileEntry.getDataLength();
+			try {
+				return PayloadStage.openRegion(payloadFile, offset, fileEntry.getDataLength());
+			} catch (IOException ioe1) {
+				throw new UncheckedIOException(ioe1);
+			}
+		}
+
+	}
+
 }
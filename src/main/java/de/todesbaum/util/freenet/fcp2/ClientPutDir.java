@@ -33,6 +33,9 @@ public class ClientPutDir<C extends ClientPutDir<?>> extends ClientPut {
 	/** The default file of the directory. */
 	protected String defaultName;
 
+	/** The manifest putter, or {@code null} to use the node’s default. */
+	protected ManifestPutter manifestPutter;
+
 	/**
 	 * Creates a new request with the specified name, identifier, and URI.
 	 *
@@ -70,6 +73,28 @@ public class ClientPutDir<C extends ClientPutDir<?>> extends ClientPut {
 		this.defaultName = defaultName;
 	}
 
+	/**
+	 * Returns the manifest putter of the request.
+	 *
+	 * @return The manifest putter of the request, or {@code null} if the
+	 *         node’s default manifest putter is used
+	 */
+	public ManifestPutter getManifestPutter() {
+		return manifestPutter;
+	}
+
+	/**
+	 * Sets the manifest putter of the request. The manifest putter decides
+	 * how the node packs the files of the directory into containers.
+	 *
+	 * @param manifestPutter
+	 *            The manifest putter of the request, or {@code null} to use
+	 *            the node’s default manifest putter
+	 */
+	public void setManifestPutter(ManifestPutter manifestPutter) {
+		this.manifestPutter = manifestPutter;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -78,6 +103,8 @@ public class ClientPutDir<C extends ClientPutDir<?>> extends ClientPut {
 		super.write(writer);
 		if (defaultName != null)
 			writer.write("DefaultName=" + defaultName + LINEFEED);
+		if (manifestPutter != null)
+			writer.write("ManifestPutter=" + manifestPutter.getName() + LINEFEED);
 	}
 
 }
@@ -0,0 +1,138 @@
+/*
+ * jSite - ClientPutDirect.java - Copyright © 2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.util.freenet.fcp2;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+
+/**
+ * Implementation of the <code>ClientPut</code> command that sends the data of
+ * a single file directly over the connection. The data is read from a file on
+ * disk every time the command is executed so the same command can be sent
+ * again if the first attempt fails.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class ClientPutDirect extends ClientPut {
+
+	/** The file containing the data to insert. */
+	private final File dataFile;
+
+	/** The length of the data. */
+	private final long dataLength;
+
+	/** The content type of the data. */
+	private String contentType;
+
+	/**
+	 * Creates a new <code>ClientPut</code> command that inserts the given file
+	 * under the given URI.
+	 *
+	 * @param identifier
+	 *            The identifier of the command
+	 * @param uri
+	 *            The URI to insert the file under, e.g. <code>CHK@</code>
+	 * @param dataFile
+	 *            The file containing the data to insert
+	 */
+	public ClientPutDirect(String identifier, String uri, File dataFile) {
+		this(identifier, uri, dataFile, dataFile.length());
+	}
+
+	/**
+	 * Creates a new <code>ClientPut</code> command that inserts the given file
+	 * under the given URI, using a length of the file that is already known.
+	 *
+	 * @param identifier
+	 *            The identifier of the command
+	 * @param uri
+	 *            The URI to insert the file under, e.g. <code>CHK@</code>
+	 * @param dataFile
+	 *            The file containing the data to insert
+	 * @param dataLength
+	 *            The length of the file
+	 */
+	public ClientPutDirect(String identifier, String uri, File dataFile, long dataLength) {
+		super("ClientPut", identifier, uri);
+		this.dataFile = dataFile;
+		this.dataLength = dataLength;
+	}
+
+	/**
+	 * Returns the content type of the data.
+	 *
+	 * @return The content type of the data, or {@code null} to let the node
+	 *         decide
+	 */
+	public String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * Sets the content type of the data.
+	 *
+	 * @param contentType
+	 *            The content type of the data, or {@code null} to let the node
+	 *            decide
+	 */
+	public void setContentType(String contentType) {
+		this.contentType = contentType;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void write(Writer writer) throws IOException {
+		super.write(writer);
+		writer.write("UploadFrom=direct" + LINEFEED);
+		writer.write("DataLength=" + dataLength + LINEFEED);
+		if (contentType != null) {
+			writer.write("Metadata.ContentType=" + contentType + LINEFEED);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected boolean hasPayload() {
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected long getPayloadLength() {
+		return dataLength;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected InputStream getPayload() throws IOException {
+		return new FileInputStream(dataFile);
+	}
+
+}
@@ -119,8 +119,10 @@ public abstract class Command {
 	 * <code>false</code>.
 	 *
 	 * @return The payload of this command
+	 * @throws IOException
+	 *             if the payload can not be opened
 	 */
-	protected InputStream getPayload() {
+	protected InputStream getPayload() throws IOException {
 		return null;
 	}
 
@@ -18,34 +18,68 @@
 
 package de.todesbaum.util.freenet.fcp2;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
 import java.io.Writer;
 import java.net.Socket;
 import java.nio.charset.Charset;
-import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import net.pterodactylus.util.io.Closer;
 import net.pterodactylus.util.io.StreamCopier;
 import net.pterodactylus.util.io.StreamCopier.ProgressListener;
 import de.todesbaum.util.io.LineInputStream;
 import de.todesbaum.util.io.TempFileInputStream;
+import de.todesbaum.util.io.TempSpace;
+import de.todesbaum.util.thread.ManagedExecutor;
 
 /**
  * A physical connection to a Freenet node.
+ * <p>
+ * Commands can be executed from several threads at once. FCP does not allow
+ * other messages between a message and its payload, so a command without
+ * payload that is executed while a payload is being uploaded (or waiting to
+ * be uploaded) is not sent right away: it is queued, and the thread that
+ * uploads the payload sends all queued commands as soon as the payload has
+ * been written, before the next payload. Such commands return immediately,
+ * and they never wait behind more than the payload that is currently being
+ * uploaded.
  *
  * @author David Roden &lt;droden@gmail.com&gt;
  * @version $Id$
  */
 public class Connection {
 
+	/** The logger. */
+	private static final Logger logger = Logger.getLogger(Connection.class.getName());
+
+	/**
+	 * The maximum number of connections whose messages are read at the same
+	 * time. Every open connection needs a reader for its whole lifetime.
+	 */
+	private static final int MAX_NODE_READERS = 256;
+
+	/** Runs the readers of all connections. */
+	private static final ManagedExecutor nodeReaderExecutor = ManagedExecutor.createBlocking("Node Reader", MAX_NODE_READERS);
+
 	/** The listeners that receive events from this connection. */
-	private List<ConnectionListener> connectionListeners = new ArrayList<ConnectionListener>();
+	private final List<ConnectionListener> connectionListeners = new CopyOnWriteArrayList<ConnectionListener>();
 
 	/** The node this connection is connected to. */
 	private final Node node;
@@ -71,8 +105,25 @@ public class Connection {
 	/** The NodeHello message sent by the node on connect. */
 	protected Message nodeHello;
 
-	/** The temp directory to use. */
-	private String tempDirectory;
+	/** The temp space for payloads received from the node. */
+	private TempSpace tempSpace = TempSpace.forDirectories(null);
+
+	/** Held while a command is written to the node. */
+	private final Lock writeLock = new ReentrantLock();
+
+	/**
+	 * Guards {@link #pendingUploads} and {@link #queuedCommands}. Commands
+	 * without payload decide whether to queue or to take the
+	 * {@link #writeLock} while holding this lock, and are notified on it when
+	 * the write lock is released.
+	 */
+	private final Object sendStateLock = new Object();
+
+	/** The number of commands with payload that are being sent. */
+	private int pendingUploads;
+
+	/** Commands without payload that wait for the current upload. */
+	private final Deque<QueuedCommand> queuedCommands = new ArrayDeque<QueuedCommand>();
 
 	/**
 	 * Creates a new connection to the specified node with the specified name.
@@ -140,18 +191,19 @@ public class Connection {
 	}
 
 	/**
-	 * Sets the temp directory to use for creation of temporary files.
+	 * Sets the temp space to use for creation of temporary files.
 	 *
-	 * @param tempDirectory
-	 *            The temp directory to use, or {@code null} to use the default
-	 *            temp directory
+	 * @param tempSpace
+	 *            The temp space to use
 	 */
-	public void setTempDirectory(String tempDirectory) {
-		this.tempDirectory = tempDirectory;
+	public void setTempSpace(TempSpace tempSpace) {
+		this.tempSpace = tempSpace;
 	}
 
 	/**
-	 * Connects to the node.
+	 * Connects to the node. A connection that has been disconnected can be
+	 * connected again; because it keeps its name, persistent requests that
+	 * were started on it can be reattached to using {@link GetRequestStatus}.
 	 *
 	 * @return <code>true</code> if the connection succeeded and the node
 	 *         returned a NodeHello message
@@ -160,6 +212,7 @@ public class Connection {
 	 * @see #getNodeHello()
 	 */
 	public synchronized boolean connect() throws IOException {
+		nodeHello = null;
 		nodeSocket = null;
 		nodeInputStream = null;
 		nodeOutputStream = null;
@@ -172,9 +225,7 @@ public class Connection {
 			nodeOutputStream = nodeSocket.getOutputStream();
 			nodeWriter = new OutputStreamWriter(nodeOutputStream, Charset.forName("UTF-8"));
 			nodeReader = new NodeReader(nodeInputStream);
-			Thread nodeReaderThread = new Thread(nodeReader);
-			nodeReaderThread.setDaemon(true);
-			nodeReaderThread.start();
+			nodeReaderExecutor.execute(nodeReader);
 			ClientHello clientHello = new ClientHello();
 			clientHello.setName(name);
 			clientHello.setExpectedVersion("2.0");
@@ -231,48 +282,257 @@ public class Connection {
 	}
 
 	/**
-	 * Executes the specified command.
+	 * Executes the specified command. If the command has no payload and a
+	 * payload is currently being uploaded, the command is queued and sent
+	 * after the payload, and this method returns immediately.
 	 *
 	 * @param command
 	 *            The command to execute
+	 * @return A future that is done once the command has been written to the
+	 *         node, or that fails with the exception that prevented writing
+	 *         a queued command
 	 * @throws IllegalStateException
 	 *             if the connection is not connected
 	 * @throws IOException
 	 *             if an I/O error occurs
 	 */
-	public synchronized void execute(Command command) throws IllegalStateException, IOException {
-		execute(command, null);
+	public Future<Void> execute(Command command) throws IllegalStateException, IOException {
+		return execute(command, null);
 	}
 
 	/**
-	 * Executes the specified command.
+	 * Executes the specified command. If the command has no payload and a
+	 * payload is currently being uploaded, the command is queued and sent
+	 * after the payload, and this method returns immediately.
 	 *
 	 * @param command
 	 *            The command to execute
 	 * @param progressListener
 	 *            A progress listener for a payload transfer
+	 * @return A future that is done once the command has been written to the
+	 *         node, or that fails with the exception that prevented writing
+	 *         a queued command
 	 * @throws IllegalStateException
 	 *             if the connection is not connected
 	 * @throws IOException
 	 *             if an I/O error occurs
 	 */
-	public synchronized void execute(Command command, ProgressListener progressListener) throws IllegalStateException, IOException {
+	public Future<Void> execute(Command command, ProgressListener progressListener) throws IllegalStateException, IOException {
 		if (nodeSocket == null) {
 			throw new IllegalStateException("connection is not connected");
 		}
-		nodeWriter.write(command.getCommandName() + Command.LINEFEED);
-		command.write(nodeWriter);
-		nodeWriter.write("EndMessage" + Command.LINEFEED);
-		nodeWriter.flush();
+		if (!command.hasPayload()) {
+			synchronized (sendStateLock) {
+				while (!writeLock.tryLock()) {
+					if (pendingUploads > 0) {
+						return queue(command);
+					}
+					/* another command without payload is being written. */
+					try {
+						sendStateLock.wait();
+					} catch (InterruptedException ie1) {
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException("Interrupted while waiting to send " + command.getCommandName());
+					}
+				}
+			}
+			try {
+				write(command, null);
+				return CompletableFuture.completedFuture(null);
+			} finally {
+				releaseWriteLock();
+			}
+		}
+		synchronized (sendStateLock) {
+			pendingUploads++;
+		}
+		writeLock.lock();
+		try {
+			try {
+				sendQueuedCommands(false);
+				write(command, progressListener);
+			} finally {
+				sendQueuedCommands(true);
+			}
+			return CompletableFuture.completedFuture(null);
+		} finally {
+			releaseWriteLock();
+		}
+	}
+
+	/**
+	 * Queues the given command until the current upload is finished. The
+	 * caller must hold the {@link #sendStateLock}.
+	 *
+	 * @param command
+	 *            The command to queue
+	 * @return The future of the queued command
+	 */
+	private Future<Void> queue(Command command) {
+		QueuedCommand queuedCommand = new QueuedCommand(command);
+		queuedCommands.add(queuedCommand);
+		return queuedCommand.written;
+	}
+
+	/**
+	 * Releases the {@link #writeLock} and notifies commands that wait for it.
+	 */
+	private void releaseWriteLock() {
+		writeLock.unlock();
+		synchronized (sendStateLock) {
+			sendStateLock.notifyAll();
+		}
+	}
+
+	/**
+	 * Writes the given command and its payload to the node. The caller must
+	 * hold the {@link #writeLock}.
+	 *
+	 * @param command
+	 *            The command to write
+	 * @param progressListener
+	 *            A progress listener for a payload transfer, or {@code null}
+	 * @throws IllegalStateException
+	 *             if the connection is not connected
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private void write(Command command, ProgressListener progressListener) throws IllegalStateException, IOException {
+		Writer writer = nodeWriter;
+		OutputStream outputStream = nodeOutputStream;
+		if ((writer == null) || (outputStream == null)) {
+			throw new IllegalStateException("connection is not connected");
+		}
+		writer.write(command.getCommandName() + Command.LINEFEED);
+		command.write(writer);
+		writer.write("EndMessage" + Command.LINEFEED);
+		writer.flush();
 		if (command.hasPayload()) {
 			InputStream payloadInputStream = null;
 			try {
 				payloadInputStream = command.getPayload();
-				StreamCopier.copy(payloadInputStream, nodeOutputStream, progressListener, command.getPayloadLength());
+				if (payloadInputStream == null) {
+					throw new IOException("No payload for " + command.getCommandName());
+				}
+				StreamCopier.copy(payloadInputStream, outputStream, progressListener, command.getPayloadLength());
+			} catch (UncheckedIOException uioe1) {
+				/* payloads that consist of several streams open them lazily. */
+				throw uioe1.getCause();
 			} finally {
 				Closer.close(payloadInputStream);
 			}
-			nodeOutputStream.flush();
+			outputStream.flush();
+		}
+	}
+
+	/**
+	 * Sends all commands that were queued while a payload was uploaded. The
+	 * caller must hold the {@link #writeLock}. When the upload is finished,
+	 * the upload is only counted as done once the queue is empty so that no
+	 * command can be queued without being sent. A command that can not be
+	 * written fails its future so that the caller that queued it learns about
+	 * it.
+	 *
+	 * @param uploadFinished
+	 *            {@code true} if the upload of the calling thread is finished
+	 */
+	private void sendQueuedCommands(boolean uploadFinished) {
+		while (true) {
+			QueuedCommand queuedCommand;
+			synchronized (sendStateLock) {
+				queuedCommand = queuedCommands.poll();
+				if (queuedCommand == null) {
+					if (uploadFinished) {
+						pendingUploads--;
+					}
+					return;
+				}
+			}
+			try {
+				write(queuedCommand.command, null);
+				queuedCommand.written.complete(null);
+			} catch (IOException | IllegalStateException e1) {
+				logger.log(Level.WARNING, String.format("Could not send queued %s.", queuedCommand.command.getCommandName()), e1);
+				queuedCommand.written.completeExceptionally(e1);
+			}
+		}
+	}
+
+	/**
+	 * Reads and discards the given number of bytes from the given input
+	 * stream.
+	 *
+	 * @param inputStream
+	 *            The input stream to read from
+	 * @param length
+	 *            The number of bytes to discard
+	 * @throws IOException
+	 *             if the bytes can not be read
+	 */
+	private static void discard(InputStream inputStream, long length) throws IOException {
+		byte[] buffer = new byte[65536];
+		long remaining = length;
+		while (remaining > 0) {
+			int read = inputStream.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+			if (read == -1) {
+				throw new EOFException("Payload ended early");
+			}
+			remaining -= read;
+		}
+	}
+
+	/**
+	 * Reads a payload of the given length from the given input stream and
+	 * writes it to the given file. If the file can not be written, the rest
+	 * of the payload is still read and discarded so that the next message can
+	 * be read; the message is then passed on without payload.
+	 *
+	 * @param inputStream
+	 *            The input stream to read from
+	 * @param file
+	 *            The file to write the payload to
+	 * @param length
+	 *            The length of the payload
+	 * @return {@code true} if the payload was written to the file,
+	 *         {@code false} otherwise
+	 * @throws IOException
+	 *             if the payload can not be read
+	 */
+	static boolean receive(InputStream inputStream, File file, long length) throws IOException {
+		OutputStream fileOutputStream = null;
+		try {
+			fileOutputStream = new FileOutputStream(file);
+		} catch (IOException ioe1) {
+			logger.log(Level.WARNING, String.format("Could not store payload in %s.", file), ioe1);
+		}
+		byte[] buffer = new byte[65536];
+		long copied = 0;
+		while (copied < length) {
+			int read = inputStream.read(buffer, 0, (int) Math.min(buffer.length, length - copied));
+			if (read == -1) {
+				Closer.close(fileOutputStream);
+				throw new EOFException("Payload ended early");
+			}
+			copied += read;
+			if (fileOutputStream != null) {
+				try {
+					fileOutputStream.write(buffer, 0, read);
+				} catch (IOException ioe1) {
+					logger.log(Level.WARNING, String.format("Could not store payload in %s.", file), ioe1);
+					Closer.close(fileOutputStream);
+					fileOutputStream = null;
+				}
+			}
+		}
+		if (fileOutputStream == null) {
+			return false;
+		}
+		try {
+			fileOutputStream.close();
+			return true;
+		} catch (IOException ioe1) {
+			logger.log(Level.WARNING, String.format("Could not store payload in %s.", file), ioe1);
+			return false;
 		}
 	}
 
@@ -324,16 +584,20 @@ public class Connection {
 					if ("Data".equals(line)) {
 						/* need to read message from stream now */
 						File tempFile = null;
+						long dataLength = Long.parseLong(message.get("DataLength"));
 						try {
-							tempFile = File.createTempFile("fcpv2", "data", (tempDirectory != null) ? new File(tempDirectory) : null);
-							tempFile.deleteOnExit();
-							FileOutputStream tempFileOutputStream = new FileOutputStream(tempFile);
-							long dataLength = Long.parseLong(message.get("DataLength"));
-							StreamCopier.copy(nodeInputStream, tempFileOutputStream, dataLength);
-							tempFileOutputStream.close();
-							message.setPayloadInputStream(new TempFileInputStream(tempFile));
+							tempFile = tempSpace.createFile("fcpv2", dataLength);
 						} catch (IOException ioe1) {
 							ioe1.printStackTrace();
+							/* skip the payload so that the next message can be read. */
+							discard(nodeInputStream, dataLength);
+						}
+						if (tempFile != null) {
+							if (receive(nodeInputStream, tempFile, dataLength)) {
+								message.setPayloadInputStream(new TempFileInputStream(tempFile, tempSpace));
+							} else {
+								tempSpace.delete(tempFile);
+							}
 						}
 					}
 					if ("Data".equals(line) || "EndMessage".equals(line)) {
@@ -382,7 +646,36 @@ public class Connection {
 					}
 				}
 			}
-			Connection.this.disconnect();
+			/* a reader of an earlier connection must not close a reconnected one. */
+			if (Connection.this.nodeReader == this) {
+				Connection.this.disconnect();
+			}
+		}
+
+	}
+
+	/**
+	 * A command that waits for the current upload, together with the future
+	 * that is done once the command has been written.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	private static class QueuedCommand {
+
+		/** The queued command. */
+		private final Command command;
+
+		/** Done once the command has been written. */
+		private final CompletableFuture<Void> written = new CompletableFuture<Void>();
+
+		/**
+		 * Creates a new queued command.
+		 *
+		 * @param command
+		 *            The queued command
+		 */
+		public QueuedCommand(Command command) {
+			this.command = command;
 		}
 
 	}
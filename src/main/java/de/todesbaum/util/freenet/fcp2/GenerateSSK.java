@@ -35,4 +35,17 @@ public class GenerateSSK extends Command {
 		super("GenerateSSK", null);
 	}
 
+	/**
+	 * Creates a new <code>GenerateSSK</code> request with the given
+	 * identifier. The node sends the identifier back with the key pair, so
+	 * the reply can be told apart from other messages on a shared
+	 * connection.
+	 *
+	 * @param identifier
+	 *            The identifier of the request
+	 */
+	public GenerateSSK(String identifier) {
+		super("GenerateSSK", identifier);
+	}
+
 }
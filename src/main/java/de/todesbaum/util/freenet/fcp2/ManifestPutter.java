@@ -0,0 +1,95 @@
+/*
+ * jSite - ManifestPutter.java - Copyright © 2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+
+package de.todesbaum.util.freenet.fcp2;
+
+/**
+ * The possible manifest putters of a {@link ClientPutDir} request. The
+ * manifest putter decides how the node packs the files of a directory insert
+ * into containers: the <code>simple</code> manifest putter inserts every file
+ * as a separate key, the <code>default</code> manifest putter packs small
+ * files into a few containers so that they can be fetched together.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public final class ManifestPutter {
+
+	/** Denotes the <code>simple</code> manifest putter. */
+	public static final ManifestPutter SIMPLE = new ManifestPutter("simple");
+
+	/** Denotes the <code>default</code> manifest putter. */
+	public static final ManifestPutter DEFAULT = new ManifestPutter("default");
+
+	/** The name of the manifest putter. */
+	private final String name;
+
+	/**
+	 * Creates a new manifest putter with the specified name.
+	 *
+	 * @param name
+	 *            The name of the manifest putter
+	 */
+	private ManifestPutter(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Returns the name of this manifest putter.
+	 *
+	 * @return The name of this manifest putter
+	 */
+	public String getName() {
+		return name;
+	}
+
+	//
+	// STATIC METHODS
+	//
+
+	/**
+	 * Returns the manifest putter with the given name, matched
+	 * case-insensitive.
+	 *
+	 * @param value
+	 *            The name of the manifest putter
+	 * @return The manifest putter with the given name, or {@code null} if no
+	 *         manifest putter matches the given name
+	 */
+	public static ManifestPutter valueOf(String value) {
+		for (ManifestPutter manifestPutter : new ManifestPutter[] { SIMPLE, DEFAULT }) {
+			if (manifestPutter.getName().equalsIgnoreCase(value)) {
+				return manifestPutter;
+			}
+		}
+		return null;
+	}
+
+	//
+	// OBJECT METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return name;
+	}
+
+}
@@ -147,7 +147,12 @@ public class Message {
 	}
 
 	/**
-	 * @return Returns the payloadInputStream.
+	 * Returns the payload of this message. The payload is {@code null} if the
+	 * message has none, and also if the node sent a payload that could not be
+	 * stored in a temporary file; callers of messages with payload have to
+	 * handle that case.
+	 *
+	 * @return The payload of this message, or {@code null}
 	 */
 	public InputStream getPayloadInputStream() {
 		return payloadInputStream;
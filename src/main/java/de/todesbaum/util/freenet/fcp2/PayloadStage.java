@@ -0,0 +1,258 @@
+/*
+ * jSite - PayloadStage.java - Copyright © 2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.util.freenet.fcp2;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import net.pterodactylus.util.io.Closer;
+import de.todesbaum.util.io.TempSpace;
+
+/**
+ * Temporary file that collects the payload of files while they are read for
+ * other purposes, e.g. hashing. The data of a file can later be added to a
+ * {@link ClientPutComplexDir} as a {@link StagedFileEntry} without reading
+ * the original file again. Data that turns out not to be needed can be
+ * removed from the end of the stage again.
+ * <p>
+ * The stage file is created in a {@link TempSpace}; the size of every file
+ * is {@link #reserve(long) reserved} before it is written to the stage.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class PayloadStage {
+
+	/** The temp space to create the stage file in. */
+	private final TempSpace tempSpace;
+
+	/** The stage file, created on first use. */
+	private File stageFile;
+
+	/** The channel to write to the stage file. */
+	private FileChannel stageChannel;
+
+	/**
+	 * Creates a new payload stage.
+	 *
+	 * @param tempSpace
+	 *            The temp space to create the stage file in
+	 */
+	public PayloadStage(TempSpace tempSpace) {
+		this.tempSpace = tempSpace;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the current length of the stage. This is the offset at which
+	 * the next data will be written.
+	 *
+	 * @return The length of the stage
+	 * @throws IOException
+	 *             if the stage file can not be created
+	 */
+	public synchronized long getLength() throws IOException {
+		return getStageChannel().size();
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Reserves space for appending the given number of bytes to the stage.
+	 *
+	 * @param size
+	 *            The number of bytes that will be appended
+	 * @return {@code true} if the space was reserved, {@code false} if there
+	 *         is not enough temp space
+	 */
+	public synchronized boolean reserve(long size) {
+		try {
+			long length = getStageChannel().size();
+			tempSpace.reserve(stageFile, length + size);
+			return true;
+		} catch (IOException ioe1) {
+			return false;
+		}
+	}
+
+	/**
+	 * Appends the given data to the stage.
+	 *
+	 * @param buffer
+	 *            The buffer containing the data
+	 * @param offset
+	 *            The offset of the data in the buffer
+	 * @param length
+	 *            The length of the data
+	 * @throws IOException
+	 *             if the data can not be written
+	 */
+	public synchronized void write(byte[] buffer, int offset, int length) throws IOException {
+		write(ByteBuffer.wrap(buffer, offset, length));
+	}
+
+	/**
+	 * Appends the remaining data of the given buffer to the stage. The
+	 * position of the buffer is not changed.
+	 *
+	 * @param buffer
+	 *            The buffer containing the data
+	 * @throws IOException
+	 *             if the data can not be written
+	 */
+	public synchronized void write(ByteBuffer buffer) throws IOException {
+		FileChannel channel = getStageChannel();
+		ByteBuffer byteBuffer = buffer.duplicate();
+		while (byteBuffer.hasRemaining()) {
+			channel.write(byteBuffer, channel.size());
+		}
+	}
+
+	/**
+	 * Removes all data after the given position from the stage.
+	 *
+	 * @param length
+	 *            The new length of the stage
+	 * @throws IOException
+	 *             if the stage can not be truncated
+	 */
+	public synchronized void truncate(long length) throws IOException {
+		getStageChannel().truncate(length);
+		tempSpace.reserve(stageFile, length);
+	}
+
+	/**
+	 * Returns an input stream that reads the given part of the stage.
+	 *
+	 * @param offset
+	 *            The offset of the data
+	 * @param length
+	 *            The length of the data
+	 * @return An input stream for the data
+	 * @throws IOException
+	 *             if the stage file can not be opened
+	 */
+	public synchronized InputStream getInputStream(long offset, long length) throws IOException {
+		getStageChannel();
+		return openRegion(stageFile, offset, length);
+	}
+
+	/**
+	 * Returns an input stream that reads the given part of the given file.
+	 *
+	 * @param file
+	 *            The file to read
+	 * @param offset
+	 *            The offset of the data
+	 * @param length
+	 *            The length of the data
+	 * @return An input stream for the data
+	 * @throws IOException
+	 *             if the file can not be opened
+	 */
+	static InputStream openRegion(File file, long offset, final long length) throws IOException {
+		final FileChannel readChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		readChannel.position(offset);
+		return new FilterInputStream(Channels.newInputStream(readChannel)) {
+
+			/** The number of remaining bytes. */
+			private long remaining = length;
+
+			@Override
+			public int read() throws IOException {
+				if (remaining <= 0) {
+					return -1;
+				}
+				int read = super.read();
+				if (read != -1) {
+					remaining--;
+				}
+				return read;
+			}
+
+			@Override
+			public int read(byte[] buffer, int offset, int length) throws IOException {
+				if (remaining <= 0) {
+					return -1;
+				}
+				int read = super.read(buffer, offset, (int) Math.min(length, remaining));
+				if (read > 0) {
+					remaining -= read;
+				}
+				return read;
+			}
+
+			@Override
+			public long skip(long count) throws IOException {
+				long skipped = super.skip(Math.min(count, remaining));
+				remaining -= skipped;
+				return skipped;
+			}
+
+			@Override
+			public int available() throws IOException {
+				return (int) Math.min(super.available(), remaining);
+			}
+
+		};
+	}
+
+	/**
+	 * Closes and deletes the stage file.
+	 */
+	public synchronized void delete() {
+		Closer.close(stageChannel);
+		stageChannel = null;
+		if (stageFile != null) {
+			tempSpace.delete(stageFile);
+			stageFile = null;
+		}
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Returns the channel of the stage file, creating the stage file if it
+	 * does not exist yet.
+	 *
+	 * @return The channel of the stage file
+	 * @throws IOException
+	 *             if the stage file can not be created
+	 */
+	private FileChannel getStageChannel() throws IOException {
+		if (stageChannel == null) {
+			stageFile = tempSpace.createFile("payload", 0);
+			stageChannel = FileChannel.open(stageFile.toPath(), StandardOpenOption.WRITE);
+		}
+		return stageChannel;
+	}
+
+}
@@ -30,7 +30,7 @@ package de.todesbaum.util.freenet.fcp2;
  *
  * @author David Roden &lt;droden@gmail.com&gt;
  * @version $Id$
- * @see de.todesbaum.util.freenet.fcp2.ModifyPersistentRequest
+ * @see de.todesbaum.util.freenet.fcp2.GetRequestStatus
  * @see de.todesbaum.util.freenet.fcp2.RemovePersistentRequest
  */
 public final class Persistence {
@@ -0,0 +1,55 @@
+/*
+ * jSite - RemovePersistentRequest.java - Copyright © 2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.util.freenet.fcp2;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Implementation of the <code>RemovePersistentRequest</code> command. It
+ * cancels a persistent request and makes the node forget about it.
+ * <p>
+ * The node can answer with the following messages:
+ * <code>PersistentRequestRemoved</code>.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class RemovePersistentRequest extends Command {
+
+	/**
+	 * Creates a new <code>RemovePersistentRequest</code> command for the
+	 * request with the given identifier.
+	 *
+	 * @param identifier
+	 *            The identifier of the request
+	 */
+	public RemovePersistentRequest(String identifier) {
+		super("RemovePersistentRequest", identifier);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void write(Writer writer) throws IOException {
+		super.write(writer);
+		writer.write("Global=false" + LINEFEED);
+	}
+
+}
@@ -0,0 +1,72 @@
+/*
+ * jSite - StagedFileEntry.java - Copyright © 2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.util.freenet.fcp2;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A {@link DirectFileEntry} whose data has already been written to a
+ * {@link PayloadStage}. {@link ClientPutComplexDir} sends the data directly
+ * from the stage instead of copying it to its own payload file.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class StagedFileEntry extends DirectFileEntry {
+
+	/** The stage containing the data. */
+	private final PayloadStage payloadStage;
+
+	/** The offset of the data in the stage. */
+	private final long stageOffset;
+
+	/**
+	 * Creates a new file entry for data in a payload stage.
+	 *
+	 * @param filename
+	 *            The name of the file
+	 * @param contentType
+	 *            The content type of the file
+	 * @param payloadStage
+	 *            The stage containing the data
+	 * @param stageOffset
+	 *            The offset of the data in the stage
+	 * @param dataLength
+	 *            The length of the data
+	 */
+	public StagedFileEntry(String filename, String contentType, PayloadStage payloadStage, long stageOffset, long dataLength) {
+		super(filename, contentType, null, dataLength);
+		this.payloadStage = payloadStage;
+		this.stageOffset = stageOffset;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public InputStream getDataInputStream() {
+		try {
+			return payloadStage.getInputStream(stageOffset, getDataLength());
+		} catch (IOException ioe1) {
+			/* the caller will fail on the null stream. */
+		}
+		return null;
+	}
+
+}
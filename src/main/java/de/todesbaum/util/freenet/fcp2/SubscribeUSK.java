@@ -0,0 +1,89 @@
+/*
+ * jSite - SubscribeUSK.java - Copyright © 2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.util.freenet.fcp2;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Implementation of the <code>SubscribeUSK</code> command. The node watches
+ * the given USK and notifies the client whenever it finds a newer edition, for
+ * as long as the subscription exists.
+ * <p>
+ * The node can answer with the following messages: <code>SubscribedUSK</code>
+ * once, and <code>SubscribedUSKUpdate</code> for every edition it finds.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ * @see UnsubscribeUSK
+ */
+public class SubscribeUSK extends Command {
+
+	/** The USK to watch. */
+	private final String uri;
+
+	/** Whether the node should only report editions it finds anyway. */
+	private boolean dontPoll = false;
+
+	/**
+	 * Creates a new <code>SubscribeUSK</code> command.
+	 *
+	 * @param identifier
+	 *            The identifier of the subscription
+	 * @param uri
+	 *            The USK to watch, including the edition to start at
+	 */
+	public SubscribeUSK(String identifier, String uri) {
+		super("SubscribeUSK", identifier);
+		this.uri = uri;
+	}
+
+	/**
+	 * Returns whether the node should only report editions it finds anyway
+	 * instead of actively looking for new editions.
+	 *
+	 * @return {@code true} if the node should not poll for new editions,
+	 *         {@code false} otherwise
+	 */
+	public boolean isDontPoll() {
+		return dontPoll;
+	}
+
+	/**
+	 * Sets whether the node should only report editions it finds anyway
+	 * instead of actively looking for new editions.
+	 *
+	 * @param dontPoll
+	 *            {@code true} if the node should not poll for new editions,
+	 *            {@code false} otherwise
+	 */
+	public void setDontPoll(boolean dontPoll) {
+		this.dontPoll = dontPoll;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void write(Writer writer) throws IOException {
+		super.write(writer);
+		writer.write("URI=" + uri + LINEFEED);
+		writer.write("DontPoll=" + dontPoll + LINEFEED);
+	}
+
+}
@@ -0,0 +1,41 @@
+/*
+ * jSite - UnsubscribeUSK.java - Copyright © 2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package de.todesbaum.util.freenet.fcp2;
+
+/**
+ * Implementation of the <code>UnsubscribeUSK</code> command. It ends a
+ * subscription that was created with {@link SubscribeUSK}.
+ * <p>
+ * The node does not answer this command.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class UnsubscribeUSK extends Command {
+
+	/**
+	 * Creates a new <code>UnsubscribeUSK</code> command.
+	 *
+	 * @param identifier
+	 *            The identifier of the subscription
+	 */
+	public UnsubscribeUSK(String identifier) {
+		super("UnsubscribeUSK", identifier);
+	}
+
+}
@@ -0,0 +1,261 @@
+/*
+ * jSite - ContentAnalyzer.java - Copyright © 2019 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.todesbaum.util.io;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Analyzes content while it is being read. The analyzer collects the first
+ * bytes of the content to detect its MIME type from well-known magic numbers
+ * and counts the frequency of all byte values to estimate the entropy of the
+ * content.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class ContentAnalyzer {
+
+	/** The number of bytes used for MIME type detection. */
+	private static final int HEADER_LENGTH = 512;
+
+	/** The first bytes of the content. */
+	private final byte[] header = new byte[HEADER_LENGTH];
+
+	/** The number of bytes in {@link #header}. */
+	private int headerLength;
+
+	/** The frequency of all byte values. */
+	private final long[] frequencies = new long[256];
+
+	/** The total number of bytes. */
+	private long length;
+
+	/**
+	 * Adds the given bytes to the analyzed content.
+	 *
+	 * @param buffer
+	 *            The buffer containing the bytes
+	 * @param offset
+	 *            The offset of the first byte
+	 * @param count
+	 *            The number of bytes
+	 */
+	public void update(byte[] buffer, int offset, int count) {
+		if (headerLength < HEADER_LENGTH) {
+			int headerBytes = Math.min(count, HEADER_LENGTH - headerLength);
+			System.arraycopy(buffer, offset, header, headerLength, headerBytes);
+			headerLength += headerBytes;
+		}
+		for (int index = offset; index < (offset + count); index++) {
+			frequencies[buffer[index] & 0xff]++;
+		}
+		length += count;
+	}
+
+	/**
+	 * Adds the remaining bytes of the given buffer to the analyzed content.
+	 * The position of the buffer is not changed.
+	 *
+	 * @param buffer
+	 *            The buffer containing the bytes
+	 */
+	public void update(ByteBuffer buffer) {
+		if (buffer.hasArray()) {
+			update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+			return;
+		}
+		int offset = buffer.position();
+		int count = buffer.remaining();
+		if (headerLength < HEADER_LENGTH) {
+			int headerBytes = Math.min(count, HEADER_LENGTH - headerLength);
+			for (int index = 0; index < headerBytes; index++) {
+				header[headerLength + index] = buffer.get(offset + index);
+			}
+			headerLength += headerBytes;
+		}
+		for (int index = offset; index < (offset + count); index++) {
+			frequencies[buffer.get(index) & 0xff]++;
+		}
+		length += count;
+	}
+
+	/**
+	 * Returns the number of bytes analyzed so far.
+	 *
+	 * @return The number of analyzed bytes
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * Returns the entropy of the content, in bits per byte. Content with an
+	 * entropy close to 8 is most probably compressed or encrypted already and
+	 * will not get any smaller by compressing it again.
+	 *
+	 * @return The entropy of the content (between 0 and 8)
+	 */
+	public double getEntropy() {
+		if (length == 0) {
+			return 0;
+		}
+		double entropy = 0;
+		for (long frequency : frequencies) {
+			if (frequency > 0) {
+				double probability = (double) frequency / length;
+				entropy -= probability * Math.log(probability);
+			}
+		}
+		return entropy / Math.log(2);
+	}
+
+	/**
+	 * Returns the MIME type of the content, as detected from its first bytes.
+	 *
+	 * @return The MIME type of the content, or {@code null} if the MIME type
+	 *         could not be detected
+	 */
+	public String getMimeType() {
+		if (startsWith(0x89, 'P', 'N', 'G', 0x0d, 0x0a, 0x1a, 0x0a)) {
+			return "image/png";
+		}
+		if (startsWith(0xff, 0xd8, 0xff)) {
+			return "image/jpeg";
+		}
+		if (startsWith("GIF87a") || startsWith("GIF89a")) {
+			return "image/gif";
+		}
+		if (startsWith("RIFF") && matches(8, "WEBP")) {
+			return "image/webp";
+		}
+		if (startsWith("%PDF-")) {
+			return "application/pdf";
+		}
+		if (startsWith('P', 'K', 0x03, 0x04)) {
+			return "application/zip";
+		}
+		if (startsWith(0x1f, 0x8b)) {
+			return "application/x-gzip";
+		}
+		if (startsWith("BZh")) {
+			return "application/x-bzip2";
+		}
+		if (startsWith('7', 'z', 0xbc, 0xaf, 0x27, 0x1c)) {
+			return "application/x-7z-compressed";
+		}
+		if (startsWith("OggS")) {
+			return "application/ogg";
+		}
+		if (startsWith("ID3") || startsWith(0xff, 0xfb)) {
+			return "audio/mpeg";
+		}
+		if (startsWith("fLaC")) {
+			return "audio/flac";
+		}
+		if (matches(4, "ftyp")) {
+			return "video/mp4";
+		}
+		if (startsWith(0x1a, 0x45, 0xdf, 0xa3)) {
+			return "video/webm";
+		}
+		return detectTextMimeType();
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Detects the MIME type of textual content.
+	 *
+	 * @return The MIME type of the content, or {@code null} if the content is
+	 *         not recognized
+	 */
+	private String detectTextMimeType() {
+		String text = new String(header, 0, headerLength, ISO_8859_1);
+		if (text.startsWith("\u00ef\u00bb\u00bf")) {
+			text = text.substring(3);
+		}
+		text = text.trim().toLowerCase(Locale.ENGLISH);
+		if (text.startsWith("<!doctype html") || text.startsWith("<html")) {
+			return "text/html";
+		}
+		if (text.startsWith("<svg") || (text.startsWith("<?xml") && text.contains("<svg"))) {
+			return "image/svg+xml";
+		}
+		if (text.startsWith("<?xml")) {
+			return "application/xml";
+		}
+		return null;
+	}
+
+	/**
+	 * Returns whether the content starts with the given bytes.
+	 *
+	 * @param bytes
+	 *            The bytes to check for
+	 * @return {@code true} if the content starts with the given bytes,
+	 *         {@code false} otherwise
+	 */
+	private boolean startsWith(int... bytes) {
+		if (headerLength < bytes.length) {
+			return false;
+		}
+		for (int index = 0; index < bytes.length; index++) {
+			if ((header[index] & 0xff) != bytes[index]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns whether the content starts with the given ASCII text.
+	 *
+	 * @param text
+	 *            The text to check for
+	 * @return {@code true} if the content starts with the given text,
+	 *         {@code false} otherwise
+	 */
+	private boolean startsWith(String text) {
+		return matches(0, text);
+	}
+
+	/**
+	 * Returns whether the content contains the given ASCII text at the given
+	 * position.
+	 *
+	 * @param position
+	 *            The position of the text
+	 * @param text
+	 *            The text to check for
+	 * @return {@code true} if the content contains the text at the given
+	 *         position, {@code false} otherwise
+	 */
+	private boolean matches(int position, String text) {
+		byte[] textBytes = text.getBytes(ISO_8859_1);
+		if (headerLength < (position + textBytes.length)) {
+			return false;
+		}
+		return Arrays.equals(Arrays.copyOfRange(header, position, position + textBytes.length), textBytes);
+	}
+
+}
@@ -0,0 +1,92 @@
+/*
+ * jSite - Hex.java - Copyright © 2019 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.todesbaum.util.io;
+
+/**
+ * Converts between byte arrays and their hexadecimal representation.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class Hex {
+
+	/** The hexadecimal digits. */
+	private static final String DIGITS = "0123456789abcdef";
+
+	/**
+	 * Converts the given byte array into a hexadecimal string.
+	 *
+	 * @param array
+	 *            The array to convert
+	 * @return The hexadecimal string
+	 */
+	public static String toHex(byte[] array) {
+		return toHex(array, 0, array.length);
+	}
+
+	/**
+	 * Converts a part of the given byte array into a hexadecimal string.
+	 *
+	 * @param array
+	 *            The array to convert
+	 * @param offset
+	 *            The offset of the first byte to convert
+	 * @param length
+	 *            The number of bytes to convert
+	 * @return The hexadecimal string
+	 */
+	public static String toHex(byte[] array, int offset, int length) {
+		StringBuilder hexString = new StringBuilder(length * 2);
+		for (int index = offset; index < (offset + length); index++) {
+			hexString.append(DIGITS.charAt((array[index] >>> 4) & 0x0f)).append(DIGITS.charAt(array[index] & 0x0f));
+		}
+		return hexString.toString();
+	}
+
+	/**
+	 * Converts the given hexadecimal string into the given part of a byte
+	 * array. Only lower-case digits are accepted so that converting the bytes
+	 * back results in the same string.
+	 *
+	 * @param hexString
+	 *            The hexadecimal string to convert
+	 * @param array
+	 *            The array to store the bytes in
+	 * @param offset
+	 *            The offset of the first byte to store
+	 * @return {@code true} if the string was converted, {@code false} if it
+	 *         is {@code null}, has an odd length, contains anything but
+	 *         lower-case hexadecimal digits (in which case the array may have
+	 *         been modified), or does not fit into the array at the given
+	 *         offset
+	 */
+	public static boolean fromHex(String hexString, byte[] array, int offset) {
+		if ((hexString == null) || ((hexString.length() & 1) != 0) || ((offset + hexString.length() / 2) > array.length)) {
+			return false;
+		}
+		for (int index = 0; index < hexString.length(); index += 2) {
+			int high = DIGITS.indexOf(hexString.charAt(index));
+			int low = DIGITS.indexOf(hexString.charAt(index + 1));
+			if ((high == -1) || (low == -1)) {
+				return false;
+			}
+			array[offset + index / 2] = (byte) ((high << 4) | low);
+		}
+		return true;
+	}
+
+}
@@ -31,6 +31,9 @@ public class TempFileInputStream extends FileInputStream {
 
 	private File tempFile;
 
+	/** The temp space the file belongs to, or {@code null}. */
+	private TempSpace tempSpace;
+
 	/**
 	 * @param name
 	 * @throws FileNotFoundException
@@ -48,10 +51,30 @@ public class TempFileInputStream extends FileInputStream {
 		tempFile = file;
 	}
 
+	/**
+	 * Creates a stream for a file of the given temp space; the file is
+	 * deleted from the temp space when the stream is closed.
+	 *
+	 * @param file
+	 *            The temporary file
+	 * @param tempSpace
+	 *            The temp space the file belongs to
+	 * @throws FileNotFoundException
+	 *             if the file does not exist
+	 */
+	public TempFileInputStream(File file, TempSpace tempSpace) throws FileNotFoundException {
+		this(file);
+		this.tempSpace = tempSpace;
+	}
+
 	@Override
 	public void close() throws IOException {
 		super.close();
-		tempFile.delete();
+		if (tempSpace != null) {
+			tempSpace.delete(tempFile);
+		} else {
+			tempFile.delete();
+		}
 	}
 
 }
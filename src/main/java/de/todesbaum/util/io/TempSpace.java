@@ -0,0 +1,493 @@
+/*
+ * jSite - TempSpace.java - Copyright © 2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+
+package de.todesbaum.util.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.pterodactylus.util.io.Closer;
+
+/**
+ * Manages the temporary files of jSite. Temporary files are spread over one
+ * or more temp directories; every file is created in the directory that has
+ * the most space available. Before a file is created or grows, its expected
+ * size is reserved, and the reservation fails if no directory has enough
+ * free space left, so that running out of disk space is detected before any
+ * data is written.
+ * <p>
+ * The files of a temp space are created in a session directory (named
+ * “{@value #SESSION_PREFIX}…”) in each temp directory. The session directory
+ * is locked while the temp space is in use. Temporary files are deleted
+ * explicitly, either by {@link #delete(File)} or when the temp space is
+ * {@link #close() closed}; session directories that are left over by a
+ * process that did not exit cleanly are removed by {@link #deleteOrphans()}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class TempSpace {
+
+	/** The logger. */
+	private static final Logger logger = Logger.getLogger(TempSpace.class.getName());
+
+	/** The system property that limits the size of all temporary files. */
+	public static final String QUOTA_PROPERTY = "jsite.temp-quota";
+
+	/** The prefix of session directories. */
+	static final String SESSION_PREFIX = "jsite-";
+
+	/** The name of the lock file in a session directory. */
+	static final String LOCK_FILENAME = "session.lock";
+
+	/** The space that is left free in every temp directory (in bytes). */
+	static final long MINIMUM_FREE_SPACE = 64 * 1024 * 1024;
+
+	/** The age after which an unlocked session directory is removed. */
+	static final long ORPHAN_AGE = 60 * 1000;
+
+	/** The shared temp spaces, by their directory setting. */
+	private static final Map<String, TempSpace> tempSpaces = new HashMap<String, TempSpace>();
+
+	/** The temp directories. */
+	private final List<File> directories;
+
+	/** The maximum size of all temporary files (in bytes). */
+	private final long quota;
+
+	/** The space that is left free in every temp directory (in bytes). */
+	private final long minimumFreeSpace;
+
+	/** The name of the session directories of this temp space. */
+	private final String sessionName;
+
+	/** The session directories, by temp directory. */
+	private final Map<File, Session> sessions = new HashMap<File, Session>();
+
+	/** The reserved size of all temporary files. */
+	private final Map<File, Long> reservations = new HashMap<File, Long>();
+
+	/**
+	 * Creates a new temp space.
+	 *
+	 * @param directories
+	 *            The temp directories
+	 * @param quota
+	 *            The maximum size of all temporary files (in bytes)
+	 * @param minimumFreeSpace
+	 *            The space that is left free in every temp directory (in
+	 *            bytes)
+	 */
+	public TempSpace(List<File> directories, long quota, long minimumFreeSpace) {
+		this.directories = new ArrayList<File>(directories);
+		this.quota = quota;
+		this.minimumFreeSpace = minimumFreeSpace;
+		this.sessionName = SESSION_PREFIX + Long.toHexString(new Random().nextLong() & Long.MAX_VALUE);
+	}
+
+	//
+	// STATIC METHODS
+	//
+
+	/**
+	 * Returns the temp space for the given directory setting. The setting
+	 * contains one or more directories, separated by the
+	 * {@link File#pathSeparator path separator}; if it is {@code null} or
+	 * empty, the default temp directory of the system is used. The temp
+	 * spaces are shared, i.e. the same setting always returns the same temp
+	 * space.
+	 *
+	 * @param directorySetting
+	 *            The temp directories, or {@code null} to use the default temp
+	 *            directory
+	 * @return The temp space for the directories
+	 */
+	public static TempSpace forDirectories(String directorySetting) {
+		String key = (directorySetting != null) ? directorySetting.trim() : "";
+		synchronized (tempSpaces) {
+			TempSpace tempSpace = tempSpaces.get(key);
+			if (tempSpace == null) {
+				List<File> directories = new ArrayList<File>();
+				for (String directory : key.split(File.pathSeparator)) {
+					if (directory.trim().length() > 0) {
+						directories.add(new File(directory.trim()));
+					}
+				}
+				if (directories.isEmpty()) {
+					directories.add(new File(System.getProperty("java.io.tmpdir")));
+				}
+				tempSpace = new TempSpace(directories, Long.getLong(QUOTA_PROPERTY, Long.MAX_VALUE), MINIMUM_FREE_SPACE);
+				tempSpaces.put(key, tempSpace);
+			}
+			return tempSpace;
+		}
+	}
+
+	/**
+	 * Closes all shared temp spaces, deleting all their temporary files.
+	 */
+	public static void closeAll() {
+		synchronized (tempSpaces) {
+			for (TempSpace tempSpace : tempSpaces.values()) {
+				tempSpace.close();
+			}
+			tempSpaces.clear();
+		}
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the temp directories of this temp space.
+	 *
+	 * @return The temp directories
+	 */
+	public List<File> getDirectories() {
+		return Collections.unmodifiableList(directories);
+	}
+
+	/**
+	 * Returns the size of the largest file that can currently be created.
+	 *
+	 * @return The available space (in bytes)
+	 */
+	public synchronized long getAvailableSpace() {
+		long availableSpace = 0;
+		for (File directory : directories) {
+			availableSpace = Math.max(availableSpace, getAvailableSpace(directory));
+		}
+		return availableSpace;
+	}
+
+	/**
+	 * Returns the space that is reserved by all temporary files.
+	 *
+	 * @return The reserved space (in bytes)
+	 */
+	public synchronized long getReservedSpace() {
+		long reservedSpace = 0;
+		for (Entry<File, Long> reservation : reservations.entrySet()) {
+			reservedSpace += Math.max(reservation.getValue(), reservation.getKey().length());
+		}
+		return reservedSpace;
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Checks that a file of the given size can be created.
+	 *
+	 * @param size
+	 *            The size of the file (in bytes)
+	 * @throws IOException
+	 *             if there is not enough space for the file
+	 */
+	public synchronized void checkSpace(long size) throws IOException {
+		long availableSpace = getAvailableSpace();
+		if (availableSpace < size) {
+			throw new IOException(String.format("Not enough temp space for %d bytes, only %d bytes are available.", size, availableSpace));
+		}
+	}
+
+	/**
+	 * Creates a new temporary file in the temp directory with the most
+	 * available space, and reserves the given size for it.
+	 *
+	 * @param prefix
+	 *            The prefix of the name of the file
+	 * @param expectedSize
+	 *            The expected size of the file (in bytes)
+	 * @return The new file
+	 * @throws IOException
+	 *             if there is not enough space for the file, or the file can
+	 *             not be created
+	 */
+	public synchronized File createFile(String prefix, long expectedSize) throws IOException {
+		File bestDirectory = null;
+		long bestAvailableSpace = -1;
+		for (File directory : directories) {
+			long availableSpace = getAvailableSpace(directory);
+			if (availableSpace > bestAvailableSpace) {
+				bestDirectory = directory;
+				bestAvailableSpace = availableSpace;
+			}
+		}
+		if ((bestDirectory == null) || (bestAvailableSpace < expectedSize)) {
+			throw new IOException(String.format("Not enough temp space for %d bytes, only %d bytes are available.", expectedSize, Math.max(bestAvailableSpace, 0)));
+		}
+		File file = File.createTempFile(prefix, ".tmp", getSession(bestDirectory).directory);
+		reservations.put(file, expectedSize);
+		return file;
+	}
+
+	/**
+	 * Changes the reserved size of the given temporary file.
+	 *
+	 * @param file
+	 *            The temporary file
+	 * @param expectedSize
+	 *            The new expected size of the file (in bytes)
+	 * @throws IOException
+	 *             if the file grows and there is not enough space for it
+	 */
+	public synchronized void reserve(File file, long expectedSize) throws IOException {
+		Long reservedSize = reservations.get(file);
+		if (reservedSize == null) {
+			throw new IOException(String.format("%s is not a temporary file.", file));
+		}
+		long growth = expectedSize - Math.max(reservedSize, file.length());
+		if (growth > 0) {
+			long availableSpace = getAvailableSpace(file.getParentFile().getParentFile());
+			if (availableSpace < growth) {
+				throw new IOException(String.format("Not enough temp space for %d more bytes, only %d bytes are available.", growth, availableSpace));
+			}
+		}
+		reservations.put(file, expectedSize);
+	}
+
+	/**
+	 * Deletes the given temporary file and releases its reservation.
+	 *
+	 * @param file
+	 *            The temporary file to delete
+	 */
+	public synchronized void delete(File file) {
+		reservations.remove(file);
+		if (file.exists() && !file.delete()) {
+			logger.log(Level.WARNING, String.format("Could not delete temporary file %s.", file));
+		}
+	}
+
+	/**
+	 * Deletes all temporary files of this temp space and removes its session
+	 * directories.
+	 */
+	public synchronized void close() {
+		for (File file : new ArrayList<File>(reservations.keySet())) {
+			delete(file);
+		}
+		for (Session session : sessions.values()) {
+			session.close();
+		}
+		sessions.clear();
+	}
+
+	/**
+	 * Removes the session directories of other temp spaces that are no
+	 * longer in use, i.e. whose lock is not held by any process.
+	 *
+	 * @return The number of removed session directories
+	 */
+	public int deleteOrphans() {
+		int removedSessions = 0;
+		for (File directory : directories) {
+			File[] sessionDirectories = directory.listFiles();
+			if (sessionDirectories == null) {
+				continue;
+			}
+			for (File sessionDirectory : sessionDirectories) {
+				if (!sessionDirectory.getName().startsWith(SESSION_PREFIX) || sessionDirectory.getName().equals(sessionName) || !sessionDirectory.isDirectory()) {
+					continue;
+				}
+				if (deleteOrphan(sessionDirectory)) {
+					logger.log(Level.INFO, String.format("Removed orphaned temp directory %s.", sessionDirectory));
+					removedSessions++;
+				}
+			}
+		}
+		return removedSessions;
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Returns the space that is available for new data in the given temp
+	 * directory. The space that is reserved for, but not yet written to,
+	 * temporary files in the directory is not available, and neither is space
+	 * beyond the quota.
+	 *
+	 * @param directory
+	 *            The temp directory
+	 * @return The available space (in bytes)
+	 */
+	private long getAvailableSpace(File directory) {
+		long pendingSpace = 0;
+		long usedSpace = 0;
+		for (Entry<File, Long> reservation : reservations.entrySet()) {
+			long length = reservation.getKey().length();
+			usedSpace += Math.max(reservation.getValue(), length);
+			if (reservation.getKey().getParentFile().getParentFile().equals(directory)) {
+				pendingSpace += Math.max(reservation.getValue() - length, 0);
+			}
+		}
+		long freeSpace = directory.getUsableSpace() - minimumFreeSpace - pendingSpace;
+		return Math.max(Math.min(freeSpace, quota - usedSpace), 0);
+	}
+
+	/**
+	 * Returns the session of this temp space in the given temp directory,
+	 * creating and locking the session directory if necessary.
+	 *
+	 * @param directory
+	 *            The temp directory
+	 * @return The session in the temp directory
+	 * @throws IOException
+	 *             if the session directory can not be created
+	 */
+	private Session getSession(File directory) throws IOException {
+		Session session = sessions.get(directory);
+		if (session == null) {
+			File sessionDirectory = new File(directory, sessionName);
+			if (!sessionDirectory.isDirectory() && !sessionDirectory.mkdirs()) {
+				throw new IOException(String.format("Could not create temp directory %s.", sessionDirectory));
+			}
+			FileChannel lockChannel = FileChannel.open(new File(sessionDirectory, LOCK_FILENAME).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			FileLock lock;
+			try {
+				lock = lockChannel.lock();
+			} catch (IOException ioe1) {
+				Closer.close(lockChannel);
+				throw ioe1;
+			}
+			session = new Session(sessionDirectory, lockChannel, lock);
+			sessions.put(directory, session);
+		}
+		return session;
+	}
+
+	/**
+	 * Removes the given session directory if its lock file is old enough and
+	 * not locked.
+	 *
+	 * @param sessionDirectory
+	 *            The session directory
+	 * @return {@code true} if the session directory was removed, {@code false}
+	 *         otherwise
+	 */
+	private static boolean deleteOrphan(File sessionDirectory) {
+		File lockFile = new File(sessionDirectory, LOCK_FILENAME);
+		if (!lockFile.isFile() || (lockFile.lastModified() > (System.currentTimeMillis() - ORPHAN_AGE))) {
+			return false;
+		}
+		FileChannel lockChannel = null;
+		try {
+			lockChannel = FileChannel.open(lockFile.toPath(), StandardOpenOption.WRITE);
+			FileLock lock = lockChannel.tryLock();
+			if (lock == null) {
+				return false;
+			}
+			lock.release();
+		} catch (IOException | OverlappingFileLockException e1) {
+			return false;
+		} finally {
+			Closer.close(lockChannel);
+		}
+		return deleteSessionDirectory(sessionDirectory);
+	}
+
+	/**
+	 * Deletes all files in the given session directory and the directory
+	 * itself.
+	 *
+	 * @param sessionDirectory
+	 *            The session directory
+	 * @return {@code true} if the session directory was removed, {@code false}
+	 *         otherwise
+	 */
+	private static boolean deleteSessionDirectory(File sessionDirectory) {
+		File[] files = sessionDirectory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.isFile() && !file.delete()) {
+					logger.log(Level.WARNING, String.format("Could not delete temporary file %s.", file));
+				}
+			}
+		}
+		return sessionDirectory.delete();
+	}
+
+	/**
+	 * The locked session directory of a temp space in a temp directory.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	private static class Session {
+
+		/** The session directory. */
+		private final File directory;
+
+		/** The channel of the lock file. */
+		private final FileChannel lockChannel;
+
+		/** The lock of the session directory. */
+		private final FileLock lock;
+
+		/**
+		 * Creates a new session.
+		 *
+		 * @param directory
+		 *            The session directory
+		 * @param lockChannel
+		 *            The channel of the lock file
+		 * @param lock
+		 *            The lock of the session directory
+		 */
+		public Session(File directory, FileChannel lockChannel, FileLock lock) {
+			this.directory = directory;
+			this.lockChannel = lockChannel;
+			this.lock = lock;
+		}
+
+		/**
+		 * Releases the lock and removes the session directory.
+		 */
+		@SuppressWarnings("synthetic-access")
+		public void close() {
+			try {
+				lock.release();
+			} catch (IOException ioe1) {
+				logger.log(Level.WARNING, String.format("Could not unlock %s.", directory), ioe1);
+			}
+			Closer.close(lockChannel);
+			if (!deleteSessionDirectory(directory)) {
+				logger.log(Level.WARNING, String.format("Could not remove temp directory %s.", directory));
+			}
+		}
+
+	}
+
+}
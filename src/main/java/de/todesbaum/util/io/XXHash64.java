@@ -0,0 +1,245 @@
+/*
+ * jSite - XXHash64.java - Copyright © 2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+
+package de.todesbaum.util.io;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+
+/**
+ * {@link MessageDigest} that calculates the 64-bit xxHash (XXH64) of its
+ * input, using a seed of 0. xxHash is not a cryptographic hash; it is a lot
+ * faster than SHA-256 and is meant for detecting changes, not tampering. The
+ * digest is the 8-byte big-endian representation of the hash value.
+ * <p>
+ * Data from a {@link ByteBuffer}, including direct and memory-mapped
+ * buffers, is read in place, eight bytes at a time.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class XXHash64 extends MessageDigest {
+
+	/** The name of the algorithm. */
+	public static final String ALGORITHM = "XXH64";
+
+	/** The length of the digest. */
+	public static final int DIGEST_LENGTH = 8;
+
+	/** The first prime. */
+	private static final long PRIME1 = 0x9E3779B185EBCA87L;
+
+	/** The second prime. */
+	private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+
+	/** The third prime. */
+	private static final long PRIME3 = 0x165667B19E3779F9L;
+
+	/** The fourth prime. */
+	private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+
+	/** The fifth prime. */
+	private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+	/** The size of a stripe that is processed at once. */
+	private static final int STRIPE_LENGTH = 32;
+
+	/** Collects input until a stripe is complete. */
+	private final ByteBuffer stripe = ByteBuffer.allocate(STRIPE_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+
+	/** The first accumulator. */
+	private long accumulator1;
+
+	/** The second accumulator. */
+	private long accumulator2;
+
+	/** The third accumulator. */
+	private long accumulator3;
+
+	/** The fourth accumulator. */
+	private long accumulator4;
+
+	/** The total number of bytes. */
+	private long totalLength;
+
+	/**
+	 * Creates a new XXH64 digest.
+	 */
+	public XXHash64() {
+		super(ALGORITHM);
+		engineReset();
+	}
+
+	//
+	// MESSAGEDIGEST METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected int engineGetDigestLength() {
+		return DIGEST_LENGTH;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void engineUpdate(byte input) {
+		engineUpdate(new byte[] { input }, 0, 1);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void engineUpdate(byte[] input, int offset, int length) {
+		engineUpdate(ByteBuffer.wrap(input, offset, length));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void engineUpdate(ByteBuffer input) {
+		ByteBuffer data = input.slice().order(ByteOrder.LITTLE_ENDIAN);
+		int length = data.remaining();
+		int position = 0;
+		totalLength += length;
+		if (stripe.position() > 0) {
+			int stripeBytes = Math.min(length, stripe.remaining());
+			for (; position < stripeBytes; position++) {
+				stripe.put(data.get(position));
+			}
+			if (stripe.hasRemaining()) {
+				input.position(input.limit());
+				return;
+			}
+			processStripe(stripe, 0);
+			stripe.clear();
+		}
+		for (; (length - position) >= STRIPE_LENGTH; position += STRIPE_LENGTH) {
+			processStripe(data, position);
+		}
+		for (; position < length; position++) {
+			stripe.put(data.get(position));
+		}
+		input.position(input.limit());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected byte[] engineDigest() {
+		long hash;
+		if (totalLength >= STRIPE_LENGTH) {
+			hash = Long.rotateLeft(accumulator1, 1) + Long.rotateLeft(accumulator2, 7) + Long.rotateLeft(accumulator3, 12) + Long.rotateLeft(accumulator4, 18);
+			hash = mergeRound(hash, accumulator1);
+			hash = mergeRound(hash, accumulator2);
+			hash = mergeRound(hash, accumulator3);
+			hash = mergeRound(hash, accumulator4);
+		} else {
+			hash = PRIME5;
+		}
+		hash += totalLength;
+		int remaining = stripe.position();
+		int position = 0;
+		for (; (remaining - position) >= 8; position += 8) {
+			hash ^= round(0, stripe.getLong(position));
+			hash = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+		}
+		if ((remaining - position) >= 4) {
+			hash ^= (stripe.getInt(position) & 0xffffffffL) * PRIME1;
+			hash = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+			position += 4;
+		}
+		for (; position < remaining; position++) {
+			hash ^= (stripe.get(position) & 0xff) * PRIME5;
+			hash = Long.rotateLeft(hash, 11) * PRIME1;
+		}
+		hash ^= hash >>> 33;
+		hash *= PRIME2;
+		hash ^= hash >>> 29;
+		hash *= PRIME3;
+		hash ^= hash >>> 32;
+		engineReset();
+		return ByteBuffer.allocate(DIGEST_LENGTH).putLong(hash).array();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void engineReset() {
+		accumulator1 = PRIME1 + PRIME2;
+		accumulator2 = PRIME2;
+		accumulator3 = 0;
+		accumulator4 = -PRIME1;
+		totalLength = 0;
+		stripe.clear();
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Adds a complete stripe to the accumulators.
+	 *
+	 * @param data
+	 *            The buffer containing the stripe, in little-endian order
+	 * @param position
+	 *            The position of the stripe in the buffer
+	 */
+	private void processStripe(ByteBuffer data, int position) {
+		accumulator1 = round(accumulator1, data.getLong(position));
+		accumulator2 = round(accumulator2, data.getLong(position + 8));
+		accumulator3 = round(accumulator3, data.getLong(position + 16));
+		accumulator4 = round(accumulator4, data.getLong(position + 24));
+	}
+
+	/**
+	 * Adds eight bytes of input to an accumulator.
+	 *
+	 * @param accumulator
+	 *            The accumulator
+	 * @param input
+	 *            The input
+	 * @return The new value of the accumulator
+	 */
+	private static long round(long accumulator, long input) {
+		return Long.rotateLeft(accumulator + input * PRIME2, 31) * PRIME1;
+	}
+
+	/**
+	 * Merges an accumulator into the hash.
+	 *
+	 * @param hash
+	 *            The hash
+	 * @param accumulator
+	 *            The accumulator
+	 * @return The new hash
+	 */
+	private static long mergeRound(long hash, long accumulator) {
+		return (hash ^ round(0, accumulator)) * PRIME1 + PRIME4;
+	}
+
+}
@@ -0,0 +1,76 @@
+/*
+ * jSite - CancellationToken.java - Copyright © 2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+
+package de.todesbaum.util.thread;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Signals to long-running operations that they should stop. The token is
+ * handed to every stage of an operation; each stage checks it between chunks
+ * of work (e.g. every block of a file that is read or copied) and stops with
+ * an {@link InterruptedIOException} once the token has been cancelled. A
+ * token can not be reset; every operation uses a new token.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class CancellationToken {
+
+	/** Whether the token has been cancelled. */
+	private volatile boolean cancelled;
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns whether this token has been cancelled.
+	 *
+	 * @return {@code true} if this token has been cancelled, {@code false}
+	 *         otherwise
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Cancels this token. All operations that check this token will stop the
+	 * next time they check it.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Throws an exception if this token has been cancelled.
+	 *
+	 * @throws InterruptedIOException
+	 *             if this token has been cancelled
+	 */
+	public void throwIfCancelled() throws InterruptedIOException {
+		if (cancelled) {
+			throw new InterruptedIOException("Cancelled");
+		}
+	}
+
+}
@@ -0,0 +1,308 @@
+/*
+ * jSite - ManagedExecutor.java - Copyright © 2019 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+
+package de.todesbaum.util.thread;
+
+import java.lang.Thread.UncaughtExceptionHandler;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A named executor with bounded concurrency. All threads of the executor are
+ * named after it, are daemon threads, and report uncaught exceptions to the
+ * log. Tasks that are submitted while all threads are busy are queued.
+ * <p>
+ * Executors for blocking tasks (FCP connections, file I/O) use virtual
+ * threads if the JDK supports them; this can be disabled by setting the
+ * system property {@value #VIRTUAL_THREADS_PROPERTY} to {@code false}. All
+ * executors that have not been shut down are remembered so that they can be
+ * {@link #shutdownAll(long) shut down} when the application exits.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class ManagedExecutor extends ThreadPoolExecutor {
+
+	/** The logger. */
+	private static final Logger logger = Logger.getLogger(ManagedExecutor.class.getName());
+
+	/** The system property that disables virtual threads. */
+	public static final String VIRTUAL_THREADS_PROPERTY = "jsite.virtual-threads";
+
+	/** How long idle threads are kept (in seconds). */
+	private static final long KEEP_ALIVE_TIME = 30;
+
+	/** Creates virtual threads, or {@code null} if they are not supported. */
+	private static final ThreadFactory virtualThreadFactory = createVirtualThreadFactory();
+
+	/** All executors that have not been shut down. */
+	private static final List<ManagedExecutor> executors = new CopyOnWriteArrayList<ManagedExecutor>();
+
+	/** Logs uncaught exceptions. */
+	private static final UncaughtExceptionHandler uncaughtExceptionHandler = new UncaughtExceptionHandler() {
+
+		@Override
+		public void uncaughtException(Thread thread, Throwable throwable) {
+			logger.log(Level.SEVERE, String.format("Uncaught exception in thread %s.", thread.getName()), throwable);
+		}
+	};
+
+	/** The name of the executor. */
+	private final String name;
+
+	/** Whether the executor uses virtual threads. */
+	private final boolean virtual;
+
+	/** The number of tasks that ended with an exception. */
+	private final AtomicLong failedTaskCount = new AtomicLong();
+
+	/**
+	 * Creates a new managed executor.
+	 *
+	 * @param name
+	 *            The name of the executor
+	 * @param maxConcurrency
+	 *            The maximum number of tasks that run at the same time
+	 * @param virtual
+	 *            {@code true} to use virtual threads
+	 */
+	private ManagedExecutor(final String name, int maxConcurrency, final boolean virtual) {
+		super(maxConcurrency, maxConcurrency, KEEP_ALIVE_TIME, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+		this.name = name;
+		this.virtual = virtual;
+		allowCoreThreadTimeOut(true);
+		setThreadFactory(new ThreadFactory() {
+
+			/** The number of the next thread. */
+			private final AtomicInteger threadNumber = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = virtual ? virtualThreadFactory.newThread(runnable) : new Thread(runnable);
+				thread.setName("jSite " + name + " " + threadNumber.incrementAndGet());
+				if (!virtual) {
+					thread.setDaemon(true);
+				}
+				thread.setUncaughtExceptionHandler(uncaughtExceptionHandler);
+				return thread;
+			}
+		});
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the name of this executor.
+	 *
+	 * @return The name of this executor
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns whether this executor uses virtual threads.
+	 *
+	 * @return {@code true} if this executor uses virtual threads,
+	 *         {@code false} if it uses platform threads
+	 */
+	public boolean isVirtual() {
+		return virtual;
+	}
+
+	/**
+	 * Returns the number of tasks that were started with
+	 * {@link #execute(Runnable)} and ended with an exception. Exceptions of
+	 * tasks that were submitted are reported by their futures instead.
+	 *
+	 * @return The number of failed tasks
+	 */
+	public long getFailedTaskCount() {
+		return failedTaskCount.get();
+	}
+
+	//
+	// STATIC METHODS
+	//
+
+	/**
+	 * Creates a new executor for tasks that mostly wait for the network or
+	 * the disk. The executor uses virtual threads if they are supported.
+	 *
+	 * @param name
+	 *            The name of the executor
+	 * @param maxConcurrency
+	 *            The maximum number of tasks that run at the same time
+	 * @return The new executor
+	 */
+	public static ManagedExecutor createBlocking(String name, int maxConcurrency) {
+		return register(new ManagedExecutor(name, Math.max(1, maxConcurrency), isVirtualThreadsEnabled()));
+	}
+
+	/**
+	 * Creates a new executor that uses platform threads.
+	 *
+	 * @param name
+	 *            The name of the executor
+	 * @param maxConcurrency
+	 *            The maximum number of tasks that run at the same time
+	 * @return The new executor
+	 */
+	public static ManagedExecutor create(String name, int maxConcurrency) {
+		return register(new ManagedExecutor(name, Math.max(1, maxConcurrency), false));
+	}
+
+	/**
+	 * Returns all executors that have not been shut down.
+	 *
+	 * @return All active executors
+	 */
+	public static List<ManagedExecutor> getExecutors() {
+		return new ArrayList<ManagedExecutor>(executors);
+	}
+
+	/**
+	 * Shuts down all executors. Running tasks get the given time to finish
+	 * before they are interrupted.
+	 *
+	 * @param timeout
+	 *            The time to wait for running tasks (in milliseconds)
+	 */
+	public static void shutdownAll(long timeout) {
+		List<ManagedExecutor> shutdownExecutors = getExecutors();
+		for (ManagedExecutor executor : shutdownExecutors) {
+			logger.log(Level.FINE, String.format("Shutting down %s.", executor));
+			executor.shutdown();
+		}
+		long deadline = System.currentTimeMillis() + timeout;
+		for (ManagedExecutor executor : shutdownExecutors) {
+			try {
+				if (!executor.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+					logger.log(Level.WARNING, String.format("Interrupting remaining tasks of %s.", executor));
+					executor.shutdownNow();
+				}
+			} catch (InterruptedException ie1) {
+				executor.shutdownNow();
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Returns whether executors for blocking tasks use virtual threads.
+	 *
+	 * @return {@code true} if virtual threads are supported and not disabled,
+	 *         {@code false} otherwise
+	 */
+	public static boolean isVirtualThreadsEnabled() {
+		return (virtualThreadFactory != null) && !"false".equals(System.getProperty(VIRTUAL_THREADS_PROPERTY));
+	}
+
+	//
+	// THREADPOOLEXECUTOR METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void shutdown() {
+		super.shutdown();
+		executors.remove(this);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public List<Runnable> shutdownNow() {
+		executors.remove(this);
+		return super.shutdownNow();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void afterExecute(Runnable runnable, Throwable throwable) {
+		super.afterExecute(runnable, throwable);
+		if (throwable != null) {
+			failedTaskCount.incrementAndGet();
+		}
+	}
+
+	//
+	// OBJECT METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return String.format("%s[%s, %d of %d active, %d queued, %d completed, %d failed]", name, virtual ? "virtual" : "platform", getActiveCount(), getMaximumPoolSize(), getQueue().size(), getCompletedTaskCount(), getFailedTaskCount());
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Remembers the given executor until it is shut down.
+	 *
+	 * @param executor
+	 *            The executor to remember
+	 * @return The executor
+	 */
+	private static ManagedExecutor register(ManagedExecutor executor) {
+		executors.add(executor);
+		return executor;
+	}
+
+	/**
+	 * Creates a factory for virtual threads. Virtual threads exist since Java
+	 * 21, so the factory is created by reflection.
+	 *
+	 * @return A factory for virtual threads, or {@code null} if virtual
+	 *         threads are not supported
+	 */
+	private static ThreadFactory createVirtualThreadFactory() {
+		try {
+			Method ofVirtualMethod = Thread.class.getMethod("ofVirtual");
+			Object builder = ofVirtualMethod.invoke(null);
+			Method factoryMethod = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+			return (ThreadFactory) factoryMethod.invoke(builder);
+		} catch (ReflectiveOperationException | LinkageError e1) {
+			logger.log(Level.FINE, "Virtual threads are not supported.");
+			return null;
+		}
+	}
+
+}
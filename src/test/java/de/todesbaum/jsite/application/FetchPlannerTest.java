@@ -0,0 +1,94 @@
+package de.todesbaum.jsite.application;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.todesbaum.jsite.gui.ScannedFile;
+import de.todesbaum.util.freenet.fcp2.ManifestPutter;
+import de.todesbaum.util.io.Hex;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link FetchPlanner}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class FetchPlannerTest {
+
+	private final Project project = new Project();
+	private final InsertPlanner insertPlanner = new InsertPlanner();
+	private final FetchPlanner fetchPlanner = new FetchPlanner();
+
+	@Test
+	public void smallFilesArePackedIntoTheManifestByDefault() {
+		FetchPlan fetchPlan = fetchPlanner.plan(project, insertPlanner.plan(project, createSmallFiles(1000)));
+		assertThat(fetchPlan.getManifestPutter(), is(ManifestPutter.DEFAULT));
+		assertThat(fetchPlan.getFileCount(), is(1000));
+		assertThat(fetchPlan.getManifestCount(), is(1));
+		assertThat(fetchPlan.getContainerCount(), is(0));
+		assertThat(fetchPlan.getKeyCount(), is(0));
+		assertThat(fetchPlan.getFetchCount(), is(1));
+	}
+
+	@Test
+	public void simpleManifestPutterFetchesEveryFileSeparately() {
+		project.setManifestPutter(ManifestPutter.SIMPLE);
+		FetchPlan fetchPlan = fetchPlanner.plan(project, insertPlanner.plan(project, createSmallFiles(1000)));
+		assertThat(fetchPlan.getKeyCount(), is(1000));
+		assertThat(fetchPlan.getFetchCount(), is(1001));
+	}
+
+	@Test
+	public void smallerContainersNeedMoreFetches() {
+		project.setContainerSize(256 * 1024);
+		FetchPlan fetchPlan = fetchPlanner.plan(project, insertPlanner.plan(project, createSmallFiles(1000)));
+		assertThat(fetchPlan.getContainerSize(), is(256L * 1024));
+		assertThat(fetchPlan.getContainerCount(), is(4));
+		assertThat(fetchPlan.getFetchCount(), is(5));
+	}
+
+	@Test
+	public void largeFilesAndRedirectsAreFetchedAsKeys() {
+		project.getFileOption("old.html").setLastInsertHash(Hex.toHex(createHash(1))).setLastInsertEdition(3);
+		project.getFileOption("stored.iso").setLastInsertHash(Hex.toHex(createHash(2))).setLastInsertKey("CHK@stored");
+		FetchPlan fetchPlan = fetchPlanner.plan(project, insertPlanner.plan(project, asList(
+				createFile("index.html", 3, 1000),
+				createFile("old.html", 1, 1000),
+				createFile("stored.iso", 2, 4 * 1024 * 1024),
+				createFile("large.iso", 4, 2 * 1024 * 1024))));
+		assertThat(fetchPlan.getManifestCount(), is(2));
+		assertThat(fetchPlan.getContainerCount(), is(0));
+		assertThat(fetchPlan.getKeyCount(), is(2));
+		assertThat(fetchPlan.getFetchCount(), is(4));
+	}
+
+	@Test
+	public void containersArePackedLargestFirst() {
+		assertThat(FetchPlanner.countContainers(asList(30L, 60L, 40L, 70L), 100), is(2));
+		assertThat(FetchPlanner.countContainers(new ArrayList<Long>(), 100), is(0));
+	}
+
+	private static List<ScannedFile> createSmallFiles(int count) {
+		List<ScannedFile> files = new ArrayList<ScannedFile>();
+		for (int index = 0; index < count; index++) {
+			files.add(createFile("file-" + index + ".html", index + 10, 1000));
+		}
+		return files;
+	}
+
+	private static ScannedFile createFile(String filename, int hashSeed, long size) {
+		return new ScannedFile(filename, createHash(hashSeed), size, 0, null, 0, -1);
+	}
+
+	private static byte[] createHash(int seed) {
+		byte[] hash = new byte[32];
+		hash[0] = (byte) seed;
+		hash[1] = (byte) (seed >> 8);
+		return hash;
+	}
+
+}
@@ -30,6 +30,8 @@ public class FileOptionTest {
 	private static final int CUSTOM_LAST_INSERT_EDITION = 12345;
 	private static final String DEFAULT_LAST_INSERT_FILENAME = null;
 	private static final String CUSTOM_LAST_INSERT_FILENAME = "filename.dat";
+	private static final String DEFAULT_LAST_INSERT_KEY = null;
+	private static final String CUSTOM_LAST_INSERT_KEY = "CHK@last-insert-key";
 	private static final String DEFAULT_CURRENT_HASH = null;
 	private static final String CUSTOM_CURRENT_HASH = "current-hash";
 	private static final Optional<?> DEFAULT_CHANGED_NAME = Optional.empty();
@@ -123,6 +125,17 @@ public class FileOptionTest {
 		assertThat(fileOption.getLastInsertFilename(), is(CUSTOM_LAST_INSERT_FILENAME));
 	}
 
+	@Test
+	public void defaultLastInsertKeyIsNull() {
+		assertThat(fileOption.getLastInsertKey(), is(DEFAULT_LAST_INSERT_KEY));
+	}
+
+	@Test
+	public void lastInsertKeyIsRetainedCorrectly() {
+		fileOption.setLastInsertKey(CUSTOM_LAST_INSERT_KEY);
+		assertThat(fileOption.getLastInsertKey(), is(CUSTOM_LAST_INSERT_KEY));
+	}
+
 	@Test
 	public void defaultCurrentHashIsNull() {
 		assertThat(fileOption.getCurrentHash(), is(DEFAULT_CURRENT_HASH));
@@ -221,6 +234,7 @@ public class FileOptionTest {
 		fileOption.setLastInsertEdition(CUSTOM_LAST_INSERT_EDITION);
 		fileOption.setLastInsertFilename(CUSTOM_LAST_INSERT_FILENAME);
 		fileOption.setLastInsertHash(CUSTOM_LAST_INSERT_HASH);
+		fileOption.setLastInsertKey(CUSTOM_LAST_INSERT_KEY);
 		fileOption.setCurrentHash(CUSTOM_CURRENT_HASH);
 		FileOption copiedFileOption = new FileOption(fileOption);
 		assertThat(copiedFileOption.getChangedName().get(), is(CUSTOM_CHANGED_NAME));
@@ -233,6 +247,7 @@ public class FileOptionTest {
 		assertThat(copiedFileOption.getLastInsertEdition(), is(CUSTOM_LAST_INSERT_EDITION));
 		assertThat(copiedFileOption.getLastInsertFilename(), is(CUSTOM_LAST_INSERT_FILENAME));
 		assertThat(copiedFileOption.getLastInsertHash(), is(CUSTOM_LAST_INSERT_HASH));
+		assertThat(copiedFileOption.getLastInsertKey(), is(CUSTOM_LAST_INSERT_KEY));
 		assertThat(copiedFileOption.getCurrentHash(), is(CUSTOM_CURRENT_HASH));
 	}
 
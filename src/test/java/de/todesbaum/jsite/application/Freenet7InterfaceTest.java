@@ -4,10 +4,12 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -183,11 +185,92 @@ public class Freenet7InterfaceTest {
 		message.put("InsertURI", INSERT_URI);
 		message.put("RequestURI", REQUEST_URI);
 		Client client = mock(Client.class);
-		when(client.readMessage()).thenReturn(message);
+		when(client.readMessage(anyLong())).thenReturn(message);
 		when(clientSupplier.supply(eq(connection), any(GenerateSSK.class))).thenReturn(client);
 		String[] keyPair = freenet7Interface.generateKeyPair();
 		assertThat(keyPair[0], is(INSERT_URI));
 		assertThat(keyPair[1], is(REQUEST_URI));
 	}
 
+	@Test
+	public void keyPairGenerationWaitsForTheNodeWithTimeout() throws IOException {
+		Connection connection = mock(Connection.class);
+		when(connection.isConnected()).thenReturn(true);
+		when(connectionSupplier.supply(any(Node.class), anyString())).thenReturn(connection);
+		freenet7Interface.setNode(mock(Node.class));
+		Client client = mock(Client.class);
+		when(clientSupplier.supply(eq(connection), any(GenerateSSK.class))).thenReturn(client);
+		expectedException.expect(IOException.class);
+		try {
+			freenet7Interface.generateKeyPair();
+		} finally {
+			verify(client).readMessage(Freenet7Interface.KEY_PAIR_TIMEOUT);
+			verify(client).close();
+		}
+	}
+
+	@Test
+	public void clientOfKeyPairGenerationIsClosed() throws IOException {
+		Connection connection = mock(Connection.class);
+		when(connection.isConnected()).thenReturn(true);
+		when(connectionSupplier.supply(any(Node.class), anyString())).thenReturn(connection);
+		freenet7Interface.setNode(mock(Node.class));
+		Client client = mock(Client.class);
+		when(client.readMessage(anyLong())).thenReturn(new Message("SSKKeyPair"));
+		when(clientSupplier.supply(eq(connection), any(GenerateSSK.class))).thenReturn(client);
+		freenet7Interface.generateKeyPair();
+		verify(client).close();
+		verify(connection, never()).disconnect();
+	}
+
+	@Test
+	public void sharedConnectionIsNotAvailableWithoutNode() throws IOException {
+		expectedException.expect(IOException.class);
+		freenet7Interface.getSharedConnection();
+	}
+
+	@Test
+	public void sharedConnectionIsConnectedOnDemand() throws IOException {
+		Connection connection = mock(Connection.class);
+		when(connection.connect()).thenReturn(true);
+		when(connectionSupplier.supply(any(Node.class), anyString())).thenReturn(connection);
+		freenet7Interface.setNode(mock(Node.class));
+		assertThat(freenet7Interface.getSharedConnection(), is(connection));
+		verify(connection).connect();
+	}
+
+	@Test
+	public void sharedConnectionIsNotConnectedAgainIfItIsConnected() throws IOException {
+		Connection connection = mock(Connection.class);
+		when(connection.isConnected()).thenReturn(true);
+		when(connectionSupplier.supply(any(Node.class), anyString())).thenReturn(connection);
+		freenet7Interface.setNode(mock(Node.class));
+		assertThat(freenet7Interface.getSharedConnection(), is(connection));
+		assertThat(freenet7Interface.getSharedConnection(), is(connection));
+		verify(connection, never()).connect();
+	}
+
+	@Test
+	public void sharedConnectionIsNotAvailableIfNodeIsOffline() throws IOException {
+		Connection connection = mock(Connection.class);
+		when(connectionSupplier.supply(any(Node.class), anyString())).thenReturn(connection);
+		freenet7Interface.setNode(mock(Node.class));
+		expectedException.expect(IOException.class);
+		freenet7Interface.getSharedConnection();
+	}
+
+	@Test
+	public void changingTheNodeDisconnectsTheSharedConnection() throws IOException {
+		Connection firstConnection = mock(Connection.class);
+		when(firstConnection.isConnected()).thenReturn(true);
+		Connection secondConnection = mock(Connection.class);
+		when(secondConnection.isConnected()).thenReturn(true);
+		when(connectionSupplier.supply(any(Node.class), anyString())).thenReturn(firstConnection, secondConnection);
+		freenet7Interface.setNode(mock(Node.class));
+		assertThat(freenet7Interface.getSharedConnection(), is(firstConnection));
+		freenet7Interface.setNode(mock(Node.class));
+		verify(firstConnection).disconnect();
+		assertThat(freenet7Interface.getSharedConnection(), is(secondConnection));
+	}
+
 }
@@ -0,0 +1,79 @@
+package de.todesbaum.jsite.application;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.List;
+
+import de.todesbaum.jsite.application.InsertHistory.Period;
+import de.todesbaum.jsite.application.InsertRecord.Outcome;
+import de.todesbaum.jsite.application.InsertRecord.Phase;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link InsertHistory}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class InsertHistoryTest {
+
+	private static final long DAY = 24 * 60 * 60 * 1000;
+
+	private final InsertHistory insertHistory = new InsertHistory();
+
+	private static InsertRecord createRecord(long startTime, String node, Outcome outcome, long blocks, long transferDuration) {
+		return new InsertRecord(startTime).setNode(node).setOutcome(outcome).setBlockCount(blocks).setUploadedBytes(blocks * 1000).setChangedFileCount((int) blocks / 10)
+				.addPhaseDuration(Phase.CONNECT, 1000).addPhaseDuration(Phase.UPLOAD, transferDuration / 2).addPhaseDuration(Phase.NETWORK_INSERT, transferDuration / 2);
+	}
+
+	@Test
+	public void throughputIsBasedOnSuccessfulInsertsToTheNode() {
+		insertHistory.add(createRecord(0, "a:9481", Outcome.SUCCESS, 100, 60000));
+		insertHistory.add(createRecord(1, "b:9481", Outcome.SUCCESS, 100, 300000));
+		insertHistory.add(createRecord(2, "a:9481", Outcome.FAILURE, 1, 600000));
+		assertThat(insertHistory.getThroughput("a:9481"), is(100.0));
+		assertThat(insertHistory.getThroughput("b:9481"), is(20.0));
+		assertThat(insertHistory.getThroughput(null), is(200 * 60000.0 / 360000));
+		assertThat(insertHistory.getOverhead("a:9481"), is(1000L));
+	}
+
+	@Test
+	public void durationEstimateFallsBackToAllNodes() {
+		insertHistory.add(createRecord(0, "a:9481", Outcome.SUCCESS, 100, 60000));
+		assertThat(insertHistory.getEstimatedDuration(50, "a:9481"), is(31000L));
+		assertThat(insertHistory.getEstimatedDuration(50, "c:9481"), is(31000L));
+		assertThat(new InsertHistory().getEstimatedDuration(50, "a:9481"), is(-1L));
+	}
+
+	@Test
+	public void trendSummarizesPeriods() {
+		long now = 90 * DAY;
+		insertHistory.add(createRecord(10 * DAY, "a:9481", Outcome.SUCCESS, 300, 60000));
+		insertHistory.add(createRecord(70 * DAY, "a:9481", Outcome.SUCCESS, 100, 60000));
+		insertHistory.add(createRecord(80 * DAY, "a:9481", Outcome.FAILURE, 50, 60000));
+		insertHistory.add(createRecord(85 * DAY, "b:9481", Outcome.SUCCESS, 100, 60000));
+		List<Period> trend = insertHistory.getTrend("a:9481", 30 * DAY, 3, now);
+		assertThat(trend.size(), is(3));
+		assertThat(trend.get(0).getInsertCount(), is(1));
+		assertThat(trend.get(0).getThroughput(), is(300.0));
+		assertThat(trend.get(1).getInsertCount(), is(0));
+		assertThat(trend.get(2).getInsertCount(), is(2));
+		assertThat(trend.get(2).getSuccessfulInsertCount(), is(1));
+		assertThat(trend.get(2).getThroughput(), is(100.0));
+		assertThat(trend.get(2).getAverageUploadedBytes(), is(75000L));
+		assertThat(trend.get(2).getAverageChangedFileCount(), is(7.5));
+	}
+
+	@Test
+	public void historyKeepsOnlyTheNewestRecords() {
+		for (int index = 0; index < InsertHistory.MAX_RECORDS + 5; index++) {
+			insertHistory.add(createRecord(index, "a:9481", Outcome.SUCCESS, 1, 1000));
+		}
+		assertThat(insertHistory.getRecords().size(), is(InsertHistory.MAX_RECORDS));
+		assertThat(insertHistory.getRecords().get(0).getStartTime(), is(5L));
+		assertThat(insertHistory.getUnsavedRecords().size(), is(InsertHistory.MAX_RECORDS));
+		insertHistory.markSaved(insertHistory.getUnsavedRecords());
+		assertThat(insertHistory.getUnsavedRecords().isEmpty(), is(true));
+	}
+
+}
@@ -0,0 +1,117 @@
+package de.todesbaum.jsite.application;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import de.todesbaum.jsite.application.InsertPlan.Action;
+import de.todesbaum.jsite.gui.ScannedFile;
+import de.todesbaum.util.io.Hex;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link InsertPlanner}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class InsertPlannerTest {
+
+	private final Project project = new Project();
+	private final InsertPlanner insertPlanner = new InsertPlanner().setInsertFilesSeparately(true).setSeparateInsertThreshold(1024 * 1024);
+
+	@Test
+	public void filesAreClassifiedLikeTheInserterDoes() {
+		project.getFileOption("unchanged.html").setLastInsertHash(Hex.toHex(createHash(1)));
+		project.getFileOption("skipped.txt").setInsert(false);
+		project.getFileOption("skipped.txt").setInsertRedirect(false);
+		InsertPlan insertPlan = insertPlanner.plan(project, asList(
+				createFile("changed.html", 2, 1000),
+				createFile("unchanged.html", 1, 2000),
+				createFile("large.iso", 3, 4 * 1024 * 1024),
+				createFile("skipped.txt", 4, 100),
+				new ScannedFile("link.html", "changed.html", 0)));
+		assertThat(insertPlan.getFileCount(Action.PAYLOAD), is(1));
+		assertThat(insertPlan.getFileCount(Action.SEPARATE), is(1));
+		assertThat(insertPlan.getFileCount(Action.REDIRECT_UNCHANGED), is(1));
+		assertThat(insertPlan.getFileCount(Action.REDIRECT_LINK), is(1));
+		assertThat(insertPlan.getFileCount(Action.SKIP), is(1));
+		assertThat(insertPlan.getUploadSize(), is(1000L + 4 * 1024 * 1024));
+		assertThat(insertPlan.isInsertNeeded(), is(true));
+	}
+
+	@Test
+	public void capturedFilesAreInsertedSeparately() {
+		insertPlanner.setInsertFilesSeparately(false).setChkCaptureThreshold(64 * 1024);
+		InsertPlan insertPlan = insertPlanner.plan(project, asList(
+				createFile("small.html", 1, 1000),
+				createFile("image.png", 2, 64 * 1024)));
+		assertThat(insertPlan.getFileCount(Action.PAYLOAD), is(1));
+		assertThat(insertPlan.getFileCount(Action.SEPARATE), is(1));
+		assertThat(insertPlanner.isStageable(project, "image.png", 64 * 1024, true), is(false));
+	}
+
+	@Test
+	public void previouslyInsertedFileIsOnlyStageableIfProbablyModified() {
+		project.getFileOption("index.html").setLastInsertHash("0123");
+		assertThat(insertPlanner.isStageable(project, "index.html", 1000, false), is(false));
+		assertThat(insertPlanner.isStageable(project, "index.html", 1000, true), is(true));
+	}
+
+	@Test
+	public void filesAreNotCapturedByDefault() {
+		InsertPlanner insertPlanner = new InsertPlanner();
+		assertThat(insertPlanner.isCaptured(1024L * 1024 * 1024), is(false));
+		assertThat(insertPlanner.getAction(project, createFile("image.png", 2, 1024 * 1024)), is(Action.PAYLOAD));
+	}
+
+	@Test
+	public void blockCountIncludesCheckBlocksAndMetadata() {
+		assertThat(InsertPlanner.getBlockCount(0), is(1));
+		assertThat(InsertPlanner.getBlockCount(InsertPlanner.BLOCK_SIZE), is(1));
+		assertThat(InsertPlanner.getBlockCount(InsertPlanner.BLOCK_SIZE + 1), is(5));
+		assertThat(InsertPlanner.getBlockCount(128L * InsertPlanner.BLOCK_SIZE), is(257));
+	}
+
+	@Test
+	public void insertIsNotNeededIfNothingChanged() {
+		project.getFileOption("index.html").setLastInsertHash(Hex.toHex(createHash(1)));
+		InsertPlan insertPlan = insertPlanner.plan(project, asList(createFile("index.html", 1, 1000)));
+		assertThat(insertPlan.isInsertNeeded(), is(false));
+		assertThat(insertPlan.getBlockCount(), is(1L));
+	}
+
+	@Test
+	public void durationIsEstimatedFromInsertThroughput() {
+		project.setInsertThroughput(60);
+		InsertPlan insertPlan = insertPlanner.plan(project, asList(createFile("index.html", 1, 1000)));
+		assertThat(insertPlan.getBlockCount(), is(2L));
+		assertThat(insertPlan.getEstimatedDuration(), is(2000L));
+	}
+
+	@Test
+	public void durationIsEstimatedFromInsertHistoryOfNode() {
+		project.setInsertThroughput(60);
+		project.getInsertHistory().add(new InsertRecord(0).setNode("other:9481").setOutcome(InsertRecord.Outcome.SUCCESS).setBlockCount(10).addPhaseDuration(InsertRecord.Phase.UPLOAD, 1000));
+		project.getInsertHistory().add(new InsertRecord(1).setNode("node:9481").setOutcome(InsertRecord.Outcome.SUCCESS).setBlockCount(10).addPhaseDuration(InsertRecord.Phase.CONNECT, 500).addPhaseDuration(InsertRecord.Phase.UPLOAD, 10000));
+		insertPlanner.setNode(new Node("node", 9481));
+		InsertPlan insertPlan = insertPlanner.plan(project, asList(createFile("index.html", 1, 1000)));
+		assertThat(insertPlan.getEstimatedDuration(), is(2500L));
+	}
+
+	@Test
+	public void durationIsUnknownWithoutInsertThroughput() {
+		InsertPlan insertPlan = insertPlanner.plan(project, asList(createFile("index.html", 1, 1000)));
+		assertThat(insertPlan.getEstimatedDuration(), is(-1L));
+	}
+
+	private static ScannedFile createFile(String filename, int hashSeed, long size) {
+		return new ScannedFile(filename, createHash(hashSeed), size, 0, null, 0, -1);
+	}
+
+	private static byte[] createHash(int seed) {
+		byte[] hash = new byte[32];
+		hash[0] = (byte) seed;
+		return hash;
+	}
+
+}
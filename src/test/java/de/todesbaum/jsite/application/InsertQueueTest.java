@@ -0,0 +1,135 @@
+package de.todesbaum.jsite.application;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import net.pterodactylus.util.io.StreamCopier.ProgressListener;
+import de.todesbaum.jsite.application.InsertQueue.QueuedInsert;
+import de.todesbaum.jsite.application.InsertQueue.State;
+import de.todesbaum.util.freenet.fcp2.PriorityClass;
+
+/**
+ * Unit test for {@link InsertQueue}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class InsertQueueTest {
+
+	private final Node node = new Node("localhost", 9481, "Node");
+	private long now = 0;
+	private final InsertQueue insertQueue = new InsertQueue(1, () -> now);
+
+	@Test
+	public void onlyOneInsertRunsOnNodeAtATime() {
+		FakeProjectInserter firstInserter = new FakeProjectInserter();
+		FakeProjectInserter secondInserter = new FakeProjectInserter();
+		QueuedInsert firstInsert = insertQueue.enqueue(firstInserter, node, PriorityClass.BULK, null);
+		QueuedInsert secondInsert = insertQueue.enqueue(secondInserter, node, PriorityClass.BULK, null);
+		assertThat(firstInsert.getState(), is(State.RUNNING));
+		assertThat(secondInsert.getState(), is(State.QUEUED));
+		firstInserter.finish();
+		assertThat(firstInsert.getState(), is(State.FINISHED));
+		assertThat(secondInsert.getState(), is(State.RUNNING));
+		assertThat(secondInserter.priority, is(PriorityClass.BULK));
+	}
+
+	@Test
+	public void urgentInsertOvertakesRunningBulkInsert() {
+		insertQueue.enqueue(new FakeProjectInserter(), node, PriorityClass.BULK, null);
+		QueuedInsert waitingBulkInsert = insertQueue.enqueue(new FakeProjectInserter(), node, PriorityClass.BULK, null);
+		QueuedInsert urgentInsert = insertQueue.enqueue(new FakeProjectInserter(), node, PriorityClass.INTERACTIVE, null);
+		assertThat(urgentInsert.getState(), is(State.RUNNING));
+		assertThat(waitingBulkInsert.getState(), is(State.QUEUED));
+	}
+
+	@Test
+	public void higherPriorityIsStartedFirst() {
+		FakeProjectInserter runningInserter = new FakeProjectInserter();
+		insertQueue.enqueue(runningInserter, node, PriorityClass.BULK, null);
+		QueuedInsert bulkInsert = insertQueue.enqueue(new FakeProjectInserter(), node, PriorityClass.BULK, null);
+		QueuedInsert updatableInsert = insertQueue.enqueue(new FakeProjectInserter(), node, PriorityClass.UPDATABLE, null);
+		assertThat(insertQueue.getQueuedInserts().get(0), is(updatableInsert));
+		runningInserter.finish();
+		assertThat(updatableInsert.getState(), is(State.RUNNING));
+		assertThat(bulkInsert.getState(), is(State.QUEUED));
+	}
+
+	@Test
+	public void waitingInsertsAreRaisedInPriority() {
+		FakeProjectInserter runningInserter = new FakeProjectInserter();
+		insertQueue.enqueue(runningInserter, node, PriorityClass.BULK, null);
+		QueuedInsert bulkInsert = insertQueue.enqueue(new FakeProjectInserter(), node, PriorityClass.BULK, null);
+		now += 2 * InsertQueue.AGING_INTERVAL;
+		QueuedInsert updatableInsert = insertQueue.enqueue(new FakeProjectInserter(), node, PriorityClass.UPDATABLE, null);
+		runningInserter.finish();
+		assertThat(bulkInsert.getState(), is(State.RUNNING));
+		assertThat(updatableInsert.getState(), is(State.QUEUED));
+	}
+
+	@Test
+	public void nodesHaveSeparateLimits() {
+		insertQueue.enqueue(new FakeProjectInserter(), node, PriorityClass.BULK, null);
+		QueuedInsert otherNodeInsert = insertQueue.enqueue(new FakeProjectInserter(), new Node("otherhost", 9481, "Other Node"), PriorityClass.BULK, null);
+		assertThat(otherNodeInsert.getState(), is(State.RUNNING));
+	}
+
+	@Test
+	public void queuedInsertCanBeCancelled() {
+		insertQueue.enqueue(new FakeProjectInserter(), node, PriorityClass.BULK, null);
+		FakeProjectInserter queuedInserter = new FakeProjectInserter();
+		QueuedInsert queuedInsert = insertQueue.enqueue(queuedInserter, node, PriorityClass.BULK, null);
+		assertThat(insertQueue.cancel(queuedInsert), is(true));
+		assertThat(queuedInsert.getState(), is(State.CANCELLED));
+		assertThat(insertQueue.getQueuedInserts().isEmpty(), is(true));
+		assertThat(queuedInserter.started, is(false));
+	}
+
+	@Test
+	public void runningInsertIsStoppedWhenCancelled() {
+		FakeProjectInserter runningInserter = new FakeProjectInserter();
+		QueuedInsert runningInsert = insertQueue.enqueue(runningInserter, node, PriorityClass.BULK, null);
+		assertThat(insertQueue.cancel(runningInsert), is(false));
+		assertThat(runningInserter.stopped, is(true));
+	}
+
+	private static class FakeProjectInserter extends ProjectInserter {
+
+		private final List<InsertListener> insertListeners = new ArrayList<InsertListener>();
+		private PriorityClass priority;
+		private boolean started;
+		private boolean stopped;
+
+		@Override
+		public void addInsertListener(InsertListener insertListener) {
+			insertListeners.add(insertListener);
+		}
+
+		@Override
+		public void setPriority(PriorityClass priority) {
+			this.priority = priority;
+		}
+
+		@Override
+		public void start(ProgressListener progressListener) {
+			started = true;
+		}
+
+		@Override
+		public void stop() {
+			stopped = true;
+		}
+
+		private void finish() {
+			for (InsertListener insertListener : insertListeners) {
+				insertListener.projectInsertFinished(null, true, null);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,104 @@
+package de.todesbaum.jsite.application;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link KeyPairPool}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class KeyPairPoolTest {
+
+	private final TestFreenetInterface freenetInterface = new TestFreenetInterface();
+	private final KeyPairPool keyPairPool = new KeyPairPool(freenetInterface, 3);
+
+	@Test
+	public void emptyPoolGeneratesKeyPairRightAway() throws IOException {
+		freenetInterface.hasNode = false;
+		String[] keyPair = keyPairPool.getKeyPair();
+		assertThat(keyPair[0], is("insert-0"));
+		assertThat(keyPair[1], is("request-0"));
+		assertThat(keyPairPool.getAvailableKeyPairs(), is(0));
+	}
+
+	@Test(expected = IOException.class)
+	public void emptyPoolWithOfflineNodeFails() throws IOException {
+		freenetInterface.failing = true;
+		keyPairPool.getKeyPair();
+	}
+
+	@Test
+	public void refillFillsPool() throws InterruptedException {
+		keyPairPool.refill();
+		waitForAvailableKeyPairs(3);
+		assertThat(freenetInterface.generatedKeyPairs.get(), is(3));
+	}
+
+	@Test
+	public void refillWithoutNodeDoesNothing() throws InterruptedException {
+		freenetInterface.hasNode = false;
+		keyPairPool.refill();
+		Thread.sleep(100);
+		assertThat(keyPairPool.getAvailableKeyPairs(), is(0));
+		assertThat(freenetInterface.generatedKeyPairs.get(), is(0));
+	}
+
+	@Test
+	public void keyPairIsTakenFromPoolAndPoolIsRefilled() throws Exception {
+		keyPairPool.refill();
+		waitForAvailableKeyPairs(3);
+		String[] keyPair = keyPairPool.getKeyPair();
+		assertThat(keyPair[0], is("insert-0"));
+		waitForAvailableKeyPairs(3);
+		assertThat(freenetInterface.generatedKeyPairs.get(), is(4));
+		assertThat(keyPairPool.getKeyPair()[0], is("insert-1"));
+	}
+
+	@Test
+	public void failingNodeStopsRefillUntilNextRefill() throws InterruptedException {
+		freenetInterface.failing = true;
+		keyPairPool.refill();
+		Thread.sleep(100);
+		assertThat(keyPairPool.getAvailableKeyPairs(), is(0));
+		freenetInterface.failing = false;
+		keyPairPool.refill();
+		waitForAvailableKeyPairs(3);
+	}
+
+	private void waitForAvailableKeyPairs(int availableKeyPairs) throws InterruptedException {
+		long timeout = System.currentTimeMillis() + 5000;
+		while ((keyPairPool.getAvailableKeyPairs() != availableKeyPairs) && (System.currentTimeMillis() < timeout)) {
+			Thread.sleep(10);
+		}
+		assertThat(keyPairPool.getAvailableKeyPairs(), is(availableKeyPairs));
+	}
+
+	private static class TestFreenetInterface extends Freenet7Interface {
+
+		private final AtomicInteger generatedKeyPairs = new AtomicInteger();
+		private volatile boolean hasNode = true;
+		private volatile boolean failing = false;
+
+		@Override
+		public String[] generateKeyPair() throws IOException {
+			if (failing) {
+				throw new IOException("Node is offline.");
+			}
+			int index = generatedKeyPairs.getAndIncrement();
+			return new String[] { "insert-" + index, "request-" + index };
+		}
+
+		@Override
+		public boolean hasNode() {
+			return hasNode;
+		}
+
+	}
+
+}
@@ -0,0 +1,63 @@
+package de.todesbaum.jsite.application;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link PathFilter}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class PathFilterTest {
+
+	private final PathFilter pathFilter = new PathFilter(emptyList(), asList("**/node_modules/**", "*.psd", ".git/", "docs/*.tmp"));
+
+	@Test
+	public void filterWithoutRulesAcceptsEverything() {
+		assertThat(PathFilter.ACCEPT_ALL.acceptsDirectory("a/b"), is(true));
+		assertThat(PathFilter.ACCEPT_ALL.acceptsFile("a/b/c.html"), is(true));
+	}
+
+	@Test
+	public void directoriesMatchingDoubleStarRuleArePruned() {
+		assertThat(pathFilter.acceptsDirectory("node_modules"), is(false));
+		assertThat(pathFilter.acceptsDirectory("web/lib/node_modules"), is(false));
+		assertThat(pathFilter.acceptsDirectory("web/lib/node_modules_old"), is(true));
+	}
+
+	@Test
+	public void unanchoredRuleMatchesFilesInAllDirectories() {
+		assertThat(pathFilter.acceptsFile("cover.psd"), is(false));
+		assertThat(pathFilter.acceptsFile("images/raw/cover.psd"), is(false));
+		assertThat(pathFilter.acceptsFile("images/raw/cover.png"), is(true));
+	}
+
+	@Test
+	public void directoryRuleOnlyMatchesDirectories() {
+		assertThat(pathFilter.acceptsDirectory(".git"), is(false));
+		assertThat(pathFilter.acceptsDirectory("sub/.git"), is(false));
+		assertThat(pathFilter.acceptsFile(".git"), is(true));
+	}
+
+	@Test
+	public void anchoredRuleOnlyMatchesFromProjectDirectory() {
+		assertThat(pathFilter.acceptsFile("docs/draft.tmp"), is(false));
+		assertThat(pathFilter.acceptsFile("other/docs/draft.tmp"), is(true));
+		assertThat(pathFilter.acceptsFile("docs/sub/draft.tmp"), is(true));
+	}
+
+	@Test
+	public void includeRulesRestrictFiles() {
+		PathFilter includeFilter = new PathFilter(asList("*.html", "css/**"), asList("css/old/"));
+		assertThat(includeFilter.acceptsFile("index.html"), is(true));
+		assertThat(includeFilter.acceptsFile("css/layout.css"), is(true));
+		assertThat(includeFilter.acceptsFile("images/logo.png"), is(false));
+		assertThat(includeFilter.acceptsDirectory("images"), is(true));
+		assertThat(includeFilter.acceptsDirectory("css/old"), is(false));
+	}
+
+}
@@ -3,6 +3,9 @@ package de.todesbaum.jsite.application;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.Test;
 
 /**
@@ -19,4 +22,54 @@ public class ProjectTest {
 		assertThat(fileOption.getMimeType(), is("application/x-gtar"));
 	}
 
+	@Test
+	public void fileOptionsAreLoadedOnFirstAccessOnly() {
+		Project project = new Project();
+		AtomicInteger loadCount = new AtomicInteger();
+		project.setFileOptionsLoader(loadedProject -> {
+			loadCount.incrementAndGet();
+			loadedProject.getFileOption("index.html").setLastInsertHash("hash");
+		});
+		assertThat(project.isFileOptionsLoaded(), is(false));
+		assertThat(loadCount.get(), is(0));
+		assertThat(project.getFileOption("index.html").getLastInsertHash(), is("hash"));
+		assertThat(project.getFileOptions().size(), is(1));
+		assertThat(project.isFileOptionsLoaded(), is(true));
+		assertThat(loadCount.get(), is(1));
+	}
+
+	@Test
+	public void insertHistoryIsLoadedOnFirstAccessOnly() {
+		Project project = new Project();
+		AtomicInteger loadCount = new AtomicInteger();
+		project.setInsertHistoryLoader(loadedProject -> {
+			loadCount.incrementAndGet();
+			loadedProject.getInsertHistory().setSavedRecords(Collections.<InsertRecord> emptyList());
+		});
+		assertThat(project.isInsertHistoryLoaded(), is(false));
+		assertThat(loadCount.get(), is(0));
+		assertThat(project.getInsertHistory().getRecords().isEmpty(), is(true));
+		project.getInsertHistory();
+		assertThat(project.isInsertHistoryLoaded(), is(true));
+		assertThat(loadCount.get(), is(1));
+	}
+
+	@Test
+	public void settingFileOptionsLoaderDiscardsFileOptions() {
+		Project project = new Project();
+		project.getFileOption("index.html").setLastInsertHash("hash");
+		project.setFileOptionsLoader(loadedProject -> { });
+		assertThat(project.getFileOptions().isEmpty(), is(true));
+	}
+
+	@Test
+	public void copiedProjectContainsCopiesOfFileOptions() {
+		Project project = new Project();
+		project.getFileOption("index.html").setLastInsertHash("hash");
+		Project copiedProject = new Project(project);
+		assertThat(copiedProject.getFileOption("index.html").getLastInsertHash(), is("hash"));
+		assertThat(copiedProject.getFileOption("index.html") != project.getFileOption("index.html"), is(true));
+		assertThat(copiedProject.getId().equals(project.getId()), is(false));
+	}
+
 }
@@ -0,0 +1,53 @@
+package de.todesbaum.jsite.application;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link RetryPolicy}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class RetryPolicyTest {
+
+	private final RetryPolicy retryPolicy = new RetryPolicy(3, 1000, 10000, new Random(1));
+
+	@Test
+	public void retriesAreAllowedWithinBudget() {
+		assertThat(retryPolicy.isRetryAllowed(1), is(true));
+		assertThat(retryPolicy.isRetryAllowed(3), is(true));
+		assertThat(retryPolicy.isRetryAllowed(4), is(false));
+	}
+
+	@Test
+	public void delayGrowsExponentiallyWithJitter() {
+		for (int attempt = 0; attempt < 100; attempt++) {
+			long firstDelay = retryPolicy.getDelay(1);
+			assertThat(firstDelay, greaterThanOrEqualTo(500L));
+			assertThat(firstDelay, lessThanOrEqualTo(1000L));
+			long thirdDelay = retryPolicy.getDelay(3);
+			assertThat(thirdDelay, greaterThanOrEqualTo(2000L));
+			assertThat(thirdDelay, lessThanOrEqualTo(4000L));
+		}
+	}
+
+	@Test
+	public void delayIsLimitedToMaximum() {
+		assertThat(retryPolicy.getDelay(5), greaterThanOrEqualTo(5000L));
+		assertThat(retryPolicy.getDelay(5), lessThanOrEqualTo(10000L));
+		assertThat(retryPolicy.getDelay(100), greaterThanOrEqualTo(5000L));
+		assertThat(retryPolicy.getDelay(100), lessThanOrEqualTo(10000L));
+	}
+
+	@Test
+	public void negativeBudgetAllowsNoRetries() {
+		assertThat(new RetryPolicy(-1).isRetryAllowed(1), is(false));
+	}
+
+}
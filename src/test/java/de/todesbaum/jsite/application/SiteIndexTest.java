@@ -0,0 +1,112 @@
+package de.todesbaum.jsite.application;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link SiteIndex}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class SiteIndexTest {
+
+	private static final String RAW_HASH = "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef";
+
+	private final SiteIndex siteIndex = new SiteIndex();
+
+	@Test
+	public void manyFilesCanBeAddedAndFound() {
+		for (int index = 0; index < 10000; index++) {
+			assertThat(siteIndex.add("dir-" + (index % 17) + "/file-" + index + ".html"), is(index));
+		}
+		assertThat(siteIndex.size(), is(10000));
+		for (int index = 0; index < 10000; index++) {
+			String filename = "dir-" + (index % 17) + "/file-" + index + ".html";
+			assertThat(siteIndex.indexOf(filename), is(index));
+			assertThat(siteIndex.getFilename(index), is(filename));
+		}
+		assertThat(siteIndex.indexOf("dir-1/file-2.html"), is(-1));
+	}
+
+	@Test
+	public void rawAndOtherHashesAreReturnedUnchanged() {
+		int rawIndex = siteIndex.add("raw.txt");
+		int otherIndex = siteIndex.add("other.txt");
+		siteIndex.setLastInsertHash(rawIndex, RAW_HASH);
+		siteIndex.setCurrentHash(otherIndex, "xxh64:0123456789abcdef");
+		assertThat(siteIndex.getLastInsertHash(rawIndex), is(RAW_HASH));
+		assertThat(siteIndex.getCurrentHash(otherIndex), is("xxh64:0123456789abcdef"));
+		siteIndex.setLastInsertHash(rawIndex, RAW_HASH.toUpperCase());
+		assertThat(siteIndex.getLastInsertHash(rawIndex), is(RAW_HASH.toUpperCase()));
+		siteIndex.setLastInsertHash(rawIndex, null);
+		assertThat(siteIndex.getLastInsertHash(rawIndex) == null, is(true));
+	}
+
+	@Test
+	public void xxh64AndSha256HashesCanReplaceEachOther() {
+		int index = siteIndex.add("file.txt");
+		siteIndex.setLastInsertHash(index, "xxh64:0123456789abcdef");
+		siteIndex.setLastInsertHash(index, RAW_HASH);
+		assertThat(siteIndex.getLastInsertHash(index), is(RAW_HASH));
+		siteIndex.setLastInsertHash(index, "xxh64:fedcba9876543210");
+		assertThat(siteIndex.getLastInsertHash(index), is("xxh64:fedcba9876543210"));
+		siteIndex.setCurrentHash(index, "xxh64:FEDCBA9876543210");
+		assertThat(siteIndex.getCurrentHash(index), is("xxh64:FEDCBA9876543210"));
+	}
+
+	@Test
+	public void nonAsciiFilenamesAreStoredCorrectly() {
+		int index = siteIndex.add("bilder/Größe €.png");
+		assertThat(siteIndex.getFilename(index), is("bilder/Größe €.png"));
+		assertThat(siteIndex.indexOf("bilder/Größe €.png"), is(index));
+	}
+
+	@Test
+	public void removedFileIsNotFoundAndCanBeAddedAgain() {
+		int index = siteIndex.add("index.html");
+		siteIndex.setLastInsertEdition(index, 5);
+		siteIndex.remove("index.html");
+		assertThat(siteIndex.indexOf("index.html"), is(-1));
+		assertThat(siteIndex.size(), is(0));
+		assertThat(siteIndex.add("index.html"), is(index));
+		assertThat(siteIndex.getLastInsertEdition(index), is(0));
+	}
+
+	@Test
+	public void fileOptionOfRemovedFileDoesNotChangeFileThatIsAddedAgain() {
+		Project project = new Project();
+		FileOption staleFileOption = project.getFileOption("index.html");
+		project.setFileOption("index.html", null);
+		staleFileOption.setInsert(false);
+		staleFileOption.setLastInsertKey("CHK@stale");
+		staleFileOption.setLastInsertFilename("old.html");
+		FileOption fileOption = project.getFileOption("index.html");
+		assertThat(fileOption.isInsert(), is(true));
+		assertThat(fileOption.isCustom(), is(false));
+		assertThat(fileOption.getLastInsertKey() == null, is(true));
+		assertThat(fileOption.getLastInsertFilename() == null, is(true));
+	}
+
+	@Test
+	public void unchangedLastInsertFilenameIsReturned() {
+		int index = siteIndex.add("css/style.css");
+		siteIndex.setLastInsertFilename(index, "css/style.css");
+		assertThat(siteIndex.getLastInsertFilename(index), is("css/style.css"));
+		siteIndex.setLastInsertFilename(index, "style.css");
+		assertThat(siteIndex.getLastInsertFilename(index), is("style.css"));
+	}
+
+	@Test
+	public void fileOptionsAreOnlyStoredWhenCustomized() {
+		Project project = new Project();
+		FileOption fileOption = project.getFileOption("index.html");
+		fileOption.setInsert(false);
+		assertThat(project.getFileOption("index.html").isCustom(), is(true));
+		fileOption.setInsert(true);
+		assertThat(project.getFileOption("index.html").isCustom(), is(false));
+		assertThat(project.getFileOption("index.html").getMimeType(), is("text/html"));
+	}
+
+}
@@ -0,0 +1,200 @@
+package de.todesbaum.jsite.application;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import de.todesbaum.jsite.main.Version;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link UpdateChecker}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class UpdateCheckerTest {
+
+	private final ExecutorService executorService = Executors.newCachedThreadPool();
+	private final BlockingQueue<Map<String, String>> receivedMessages = new LinkedBlockingQueue<Map<String, String>>();
+	private final BlockingQueue<String> foundUpdates = new LinkedBlockingQueue<String>();
+	private final List<Socket> nodeSockets = new CopyOnWriteArrayList<Socket>();
+	private final Freenet7Interface freenetInterface = new Freenet7Interface();
+	private ServerSocket nodeServerSocket;
+	private OutputStream nodeOutputStream;
+	private UpdateChecker updateChecker;
+	private volatile boolean failNextFetch = false;
+
+	@Before
+	public void startUpdateChecker() throws IOException {
+		nodeServerSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+		executorService.submit(this::runNode);
+		freenetInterface.setNode(new Node("localhost", nodeServerSocket.getLocalPort()));
+		updateChecker = new UpdateChecker(freenetInterface, new Version(0, 1));
+		updateChecker.addUpdateListener((foundVersion, versionTimestamp) -> foundUpdates.add(foundVersion + "@" + versionTimestamp));
+		updateChecker.start();
+	}
+
+	@After
+	public void stopUpdateChecker() throws IOException {
+		updateChecker.stop();
+		freenetInterface.setNode(null);
+		nodeServerSocket.close();
+		for (Socket nodeSocket : nodeSockets) {
+			nodeSocket.close();
+		}
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void updateKeyIsSubscribedAtTheCurrentEdition() throws Exception {
+		Map<String, String> subscribeUsk = nextMessage("SubscribeUSK");
+		assertThat(subscribeUsk.get("Identifier"), is("jSite-update-subscription"));
+		assertThat(subscribeUsk.get("URI").endsWith("/jSite/12/"), is(true));
+	}
+
+	@Test
+	public void reportedEditionIsFetchedAndReported() throws Exception {
+		nextMessage("SubscribeUSK");
+		sendToClient("SubscribedUSKUpdate", "Identifier", "jSite-update-subscription", "Edition", "13");
+		assertThat(nextMessage("ClientGet").get("Identifier"), is("get-update-key-13"));
+		assertThat(foundUpdates.poll(5, TimeUnit.SECONDS), is("0.13@1300"));
+		assertThat(updateChecker.getLatestVersion().toString(), is("0.13"));
+	}
+
+	@Test
+	public void editionsThatAreNotNewerAreNotFetchedAgain() throws Exception {
+		nextMessage("SubscribeUSK");
+		sendToClient("SubscribedUSKUpdate", "Identifier", "jSite-update-subscription", "Edition", "13");
+		assertThat(nextMessage("ClientGet").get("Identifier"), is("get-update-key-13"));
+		assertThat(foundUpdates.poll(5, TimeUnit.SECONDS), is("0.13@1300"));
+		sendToClient("SubscribedUSKUpdate", "Identifier", "jSite-update-subscription", "Edition", "13");
+		sendToClient("SubscribedUSKUpdate", "Identifier", "jSite-update-subscription", "Edition", "12");
+		sendToClient("SubscribedUSKUpdate", "Identifier", "jSite-update-subscription", "Edition", "invalid");
+		sendToClient("SubscribedUSKUpdate", "Identifier", "jSite-update-subscription", "Edition", "14");
+		assertThat(nextMessage("ClientGet").get("Identifier"), is("get-update-key-14"));
+		assertThat(foundUpdates.poll(5, TimeUnit.SECONDS), is("0.14@1400"));
+	}
+
+	@Test
+	public void editionThatCanNotBeFetchedIsTriedAgain() throws Exception {
+		nextMessage("SubscribeUSK");
+		failNextFetch = true;
+		sendToClient("SubscribedUSKUpdate", "Identifier", "jSite-update-subscription", "Edition", "13");
+		assertThat(nextMessage("ClientGet").get("Identifier"), is("get-update-key-13"));
+		sendToClient("SubscribedUSKUpdate", "Identifier", "jSite-update-subscription", "Edition", "13");
+		assertThat(nextMessage("ClientGet").get("Identifier"), is("get-update-key-13"));
+		assertThat(foundUpdates.poll(5, TimeUnit.SECONDS), is("0.13@1300"));
+	}
+
+	@Test
+	public void stoppingUnsubscribesButKeepsSharedConnection() throws Exception {
+		nextMessage("SubscribeUSK");
+		updateChecker.stop();
+		assertThat(nextMessage("UnsubscribeUSK").get("Identifier"), is("jSite-update-subscription"));
+		assertThat(freenetInterface.getSharedConnection().isConnected(), is(true));
+	}
+
+	private Map<String, String> nextMessage(String name) throws InterruptedException {
+		while (true) {
+			Map<String, String> message = receivedMessages.poll(5, TimeUnit.SECONDS);
+			assertThat(message != null, is(true));
+			if (name.equals(message.get(""))) {
+				return message;
+			}
+		}
+	}
+
+	private void sendToClient(String name, String... fields) throws IOException {
+		send(createMessage(name, "EndMessage", fields), new byte[0]);
+	}
+
+	private static byte[] createMessage(String name, String terminator, String... fields) {
+		StringBuilder message = new StringBuilder(name).append('\n');
+		for (int index = 0; index < fields.length; index += 2) {
+			message.append(fields[index]).append('=').append(fields[index + 1]).append('\n');
+		}
+		return message.append(terminator).append('\n').toString().getBytes(UTF_8);
+	}
+
+	private synchronized void send(byte[] message, byte[] payload) throws IOException {
+		nodeOutputStream.write(message);
+		nodeOutputStream.write(payload);
+		nodeOutputStream.flush();
+	}
+
+	private static String readLine(InputStream inputStream) throws IOException {
+		StringBuilder line = new StringBuilder();
+		int read;
+		while (((read = inputStream.read()) != -1) && (read != '\n')) {
+			if (read != '\r') {
+				line.append((char) read);
+			}
+		}
+		return ((read == -1) && (line.length() == 0)) ? null : line.toString();
+	}
+
+	private Void runNode() throws IOException {
+		while (true) {
+			final Socket socket = nodeServerSocket.accept();
+			nodeSockets.add(socket);
+			executorService.submit(() -> {
+				InputStream inputStream = socket.getInputStream();
+				synchronized (this) {
+					nodeOutputStream = socket.getOutputStream();
+				}
+				Map<String, String> message = new HashMap<String, String>();
+				String line;
+				while ((line = readLine(inputStream)) != null) {
+					if (!"EndMessage".equals(line)) {
+						int equals = line.indexOf('=');
+						if (message.isEmpty()) {
+							message.put("", line);
+						} else if (equals > -1) {
+							message.put(line.substring(0, equals), line.substring(equals + 1));
+						}
+						continue;
+					}
+					answer(message);
+					receivedMessages.add(message);
+					message = new HashMap<String, String>();
+				}
+				return null;
+			});
+		}
+	}
+
+	private void answer(Map<String, String> message) throws IOException {
+		if ("ClientHello".equals(message.get(""))) {
+			sendToClient("NodeHello");
+		} else if ("ClientGet".equals(message.get(""))) {
+			String identifier = message.get("Identifier");
+			if (failNextFetch) {
+				failNextFetch = false;
+				sendToClient("GetFailed", "Identifier", identifier, "Code", "28", "CodeDescription", "All data not found");
+				return;
+			}
+			String edition = identifier.substring(identifier.lastIndexOf('-') + 1);
+			byte[] payload = ("jSite.Version=0." + edition + "\njSite.Date=" + edition + "00\n").getBytes(UTF_8);
+			send(createMessage("AllData", "Data", "Identifier", identifier, "DataLength", String.valueOf(payload.length)), payload);
+		}
+	}
+
+}
@@ -0,0 +1,53 @@
+package de.todesbaum.jsite.application;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import de.todesbaum.util.freenet.fcp2.Message;
+import de.todesbaum.util.freenet.fcp2.wot.OwnIdentity;
+
+/**
+ * Unit test for {@link WebOfTrustInterface}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class WebOfTrustInterfaceTest {
+
+	@Test
+	public void ownIdentitiesAreParsedFromPluginReply() {
+		Message message = new Message("FCPPluginReply");
+		message.put("Replies.Message", "OwnIdentities");
+		message.put("Replies.Identity10", "id10");
+		message.put("Replies.Nickname10", "Ten");
+		message.put("Replies.RequestURI10", "USK@request10,key,AQACAAE/WebOfTrust/3");
+		message.put("Replies.InsertURI10", "USK@insert10,key,AQECAAE/WebOfTrust/3");
+		message.put("Replies.Identity0", "id0");
+		message.put("Replies.Nickname0", "Zero");
+		message.put("Replies.RequestURI0", "USK@request0,key,AQACAAE/WebOfTrust/1");
+		message.put("Replies.InsertURI0", "USK@insert0,key,AQECAAE/WebOfTrust/1");
+		List<OwnIdentity> ownIdentities = WebOfTrustInterface.parseOwnIdentitiesFromMessage(message);
+		assertThat(ownIdentities.size(), is(2));
+		assertThat(ownIdentities.get(0).getNickname(), is("Zero"));
+		assertThat(ownIdentities.get(0).getRequestUri(), is("request0,key,AQACAAE"));
+		assertThat(ownIdentities.get(0).getInsertUri(), is("insert0,key,AQECAAE"));
+		assertThat(ownIdentities.get(1).getNickname(), is("Ten"));
+	}
+
+	@Test
+	public void incompleteIdentitiesAreSkipped() {
+		Message message = new Message("FCPPluginReply");
+		message.put("Replies.Identity0", "id0");
+		message.put("Replies.Nickname0", "Zero");
+		assertThat(WebOfTrustInterface.parseOwnIdentitiesFromMessage(message).isEmpty(), is(true));
+	}
+
+	@Test
+	public void errorReplyResultsInNoIdentities() {
+		assertThat(WebOfTrustInterface.parseOwnIdentitiesFromMessage(new Message("ProtocolError")).isEmpty(), is(true));
+	}
+
+}
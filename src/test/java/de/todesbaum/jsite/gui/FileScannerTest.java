@@ -0,0 +1,236 @@
+package de.todesbaum.jsite.gui;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.todesbaum.jsite.application.HashAlgorithm;
+import de.todesbaum.jsite.application.InsertPlan.Action;
+import de.todesbaum.jsite.application.InsertPlanner;
+import de.todesbaum.jsite.application.Project;
+import de.todesbaum.util.freenet.fcp2.PayloadStage;
+import de.todesbaum.util.io.Hex;
+import de.todesbaum.util.io.TempSpace;
+import de.todesbaum.util.thread.CancellationToken;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link FileScanner}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class FileScannerTest {
+
+	private final Project project = new Project();
+
+	@Test
+	public void largeAndSmallFilesAreHashedWithSha256ByDefault() throws IOException, NoSuchAlgorithmException {
+		byte[] largeContent = new byte[3 * 1024 * 1024 + 17];
+		largeContent[largeContent.length - 1] = 1;
+		List<ScannedFile> files = scan(largeContent);
+		assertThat(files.get(0).getHash(), is(Hex.toHex(MessageDigest.getInstance("SHA-256").digest(largeContent))));
+		assertThat(files.get(0).getSize(), is((long) largeContent.length));
+		assertThat(files.get(1).getHash(), is(Hex.toHex(MessageDigest.getInstance("SHA-256").digest("small".getBytes(UTF_8)))));
+	}
+
+	@Test
+	public void filesWithSha256HashesAreRecognizedAfterSwitchingToXxh64() throws IOException, NoSuchAlgorithmException {
+		String sha256Hash = Hex.toHex(MessageDigest.getInstance("SHA-256").digest("small".getBytes(UTF_8)));
+		project.getFileOption("small.txt").setLastInsertHash(sha256Hash);
+		project.setHashAlgorithm(HashAlgorithm.XXH64);
+		ScannedFile file = scan(new byte[0]).get(1);
+		assertThat(file.getHash().startsWith("xxh64:"), is(true));
+		assertThat(file.hasHash(sha256Hash), is(true));
+		assertThat(new InsertPlanner().getAction(project, file), is(Action.REDIRECT_UNCHANGED));
+	}
+
+	@Test
+	public void cancelledScanStopsWithErrorWithoutStagingData() throws IOException {
+		Path directory = Files.createTempDirectory("jsite-test");
+		TempSpace tempSpace = new TempSpace(asList(directory.toFile()), Long.MAX_VALUE, 0);
+		PayloadStage payloadStage = new PayloadStage(tempSpace);
+		try {
+			Files.write(directory.resolve("large.bin"), new byte[3 * 1024 * 1024]);
+			project.setLocalPath(directory.toString());
+			CancellationToken cancellationToken = new CancellationToken();
+			FileScanner fileScanner = new FileScanner(project, (error, files) -> {
+				/* we run the scanner ourselves. */
+			});
+			fileScanner.setPayloadStage(payloadStage, (filename, size, probablyModified) -> {
+				/* cancel the scan once the file is being read. */
+				cancellationToken.cancel();
+				return true;
+			}, file -> true);
+			fileScanner.setCancellationToken(cancellationToken);
+			fileScanner.run();
+			assertThat(fileScanner.isError(), is(true));
+			assertThat(fileScanner.getFiles().isEmpty(), is(true));
+			assertThat(payloadStage.getLength(), is(0L));
+		} finally {
+			payloadStage.delete();
+			tempSpace.close();
+			Files.delete(directory.resolve("large.bin"));
+			Files.delete(directory);
+		}
+	}
+
+	@Test
+	public void unchangedFileIsNeverWrittenToStage() throws IOException, NoSuchAlgorithmException {
+		Path directory = Files.createTempDirectory("jsite-test");
+		TempSpace tempSpace = new TempSpace(asList(directory.toFile()), Long.MAX_VALUE, 0);
+		PayloadStage payloadStage = new PayloadStage(tempSpace);
+		try {
+			Files.write(directory.resolve("unchanged.txt"), "unchanged".getBytes(UTF_8));
+			Files.write(directory.resolve("new.txt"), "new".getBytes(UTF_8));
+			Files.setLastModifiedTime(directory.resolve("unchanged.txt"), FileTime.fromMillis(System.currentTimeMillis() - 60000));
+			project.setLocalPath(directory.toString());
+			project.setLastInsertionTime(System.currentTimeMillis());
+			project.getFileOption("unchanged.txt").setLastInsertHash(Hex.toHex(MessageDigest.getInstance("SHA-256").digest("unchanged".getBytes(UTF_8))));
+			InsertPlanner insertPlanner = new InsertPlanner();
+			List<String> stagedFiles = new ArrayList<String>();
+			FileScanner fileScanner = new FileScanner(project, (error, files) -> {
+				/* we run the scanner ourselves. */
+			});
+			fileScanner.setPayloadStage(payloadStage, (filename, size, probablyModified) -> {
+				boolean stageable = insertPlanner.isStageable(project, filename, size, probablyModified);
+				if (stageable) {
+					stagedFiles.add(filename);
+				}
+				return stageable;
+			}, file -> true);
+			fileScanner.run();
+			assertThat(fileScanner.isError(), is(false));
+			assertThat(stagedFiles, is(asList("new.txt")));
+			assertThat(fileScanner.getFiles().get(0).getFilename(), is("new.txt"));
+			assertThat(fileScanner.getFiles().get(0).isStaged(), is(true));
+			assertThat(fileScanner.getFiles().get(1).isStaged(), is(false));
+			assertThat(payloadStage.getLength(), is(3L));
+		} finally {
+			payloadStage.delete();
+			tempSpace.close();
+			Files.delete(directory.resolve("unchanged.txt"));
+			Files.delete(directory.resolve("new.txt"));
+			Files.delete(directory);
+		}
+	}
+
+	@Test
+	public void previouslyInsertedFileModifiedAfterLastInsertIsStaged() throws IOException, NoSuchAlgorithmException {
+		Path directory = Files.createTempDirectory("jsite-test");
+		TempSpace tempSpace = new TempSpace(asList(directory.toFile()), Long.MAX_VALUE, 0);
+		PayloadStage payloadStage = new PayloadStage(tempSpace);
+		try {
+			Files.write(directory.resolve("modified.txt"), "modified".getBytes(UTF_8));
+			project.setLocalPath(directory.toString());
+			project.setLastInsertionTime(System.currentTimeMillis() - 60000);
+			project.getFileOption("modified.txt").setLastInsertHash(Hex.toHex(MessageDigest.getInstance("SHA-256").digest("original".getBytes(UTF_8))));
+			InsertPlanner insertPlanner = new InsertPlanner();
+			FileScanner fileScanner = new FileScanner(project, (error, files) -> {
+				/* we run the scanner ourselves. */
+			});
+			fileScanner.setPayloadStage(payloadStage, (filename, size, probablyModified) -> insertPlanner.isStageable(project, filename, size, probablyModified), file -> !file.hasHash(project.getFileOption(file.getFilename()).getLastInsertHash()));
+			fileScanner.run();
+			assertThat(fileScanner.isError(), is(false));
+			assertThat(fileScanner.getFiles().get(0).isStaged(), is(true));
+			assertThat(payloadStage.getLength(), is(8L));
+		} finally {
+			payloadStage.delete();
+			tempSpace.close();
+			Files.delete(directory.resolve("modified.txt"));
+			Files.delete(directory);
+		}
+	}
+
+	@Test
+	public void fileWithUnchangedSizeAndModificationTimeIsTakenFromHashCache() throws IOException, NoSuchAlgorithmException {
+		Path directory = Files.createTempDirectory("jsite-test");
+		Path file = directory.resolve("file.txt");
+		try {
+			Files.write(file, "first".getBytes(UTF_8));
+			FileTime lastModified = Files.getLastModifiedTime(file);
+			project.setLocalPath(directory.toString());
+			HashCache hashCache = new HashCache();
+			String firstHash = scanWithCache(hashCache).getHash();
+			Files.write(file, "other".getBytes(UTF_8));
+			Files.setLastModifiedTime(file, lastModified);
+			assertThat(scanWithCache(hashCache).getHash(), is(firstHash));
+			Files.setLastModifiedTime(file, FileTime.fromMillis(lastModified.toMillis() + 2000));
+			assertThat(scanWithCache(hashCache).getHash(), is(Hex.toHex(MessageDigest.getInstance("SHA-256").digest("other".getBytes(UTF_8)))));
+			assertThat(hashCache.size(), is(1));
+		} finally {
+			Files.delete(file);
+			Files.delete(directory);
+		}
+	}
+
+	@Test
+	public void hashCacheIsNotUsedForAnotherHashAlgorithm() throws IOException {
+		Path directory = Files.createTempDirectory("jsite-test");
+		Path file = directory.resolve("file.txt");
+		try {
+			Files.write(file, "first".getBytes(UTF_8));
+			project.setLocalPath(directory.toString());
+			HashCache hashCache = new HashCache();
+			scanWithCache(hashCache);
+			project.setHashAlgorithm(HashAlgorithm.XXH64);
+			assertThat(scanWithCache(hashCache).getHash().startsWith("xxh64:"), is(true));
+		} finally {
+			Files.delete(file);
+			Files.delete(directory);
+		}
+	}
+
+	@Test
+	public void hashCacheForgetsLeastRecentlyUsedFiles() {
+		HashCache hashCache = new HashCache(2);
+		hashCache.put(Paths.get("a"), new ScannedFile("a", new byte[32], 1, 1, null, 0, -1));
+		hashCache.put(Paths.get("b"), new ScannedFile("b", new byte[32], 1, 1, null, 0, -1));
+		hashCache.get(Paths.get("a"), 1, 1);
+		hashCache.put(Paths.get("c"), new ScannedFile("c", new byte[32], 1, 1, null, 0, -1));
+		assertThat(hashCache.size(), is(2));
+		assertThat(hashCache.get(Paths.get("a"), 1, 1).isPresent(), is(true));
+		assertThat(hashCache.get(Paths.get("b"), 1, 1).isPresent(), is(false));
+		assertThat(hashCache.get(Paths.get("a"), 2, 1).isPresent(), is(false));
+	}
+
+	private ScannedFile scanWithCache(HashCache hashCache) {
+		FileScanner fileScanner = new FileScanner(project, (error, files) -> {
+			/* we run the scanner ourselves. */
+		});
+		fileScanner.setHashCache(hashCache);
+		fileScanner.run();
+		assertThat(fileScanner.isError(), is(false));
+		return fileScanner.getFiles().get(0);
+	}
+
+	private List<ScannedFile> scan(byte[] largeContent) throws IOException {
+		Path directory = Files.createTempDirectory("jsite-test");
+		try {
+			Files.write(directory.resolve("small.txt"), "small".getBytes(UTF_8));
+			Files.write(directory.resolve("large.bin"), largeContent);
+			project.setLocalPath(directory.toString());
+			FileScanner fileScanner = new FileScanner(project, (error, files) -> {
+				/* we run the scanner ourselves. */
+			});
+			fileScanner.run();
+			assertThat(fileScanner.isError(), is(false));
+			return fileScanner.getFiles();
+		} finally {
+			Files.delete(directory.resolve("small.txt"));
+			Files.delete(directory.resolve("large.bin"));
+			Files.delete(directory);
+		}
+	}
+
+}
@@ -0,0 +1,99 @@
+package de.todesbaum.jsite.main;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.List;
+
+import de.todesbaum.jsite.application.InsertRecord;
+import de.todesbaum.jsite.application.InsertRecord.Outcome;
+import de.todesbaum.jsite.application.InsertRecord.Phase;
+import de.todesbaum.jsite.application.Project;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test for {@link InsertHistoryStore}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class InsertHistoryStoreTest {
+
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private static Project createProject() {
+		Project project = new Project();
+		project.setId("project-id");
+		return project;
+	}
+
+	private static InsertRecord createRecord(long startTime) {
+		return new InsertRecord(startTime).setNode("localhost:9481").setEdition(7).setOutcome(Outcome.SUCCESS).addPhaseDuration(Phase.UPLOAD, 2000).addPhaseDuration(Phase.NETWORK_INSERT, 300)
+				.setUploadedBytes(12345).setBlockCount(17).setChangedFileCount(3).setRedirectedFileCount(4).setSkippedFileCount(5).setRetries(1);
+	}
+
+	@Test
+	public void savedRecordsCanBeLoaded() throws Exception {
+		Project project = createProject();
+		project.getInsertHistory().add(createRecord(1000));
+		InsertHistoryStore insertHistoryStore = new InsertHistoryStore(temporaryFolder.getRoot());
+		insertHistoryStore.save(project);
+		project.getInsertHistory().add(createRecord(2000));
+		insertHistoryStore.save(project);
+		assertThat(project.getInsertHistory().getUnsavedRecords().isEmpty(), is(true));
+		Project loadedProject = createProject();
+		new InsertHistoryStore(temporaryFolder.getRoot()).load(loadedProject);
+		List<InsertRecord> records = loadedProject.getInsertHistory().getRecords();
+		assertThat(records.size(), is(2));
+		assertThat(records.get(1).getStartTime(), is(2000L));
+		assertThat(records.get(0).getNode(), is("localhost:9481"));
+		assertThat(records.get(0).getEdition(), is(7));
+		assertThat(records.get(0).getOutcome(), is(Outcome.SUCCESS));
+		assertThat(records.get(0).getPhaseDuration(Phase.UPLOAD), is(2000L));
+		assertThat(records.get(0).getPhaseDuration(Phase.NETWORK_INSERT), is(300L));
+		assertThat(records.get(0).getUploadedBytes(), is(12345L));
+		assertThat(records.get(0).getBlockCount(), is(17L));
+		assertThat(records.get(0).getChangedFileCount(), is(3));
+		assertThat(records.get(0).getRedirectedFileCount(), is(4));
+		assertThat(records.get(0).getSkippedFileCount(), is(5));
+		assertThat(records.get(0).getRetries(), is(1));
+	}
+
+	@Test
+	public void damagedRecordIsIgnored() throws Exception {
+		Project project = createProject();
+		project.getInsertHistory().add(createRecord(1000));
+		project.getInsertHistory().add(createRecord(2000));
+		new InsertHistoryStore(temporaryFolder.getRoot()).save(project);
+		File historyFile = new File(temporaryFolder.getRoot(), "project-id.history");
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(historyFile, "rw")) {
+			randomAccessFile.setLength(randomAccessFile.length() - 3);
+		}
+		Project loadedProject = createProject();
+		InsertHistoryStore insertHistoryStore = new InsertHistoryStore(temporaryFolder.getRoot());
+		insertHistoryStore.load(loadedProject);
+		assertThat(loadedProject.getInsertHistory().getRecords().size(), is(1));
+		loadedProject.getInsertHistory().add(createRecord(3000));
+		insertHistoryStore.save(loadedProject);
+		Project reloadedProject = createProject();
+		new InsertHistoryStore(temporaryFolder.getRoot()).load(reloadedProject);
+		assertThat(reloadedProject.getInsertHistory().getRecords().size(), is(2));
+		assertThat(reloadedProject.getInsertHistory().getRecords().get(1).getStartTime(), is(3000L));
+	}
+
+	@Test
+	public void historiesOfDeletedProjectsAreRemoved() throws Exception {
+		Project project = createProject();
+		project.getInsertHistory().add(createRecord(1000));
+		InsertHistoryStore insertHistoryStore = new InsertHistoryStore(temporaryFolder.getRoot());
+		insertHistoryStore.save(project);
+		insertHistoryStore.retain(Collections.<String> emptyList());
+		assertThat(new File(temporaryFolder.getRoot(), "project-id.history").exists(), is(false));
+	}
+
+}
@@ -0,0 +1,44 @@
+package de.todesbaum.jsite.main;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link Json}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class JsonTest {
+
+	@Test
+	public void simpleValuesAreConverted() {
+		assertThat(Json.toJson(null), is("null"));
+		assertThat(Json.toJson(42), is("42"));
+		assertThat(Json.toJson(1.5), is("1.5"));
+		assertThat(Json.toJson(Double.NaN), is("null"));
+		assertThat(Json.toJson(true), is("true"));
+	}
+
+	@Test
+	public void stringsAreEscaped() {
+		assertThat(Json.toJson("a \"quoted\" \\ path\n"), is("\"a \\\"quoted\\\" \\\\ path\\n\""));
+		assertThat(Json.toJson("\u0001\u2028"), is("\"\\u0001\\u2028\""));
+		assertThat(Json.toJson("Grüße"), is("\"Grüße\""));
+	}
+
+	@Test
+	public void mapsAndListsAreNested() {
+		Map<String, Object> map = new LinkedHashMap<String, Object>();
+		map.put("name", "site");
+		map.put("files", asList("a.html", "b.css"));
+		map.put("empty", new Object[0]);
+		assertThat(Json.toJson(map), is("{\"name\":\"site\",\"files\":[\"a.html\",\"b.css\"],\"empty\":[]}"));
+	}
+
+}
@@ -0,0 +1,186 @@
+package de.todesbaum.jsite.main;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import de.todesbaum.jsite.application.FileOption;
+import de.todesbaum.jsite.application.Project;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test for {@link ProjectStateStore}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class ProjectStateStoreTest {
+
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private Project createProject() {
+		Project project = new Project();
+		project.setId("project-id");
+		project.getFileOption("index.html").setLastInsertHash("hash-1").setLastInsertEdition(3).setLastInsertFilename("index.html").setLastInsertKey("CHK@key");
+		project.getFileOption("style.css").setChangedName("layout.css");
+		project.getFileOption("default.txt");
+		return project;
+	}
+
+	private Project loadProject(File directory) throws Exception {
+		Project project = new Project();
+		project.setId("project-id");
+		new ProjectStateStore(directory).load(project);
+		return project;
+	}
+
+	@Test
+	public void savedStateCanBeLoaded() throws Exception {
+		new ProjectStateStore(temporaryFolder.getRoot()).save(createProject());
+		Project loadedProject = loadProject(temporaryFolder.getRoot());
+		assertThat(loadedProject.getFileOptions().size(), is(2));
+		FileOption indexFileOption = loadedProject.getFileOption("index.html");
+		assertThat(indexFileOption.getLastInsertHash(), is("hash-1"));
+		assertThat(indexFileOption.getLastInsertEdition(), is(3));
+		assertThat(indexFileOption.getLastInsertFilename(), is("index.html"));
+		assertThat(indexFileOption.getLastInsertKey(), is("CHK@key"));
+		assertThat(loadedProject.getFileOption("style.css").getChangedName().get(), is("layout.css"));
+	}
+
+	@Test
+	public void onlyChangedFilesAreAppended() throws Exception {
+		ProjectStateStore projectStateStore = new ProjectStateStore(temporaryFolder.getRoot());
+		Project project = createProject();
+		for (int index = 0; index < 100; index++) {
+			project.getFileOption("file-" + index).setLastInsertHash("hash").setLastInsertEdition(1);
+		}
+		projectStateStore.save(project);
+		File journalFile = temporaryFolder.getRoot().listFiles()[0];
+		long initialLength = journalFile.length();
+		project.getFileOption("file-17").setLastInsertHash("new-hash");
+		projectStateStore.save(project);
+		assertThat(journalFile.length() - initialLength < 100, is(true));
+		assertThat(loadProject(temporaryFolder.getRoot()).getFileOption("file-17").getLastInsertHash(), is("new-hash"));
+	}
+
+	@Test
+	public void unchangedProjectDoesNotModifyJournal() throws Exception {
+		ProjectStateStore projectStateStore = new ProjectStateStore(temporaryFolder.getRoot());
+		Project project = createProject();
+		projectStateStore.save(project);
+		File journalFile = temporaryFolder.getRoot().listFiles()[0];
+		long initialLength = journalFile.length();
+		projectStateStore.save(project);
+		assertThat(journalFile.length(), is(initialLength));
+	}
+
+	@Test
+	public void removedFilesAreNotLoaded() throws Exception {
+		ProjectStateStore projectStateStore = new ProjectStateStore(temporaryFolder.getRoot());
+		Project project = createProject();
+		projectStateStore.save(project);
+		project.getFileOption("style.css").setChangedName(null);
+		projectStateStore.save(project);
+		assertThat(loadProject(temporaryFolder.getRoot()).getFileOptions().containsKey("style.css"), is(false));
+	}
+
+	@Test
+	public void uncommittedDataIsIgnored() throws Exception {
+		ProjectStateStore projectStateStore = new ProjectStateStore(temporaryFolder.getRoot());
+		Project project = createProject();
+		projectStateStore.save(project);
+		File journalFile = temporaryFolder.getRoot().listFiles()[0];
+		long committedLength = journalFile.length();
+		project.getFileOption("index.html").setLastInsertHash("hash-2");
+		projectStateStore.save(project);
+		try (RandomAccessFile journal = new RandomAccessFile(journalFile, "rw")) {
+			journal.setLength(journal.length() - 3);
+		}
+		assertThat(loadProject(temporaryFolder.getRoot()).getFileOption("index.html").getLastInsertHash(), is("hash-1"));
+		ProjectStateStore newProjectStateStore = new ProjectStateStore(temporaryFolder.getRoot());
+		Project reloadedProject = new Project();
+		reloadedProject.setId("project-id");
+		newProjectStateStore.load(reloadedProject);
+		reloadedProject.getFileOption("index.html").setLastInsertHash("hash-3");
+		newProjectStateStore.save(reloadedProject);
+		assertThat(journalFile.length() > committedLength, is(true));
+		assertThat(loadProject(temporaryFolder.getRoot()).getFileOption("index.html").getLastInsertHash(), is("hash-3"));
+	}
+
+	@Test
+	public void journalsOfRemovedProjectsAreDeleted() throws Exception {
+		ProjectStateStore projectStateStore = new ProjectStateStore(temporaryFolder.getRoot());
+		projectStateStore.save(createProject());
+		projectStateStore.retain(Collections.<String> emptyList());
+		assertThat(projectStateStore.hasState("project-id"), is(false));
+	}
+
+	@Test
+	public void journalThatWasRemovedIsWrittenCompletelyAgain() throws Exception {
+		ProjectStateStore projectStateStore = new ProjectStateStore(temporaryFolder.getRoot());
+		Project project = createProject();
+		projectStateStore.save(project);
+		assertThat(new File(temporaryFolder.getRoot(), "project-id.journal").delete(), is(true));
+		project.getFileOption("index.html").setLastInsertHash("hash-2");
+		projectStateStore.save(project);
+		Project loadedProject = loadProject(temporaryFolder.getRoot());
+		assertThat(loadedProject.getFileOption("index.html").getLastInsertHash(), is("hash-2"));
+		assertThat(loadedProject.getFileOption("style.css").getChangedName().get(), is("layout.css"));
+	}
+
+	@Test
+	public void savingWhileFileOptionsAreLoadedDoesNotDeadlock() throws Exception {
+		ProjectStateStore projectStateStore = new ProjectStateStore(temporaryFolder.getRoot());
+		projectStateStore.save(createProject());
+		CountDownLatch loaderStarted = new CountDownLatch(1);
+		CountDownLatch saveStarted = new CountDownLatch(1);
+		Project project = new Project();
+		project.setId("project-id");
+		project.setFileOptionsLoader(loadedProject -> {
+			loaderStarted.countDown();
+			try {
+				saveStarted.await();
+				projectStateStore.load(loadedProject);
+			} catch (InterruptedException ie1) {
+				Thread.currentThread().interrupt();
+			} catch (IOException ioe1) {
+				throw new UncheckedIOException(ioe1);
+			}
+		});
+		FutureTask<Integer> loading = new FutureTask<Integer>(() -> project.getFileOptions().size());
+		FutureTask<Void> saving = new FutureTask<Void>(() -> {
+			projectStateStore.save(project);
+			return null;
+		});
+		Thread loadingThread = new Thread(loading);
+		loadingThread.setDaemon(true);
+		loadingThread.start();
+		loaderStarted.await();
+		Thread savingThread = new Thread(saving);
+		savingThread.setDaemon(true);
+		savingThread.start();
+		waitUntilBlocked(savingThread);
+		saveStarted.countDown();
+		assertThat(loading.get(5, TimeUnit.SECONDS), is(2));
+		saving.get(5, TimeUnit.SECONDS);
+	}
+
+	private static void waitUntilBlocked(Thread thread) throws InterruptedException {
+		long timeout = System.currentTimeMillis() + 5000;
+		while ((thread.getState() != Thread.State.BLOCKED) && (System.currentTimeMillis() < timeout)) {
+			Thread.sleep(10);
+		}
+		assertThat(thread.getState(), is(Thread.State.BLOCKED));
+	}
+
+}
@@ -0,0 +1,269 @@
+package de.todesbaum.jsite.main;
+
+import static de.todesbaum.jsite.main.ConfigurationLocator.ConfigurationLocation.CUSTOM;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import de.todesbaum.jsite.application.Node;
+import de.todesbaum.jsite.application.Project;
+import de.todesbaum.jsite.main.JarFileLocator.DefaultJarFileLocator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test for {@link Server}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class ServerTest {
+
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private final ExecutorService executorService = Executors.newCachedThreadPool();
+	private final List<Socket> nodeSockets = new CopyOnWriteArrayList<Socket>();
+	private ServerSocket nodeServerSocket;
+	private Project project;
+	private Server server;
+
+	@Before
+	public void startServer() throws IOException {
+		nodeServerSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+		executorService.submit(this::runNode);
+		ConfigurationLocator configurationLocator = new ConfigurationLocator(new DefaultJarFileLocator(getClass().getClassLoader()));
+		configurationLocator.setCustomLocation(temporaryFolder.getRoot().getPath() + "/config7");
+		Configuration configuration = new Configuration(configurationLocator, CUSTOM);
+		project = new Project();
+		project.setName("Test");
+		project.setPath("test");
+		project.setLocalPath(temporaryFolder.newFolder("project").getPath());
+		temporaryFolder.newFile("project/index.html");
+		project.setIndexFile("index.html");
+		project.setInsertURI("SSK@insert/");
+		project.setRequestURI("SSK@request/");
+		configuration.setProjects(asList(project));
+		server = new Server(configuration, new Node("localhost", nodeServerSocket.getLocalPort()));
+		server.start(0);
+	}
+
+	@After
+	public void stopServer() throws IOException {
+		server.close();
+		nodeServerSocket.close();
+		for (Socket nodeSocket : nodeSockets) {
+			nodeSocket.close();
+		}
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void projectsAreListed() throws IOException {
+		Response response = request("GET", "/projects", null, null);
+		assertThat(response.status, is(200));
+		assertThat(response.body.contains("\"id\":\"" + project.getId() + "\""), is(true));
+		assertThat(response.body.contains("\"name\":\"Test\""), is(true));
+	}
+
+	@Test
+	public void unknownRequestsAreNotFound() throws IOException {
+		assertThat(request("GET", "/unknown", null, null).status, is(404));
+		assertThat(request("DELETE", "/projects", null, null).status, is(404));
+		assertThat(request("GET", "/projects/" + project.getId() + "/unknown", null, null).status, is(404));
+		Response response = request("GET", "/projects/unknown/plan", null, null);
+		assertThat(response.status, is(404));
+		assertThat(response.body.contains("Project not found."), is(true));
+	}
+
+	@Test
+	public void projectWithoutNameIsNotCreated() throws IOException {
+		assertThat(request("POST", "/projects", null, "description=test").status, is(400));
+	}
+
+	@Test
+	public void requestsFromOtherOriginsAreRefused() throws IOException {
+		assertThat(request("GET", "/projects", "http://example.com", null).status, is(403));
+		assertThat(request("GET", "/inserts", "http://example.com", null).status, is(403));
+		assertThat(request("GET", "/events", "http://example.com", null).status, is(403));
+		assertThat(request("POST", "/projects", "http://example.com", "name=test").status, is(403));
+		assertThat(request("POST", "/projects/" + project.getId() + "/insert", "null", null).status, is(403));
+	}
+
+	@Test
+	public void requestsForOtherHostsAreRefused() throws IOException {
+		assertThat(request("GET", "/projects", null, null, "attacker.example.com").status, is(403));
+		assertThat(request("GET", "/projects", null, null, "attacker.example.com:" + server.getPort()).status, is(403));
+		assertThat(request("GET", "/projects", null, null, "localhost:" + (server.getPort() + 1)).status, is(403));
+		assertThat(Server.isLocalHost(null, 9480), is(false));
+		assertThat(Server.isLocalHost("localhost.example.com", 9480), is(false));
+	}
+
+	@Test
+	public void requestsForLocalHostsAreAllowed() throws IOException {
+		assertThat(request("GET", "/projects", null, null, "localhost").status, is(200));
+		assertThat(request("GET", "/projects", null, null, "127.0.0.1:" + server.getPort()).status, is(200));
+		assertThat(Server.isLocalHost("[::1]:9480", 9480), is(true));
+		assertThat(Server.isLocalHost("[::1]", 9480), is(true));
+	}
+
+	@Test
+	public void requestsFromLocalOriginsAreAllowed() throws IOException {
+		assertThat(request("GET", "/projects", "http://localhost:9480", null).status, is(200));
+		assertThat(request("GET", "/inserts", "http://127.0.0.1:9480", null).status, is(200));
+		assertThat(Server.isLocalOrigin("http://[::1]:9480"), is(true));
+		assertThat(Server.isLocalOrigin("http://localhost.example.com"), is(false));
+		assertThat(Server.isLocalOrigin(null), is(true));
+	}
+
+	@Test
+	public void parametersAreDecoded() {
+		Map<String, String> parameters = new HashMap<String, String>();
+		Server.parseParameters("name=a+b&path=%C3%A4%2F&flag", parameters);
+		Server.parseParameters(null, parameters);
+		assertThat(parameters.size(), is(3));
+		assertThat(parameters.get("name"), is("a b"));
+		assertThat(parameters.get("path"), is("ä/"));
+		assertThat(parameters.get("flag"), is(""));
+	}
+
+	@Test
+	public void parametersAreReadFromQueryAndBody() throws IOException {
+		Response response = request("POST", "/projects/" + project.getId() + "/insert?priority=unknown", null, null);
+		assertThat(response.status, is(400));
+		assertThat(response.body.contains("Unknown priority class: unknown"), is(true));
+		response = request("POST", "/projects/" + project.getId() + "/insert", null, "edition=first");
+		assertThat(response.status, is(400));
+		assertThat(response.body.contains("Invalid edition: first"), is(true));
+	}
+
+	@Test
+	public void insertIsQueuedReportedAndCancelled() throws Exception {
+		Response response = request("POST", "/projects/" + project.getId() + "/insert", null, "priority=bulk");
+		assertThat(response.status, is(202));
+		assertThat(response.body.contains("\"project\":\"" + project.getId() + "\""), is(true));
+		assertThat(response.body.contains("\"priority\":\"bulk\""), is(true));
+		assertThat(request("POST", "/projects/" + project.getId() + "/insert", null, null).status, is(409));
+		assertThat(request("GET", "/inserts", null, null).body.contains("\"project\":\"" + project.getId() + "\""), is(true));
+		assertThat(request("POST", "/projects/" + project.getId() + "/cancel", null, null).status, is(202));
+		long timeout = System.currentTimeMillis() + 10000;
+		while (!request("GET", "/inserts", null, null).body.contains("\"state\":\"cancelled\"") && (System.currentTimeMillis() < timeout)) {
+			Thread.sleep(50);
+		}
+		assertThat(request("GET", "/inserts", null, null).body.contains("\"state\":\"cancelled\""), is(true));
+		assertThat(request("POST", "/projects/" + project.getId() + "/cancel", null, null).status, is(409));
+	}
+
+	@Test
+	public void numberOfEventStreamsIsLimited() throws IOException {
+		List<Socket> eventStreams = new ArrayList<Socket>();
+		try {
+			for (int index = 0; index < Server.MAX_EVENT_STREAMS; index++) {
+				Socket eventStream = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+				eventStreams.add(eventStream);
+				eventStream.getOutputStream().write("GET /events HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(UTF_8));
+				assertThat(readLine(eventStream.getInputStream()), is("HTTP/1.1 200 OK"));
+			}
+			Response response = request("GET", "/events", null, null);
+			assertThat(response.status, is(503));
+			assertThat(request("GET", "/projects", null, null).status, is(200));
+		} finally {
+			for (Socket eventStream : eventStreams) {
+				eventStream.close();
+			}
+		}
+	}
+
+	private Response request(String method, String path, String origin, String body) throws IOException {
+		return request(method, path, origin, body, "localhost:" + server.getPort());
+	}
+
+	private Response request(String method, String path, String origin, String body, String host) throws IOException {
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+			byte[] bodyBytes = (body != null) ? body.getBytes(UTF_8) : new byte[0];
+			StringBuilder request = new StringBuilder(method).append(' ').append(path).append(" HTTP/1.1\r\nHost: ").append(host).append("\r\nConnection: close\r\n");
+			if (origin != null) {
+				request.append("Origin: ").append(origin).append("\r\n");
+			}
+			request.append("Content-Type: application/x-www-form-urlencoded\r\nContent-Length: ").append(bodyBytes.length).append("\r\n\r\n");
+			OutputStream outputStream = socket.getOutputStream();
+			outputStream.write(request.toString().getBytes(UTF_8));
+			outputStream.write(bodyBytes);
+			outputStream.flush();
+			InputStream inputStream = socket.getInputStream();
+			ByteArrayOutputStream response = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int read;
+			while ((read = inputStream.read(buffer)) != -1) {
+				response.write(buffer, 0, read);
+			}
+			String responseText = new String(response.toByteArray(), UTF_8);
+			return new Response(Integer.parseInt(responseText.split(" ", 3)[1]), responseText.substring(responseText.indexOf("\r\n\r\n") + 4));
+		}
+	}
+
+	private static String readLine(InputStream inputStream) throws IOException {
+		StringBuilder line = new StringBuilder();
+		int read;
+		while (((read = inputStream.read()) != -1) && (read != '\n')) {
+			if (read != '\r') {
+				line.append((char) read);
+			}
+		}
+		return ((read == -1) && (line.length() == 0)) ? null : line.toString();
+	}
+
+	private Void runNode() throws IOException {
+		while (true) {
+			final Socket socket = nodeServerSocket.accept();
+			nodeSockets.add(socket);
+			executorService.submit(() -> {
+				/* answer the ClientHello, ignore everything else. */
+				InputStream inputStream = socket.getInputStream();
+				String line = readLine(inputStream);
+				while ((line != null) && !"EndMessage".equals(line)) {
+					line = readLine(inputStream);
+				}
+				if (line == null) {
+					return null;
+				}
+				socket.getOutputStream().write("NodeHello\nEndMessage\n".getBytes(UTF_8));
+				while (inputStream.read() != -1) {
+					/* discard. */
+				}
+				return null;
+			});
+		}
+	}
+
+	private static class Response {
+
+		private final int status;
+		private final String body;
+
+		public Response(int status, String body) {
+			this.status = status;
+			this.body = body;
+		}
+
+	}
+
+}
@@ -0,0 +1,81 @@
+package de.todesbaum.util.freenet.fcp2;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link Client}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class ClientTest {
+
+	private final Connection connection = new Connection(new Node("localhost", 9481), "test");
+
+	@Test
+	public void clientThatCatchesAllMessagesReceivesMessages() {
+		Client client = new Client(connection);
+		client.setCatchAll(true);
+		connection.fireMessageReceived(createMessage("Message", "identifier"));
+		assertThat(client.readMessage(1000).getName(), is("Message"));
+	}
+
+	@Test
+	public void closedClientDoesNotReturnMessages() {
+		Client client = new Client(connection);
+		client.setCatchAll(true);
+		client.close();
+		connection.fireMessageReceived(createMessage("Message", "identifier"));
+		assertThat(client.isDisconnected(), is(true));
+		assertThat(client.readMessage(1000) == null, is(true));
+	}
+
+	@Test
+	public void closingClientWakesUpWaitingReader() throws Exception {
+		ExecutorService executorService = Executors.newSingleThreadExecutor();
+		try {
+			Client client = new Client(connection);
+			Future<Message> message = executorService.submit(() -> client.readMessage());
+			Thread.sleep(100);
+			client.close();
+			assertThat(message.get(5, TimeUnit.SECONDS) == null, is(true));
+		} finally {
+			executorService.shutdownNow();
+		}
+	}
+
+	@Test
+	public void closingClientDoesNotAffectOtherClientsOfTheConnection() {
+		Client closedClient = new Client(connection);
+		closedClient.setCatchAll(true);
+		Client client = new Client(connection);
+		client.setCatchAll(true);
+		closedClient.close();
+		connection.fireMessageReceived(createMessage("Message", "identifier"));
+		assertThat(client.isDisconnected(), is(false));
+		assertThat(client.readMessage(1000).getName(), is("Message"));
+	}
+
+	@Test
+	public void terminatedConnectionDisconnectsAllClients() {
+		Client firstClient = new Client(connection);
+		Client secondClient = new Client(connection);
+		connection.fireConnectionTerminated();
+		assertThat(firstClient.isDisconnected(), is(true));
+		assertThat(secondClient.isDisconnected(), is(true));
+	}
+
+	private static Message createMessage(String name, String identifier) {
+		Message message = new Message(name);
+		message.setIdentifier(identifier);
+		return message;
+	}
+
+}
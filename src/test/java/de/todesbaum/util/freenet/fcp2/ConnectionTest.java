@@ -0,0 +1,315 @@
+package de.todesbaum.util.freenet.fcp2;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link Connection}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class ConnectionTest {
+
+	private static final byte[] PAYLOAD = "data\r\n".getBytes(UTF_8);
+
+	@Test
+	public void commandWithoutPayloadIsSentAfterRunningUploadWithoutWaiting() throws Exception {
+		ExecutorService executorService = Executors.newCachedThreadPool();
+		try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+			Future<String> nodeData = executorService.submit(() -> runNode(serverSocket));
+			Connection connection = new Connection(new Node("localhost", serverSocket.getLocalPort()), "test");
+			assertThat(connection.connect(), is(true));
+			CountDownLatch uploadStarted = new CountDownLatch(1);
+			CountDownLatch uploadReleased = new CountDownLatch(1);
+			Future<?> upload = executorService.submit(() -> {
+				connection.execute(new UploadCommand(uploadStarted, uploadReleased));
+				return null;
+			});
+			assertThat(uploadStarted.await(5, TimeUnit.SECONDS), is(true));
+			Future<Void> control = connection.execute(new Command("Control", "control") {
+				/* no payload. */
+			});
+			assertThat(control.isDone(), is(false));
+			uploadReleased.countDown();
+			upload.get(5, TimeUnit.SECONDS);
+			control.get(5, TimeUnit.SECONDS);
+			connection.disconnect();
+			assertThat(nodeData.get(5, TimeUnit.SECONDS).endsWith("Upload\r\nIdentifier=upload\r\nEndMessage\r\ndata\r\nControl\r\nIdentifier=control\r\nEndMessage\r\n"), is(true));
+		} finally {
+			executorService.shutdownNow();
+		}
+	}
+
+	@Test
+	public void commandWithoutPayloadDoesNotWaitForUploadThatStartsWhileItWaits() throws Exception {
+		ExecutorService executorService = Executors.newCachedThreadPool();
+		try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+			Future<String> nodeData = executorService.submit(() -> runNode(serverSocket));
+			Connection connection = new Connection(new Node("localhost", serverSocket.getLocalPort()), "test");
+			assertThat(connection.connect(), is(true));
+			CountDownLatch writeStarted = new CountDownLatch(1);
+			CountDownLatch writeReleased = new CountDownLatch(1);
+			Future<?> blocked = executorService.submit(() -> {
+				connection.execute(new Command("Blocked", "blocked") {
+
+					@Override
+					protected void write(Writer writer) throws IOException {
+						writeStarted.countDown();
+						try {
+							writeReleased.await();
+						} catch (InterruptedException ie1) {
+							Thread.currentThread().interrupt();
+						}
+						super.write(writer);
+					}
+				});
+				return null;
+			});
+			assertThat(writeStarted.await(5, TimeUnit.SECONDS), is(true));
+			FutureTask<Future<Void>> control = new FutureTask<Future<Void>>(() -> connection.execute(new Command("Control", "control") {
+				/* no payload. */
+			}));
+			Thread controlThread = new Thread(control);
+			controlThread.start();
+			waitUntilWaiting(controlThread);
+			CountDownLatch uploadStarted = new CountDownLatch(1);
+			CountDownLatch uploadReleased = new CountDownLatch(1);
+			FutureTask<Void> upload = new FutureTask<Void>(() -> {
+				connection.execute(new UploadCommand(uploadStarted, uploadReleased));
+				return null;
+			});
+			Thread uploadThread = new Thread(upload);
+			uploadThread.start();
+			waitUntilWaiting(uploadThread);
+			writeReleased.countDown();
+			blocked.get(5, TimeUnit.SECONDS);
+			Future<Void> controlWritten = control.get(5, TimeUnit.SECONDS);
+			assertThat(upload.isDone(), is(false));
+			uploadReleased.countDown();
+			upload.get(5, TimeUnit.SECONDS);
+			controlWritten.get(5, TimeUnit.SECONDS);
+			connection.disconnect();
+			String data = nodeData.get(5, TimeUnit.SECONDS);
+			assertThat(data.contains("Blocked\r\nIdentifier=blocked\r\nEndMessage\r\n"), is(true));
+			assertThat(data.contains("Control\r\nIdentifier=control\r\nEndMessage\r\n"), is(true));
+			assertThat(data.contains("Upload\r\nIdentifier=upload\r\nEndMessage\r\ndata\r\n"), is(true));
+		} finally {
+			executorService.shutdownNow();
+		}
+	}
+
+	@Test(expected = ExecutionException.class)
+	public void queuedCommandThatCanNotBeSentFailsItsFuture() throws Exception {
+		ExecutorService executorService = Executors.newCachedThreadPool();
+		try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+			executorService.submit(() -> runNode(serverSocket));
+			Connection connection = new Connection(new Node("localhost", serverSocket.getLocalPort()), "test");
+			assertThat(connection.connect(), is(true));
+			CountDownLatch uploadStarted = new CountDownLatch(1);
+			CountDownLatch uploadReleased = new CountDownLatch(1);
+			Future<?> upload = executorService.submit(() -> {
+				connection.execute(new UploadCommand(uploadStarted, uploadReleased));
+				return null;
+			});
+			assertThat(uploadStarted.await(5, TimeUnit.SECONDS), is(true));
+			Future<Void> control = connection.execute(new Command("Control", "control") {
+				/* no payload. */
+			});
+			connection.disconnect();
+			uploadReleased.countDown();
+			try {
+				upload.get(5, TimeUnit.SECONDS);
+			} catch (ExecutionException ee1) {
+				/* the upload fails, too. */
+			}
+			try {
+				control.get(5, TimeUnit.SECONDS);
+			} catch (ExecutionException ee1) {
+				assertThat(ee1.getCause() instanceof IllegalStateException, is(true));
+				throw ee1;
+			}
+		} finally {
+			executorService.shutdownNow();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void payloadStreamThatCanNotBeOpenedFailsWithIOException() throws Exception {
+		ExecutorService executorService = Executors.newCachedThreadPool();
+		try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+			executorService.submit(() -> runNode(serverSocket));
+			Connection connection = new Connection(new Node("localhost", serverSocket.getLocalPort()), "test");
+			assertThat(connection.connect(), is(true));
+			try {
+				connection.execute(new Command("Upload", "upload") {
+
+					@Override
+					protected boolean hasPayload() {
+						return true;
+					}
+
+					@Override
+					protected long getPayloadLength() {
+						return 2 * PAYLOAD.length;
+					}
+
+					@Override
+					protected InputStream getPayload() {
+						Iterator<InputStream> streams = asList(new ByteArrayInputStream(PAYLOAD), (InputStream) null).iterator();
+						return new SequenceInputStream(new Enumeration<InputStream>() {
+
+							@Override
+							public boolean hasMoreElements() {
+								return streams.hasNext();
+							}
+
+							@Override
+							public InputStream nextElement() {
+								InputStream stream = streams.next();
+								if (stream == null) {
+									throw new UncheckedIOException(new IOException("Could not open stream."));
+								}
+								return stream;
+							}
+						});
+					}
+				});
+			} finally {
+				connection.disconnect();
+			}
+		} finally {
+			executorService.shutdownNow();
+		}
+	}
+
+	@Test
+	public void payloadThatCanNotBeStoredIsReadCompletely() throws IOException {
+		File directory = Files.createTempDirectory("jsite-test").toFile();
+		try {
+			ByteArrayInputStream inputStream = new ByteArrayInputStream("payloadNextMessage".getBytes(UTF_8));
+			assertThat(Connection.receive(inputStream, directory, 7), is(false));
+			assertThat(inputStream.available(), is(11));
+		} finally {
+			directory.delete();
+		}
+	}
+
+	@Test
+	public void payloadIsStored() throws IOException {
+		File file = File.createTempFile("jsite-test", ".dat");
+		try {
+			ByteArrayInputStream inputStream = new ByteArrayInputStream("payloadNextMessage".getBytes(UTF_8));
+			assertThat(Connection.receive(inputStream, file, 7), is(true));
+			assertThat(new String(Files.readAllBytes(file.toPath()), UTF_8), is("payload"));
+			assertThat(inputStream.available(), is(11));
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test(expected = EOFException.class)
+	public void payloadThatEndsEarlyIsNotStored() throws IOException {
+		File file = File.createTempFile("jsite-test", ".dat");
+		try {
+			Connection.receive(new ByteArrayInputStream("pay".getBytes(UTF_8)), file, 7);
+		} finally {
+			file.delete();
+		}
+	}
+
+	private static void waitUntilWaiting(Thread thread) throws InterruptedException {
+		long timeout = System.currentTimeMillis() + 5000;
+		while ((thread.getState() != Thread.State.WAITING) && (System.currentTimeMillis() < timeout)) {
+			Thread.sleep(10);
+		}
+		assertThat(thread.getState(), is(Thread.State.WAITING));
+	}
+
+	private static String runNode(ServerSocket serverSocket) throws IOException {
+		try (Socket socket = serverSocket.accept()) {
+			InputStream inputStream = socket.getInputStream();
+			OutputStream outputStream = socket.getOutputStream();
+			ByteArrayOutputStream received = new ByteArrayOutputStream();
+			boolean helloSent = false;
+			int read;
+			while ((read = inputStream.read()) != -1) {
+				received.write(read);
+				if (!helloSent && received.toString("UTF-8").endsWith("EndMessage\r\n")) {
+					outputStream.write("NodeHello\nEndMessage\n".getBytes(UTF_8));
+					outputStream.flush();
+					helloSent = true;
+				}
+			}
+			return received.toString("UTF-8");
+		}
+	}
+
+	private static class UploadCommand extends Command {
+
+		private final CountDownLatch uploadStarted;
+		private final CountDownLatch uploadReleased;
+
+		public UploadCommand(CountDownLatch uploadStarted, CountDownLatch uploadReleased) {
+			super("Upload", "upload");
+			this.uploadStarted = uploadStarted;
+			this.uploadReleased = uploadReleased;
+		}
+
+		@Override
+		protected boolean hasPayload() {
+			return true;
+		}
+
+		@Override
+		protected long getPayloadLength() {
+			return PAYLOAD.length;
+		}
+
+		@Override
+		protected InputStream getPayload() {
+			return new ByteArrayInputStream(PAYLOAD) {
+
+				@Override
+				public synchronized int read(byte[] buffer, int offset, int length) {
+					uploadStarted.countDown();
+					try {
+						uploadReleased.await();
+					} catch (InterruptedException ie1) {
+						Thread.currentThread().interrupt();
+					}
+					return super.read(buffer, offset, length);
+				}
+			};
+		}
+
+	}
+
+}
@@ -0,0 +1,94 @@
+package de.todesbaum.util.io;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link TempSpace}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class TempSpaceTest {
+
+	private final File directory = createDirectory();
+	private final TempSpace tempSpace = new TempSpace(asList(directory), 1000, 0);
+
+	@After
+	public void removeDirectory() {
+		tempSpace.close();
+		for (File file : directory.listFiles()) {
+			for (File sessionFile : file.listFiles()) {
+				sessionFile.delete();
+			}
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void filesAreCreatedInLockedSessionDirectory() throws IOException {
+		File file = tempSpace.createFile("payload", 100);
+		File sessionDirectory = file.getParentFile();
+		assertThat(sessionDirectory.getParentFile(), is(directory));
+		assertThat(sessionDirectory.getName().startsWith(TempSpace.SESSION_PREFIX), is(true));
+		assertThat(new File(sessionDirectory, TempSpace.LOCK_FILENAME).isFile(), is(true));
+		assertThat(tempSpace.getReservedSpace(), is(100L));
+	}
+
+	@Test
+	public void reservationsAreLimitedByQuota() throws IOException {
+		File file = tempSpace.createFile("payload", 600);
+		assertThat(tempSpace.getAvailableSpace(), is(400L));
+		try {
+			tempSpace.createFile("payload", 600);
+			assertThat("file was created", false);
+		} catch (IOException ioe1) {
+			/* expected. */
+		}
+		tempSpace.delete(file);
+		assertThat(file.exists(), is(false));
+		tempSpace.reserve(tempSpace.createFile("payload", 0), 600);
+		assertThat(tempSpace.getReservedSpace(), is(600L));
+	}
+
+	@Test
+	public void closingRemovesSessionDirectory() throws IOException {
+		File sessionDirectory = tempSpace.createFile("payload", 100).getParentFile();
+		tempSpace.close();
+		assertThat(sessionDirectory.exists(), is(false));
+		assertThat(tempSpace.getReservedSpace(), is(0L));
+	}
+
+	@Test
+	public void onlyOrphanedSessionDirectoriesAreRemoved() throws IOException {
+		File orphanedSession = new File(directory, TempSpace.SESSION_PREFIX + "orphan");
+		orphanedSession.mkdir();
+		Files.write(new File(orphanedSession, "payload.tmp").toPath(), new byte[10]);
+		File orphanedLock = new File(orphanedSession, TempSpace.LOCK_FILENAME);
+		orphanedLock.createNewFile();
+		orphanedLock.setLastModified(System.currentTimeMillis() - 2 * TempSpace.ORPHAN_AGE);
+		File liveSession = tempSpace.createFile("payload", 100).getParentFile();
+		new File(liveSession, TempSpace.LOCK_FILENAME).setLastModified(System.currentTimeMillis() - 2 * TempSpace.ORPHAN_AGE);
+		TempSpace otherTempSpace = new TempSpace(asList(directory), 1000, 0);
+		assertThat(otherTempSpace.deleteOrphans(), is(1));
+		assertThat(orphanedSession.exists(), is(false));
+		assertThat(liveSession.exists(), is(true));
+	}
+
+	private static File createDirectory() {
+		try {
+			return Files.createTempDirectory("jsite-test").toFile();
+		} catch (IOException ioe1) {
+			throw new RuntimeException(ioe1);
+		}
+	}
+
+}
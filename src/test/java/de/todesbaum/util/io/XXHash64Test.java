@@ -0,0 +1,49 @@
+package de.todesbaum.util.io;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link XXHash64}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class XXHash64Test {
+
+	@Test
+	public void knownInputsHaveKnownHashes() {
+		assertThat(hash(""), is("ef46db3751d8e999"));
+		assertThat(hash("a"), is("d24ec4f1a98c6e5b"));
+		assertThat(hash("abc"), is("44bc2cf5ad770999"));
+		assertThat(hash("Nobody inspects the spammish repetition"), is("fbcea83c8a378bf1"));
+	}
+
+	@Test
+	public void dataInDirectBuffersOfAnySizeGivesTheSameHash() {
+		byte[] data = new byte[100003];
+		new Random(1).nextBytes(data);
+		String hash = Hex.toHex(new XXHash64().digest(data));
+		XXHash64 xxHash64 = new XXHash64();
+		Random random = new Random(2);
+		for (int position = 0; position < data.length;) {
+			int length = Math.min(data.length - position, random.nextInt(70));
+			ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+			buffer.put(data, position, length).flip();
+			xxHash64.update(buffer);
+			assertThat(buffer.hasRemaining(), is(false));
+			position += length;
+		}
+		assertThat(Hex.toHex(xxHash64.digest()), is(hash));
+	}
+
+	private static String hash(String text) {
+		return Hex.toHex(new XXHash64().digest(text.getBytes(UTF_8)));
+	}
+
+}
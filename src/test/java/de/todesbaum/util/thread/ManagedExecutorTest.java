@@ -0,0 +1,76 @@
+package de.todesbaum.util.thread;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link ManagedExecutor}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class ManagedExecutorTest {
+
+	@Test
+	public void threadsAreNamedAfterTheExecutor() throws Exception {
+		ManagedExecutor executor = ManagedExecutor.create("Test", 1);
+		try {
+			Future<String> threadName = executor.submit(() -> Thread.currentThread().getName());
+			assertThat(threadName.get(5, TimeUnit.SECONDS), is("jSite Test 1"));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void concurrencyIsBounded() throws Exception {
+		ManagedExecutor executor = ManagedExecutor.createBlocking("Bounded", 2);
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+		CountDownLatch finished = new CountDownLatch(6);
+		try {
+			for (int task = 0; task < 6; task++) {
+				executor.execute(() -> {
+					maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+					try {
+						Thread.sleep(50);
+					} catch (InterruptedException ie1) {
+						/* ignore. */
+					}
+					running.decrementAndGet();
+					finished.countDown();
+				});
+			}
+			assertThat(finished.await(5, TimeUnit.SECONDS), is(true));
+			assertThat(maxRunning.get(), is(2));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void failedTasksAreCounted() throws Exception {
+		ManagedExecutor executor = ManagedExecutor.create("Failing", 1);
+		executor.execute(() -> {
+			throw new IllegalStateException("expected");
+		});
+		executor.shutdown();
+		assertThat(executor.awaitTermination(5, TimeUnit.SECONDS), is(true));
+		assertThat(executor.getFailedTaskCount(), is(1L));
+	}
+
+	@Test
+	public void executorsAreForgottenWhenShutDown() {
+		ManagedExecutor executor = ManagedExecutor.create("Shutdown", 1);
+		assertThat(ManagedExecutor.getExecutors().contains(executor), is(true));
+		executor.shutdown();
+		assertThat(ManagedExecutor.getExecutors().contains(executor), is(false));
+	}
+
+}